@@ -44,6 +44,7 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
 import org.springframework.core.env.Environment;
+import org.springframework.jms.connection.CachingConnectionFactory;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.web.multipart.commons.CommonsMultipartResolver;
@@ -54,6 +55,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationConfig;
 import com.fasterxml.jackson.datatype.jsr310.JSR310Module;
 
+import de.escidocng.security.helpers.AuthenticationCache;
+import de.escidocng.security.helpers.AuthorizationDescriptorRegistry;
 import de.escidocng.security.helpers.EscidocngOpenIdAuthenticationProvider;
 import de.escidocng.security.helpers.EscidocngSecurityInterceptor;
 import de.escidocng.service.AuthorizationService;
@@ -70,18 +73,21 @@ import de.escidocng.service.backend.BackendArchiveBlobService;
 import de.escidocng.service.backend.BackendArchiveIndexService;
 import de.escidocng.service.backend.BackendArchiveInformationPackageService;
 import de.escidocng.service.backend.BackendAuditService;
+import de.escidocng.service.backend.BackendChangeLogService;
 import de.escidocng.service.backend.BackendContentModelService;
 import de.escidocng.service.backend.BackendEntityService;
 import de.escidocng.service.backend.BackendSchemaService;
 import de.escidocng.service.backend.BackendVersionService;
 import de.escidocng.service.backend.elasticsearch.ElasticSearchArchiveIndexService;
 import de.escidocng.service.backend.elasticsearch.ElasticSearchAuditService;
+import de.escidocng.service.backend.elasticsearch.ElasticSearchChangeLogService;
 import de.escidocng.service.backend.elasticsearch.ElasticSearchContentModelService;
 import de.escidocng.service.backend.elasticsearch.ElasticSearchCredentialsService;
 import de.escidocng.service.backend.elasticsearch.ElasticSearchEntityService;
 import de.escidocng.service.backend.elasticsearch.ElasticSearchNode;
 import de.escidocng.service.backend.elasticsearch.ElasticSearchSchemaService;
 import de.escidocng.service.backend.elasticsearch.ElasticSearchVersionService;
+import de.escidocng.service.backend.elasticsearch.queryrestriction.RestrictionFilterCache;
 import de.escidocng.service.backend.fs.FileSystemArchiveService;
 import de.escidocng.service.backend.fs.FileSystemBlobstoreService;
 import de.escidocng.service.backend.sftp.SftpArchiveService;
@@ -89,6 +95,7 @@ import de.escidocng.service.backend.weedfs.WeedFSBlobstoreService;
 import de.escidocng.service.backend.weedfs.WeedFsMaster;
 import de.escidocng.service.backend.weedfs.WeedFsVolume;
 import de.escidocng.service.backend.zip.ZIPArchiveInformationPackageService;
+import de.escidocng.service.impl.DefaultArchiveFixityService;
 import de.escidocng.service.impl.DefaultArchiveService;
 import de.escidocng.service.impl.DefaultAuthorizationService;
 import de.escidocng.service.impl.DefaultContentModelService;
@@ -100,6 +107,8 @@ import de.escidocng.service.impl.DefaultMailService;
 import de.escidocng.service.impl.DefaultMessagingService;
 import de.escidocng.service.impl.DefaultRepositoryService;
 import de.escidocng.service.impl.DefaultSchemaService;
+import de.escidocng.service.impl.SearchProfiler;
+import de.escidocng.service.impl.SearchResultCache;
 import de.escidocng.util.FileSystemUtil;
 import de.escidocng.util.EscidocngExceptionHandler;
 
@@ -162,6 +171,54 @@ public class EscidocngServerConfiguration {
         return new DefaultCredentialsService();
     }
 
+    /**
+     * Get a {@link de.escidocng.service.backend.elasticsearch.queryrestriction.RestrictionFilterCache} Spring bean
+     * holding the compiled search restrictions of the most recently active users
+     *
+     * @return the {@link de.escidocng.service.backend.elasticsearch.queryrestriction.RestrictionFilterCache}
+     */
+    @Bean
+    public RestrictionFilterCache restrictionFilterCache() {
+        return new RestrictionFilterCache(Integer.parseInt(env.getProperty("escidocng.search.restriction.cache.size",
+                "1000")));
+    }
+
+    /**
+     * Get a {@link de.escidocng.security.helpers.AuthenticationCache} Spring bean holding the authentications of
+     * users recently logged in with name and password
+     *
+     * @return the {@link de.escidocng.security.helpers.AuthenticationCache}
+     */
+    @Bean
+    public AuthenticationCache authenticationCache() {
+        return new AuthenticationCache(Integer.parseInt(env.getProperty("escidocng.authentication.cache.size",
+                "1000")), Long.parseLong(env.getProperty("escidocng.authentication.cache.ttl", "60000")));
+    }
+
+    /**
+     * Get a {@link de.escidocng.service.impl.SearchResultCache} Spring bean holding the results of recently repeated
+     * entity searches
+     *
+     * @return the {@link de.escidocng.service.impl.SearchResultCache}
+     */
+    @Bean
+    public SearchResultCache searchResultCache() {
+        return new SearchResultCache(Integer.parseInt(env.getProperty("escidocng.search.cache.size", "500")),
+                Long.parseLong(env.getProperty("escidocng.search.cache.ttl", "10000")), objectMapper());
+    }
+
+    /**
+     * Get a {@link de.escidocng.service.impl.SearchProfiler} Spring bean capturing searches which took longer than
+     * the configured threshold
+     *
+     * @return the {@link de.escidocng.service.impl.SearchProfiler}
+     */
+    @Bean
+    public SearchProfiler searchProfiler() {
+        return new SearchProfiler(Long.parseLong(env.getProperty("escidocng.search.slowlog.threshold", "1000")),
+                Integer.parseInt(env.getProperty("escidocng.search.slowlog.size", "100")));
+    }
+
     /**
      * Get a {@link de.escidocng.service.impl.DefaultSchemaService} Spring bean
      *
@@ -227,6 +284,16 @@ public class EscidocngServerConfiguration {
         return new ElasticSearchAuditService();
     }
 
+    /**
+     * Get a {@link de.escidocng.service.backend.BackendChangeLogService} Spring bean
+     *
+     * @return the {@link de.escidocng.service.backend.BackendChangeLogService} implementation
+     */
+    @Bean
+    public BackendChangeLogService backendChangeLogService() {
+        return new ElasticSearchChangeLogService();
+    }
+
     /**
      * Get a {@link de.escidocng.service.backend.BackendSchemaService} Spring bean
      *
@@ -413,6 +480,17 @@ public class EscidocngServerConfiguration {
         return serializer;
     }
 
+    /**
+     * Get a {@link de.escidocng.security.helpers.AuthorizationDescriptorRegistry} Spring bean holding the
+     * authorization annotations of the controller methods, read once at startup
+     *
+     * @return the {@link de.escidocng.security.helpers.AuthorizationDescriptorRegistry}
+     */
+    @Bean
+    public AuthorizationDescriptorRegistry authorizationDescriptorRegistry() {
+        return new AuthorizationDescriptorRegistry();
+    }
+
     /**
      * Get a {@link de.escidocng.security.helpers.EscidocngSecurityInterceptor} implementation for use by the
      * repository
@@ -465,14 +543,43 @@ public class EscidocngServerConfiguration {
         return new EscidocngExceptionHandler();
     }
 
+    /**
+     * Get the {@link org.springframework.jms.core.JmsTemplate} used to publish events. The delivery mode is set by
+     * escidocng.messaging.persistent, the acknowledge mode of the sessions by
+     * escidocng.messaging.session.acknowledgeMode (auto, client, dups_ok or transacted)
+     *
+     * @return a {@link org.springframework.jms.core.JmsTemplate}
+     */
     @Bean
     public JmsTemplate jmsTemplate() {
-        final JmsTemplate templ = new JmsTemplate(activeMQConnectionFactory());
+        final JmsTemplate templ = new JmsTemplate(jmsConnectionFactory());
         templ.setReceiveTimeout(500);
         templ.setDefaultDestination(jmsQueue());
+        final String ackMode = env.getProperty("escidocng.messaging.session.acknowledgeMode", "transacted");
+        if ("transacted".equalsIgnoreCase(ackMode)) {
+            templ.setSessionTransacted(true);
+        } else {
+            templ.setSessionAcknowledgeModeName(ackMode.toUpperCase() + "_ACKNOWLEDGE");
+        }
+        templ.setExplicitQosEnabled(true);
+        templ.setDeliveryPersistent(Boolean.parseBoolean(env.getProperty("escidocng.messaging.persistent", "true")));
         return templ;
     }
 
+    /**
+     * Get a {@link org.springframework.jms.connection.CachingConnectionFactory} sharing one connection to the broker
+     * and keeping up to escidocng.messaging.session.cacheSize sessions and their producers open
+     *
+     * @return a {@link org.springframework.jms.connection.CachingConnectionFactory}
+     */
+    @Bean
+    @Primary
+    public CachingConnectionFactory jmsConnectionFactory() {
+        final CachingConnectionFactory factory = new CachingConnectionFactory(activeMQConnectionFactory());
+        factory.setSessionCacheSize(Integer.parseInt(env.getProperty("escidocng.messaging.session.cacheSize", "10")));
+        return factory;
+    }
+
     @Bean
     public BrokerService brokerService() throws Exception {
         final File dir =
@@ -549,4 +656,15 @@ public class EscidocngServerConfiguration {
     public BackendArchiveInformationPackageService backendArchiveInformationPackageService() {
         return new ZIPArchiveInformationPackageService();
     }
+
+    /**
+     * Get a {@link de.escidocng.service.ArchiveFixityService} implementation which verifies the integrity of
+     * archived packages
+     *
+     * @return the {@link de.escidocng.service.impl.DefaultArchiveFixityService} implementation
+     */
+    @Bean
+    public DefaultArchiveFixityService defaultArchiveFixityService() {
+        return new DefaultArchiveFixityService();
+    }
 }
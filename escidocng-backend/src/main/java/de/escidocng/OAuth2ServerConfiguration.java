@@ -30,10 +30,10 @@ import org.springframework.security.oauth2.config.annotation.web.configuration.R
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerEndpointsConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.ResourceServerSecurityConfigurer;
 import org.springframework.security.oauth2.provider.token.TokenStore;
-import org.springframework.security.oauth2.provider.token.store.InMemoryTokenStore;
 import org.springframework.security.openid.OpenIDAuthenticationFilter;
 
 import de.escidocng.security.helpers.EscidocngOauthRegexRequestMatcher;
+import de.escidocng.service.backend.elasticsearch.ElasticSearchTokenStore;
 
 @Configuration
 public class OAuth2ServerConfiguration {
@@ -113,9 +113,15 @@ public class OAuth2ServerConfiguration {
             }
         }
 
+        /**
+         * Get a {@link org.springframework.security.oauth2.provider.token.TokenStore} Spring bean which shares the
+         * issued tokens between all nodes of the cluster
+         *
+         * @return the {@link de.escidocng.service.backend.elasticsearch.ElasticSearchTokenStore}
+         */
         @Bean
         public TokenStore tokenStore() {
-            return new InMemoryTokenStore();
+            return new ElasticSearchTokenStore();
         }
 
         @Override
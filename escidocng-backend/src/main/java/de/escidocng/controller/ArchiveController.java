@@ -17,12 +17,10 @@ package de.escidocng.controller;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.io.IOUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
@@ -33,11 +31,13 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 import de.escidocng.model.Archive;
+import de.escidocng.model.ArchiveFixity;
 import de.escidocng.model.security.ObjectType;
 import de.escidocng.model.security.PermissionType;
 import de.escidocng.model.security.annotation.Permission;
 import de.escidocng.model.security.annotation.PreAuth;
 import de.escidocng.model.security.role.Role.RoleName;
+import de.escidocng.service.ArchiveFixityService;
 import de.escidocng.service.ArchiveService;
 
 @Controller
@@ -47,6 +47,9 @@ public class ArchiveController extends AbstractEscidocngController {
     @Autowired
     private ArchiveService archiveService;
 
+    @Autowired
+    private ArchiveFixityService archiveFixityService;
+
     /**
      * Controller method to retrieve the Archived Data (zipfile) of an 
      * {@link de.escidocng.model.Entity}-Version
@@ -63,14 +66,17 @@ public class ArchiveController extends AbstractEscidocngController {
             @Permission(rolename = RoleName.ROLE_LEVEL1_ADMIN, permissionType = PermissionType.READ) })
     public void retrieveContent(@PathVariable("entityId") final String entityId, @PathVariable("version") final int version,
                          HttpServletResponse resp) {
-        try (InputStream src = this.archiveService.retrieveData(entityId, version);
-            OutputStream sink = resp.getOutputStream()) {
-
+        try {
+            final Archive archive = this.archiveService.retrieve(entityId, version);
             resp.setStatus(200);
             resp.setHeader("Content-Disposition", "attachment;filename=" + "aip_" + entityId + "_v" + version + ".zip");
-            resp.setHeader("Content-Length", String.valueOf(this.archiveService.sizeof(entityId, version)));
-            IOUtils.copy(src, sink);
-
+            if (archive.getBaseVersion() == null) {
+                // incremental archives are assembled on the fly, so their size is only known for complete archives
+                resp.setHeader("Content-Length", String.valueOf(this.archiveService.sizeof(entityId, version)));
+            }
+            try (OutputStream sink = resp.getOutputStream()) {
+                this.archiveService.retrieveData(entityId, version, sink);
+            }
         } catch (FileNotFoundException e) {
             resp.setStatus(404);
         } catch (IOException e) {
@@ -115,4 +121,37 @@ public class ArchiveController extends AbstractEscidocngController {
         return archiveService.retrieve(entityId, version);
     }
 
+    /**
+     * Controller method to verify the integrity of the archive of a particular entity-version. The result is
+     * recorded in the archive-metadata.
+     * 
+     * @param entityId The entity's id of the archive to verify.
+     * @param version The version of the entity of the archive to verify.
+     * @return ArchiveFixity the result of the verification
+     * @throws IOException
+     */
+    @RequestMapping(value = "/{entityId}/{version}/fixity", method = RequestMethod.PUT)
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    @PreAuth(objectType = ObjectType.ENTITY, idIndex = 0, versionIndex = 1, permissions = {
+            @Permission(rolename = RoleName.ROLE_ADMIN) })
+    public ArchiveFixity verifyArchive(@PathVariable("entityId") final String entityId,
+            @PathVariable("version") final int version) throws IOException {
+        return archiveFixityService.verify(entityId, version);
+    }
+
+    /**
+     * Controller method to start the verification of all archives in the background.
+     * 
+     * @return true if the verification has been started, false if a verification is already in progress
+     * @throws IOException
+     */
+    @RequestMapping(value = "/fixity", method = RequestMethod.PUT)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @ResponseBody
+    @PreAuth(permissions = { @Permission(rolename = RoleName.ROLE_ADMIN) })
+    public boolean verifyArchives() throws IOException {
+        return archiveFixityService.verifyAll();
+    }
+
 }
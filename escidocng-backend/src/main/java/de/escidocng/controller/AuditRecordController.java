@@ -46,12 +46,15 @@ public class AuditRecordController extends AbstractEscidocngController {
 
     /**
      * Controller method for HTTP GET requests of audit records from the repository, describing the provenance of an
-     * {@link de.escidocng.model.Entity}
+     * {@link de.escidocng.model.Entity}.<br>
+     * Pass cursor=* to page through the records with cursors instead of offsets: every page then contains the cursor
+     * of the next one, which stays stable while new records are added.
      * 
      * @param entityId The entity's id for which the {@link de.escidocng.model.AuditRecord}s should be
      *        returned
      * @param offset The offset for {@link de.escidocng.model.AuditRecords} returned from the repository
      * @param count The max number of {@link de.escidocng.model.AuditRecords} returned from the repository
+     * @param cursor * to start paging with cursors, or the cursor returned with the previous page
      * @return A {@link java.util.List} of {@link de.escidocng.model.AuditRecord} objects.
      * @throws IOException
      */
@@ -62,7 +65,11 @@ public class AuditRecordController extends AbstractEscidocngController {
             @Permission(rolename = RoleName.ROLE_ADMIN)})
     public AuditRecords retrieve(@PathVariable("entity-id") final String entityId, @RequestParam(
                     value = "offset", defaultValue = "0") final int offset, @RequestParam(value = "count",
-                    defaultValue = "25") final int count) throws IOException {
+                    defaultValue = "25") final int count, @RequestParam(value = "cursor",
+                    required = false) final String cursor) throws IOException {
+        if (cursor != null) {
+            return entityService.retrieveAuditRecords(entityId, cursor, count);
+        }
         return entityService.retrieveAuditRecords(entityId, offset, count);
     }
 
@@ -47,8 +47,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import de.escidocng.exceptions.InvalidParameterException;
 import de.escidocng.model.Entity;
 import de.escidocng.model.Entity.EntityState;
-import de.escidocng.model.security.annotation.PostAuth;
-import de.escidocng.model.security.annotation.PreAuth;
+import de.escidocng.security.helpers.AuthorizationDescriptor;
+import de.escidocng.security.helpers.AuthorizationDescriptor.Check;
+import de.escidocng.security.helpers.AuthorizationDescriptorRegistry;
 import de.escidocng.security.helpers.AuthorizeHttpServletRequest;
 import de.escidocng.service.AuthorizationService;
 
@@ -67,6 +68,9 @@ public class AuthController extends AbstractEscidocngController {
     @Autowired
     private AuthorizationService authorizationService;
 
+    @Autowired
+    private AuthorizationDescriptorRegistry descriptorRegistry;
+
     @Autowired
     private ObjectMapper mapper;
 
@@ -132,32 +136,14 @@ public class AuthController extends AbstractEscidocngController {
                 methodArgsArr = methodArgs.toArray();
 
                 // Call Authorization-Service
-                if (method != null) {
-                    PreAuth preAuth = method.getAnnotation(PreAuth.class);
-                    PostAuth postAuth = method.getAnnotation(PostAuth.class);
-                    if (preAuth != null) {
-                        authorizationService
-                                .authorize(method, preAuth.objectType(), authorizationService
-                                        .getId(preAuth.idIndex(), preAuth
-                                                .objectType(),
-                                                methodArgsArr), authorizationService
-                                        .getVersionId(preAuth.versionIndex(), methodArgsArr),
-                                        authorizationService
-                                                .getObject(preAuth.idIndex(), preAuth.objectType(), methodArgsArr),
-                                        preAuth
-                                                .permissions());
-                    }
-                    if (postAuth != null) {
-                        authorizationService.authorize(method, postAuth.objectType(), authorizationService
-                                .getId(postAuth
-                                        .idIndex(), postAuth.objectType(),
-                                        methodArgsArr), authorizationService
-                                .getVersionId(postAuth.versionIndex(), methodArgsArr),
-                                authorizationService
-                                        .getObject(postAuth.idIndex(), postAuth.objectType(), methodArgsArr),
-                                postAuth
-                                        .permissions());
-                    }
+                final AuthorizationDescriptor descriptor = descriptorRegistry.get(method);
+                final Check preAuth = descriptor.getPreAuth();
+                final Check postAuth = descriptor.getPostAuth();
+                if (preAuth != null) {
+                    authorize(method, preAuth, methodArgsArr);
+                }
+                if (postAuth != null) {
+                    authorize(method, postAuth, methodArgsArr);
                 }
             }
         } catch (IOException | AccessDeniedException | InsufficientAuthenticationException e) {
@@ -167,6 +153,14 @@ public class AuthController extends AbstractEscidocngController {
         }
     }
 
+    private void authorize(Method method, Check check, Object[] methodArgs) throws IOException {
+        authorizationService.authorize(method, check.getObjectType(),
+                authorizationService.getId(check.getIdIndex(), check.getObjectType(), methodArgs),
+                authorizationService.getVersionId(check.getVersionIndex(), methodArgs),
+                authorizationService.getObject(check.getIdIndex(), check.getObjectType(), methodArgs),
+                check.getPermissions());
+    }
+
     /**
      * Retrieve all request-uris for the given method. Read RequestMapping-Annotations.
      * 
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.controller;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import de.escidocng.model.Changes;
+import de.escidocng.model.security.annotation.Permission;
+import de.escidocng.model.security.annotation.PreAuth;
+import de.escidocng.model.security.role.Role.RoleName;
+import de.escidocng.service.EntityService;
+
+/**
+ * Web controller for the ordered feed of {@link de.escidocng.model.Change}s made to the repository
+ */
+@Controller
+@RequestMapping("/changes")
+public class ChangeController extends AbstractEscidocngController {
+
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+    @Autowired
+    private EntityService entityService;
+
+    /**
+     * Controller method for HTTP GET requests of the {@link de.escidocng.model.Change}s following a sequence number.
+     * <br>
+     * The returned {@link de.escidocng.model.Changes} contain lastSeq, the sequence number to pass as since with the
+     * next request, and head, the newest sequence number. Pass limit=0 to only retrieve the head. If timeout is
+     * greater than 0 and no change follows since, the request waits up to timeout milliseconds for one.
+     * 
+     * @param since the sequence number of the last change already seen by the client
+     * @param limit the max number of changes to return
+     * @param timeout the max number of milliseconds to wait for a change
+     * @return the {@link de.escidocng.model.Changes} following since
+     * @throws IOException
+     */
+    @RequestMapping(method = RequestMethod.GET)
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuth(permissions = {
+        @Permission(rolename = RoleName.ROLE_ADMIN) })
+    public Changes retrieve(@RequestParam(
+            value = "since", defaultValue = "0") final long since, @RequestParam(
+            value = "limit", defaultValue = "100") final int limit, @RequestParam(
+            value = "timeout", defaultValue = "0") final long timeout) throws IOException {
+        return entityService.retrieveChanges(since, limit, timeout);
+    }
+
+    /**
+     * Controller method for exporting the {@link de.escidocng.model.Change}s following a sequence number using an
+     * HTTP GET which streams the changes in sequence as newline delimited JSON, one change per line.<br>
+     * limit=0 exports all changes up to the head. timeout is only applied if no change follows since.
+     * 
+     * @param since the sequence number of the last change already seen by the client
+     * @param limit the max number of changes to export, 0 for all
+     * @param timeout the max number of milliseconds to wait for a change
+     * @param response The {@link javax.servlet.http.HttpServletResponse} which gets injected by Spring MVC. This is
+     *        used to stream the changes to the client.
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "/export")
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuth(permissions = {
+        @Permission(rolename = RoleName.ROLE_ADMIN) })
+    public void export(@RequestParam(
+            value = "since", defaultValue = "0") final long since, @RequestParam(
+            value = "limit", defaultValue = "0") final long limit, @RequestParam(
+            value = "timeout", defaultValue = "0") final long timeout,
+            final HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON_CONTENT_TYPE);
+        entityService.exportChanges(since, limit, timeout, response.getOutputStream());
+        response.flushBuffer();
+    }
+
+}
@@ -17,6 +17,9 @@
 package de.escidocng.controller;
 
 import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -27,10 +30,20 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+import de.escidocng.model.AuditSearchParameters;
+import de.escidocng.model.CountResult;
+import de.escidocng.model.FacetParameters;
+import de.escidocng.model.FacetResult;
+import de.escidocng.model.SearchParameters;
 import de.escidocng.model.SearchResult;
+import de.escidocng.model.SlowQuery;
+import de.escidocng.model.security.annotation.Permission;
+import de.escidocng.model.security.annotation.PreAuth;
+import de.escidocng.model.security.role.Role.RoleName;
 import de.escidocng.service.ArchiveService;
 import de.escidocng.service.CredentialsService;
 import de.escidocng.service.EntityService;
+import de.escidocng.service.impl.SearchProfiler;
 
 /**
  * Web controller responsible for search.
@@ -39,6 +52,8 @@ import de.escidocng.service.EntityService;
 @RequestMapping("/search")
 public class SearchController extends AbstractEscidocngController {
 
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
     @Autowired
     private EntityService entityService;
 
@@ -48,6 +63,9 @@ public class SearchController extends AbstractEscidocngController {
     @Autowired
     private ArchiveService archiveService;
 
+    @Autowired
+    private SearchProfiler searchProfiler;
+
     /**
      * Controller method for searching {@link de.escidocng.model.Entity}s in the repository using an HTTP
      * POST which returns a JSON representation of the {@link de.escidocng.model.SearchResult}.<br>
@@ -55,6 +73,13 @@ public class SearchController extends AbstractEscidocngController {
      * query: search-query.<br>
      * offset: hit-number to start searchresult-list with.<br>
      * maxRecords: maximum number of records to return with searchresult-list.<br>
+     * consistent: true to refresh the index before searching, so pending changes are visible.<br>
+     * dfs: true to score the hits with term frequencies collected from all shards.<br>
+     * sort: comma separated sort criteria of the form field:asc or field:desc.<br>
+     * cursor: * to start a cursor based search, or the scrollId of the previous page to continue it.<br>
+     * fields: comma separated list of fields to return for each hit.<br>
+     * view: summary to only return id, label, state, contentModelId, parentId, version, tags and dates of each hit.<br>
+     * profile: true to return the time spent in the phases of the search.<br>
      * <br>Supported Search-Fields:<br>
      * id<br>
      * label<br>
@@ -70,6 +95,13 @@ public class SearchController extends AbstractEscidocngController {
      * @param query the search query.
      * @param offset it-number to start searchresult-list with.
      * @param maxRecords maximum number of records to return with searchresult-list
+     * @param consistent whether to refresh the index before searching
+     * @param dfs whether to use distributed term frequencies for scoring
+     * @param sort the sort criteria
+     * @param cursor the cursor of a cursor based search
+     * @param fields the fields to return
+     * @param view the view of the hits
+     * @param profile whether to return the timings of the search
      * @return A {@link de.escidocng.model.SearchResult} containing the found
      *         {@link de.escidocng .model.Entity}s as s JSON representation
      */
@@ -79,12 +111,83 @@ public class SearchController extends AbstractEscidocngController {
     public SearchResult searchEntities(@RequestParam(
             value = "query", defaultValue = "*:*") final String query, @RequestParam(
             value = "offset", defaultValue = "0") final int offset, @RequestParam(
-            value = "maxRecords", defaultValue = "50") final int maxRecords) throws IOException {
-        if (maxRecords > -1) {
-            return entityService.searchEntities(query, offset, maxRecords);
-        } else {
-            return entityService.searchEntities(query, offset);
+            value = "maxRecords", defaultValue = "50") final int maxRecords, @RequestParam(
+            value = "consistent", defaultValue = "false") final boolean consistent, @RequestParam(
+            value = "dfs", defaultValue = "false") final boolean dfs, @RequestParam(
+            value = "sort", required = false) final List<String> sort, @RequestParam(
+            value = "cursor", required = false) final String cursor, @RequestParam(
+            value = "fields", required = false) final List<String> fields, @RequestParam(
+            value = "view", required = false) final String view, @RequestParam(
+            value = "profile", defaultValue = "false") final boolean profile) throws IOException {
+        final SearchParameters params = new SearchParameters(query, offset, maxRecords);
+        params.setConsistent(consistent);
+        params.setDfs(dfs);
+        if (sort != null) {
+            params.setSort(sort);
+        }
+        if (fields != null) {
+            params.setFields(fields);
         }
+        params.setCursor(cursor);
+        params.setView(view);
+        params.setProfile(profile);
+        return entityService.searchEntities(params);
+    }
+
+    /**
+     * Controller method for exporting all {@link de.escidocng.model.Entity}s matching a search using an HTTP GET
+     * which streams the entities as newline delimited JSON, one entity per line.<br>
+     * The request can contain the following parameters:<br>
+     * query: search-query.<br>
+     * fields: comma separated list of fields to return for each hit.<br>
+     * view: summary to only return id, label, state, contentModelId, parentId, version, tags and dates of each hit.<br>
+     * batchSize: number of entities fetched from the index at once, defaults to and is capped at
+     * escidocng.search.maxRecords.<br>
+     * 
+     * @param query the search query.
+     * @param fields the fields to return
+     * @param view the view of the hits
+     * @param batchSize number of entities fetched from the index at once
+     * @param response The {@link javax.servlet.http.HttpServletResponse} which gets injected by Spring MVC. This is
+     *        used to stream the entities to the client.
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/entities/export")
+    @ResponseStatus(HttpStatus.OK)
+    public void exportEntities(@RequestParam(
+            value = "query", defaultValue = "*:*") final String query, @RequestParam(
+            value = "fields", required = false) final List<String> fields, @RequestParam(
+            value = "view", required = false) final String view, @RequestParam(
+            value = "batchSize", defaultValue = "20") final int batchSize,
+            final HttpServletResponse response) throws IOException {
+        final SearchParameters params = new SearchParameters(query, 0, batchSize);
+        if (fields != null) {
+            params.setFields(fields);
+        }
+        params.setView(view);
+        response.setContentType(NDJSON_CONTENT_TYPE);
+        entityService.exportEntities(params, response.getOutputStream());
+        response.flushBuffer();
+    }
+
+    /**
+     * Controller method for suggesting {@link de.escidocng.model.Entity}s while typing using an HTTP GET which
+     * returns a JSON representation of the {@link de.escidocng.model.SearchResult}.<br>
+     * The request can contain the following parameters:<br>
+     * prefix: the beginning of the label of the entities.<br>
+     * size: maximum number of suggestions, between 1 and 50.<br>
+     *
+     * @param prefix the beginning of the label
+     * @param size maximum number of suggestions
+     * @return A {@link de.escidocng.model.SearchResult} containing id, label, contentModelId and parentId of the
+     *         suggested entities
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/entities/suggest")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    public SearchResult suggestEntities(@RequestParam(
+            value = "prefix") final String prefix, @RequestParam(
+            value = "size", defaultValue = "10") final int size) throws IOException {
+        return entityService.suggestEntities(prefix, size);
     }
 
     /**
@@ -94,6 +197,10 @@ public class SearchController extends AbstractEscidocngController {
      * query: search-query.<br>
      * offset: hit-number to start searchresult-list with.<br>
      * maxRecords: maximum number of records to return with searchresult-list.<br>
+     * fields: comma separated list of fields to return for each hit, out of name, firstName, lastName, email and
+     * roles.<br>
+     * view: summary to only return name, firstName and lastName of each hit.<br>
+     * profile: true to return the time spent in the phases of the search.<br>
      * <br>Supported Search-Fields:<br>
      * name<br>
      * firstName<br>
@@ -104,6 +211,9 @@ public class SearchController extends AbstractEscidocngController {
      * @param query the search query.
      * @param offset it-number to start searchresult-list with.
      * @param maxRecords maximum number of records to return with searchresult-list
+     * @param fields the fields to return
+     * @param view the view of the hits
+     * @param profile whether to return the timings of the search
      * @return A {@link de.escidocng.model.SearchResult} containing the found
      *         {@link de.escidocng .model.User}s as s JSON representation
      */
@@ -113,8 +223,17 @@ public class SearchController extends AbstractEscidocngController {
     public SearchResult searchUsers(@RequestParam(
             value = "query", defaultValue = "*:*") final String query, @RequestParam(
             value = "offset", defaultValue = "0") final int offset, @RequestParam(
-            value = "maxRecords", defaultValue = "50") final int maxRecords) throws IOException {
-        return credentialsService.searchUsers(query, offset, maxRecords);
+            value = "maxRecords", defaultValue = "50") final int maxRecords, @RequestParam(
+            value = "fields", required = false) final List<String> fields, @RequestParam(
+            value = "view", required = false) final String view, @RequestParam(
+            value = "profile", defaultValue = "false") final boolean profile) throws IOException {
+        final SearchParameters params = new SearchParameters(query, offset, maxRecords);
+        if (fields != null) {
+            params.setFields(fields);
+        }
+        params.setView(view);
+        params.setProfile(profile);
+        return credentialsService.searchUsers(params);
     }
 
     /**
@@ -124,6 +243,13 @@ public class SearchController extends AbstractEscidocngController {
      * query: search-query.<br>
      * offset: hit-number to start searchresult-list with.<br>
      * maxRecords: maximum number of records to return with searchresult-list.<br>
+     * sort: comma separated sort criteria of the form field:asc or field:desc.<br>
+     * fields: comma separated list of fields to return for each hit.<br>
+     * view: summary to only return entityId, entityVersion, contentModelId, state, createdDate and baseVersion of
+     * each hit.<br>
+     * cursor: * to start a cursor based search, or the scrollId of the previous page to continue it.<br>
+     * aggregations: true to add the number of hits per state, contentModelId, creator and level1.<br>
+     * profile: true to return the time spent in the phases of the search.<br>
      * <br>Supported Search-Fields:<br>
      * entityId<br>
      * entityVersion<br>
@@ -132,11 +258,20 @@ public class SearchController extends AbstractEscidocngController {
      * state<br>
      * level1<br>
      * level2<br>
+     * createdDate<br>
+     * fixity.valid<br>
+     * fixity.checkedDate<br>
      * _all<br>
      * 
      * @param query the search query.
      * @param offset it-number to start searchresult-list with.
      * @param maxRecords maximum number of records to return with searchresult-list
+     * @param sort the sort criteria
+     * @param fields the fields to return
+     * @param view the view of the hits
+     * @param cursor the cursor of a cursor based search
+     * @param aggregations whether to calculate aggregations
+     * @param profile whether to return the timings of the search
      * @return A {@link de.escidocng.model.SearchResult} containing the found
      *         {@link de.escidocng.model.Archive}s as s JSON representation
      */
@@ -146,9 +281,453 @@ public class SearchController extends AbstractEscidocngController {
     public SearchResult searchArchives(@RequestParam(
             value = "query", defaultValue = "*:*") final String query, @RequestParam(
             value = "offset", defaultValue = "0") final int offset, @RequestParam(
-            value = "maxRecords", defaultValue = "50") final int maxRecords)
+            value = "maxRecords", defaultValue = "50") final int maxRecords, @RequestParam(
+            value = "sort", required = false) final List<String> sort, @RequestParam(
+            value = "fields", required = false) final List<String> fields, @RequestParam(
+            value = "view", required = false) final String view, @RequestParam(
+            value = "cursor", required = false) final String cursor, @RequestParam(
+            value = "aggregations", defaultValue = "false") final boolean aggregations, @RequestParam(
+            value = "profile", defaultValue = "false") final boolean profile)
+            throws IOException {
+        final SearchParameters params = new SearchParameters(query, offset, maxRecords);
+        if (sort != null) {
+            params.setSort(sort);
+        }
+        if (fields != null) {
+            params.setFields(fields);
+        }
+        params.setView(view);
+        params.setCursor(cursor);
+        params.setAggregations(aggregations);
+        params.setProfile(profile);
+        return archiveService.searchArchives(params);
+    }
+
+    /**
+     * Controller method for retrieving the most recent searches which took longer than the configured threshold
+     * using an HTTP GET which returns a JSON representation of the list of
+     * {@link de.escidocng.model.SlowQuery}s, the most recent one first.
+     * 
+     * @return the slow searches
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/slow")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuth(permissions = { @Permission(rolename = RoleName.ROLE_ADMIN) })
+    public List<SlowQuery> retrieveSlowQueries() throws IOException {
+        return searchProfiler.getSlowQueries();
+    }
+
+    /**
+     * Controller method for removing the captured slow searches using an HTTP DELETE
+     */
+    @RequestMapping(method = RequestMethod.DELETE, value="/slow")
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuth(permissions = { @Permission(rolename = RoleName.ROLE_ADMIN) })
+    public void clearSlowQueries() throws IOException {
+        searchProfiler.clear();
+    }
+
+    /**
+     * Controller method for calculating facets over {@link de.escidocng.model.Entity}s in the repository using an
+     * HTTP GET which returns a JSON representation of the {@link de.escidocng.model.FacetResult}.<br>
+     * The request can contain the following parameters:<br>
+     * query: search-query restricting the entities to aggregate.<br>
+     * terms: fields to count the hits per distinct value for.<br>
+     * histograms: date fields to count the hits per interval for, of the form field:interval.<br>
+     * cardinalities: fields to count the distinct values for.<br>
+     * size: maximum number of values to return per terms facet, capped at escidocng.facets.maxSize.<br>
+     * <br>Supported Facet-Fields:<br>
+     * state<br>
+     * contentModelId<br>
+     * parentId<br>
+     * level1<br>
+     * level2<br>
+     * tags<br>
+     * metadataType<br>
+     * <br>Supported Histogram-Fields:<br>
+     * utcCreated<br>
+     * utcLastModified<br>
+     * 
+     * @param query the search query.
+     * @param terms the fields of the terms facets
+     * @param histograms the fields and intervals of the date histograms
+     * @param cardinalities the fields of the cardinality facets
+     * @param size maximum number of values per terms facet
+     * @return A {@link de.escidocng.model.FacetResult} as JSON representation
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/entities/facets")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    public FacetResult facetEntities(@RequestParam(
+            value = "query", defaultValue = "*:*") final String query, @RequestParam(
+            value = "terms", required = false) final List<String> terms, @RequestParam(
+            value = "histograms", required = false) final List<String> histograms, @RequestParam(
+            value = "cardinalities", required = false) final List<String> cardinalities, @RequestParam(
+            value = "size", defaultValue = "10") final int size)
             throws IOException {
-        return archiveService.searchArchives(query, offset, maxRecords);
+        return entityService.facetEntities(createFacetParameters(query, terms, histograms, cardinalities, size));
+    }
+
+    /**
+     * Controller method for calculating facets over {@link de.escidocng.model.Archive}s in the repository using an
+     * HTTP GET which returns a JSON representation of the {@link de.escidocng.model.FacetResult}.<br>
+     * The request can contain the same parameters as the entity facets.<br>
+     * <br>Supported Facet-Fields:<br>
+     * entityId<br>
+     * contentModelId<br>
+     * creator<br>
+     * state<br>
+     * level1<br>
+     * level2<br>
+     * fixity.valid<br>
+     * <br>Supported Histogram-Fields:<br>
+     * createdDate<br>
+     * fixity.checkedDate<br>
+     * 
+     * @param query the search query.
+     * @param terms the fields of the terms facets
+     * @param histograms the fields and intervals of the date histograms
+     * @param cardinalities the fields of the cardinality facets
+     * @param size maximum number of values per terms facet
+     * @return A {@link de.escidocng.model.FacetResult} as JSON representation
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/archives/facets")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    public FacetResult facetArchives(@RequestParam(
+            value = "query", defaultValue = "*:*") final String query, @RequestParam(
+            value = "terms", required = false) final List<String> terms, @RequestParam(
+            value = "histograms", required = false) final List<String> histograms, @RequestParam(
+            value = "cardinalities", required = false) final List<String> cardinalities, @RequestParam(
+            value = "size", defaultValue = "10") final int size)
+            throws IOException {
+        return archiveService.facetArchives(createFacetParameters(query, terms, histograms, cardinalities, size));
+    }
+
+    /**
+     * Controller method for calculating facets over {@link de.escidocng.model.AuditRecord}s using an HTTP GET which
+     * returns a JSON representation of the {@link de.escidocng.model.FacetResult}.<br>
+     * The request can contain the same parameters as the entity facets.<br>
+     * <br>Supported Facet-Fields:<br>
+     * entityId<br>
+     * level2Id<br>
+     * agentName<br>
+     * action<br>
+     * <br>Supported Histogram-Fields:<br>
+     * timestamp<br>
+     * 
+     * @param query the search query.
+     * @param terms the fields of the terms facets
+     * @param histograms the fields and intervals of the date histograms
+     * @param cardinalities the fields of the cardinality facets
+     * @param size maximum number of values per terms facet
+     * @return A {@link de.escidocng.model.FacetResult} as JSON representation
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/audit/facets")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuth(permissions = {
+        @Permission(rolename = RoleName.ROLE_ADMIN) })
+    public FacetResult facetAuditRecords(@RequestParam(
+            value = "query", defaultValue = "*:*") final String query, @RequestParam(
+            value = "terms", required = false) final List<String> terms, @RequestParam(
+            value = "histograms", required = false) final List<String> histograms, @RequestParam(
+            value = "cardinalities", required = false) final List<String> cardinalities, @RequestParam(
+            value = "size", defaultValue = "10") final int size)
+            throws IOException {
+        return entityService.facetAuditRecords(createFacetParameters(query, terms, histograms, cardinalities, size));
+    }
+
+    /**
+     * Controller method for counting the {@link de.escidocng.model.Entity}s matching a query using an HTTP GET which
+     * returns a JSON representation of the {@link de.escidocng.model.CountResult}. No hits are fetched.
+     * 
+     * @param query the search query.
+     * @return A {@link de.escidocng.model.CountResult} containing the number of matching documents
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/entities/count")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    public CountResult countEntities(@RequestParam(
+            value = "query", defaultValue = "*:*") final String query) throws IOException {
+        final long time = System.currentTimeMillis();
+        final CountResult result =
+                new CountResult(entityService.countEntities(new SearchParameters(query, 0, 0)));
+        result.setDuration(System.currentTimeMillis() - time);
+        return result;
+    }
+
+    /**
+     * Controller method for checking if any {@link de.escidocng.model.Entity} matches a query using an HTTP GET which
+     * returns a JSON representation of the {@link de.escidocng.model.CountResult}. The search stops at the first match.
+     * 
+     * @param query the search query.
+     * @return A {@link de.escidocng.model.CountResult} telling if a matching document exists
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/entities/exists")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    public CountResult existsEntities(@RequestParam(
+            value = "query", defaultValue = "*:*") final String query) throws IOException {
+        final long time = System.currentTimeMillis();
+        final CountResult result =
+                new CountResult(entityService.existsEntities(new SearchParameters(query, 0, 0)));
+        result.setDuration(System.currentTimeMillis() - time);
+        return result;
+    }
+
+    /**
+     * Controller method for counting the {@link de.escidocng.model.Archive}s matching a query using an HTTP GET which
+     * returns a JSON representation of the {@link de.escidocng.model.CountResult}. No hits are fetched.
+     * 
+     * @param query the search query.
+     * @return A {@link de.escidocng.model.CountResult} containing the number of matching documents
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/archives/count")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    public CountResult countArchives(@RequestParam(
+            value = "query", defaultValue = "*:*") final String query) throws IOException {
+        final long time = System.currentTimeMillis();
+        final CountResult result =
+                new CountResult(archiveService.countArchives(new SearchParameters(query, 0, 0)));
+        result.setDuration(System.currentTimeMillis() - time);
+        return result;
+    }
+
+    /**
+     * Controller method for checking if any {@link de.escidocng.model.Archive} matches a query using an HTTP GET which
+     * returns a JSON representation of the {@link de.escidocng.model.CountResult}. The search stops at the first match.
+     * 
+     * @param query the search query.
+     * @return A {@link de.escidocng.model.CountResult} telling if a matching document exists
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/archives/exists")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    public CountResult existsArchives(@RequestParam(
+            value = "query", defaultValue = "*:*") final String query) throws IOException {
+        final long time = System.currentTimeMillis();
+        final CountResult result =
+                new CountResult(archiveService.existsArchives(new SearchParameters(query, 0, 0)));
+        result.setDuration(System.currentTimeMillis() - time);
+        return result;
+    }
+
+    /**
+     * Controller method for counting the {@link de.escidocng.model.security.User}s matching a query using an HTTP GET
+     * which returns a JSON representation of the {@link de.escidocng.model.CountResult}. No hits are fetched.
+     * 
+     * @param query the search query.
+     * @return A {@link de.escidocng.model.CountResult} containing the number of matching documents
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/users/count")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    public CountResult countUsers(@RequestParam(
+            value = "query", defaultValue = "*:*") final String query) throws IOException {
+        final long time = System.currentTimeMillis();
+        final CountResult result =
+                new CountResult(credentialsService.countUsers(new SearchParameters(query, 0, 0)));
+        result.setDuration(System.currentTimeMillis() - time);
+        return result;
+    }
+
+    /**
+     * Controller method for checking if any {@link de.escidocng.model.security.User} matches a query using an HTTP GET
+     * which returns a JSON representation of the {@link de.escidocng.model.CountResult}. The search stops at the first
+     * match.
+     * 
+     * @param query the search query.
+     * @return A {@link de.escidocng.model.CountResult} telling if a matching document exists
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/users/exists")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    public CountResult existsUsers(@RequestParam(
+            value = "query", defaultValue = "*:*") final String query) throws IOException {
+        final long time = System.currentTimeMillis();
+        final CountResult result =
+                new CountResult(credentialsService.existsUsers(new SearchParameters(query, 0, 0)));
+        result.setDuration(System.currentTimeMillis() - time);
+        return result;
+    }
+
+    /**
+     * Controller method for counting the {@link de.escidocng.model.AuditRecord}s matching a query using an HTTP GET
+     * which returns a JSON representation of the {@link de.escidocng.model.CountResult}. No hits are fetched.
+     * 
+     * @param query the search query.
+     * @return A {@link de.escidocng.model.CountResult} containing the number of matching documents
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/audit/count")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuth(permissions = {
+        @Permission(rolename = RoleName.ROLE_ADMIN) })
+    public CountResult countAuditRecords(@RequestParam(
+            value = "query", defaultValue = "*:*") final String query) throws IOException {
+        final long time = System.currentTimeMillis();
+        final CountResult result =
+                new CountResult(entityService.countAuditRecords(new SearchParameters(query, 0, 0)));
+        result.setDuration(System.currentTimeMillis() - time);
+        return result;
+    }
+
+    /**
+     * Controller method for checking if any {@link de.escidocng.model.AuditRecord} matches a query using an HTTP GET
+     * which returns a JSON representation of the {@link de.escidocng.model.CountResult}. The search stops at the first
+     * match.
+     * 
+     * @param query the search query.
+     * @return A {@link de.escidocng.model.CountResult} telling if a matching document exists
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/audit/exists")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuth(permissions = {
+        @Permission(rolename = RoleName.ROLE_ADMIN) })
+    public CountResult existsAuditRecords(@RequestParam(
+            value = "query", defaultValue = "*:*") final String query) throws IOException {
+        final long time = System.currentTimeMillis();
+        final CountResult result =
+                new CountResult(entityService.existsAuditRecords(new SearchParameters(query, 0, 0)));
+        result.setDuration(System.currentTimeMillis() - time);
+        return result;
+    }
+
+    /**
+     * Controller method for searching {@link de.escidocng.model.AuditRecord}s of all entities using an HTTP GET which
+     * returns a JSON representation of the {@link de.escidocng.model.SearchResult}.<br>
+     * The request can contain the following parameters:<br>
+     * query: search-query.<br>
+     * entityId, agent, action: only return the records of this entity, agent or action.<br>
+     * from, to: only return records created at or after from and before to, as ISO-8601 timestamps.<br>
+     * offset: hit-number to start searchresult-list with.<br>
+     * maxRecords: maximum number of records to return with searchresult-list.<br>
+     * sort: comma separated sort criteria of the form field:asc or field:desc, by default timestamp:asc.<br>
+     * cursor: * to start a cursor based search, or the scrollId of the previous page to continue it.<br>
+     * fields: comma separated list of fields to return for each hit.<br>
+     * view: summary to only return id, entityId, agentName, action and timestamp of each hit.<br>
+     * 
+     * @param query the search query.
+     * @param entityId the id of the entity
+     * @param agent the name of the agent
+     * @param action the action
+     * @param from the earliest timestamp
+     * @param to the timestamp all records are older than
+     * @param offset hit-number to start searchresult-list with.
+     * @param maxRecords maximum number of records to return with searchresult-list
+     * @param sort the sort criteria
+     * @param cursor the cursor of a cursor based search
+     * @param fields the fields to return
+     * @param view the view of the hits
+     * @return A {@link de.escidocng.model.SearchResult} containing the found
+     *         {@link de.escidocng.model.AuditRecord}s as JSON representation
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/audit")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuth(permissions = {
+        @Permission(rolename = RoleName.ROLE_ADMIN) })
+    public SearchResult searchAuditRecords(@RequestParam(
+            value = "query", defaultValue = "*:*") final String query, @RequestParam(
+            value = "entityId", required = false) final String entityId, @RequestParam(
+            value = "agent", required = false) final String agent, @RequestParam(
+            value = "action", required = false) final String action, @RequestParam(
+            value = "from", required = false) final String from, @RequestParam(
+            value = "to", required = false) final String to, @RequestParam(
+            value = "offset", defaultValue = "0") final int offset, @RequestParam(
+            value = "maxRecords", defaultValue = "50") final int maxRecords, @RequestParam(
+            value = "sort", required = false) final List<String> sort, @RequestParam(
+            value = "cursor", required = false) final String cursor, @RequestParam(
+            value = "fields", required = false) final List<String> fields, @RequestParam(
+            value = "view", required = false) final String view) throws IOException {
+        final AuditSearchParameters params =
+                createAuditSearchParameters(query, entityId, agent, action, from, to, offset, maxRecords);
+        if (sort != null) {
+            params.setSort(sort);
+        }
+        if (fields != null) {
+            params.setFields(fields);
+        }
+        params.setCursor(cursor);
+        params.setView(view);
+        return entityService.searchAuditRecords(params);
+    }
+
+    /**
+     * Controller method for exporting all {@link de.escidocng.model.AuditRecord}s matching a search using an HTTP GET
+     * which streams the records in chronological order as newline delimited JSON, one record per line.<br>
+     * The request can contain the parameters query, entityId, agent, action, from, to, fields and view of
+     * {@link #searchAuditRecords} and batchSize, the number of records fetched from the index at once, defaulting to
+     * and capped at escidocng.audit.maxRecords.
+     * 
+     * @param query the search query.
+     * @param entityId the id of the entity
+     * @param agent the name of the agent
+     * @param action the action
+     * @param from the earliest timestamp
+     * @param to the timestamp all records are older than
+     * @param fields the fields to return
+     * @param view the view of the hits
+     * @param batchSize number of records fetched from the index at once
+     * @param response The {@link javax.servlet.http.HttpServletResponse} which gets injected by Spring MVC. This is
+     *        used to stream the records to the client.
+     */
+    @RequestMapping(method = RequestMethod.GET, value="/audit/export")
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuth(permissions = {
+        @Permission(rolename = RoleName.ROLE_ADMIN) })
+    public void exportAuditRecords(@RequestParam(
+            value = "query", defaultValue = "*:*") final String query, @RequestParam(
+            value = "entityId", required = false) final String entityId, @RequestParam(
+            value = "agent", required = false) final String agent, @RequestParam(
+            value = "action", required = false) final String action, @RequestParam(
+            value = "from", required = false) final String from, @RequestParam(
+            value = "to", required = false) final String to, @RequestParam(
+            value = "fields", required = false) final List<String> fields, @RequestParam(
+            value = "view", required = false) final String view, @RequestParam(
+            value = "batchSize", defaultValue = "50") final int batchSize,
+            final HttpServletResponse response) throws IOException {
+        final AuditSearchParameters params =
+                createAuditSearchParameters(query, entityId, agent, action, from, to, 0, batchSize);
+        if (fields != null) {
+            params.setFields(fields);
+        }
+        params.setView(view);
+        response.setContentType(NDJSON_CONTENT_TYPE);
+        entityService.exportAuditRecords(params, response.getOutputStream());
+        response.flushBuffer();
+    }
+
+    private AuditSearchParameters createAuditSearchParameters(final String query, final String entityId,
+            final String agent, final String action, final String from, final String to, final int offset,
+            final int maxRecords) {
+        final AuditSearchParameters params = new AuditSearchParameters(query, offset, maxRecords);
+        params.setEntityId(entityId);
+        params.setAgentName(agent);
+        params.setAction(action);
+        params.setFrom(from);
+        params.setTo(to);
+        return params;
+    }
+
+    private FacetParameters createFacetParameters(final String query, final List<String> terms,
+            final List<String> histograms, final List<String> cardinalities, final int size) {
+        final FacetParameters params = new FacetParameters(query);
+        if (terms != null) {
+            params.setTerms(terms);
+        }
+        if (histograms != null) {
+            params.setHistograms(histograms);
+        }
+        if (cardinalities != null) {
+            params.setCardinalities(cardinalities);
+        }
+        params.setSize(size);
+        return params;
     }
 
 }
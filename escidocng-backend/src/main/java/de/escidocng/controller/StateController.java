@@ -17,6 +17,7 @@
 package de.escidocng.controller;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -26,10 +27,12 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+import de.escidocng.model.security.EndpointAuthorization;
 import de.escidocng.model.security.annotation.Permission;
 import de.escidocng.model.security.annotation.PreAuth;
 import de.escidocng.model.security.role.Role.RoleName;
 import de.escidocng.model.state.EscidocngState;
+import de.escidocng.security.helpers.AuthorizationDescriptorRegistry;
 import de.escidocng.service.RepositoryService;
 
 /**
@@ -42,6 +45,9 @@ public class StateController extends AbstractEscidocngController {
     @Autowired
     private RepositoryService repositoryService;
 
+    @Autowired
+    private AuthorizationDescriptorRegistry descriptorRegistry;
+
     /**
      * Controller method for retrieving a {@link de.escidocng.model.state.EscidocngState} object describing the
      * repository state using a HTTP GET, that returns a JSON representation
@@ -58,4 +64,21 @@ public class StateController extends AbstractEscidocngController {
         return repositoryService.status();
     }
 
+    /**
+     * Controller method for retrieving a list of {@link de.escidocng.model.security.EndpointAuthorization}s
+     * describing which controller methods are protected and by which permissions using a HTTP GET, that returns a
+     * JSON representation
+     * 
+     * @return a JSON representation of the list of {@link de.escidocng.model.security.EndpointAuthorization}s
+     * @throws IOException
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "/authorization")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    @PreAuth(permissions = {
+            @Permission(rolename = RoleName.ROLE_ADMIN) })
+    public List<EndpointAuthorization> authorizationCoverage() throws IOException {
+        return descriptorRegistry.getCoverage();
+    }
+
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.helpers;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link java.io.InputStream} implementation limiting the throughput of all streams sharing the same
+ * {@link ThrottledInputStream.Throttle}
+ */
+public class ThrottledInputStream extends FilterInputStream {
+
+    private final Throttle throttle;
+
+    public ThrottledInputStream(InputStream in, Throttle throttle) {
+        super(in);
+        this.throttle = throttle;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int ch = in.read();
+        if (ch != -1) {
+            throttle.acquire(1);
+        }
+        return ch;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        final int num = in.read(b, off, len);
+        if (num > 0) {
+            throttle.acquire(num);
+        }
+        return num;
+    }
+
+    /**
+     * A rate limit in bytes per second which can be shared by multiple streams
+     */
+    public static class Throttle {
+
+        private final long bytesPerSecond;
+
+        private long next = System.nanoTime();
+
+        /**
+         * @param bytesPerSecond the maximum throughput or a value &lt;= 0 for no limit
+         */
+        public Throttle(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        /**
+         * Block until the given number of bytes may pass the throttle
+         */
+        public void acquire(int bytes) throws IOException {
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+            final long wait;
+            synchronized (this) {
+                final long now = System.nanoTime();
+                final long start = Math.max(now, next);
+                next = start + TimeUnit.SECONDS.toNanos(bytes) / bytesPerSecond;
+                wait = start - now;
+            }
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+        }
+    }
+}
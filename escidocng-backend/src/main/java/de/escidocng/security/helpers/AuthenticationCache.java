@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.security.helpers;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.security.core.Authentication;
+
+import de.escidocng.model.state.AuthenticationCacheState;
+
+/**
+ * Caches the {@link org.springframework.security.core.Authentication}s of users logging in with name and password,
+ * so repeated logins do not load the user from the index each time. An entry is only used if the hash of the given
+ * password matches the hash the user was authenticated with, and it expires after a configurable time to live. The
+ * entry of a user has to be invalidated whenever the user or his roles change.
+ * <p>
+ * Since a login may load a user right before a concurrent change and only cache it after the change invalidated the
+ * entry, each invalidation bumps a generation of the user, and an authentication is only cached if the generation did
+ * not change since the user was loaded. The generations are kept in a fixed number of stripes chosen by the hash of
+ * the user name, so a collision only prevents an authentication from being cached.
+ */
+public class AuthenticationCache {
+
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final int maxSize;
+
+    private final long ttl;
+
+    private final Map<String, CachedAuthentication> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    /**
+     * Create a new cache
+     * 
+     * @param maxSize the maximum number of cached users, 0 disables the cache
+     * @param ttl the time to live of a cached authentication in milliseconds
+     */
+    public AuthenticationCache(final int maxSize, final long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.cache =
+                Collections.synchronizedMap(new LinkedHashMap<String, CachedAuthentication>(16, 0.75f, true) {
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, CachedAuthentication> eldest) {
+                        return size() > maxSize;
+                    }
+                });
+    }
+
+    /**
+     * Get the cached authentication of a user
+     * 
+     * @param name the name of the user
+     * @param hash the hash of the given password
+     * @return the authentication or null if no valid authentication with the same password hash is cached
+     */
+    public Authentication get(final String name, final String hash) {
+        final CachedAuthentication cached = cache.get(name);
+        if (cached != null && cached.hash.equals(hash) && System.currentTimeMillis() - cached.created < ttl) {
+            hits.incrementAndGet();
+            return cached.authentication;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Get the current generation of a user, which has to be fetched before the user is loaded and passed to
+     * {@link #put(String, String, Authentication, long)}
+     * 
+     * @param name the name of the user
+     * @return the generation
+     */
+    public long generation(final String name) {
+        return generations.get(stripe(name));
+    }
+
+    /**
+     * Cache the authentication of a user if the user has not been invalidated since the given generation
+     * 
+     * @param name the name of the user
+     * @param hash the hash of the password the user was authenticated with
+     * @param authentication the authentication
+     * @param generation the generation of the user fetched before the user was loaded
+     */
+    public void put(final String name, final String hash, final Authentication authentication,
+            final long generation) {
+        if (maxSize > 0) {
+            synchronized (cache) {
+                if (generations.get(stripe(name)) == generation) {
+                    cache.put(name, new CachedAuthentication(hash, authentication));
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the cached authentication of a user and prevent authentications loaded before from being cached
+     * 
+     * @param name the name of the user
+     */
+    public void invalidate(final String name) {
+        synchronized (cache) {
+            generations.incrementAndGet(stripe(name));
+            if (cache.remove(name) != null) {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    private static int stripe(final String name) {
+        return (name.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    /**
+     * Get the statistics of the cache
+     * 
+     * @return the {@link de.escidocng.model.state.AuthenticationCacheState}
+     */
+    public AuthenticationCacheState status() {
+        final AuthenticationCacheState state = new AuthenticationCacheState();
+        final long numHits = hits.get();
+        final long numMisses = misses.get();
+        state.setSize(cache.size());
+        state.setMaxSize(maxSize);
+        state.setTtl(ttl);
+        state.setHits(numHits);
+        state.setMisses(numMisses);
+        state.setInvalidations(invalidations.get());
+        state.setHitRatio(numHits + numMisses == 0 ? 0d : (double) numHits / (numHits + numMisses));
+        return state;
+    }
+
+    private static class CachedAuthentication {
+
+        private final String hash;
+
+        private final Authentication authentication;
+
+        private final long created = System.currentTimeMillis();
+
+        private CachedAuthentication(final String hash, final Authentication authentication) {
+            this.hash = hash;
+            this.authentication = authentication;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.security.helpers;
+
+import java.lang.reflect.Method;
+
+import de.escidocng.model.security.ObjectType;
+import de.escidocng.model.security.annotation.Permission;
+import de.escidocng.model.security.annotation.PostAuth;
+import de.escidocng.model.security.annotation.PreAuth;
+
+/**
+ * Immutable authorization metadata of a controller method, read once from its {@link PreAuth} and
+ * {@link PostAuth} annotations.
+ */
+public final class AuthorizationDescriptor {
+
+    /**
+     * Descriptor of a method without PreAuth and PostAuth annotation
+     */
+    public static final AuthorizationDescriptor UNPROTECTED = new AuthorizationDescriptor(null, null);
+
+    private final Check preAuth;
+
+    private final Check postAuth;
+
+    private AuthorizationDescriptor(Check preAuth, Check postAuth) {
+        this.preAuth = preAuth;
+        this.postAuth = postAuth;
+    }
+
+    /**
+     * Read the authorization annotations of the given method.
+     * 
+     * @param method the method to describe
+     * @return the descriptor, {@link #UNPROTECTED} if the method has no authorization annotations
+     */
+    public static AuthorizationDescriptor forMethod(Method method) {
+        final PreAuth pre = method.getAnnotation(PreAuth.class);
+        final PostAuth post = method.getAnnotation(PostAuth.class);
+        if (pre == null && post == null) {
+            return UNPROTECTED;
+        }
+        return new AuthorizationDescriptor(
+                pre == null ? null : new Check(pre.idIndex(), pre.versionIndex(), pre.objectType(),
+                        pre.permissions()),
+                post == null ? null : new Check(post.idIndex(), post.versionIndex(), post.objectType(),
+                        post.permissions()));
+    }
+
+    /**
+     * @return true if the method has a PreAuth or PostAuth annotation
+     */
+    public boolean isProtected() {
+        return preAuth != null || postAuth != null;
+    }
+
+    /**
+     * @return the check to execute before the method is called or null
+     */
+    public Check getPreAuth() {
+        return preAuth;
+    }
+
+    /**
+     * @return the check to execute after the method was called or null
+     */
+    public Check getPostAuth() {
+        return postAuth;
+    }
+
+    /**
+     * The attributes of a PreAuth or PostAuth annotation, together with the method arguments they refer to.
+     */
+    public static final class Check {
+
+        private final int idIndex;
+
+        private final int versionIndex;
+
+        private final ObjectType objectType;
+
+        private final Permission[] permissions;
+
+        private Check(int idIndex, int versionIndex, ObjectType objectType, Permission[] permissions) {
+            this.idIndex = idIndex;
+            this.versionIndex = versionIndex;
+            this.objectType = objectType;
+            this.permissions = permissions;
+        }
+
+        public int getIdIndex() {
+            return idIndex;
+        }
+
+        public int getVersionIndex() {
+            return versionIndex;
+        }
+
+        public ObjectType getObjectType() {
+            return objectType;
+        }
+
+        public Permission[] getPermissions() {
+            return permissions;
+        }
+
+        /**
+         * @return true if a method argument holds the id of the object to check
+         */
+        public boolean hasIdArgument() {
+            return idIndex >= 0 && !ObjectType.INPUT_ENTITY.equals(objectType);
+        }
+
+        /**
+         * @return true if a method argument holds the object to check
+         */
+        public boolean hasObjectArgument() {
+            return idIndex >= 0 && ObjectType.INPUT_ENTITY.equals(objectType);
+        }
+
+        /**
+         * @return true if a method argument holds the version of the object to check
+         */
+        public boolean hasVersionArgument() {
+            return versionIndex >= 0;
+        }
+    }
+}
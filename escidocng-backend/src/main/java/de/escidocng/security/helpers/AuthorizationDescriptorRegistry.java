@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.security.helpers;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import de.escidocng.model.security.EndpointAuthorization;
+import de.escidocng.model.security.PermissionType;
+import de.escidocng.model.security.annotation.Permission;
+import de.escidocng.security.helpers.AuthorizationDescriptor.Check;
+
+/**
+ * Holds the {@link AuthorizationDescriptor}s of all controller methods intercepted by the
+ * {@link EscidocngSecurityInterceptor}. The controllers are scanned once at startup, lookups do not lock. Methods
+ * not seen during the scan are described on their first call.
+ */
+public class AuthorizationDescriptorRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthorizationDescriptorRegistry.class);
+
+    private static final String CONTROLLER_PACKAGE = "de.escidocng.controller";
+
+    private final ConcurrentMap<Method, AuthorizationDescriptor> descriptors = new ConcurrentHashMap<>();
+
+    private volatile List<EndpointAuthorization> coverage = Collections.emptyList();
+
+    @PostConstruct
+    public void scan() throws ClassNotFoundException {
+        final ClassPathScanningCandidateComponentProvider scanner =
+                new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(Controller.class));
+        final List<EndpointAuthorization> endpoints = new ArrayList<>();
+        for (BeanDefinition candidate : scanner.findCandidateComponents(CONTROLLER_PACKAGE)) {
+            final Class<?> controller = ClassUtils.forName(candidate.getBeanClassName(), getClass().getClassLoader());
+            if (!CONTROLLER_PACKAGE.equals(ClassUtils.getPackageName(controller))) {
+                // the interceptor only matches classes directly in the controller package
+                continue;
+            }
+            for (Method method : controller.getDeclaredMethods()) {
+                if (method.isSynthetic()) {
+                    continue;
+                }
+                final AuthorizationDescriptor descriptor = AuthorizationDescriptor.forMethod(method);
+                descriptors.put(method, descriptor);
+                final RequestMapping mapping = method.getAnnotation(RequestMapping.class);
+                if (mapping != null) {
+                    endpoints.add(describe(controller, method, mapping, descriptor));
+                }
+            }
+        }
+        endpoints.sort(Comparator.comparing(EndpointAuthorization::getController)
+                .thenComparing(EndpointAuthorization::getMethod));
+        this.coverage = Collections.unmodifiableList(endpoints);
+        log.info("Registered authorization descriptors of {} controller methods, {} of {} endpoints unprotected",
+                descriptors.size(), endpoints.stream().filter(e -> !e.isPreAuth() && !e.isPostAuth()).count(),
+                endpoints.size());
+    }
+
+    /**
+     * Get the descriptor of the given method.
+     * 
+     * @param method the called method
+     * @return the descriptor, {@link AuthorizationDescriptor#UNPROTECTED} if the method is not annotated
+     */
+    public AuthorizationDescriptor get(Method method) {
+        final AuthorizationDescriptor descriptor = descriptors.get(method);
+        if (descriptor != null) {
+            return descriptor;
+        }
+        return descriptors.computeIfAbsent(method, AuthorizationDescriptor::forMethod);
+    }
+
+    /**
+     * Describe how each request mapping of the controllers is protected, ordered by controller and method name.
+     * 
+     * @return the list of {@link EndpointAuthorization}s
+     */
+    public List<EndpointAuthorization> getCoverage() {
+        return coverage;
+    }
+
+    private EndpointAuthorization describe(Class<?> controller, Method method, RequestMapping mapping,
+            AuthorizationDescriptor descriptor) {
+        final EndpointAuthorization endpoint = new EndpointAuthorization();
+        endpoint.setController(controller.getSimpleName());
+        endpoint.setMethod(method.getName());
+        endpoint.setPaths(paths(controller.getAnnotation(RequestMapping.class), mapping));
+        final List<String> requestMethods = new ArrayList<>();
+        for (RequestMethod requestMethod : mapping.method()) {
+            requestMethods.add(requestMethod.name());
+        }
+        endpoint.setRequestMethods(requestMethods);
+        endpoint.setPreAuth(descriptor.getPreAuth() != null);
+        endpoint.setPostAuth(descriptor.getPostAuth() != null);
+        final List<String> permissions = new ArrayList<>();
+        for (Check check : Arrays.asList(descriptor.getPreAuth(), descriptor.getPostAuth())) {
+            if (check == null) {
+                continue;
+            }
+            if (endpoint.getObjectType() == null) {
+                endpoint.setObjectType(check.getObjectType());
+            }
+            for (Permission permission : check.getPermissions()) {
+                if (PermissionType.NULL.equals(permission.permissionType())) {
+                    permissions.add(permission.rolename().name());
+                } else {
+                    permissions.add(permission.rolename() + ":" + permission.permissionType());
+                }
+            }
+        }
+        endpoint.setPermissions(permissions);
+        return endpoint;
+    }
+
+    private static List<String> paths(RequestMapping classMapping, RequestMapping methodMapping) {
+        final List<String> prefixes = new ArrayList<>();
+        if (classMapping != null && classMapping.value().length > 0) {
+            prefixes.addAll(Arrays.asList(classMapping.value()));
+        } else {
+            prefixes.add("");
+        }
+        final List<String> paths = new ArrayList<>();
+        for (String prefix : prefixes) {
+            if (methodMapping.value().length == 0) {
+                paths.add(prefix);
+            }
+            for (String value : methodMapping.value()) {
+                paths.add(prefix + value);
+            }
+        }
+        return paths;
+    }
+}
@@ -30,8 +30,7 @@ import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import de.escidocng.model.security.annotation.PostAuth;
-import de.escidocng.model.security.annotation.PreAuth;
+import de.escidocng.security.helpers.AuthorizationDescriptor.Check;
 import de.escidocng.service.AuthorizationService;
 
 /**
@@ -52,6 +51,9 @@ public class EscidocngSecurityInterceptor implements Ordered {
     @Autowired
     private ObjectMapper mapper;
 
+    @Autowired
+    private AuthorizationDescriptorRegistry descriptorRegistry;
+
     /**
      * The logger.
      */
@@ -67,21 +69,29 @@ public class EscidocngSecurityInterceptor implements Ordered {
      */
     @Around("execution(* de.escidocng.controller.*.*(..))")
     public Object authorize(final ProceedingJoinPoint joinPoint) throws Throwable {
-        final MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();
-        final Method calledMethod = methodSignature.getMethod();
-
-        PreAuth preAuth = calledMethod.getAnnotation(PreAuth.class);
-        PostAuth postAuth = calledMethod.getAnnotation(PostAuth.class);
+        final Method calledMethod = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        final AuthorizationDescriptor descriptor = descriptorRegistry.get(calledMethod);
+        if (!descriptor.isProtected()) {
+            return joinPoint.proceed();
+        }
 
+        final Check preAuth = descriptor.getPreAuth();
         if (preAuth != null) {
-            authorizationService.authorize(calledMethod, preAuth.objectType(), authorizationService.getId(preAuth.idIndex(), preAuth.objectType(),
-                    joinPoint.getArgs()), authorizationService.getVersionId(preAuth.versionIndex(), joinPoint.getArgs()),
-                    authorizationService.getObject(preAuth.idIndex(), preAuth.objectType(), joinPoint.getArgs()), preAuth.permissions());
+            final Object[] args = joinPoint.getArgs();
+            authorizationService.authorize(calledMethod, preAuth.getObjectType(),
+                    preAuth.hasIdArgument() ? authorizationService.getId(preAuth.getIdIndex(),
+                            preAuth.getObjectType(), args) : null,
+                    preAuth.hasVersionArgument() ? authorizationService.getVersionId(preAuth.getVersionIndex(),
+                            args) : null,
+                    preAuth.hasObjectArgument() ? authorizationService.getObject(preAuth.getIdIndex(),
+                            preAuth.getObjectType(), args) : null,
+                    preAuth.getPermissions());
         }
         Object obj = joinPoint.proceed();
+        final Check postAuth = descriptor.getPostAuth();
         if (postAuth != null) {
-            authorizationService.authorize(calledMethod, postAuth.objectType(), null, null,
-                    obj, postAuth.permissions());
+            authorizationService.authorize(calledMethod, postAuth.getObjectType(), null, null,
+                    obj, postAuth.getPermissions());
         }
         return obj;
     }
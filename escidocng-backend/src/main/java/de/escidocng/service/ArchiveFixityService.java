@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.service;
+
+import java.io.IOException;
+
+import de.escidocng.model.ArchiveFixity;
+
+/**
+ * Service definition for the fixity service which periodically re-reads the archival packages in the archive
+ * storage layer and verifies their integrity
+ */
+public interface ArchiveFixityService {
+
+    /**
+     * Verify a single archive and record the result in the {@link de.escidocng.model.Archive}
+     * 
+     * @param entityId the entity's id
+     * @param version the entity's version
+     * @return the result of the verification
+     * @throws IOException
+     */
+    ArchiveFixity verify(String entityId, int version) throws IOException;
+
+    /**
+     * Start verifying all archives in the background
+     * 
+     * @return false if a verification run is already in progress
+     */
+    boolean verifyAll();
+
+    /**
+     * Check if a verification run is in progress
+     * 
+     * @return true if archives are being verified
+     */
+    boolean isRunning();
+}
@@ -17,10 +17,13 @@
 package de.escidocng.service;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 
 import de.escidocng.model.Archive;
+import de.escidocng.model.FacetParameters;
+import de.escidocng.model.FacetResult;
+import de.escidocng.model.SearchParameters;
 import de.escidocng.model.SearchResult;
 
 /**
@@ -29,7 +32,8 @@ import de.escidocng.model.SearchResult;
 public interface ArchiveService {
 
     /**
-     * Archive a specific version of an entity
+     * Archive a specific version of an entity. A version which is already archived is archived again, unless
+     * incremental archives of later versions reference its content.
      * @param entityId the id of the entity to archive
      * @param version the entity version to archive
      * @throws IOException
@@ -46,13 +50,14 @@ public interface ArchiveService {
     boolean isArchived(String entityId, int version) throws IOException;
 
     /**
-     * Fetch the archive (AIP) from the storage layer
+     * Write the archive (AIP) from the storage layer to a stream. Incremental archives are resolved to a complete AIP
+     * using the archives they reference while being written.
      * @param entityId the entity's id
      * @param version the entity's version
-     * @return an InputStream containing the AIP's binary data
+     * @param sink the stream to write the AIP's binary data to
      * @throws IOException
      */
-    InputStream retrieveData(String entityId, int version) throws IOException;
+    void retrieveData(String entityId, int version, OutputStream sink) throws IOException;
 
     /**
      * Delete an archive (AIP) in the archive storage layer
@@ -66,7 +71,7 @@ public interface ArchiveService {
      * Retrieve the size of an archive (AIP) from the storage layer
      * @param entityId the entity's id
      * @param version the entity's version
-     * @return the size of the stored AIP
+     * @return the size of the stored AIP, which for incremental archives only covers the changed content
      * @throws IOException
      */
     long sizeof(String entityId, int version) throws IOException;
@@ -89,4 +94,37 @@ public interface ArchiveService {
      * @throws IOException
      */
     SearchResult searchArchives(String query, int offset, int count) throws IOException;
+
+    /**
+     * Search the storage layer for archives with sorting, cursor based paging, field projection and aggregations
+     * @param params the parameters of the search
+     * @return a SearchResult object containing the search results
+     * @throws IOException
+     */
+    SearchResult searchArchives(SearchParameters params) throws IOException;
+
+    /**
+     * Count the archives the current user may see per value, date interval or number of distinct values of their
+     * fields
+     * @param params the parameters of the facet request
+     * @return a FacetResult object containing the counts
+     * @throws IOException
+     */
+    FacetResult facetArchives(FacetParameters params) throws IOException;
+
+    /**
+     * Count the {@link de.escidocng.model.Archive}s the current user may see matching a search without fetching them
+     * 
+     * @param params the parameters of the search, only query and filter are used
+     * @return the number of matching archives
+     */
+    long countArchives(SearchParameters params) throws IOException;
+
+    /**
+     * Check if any of the {@link de.escidocng.model.Archive}s the current user may see matches a search
+     * 
+     * @param params the parameters of the search, only query and filter are used
+     * @return true if at least one of the archives matches
+     */
+    boolean existsArchives(SearchParameters params) throws IOException;
 }
@@ -19,6 +19,7 @@ package de.escidocng.service;
 import java.io.IOException;
 import java.util.List;
 
+import de.escidocng.model.SearchParameters;
 import de.escidocng.model.SearchResult;
 import de.escidocng.model.security.User;
 import de.escidocng.model.security.UserRequest;
@@ -108,6 +109,33 @@ public interface CredentialsService {
      */
     SearchResult searchUsers(String query, int offset, int maxRecords) throws IOException;
 
+    /**
+     * Retrieve a SearchResult of {@link de.escidocng.model.security.User}s existing in the repository
+     * 
+     * @param params the parameters of the search
+     * @return a SearchResult containing a list of {@link de.escidocng.model.security.User} objects, or of maps
+     *         holding the requested fields
+     * @throws IOException
+     */
+    SearchResult searchUsers(SearchParameters params) throws IOException;
+
+    /**
+     * Count the {@link de.escidocng.model.security.User}s the current user may see matching a search without
+     * fetching them
+     * 
+     * @param params the parameters of the search, only query and filter are used
+     * @return the number of matching users
+     */
+    long countUsers(SearchParameters params) throws IOException;
+
+    /**
+     * Check if any of the {@link de.escidocng.model.security.User}s the current user may see matches a search
+     * 
+     * @param params the parameters of the search, only query and filter are used
+     * @return true if at least one of the users matches
+     */
+    boolean existsUsers(SearchParameters params) throws IOException;
+
     /**
      * Retrieve an existing {@link de.escidocng.model.security.UserRequest}
      * 
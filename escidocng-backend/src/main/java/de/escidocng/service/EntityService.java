@@ -18,15 +18,21 @@ package de.escidocng.service;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
 import de.escidocng.model.AuditRecord;
 import de.escidocng.model.AuditRecords;
+import de.escidocng.model.AuditSearchParameters;
 import de.escidocng.model.Binary;
+import de.escidocng.model.Changes;
 import de.escidocng.model.Entities;
 import de.escidocng.model.Entity;
 import de.escidocng.model.Metadata;
+import de.escidocng.model.FacetParameters;
+import de.escidocng.model.FacetResult;
+import de.escidocng.model.SearchParameters;
 import de.escidocng.model.SearchResult;
 
 /**
@@ -180,6 +186,27 @@ public interface EntityService {
      */
     void pending(String id) throws IOException;
 
+    /**
+     * Retrieve the changes to entities following a sequence number, waiting for new changes if there are none
+     * @param since the sequence number of the last change already known to the caller
+     * @param limit the maximum number of changes to return
+     * @param timeout the time in millis to wait for new changes
+     * @return a object containing the changes and the sequence number to continue with
+     * @throws IOException
+     */
+    Changes retrieveChanges(long since, int limit, long timeout) throws IOException;
+
+    /**
+     * Write the changes to entities following a sequence number to a stream, one JSON document per line
+     * @param since the sequence number of the last change already known to the caller
+     * @param limit the maximum number of changes to write, 0 for all
+     * @param timeout the time in millis to wait for new changes if there are none
+     * @param sink the stream to write the changes to
+     * @return the number of changes written
+     * @throws IOException
+     */
+    long exportChanges(long since, long limit, long timeout, OutputStream sink) throws IOException;
+
     /**
      * Retrieve audit records for an entity
      * @param entityId the entity's id
@@ -190,6 +217,57 @@ public interface EntityService {
      */
     AuditRecords retrieveAuditRecords(String entityId, int offset, int count) throws IOException;
 
+    /**
+     * Retrieve a page of the audit records of an entity, continuing after the previous page
+     * @param entityId the entity's id
+     * @param cursor * for the first page or the cursor returned with the previous page
+     * @param count the result count
+     * @return a object containing the audit records of the page and the cursor of the next page
+     * @throws IOException
+     */
+    AuditRecords retrieveAuditRecords(String entityId, String cursor, int count) throws IOException;
+
+    /**
+     * Search audit records across all entities
+     * @param params the parameters of the search
+     * @return a {@link de.escidocng.model.SearchResult} containing the matching audit records
+     * @throws IOException
+     */
+    SearchResult searchAuditRecords(AuditSearchParameters params) throws IOException;
+
+    /**
+     * Write all audit records matching a search to a stream in chronological order, one JSON document per line.
+     * 
+     * @param params the parameters of the search, maxRecords is used as the size of a batch
+     * @param sink the stream to write the audit records to
+     * @return the number of audit records written
+     */
+    long exportAuditRecords(AuditSearchParameters params, OutputStream sink) throws IOException;
+
+    /**
+     * Count audit records per value, date interval or number of distinct values of their fields
+     * @param params the parameters of the facet request
+     * @return a object containing the counts
+     * @throws IOException
+     */
+    FacetResult facetAuditRecords(FacetParameters params) throws IOException;
+
+    /**
+     * Count the {@link de.escidocng.model.AuditRecord}s matching a search without fetching them
+     * 
+     * @param params the parameters of the search, only query and filter are used
+     * @return the number of matching audit records
+     */
+    long countAuditRecords(SearchParameters params) throws IOException;
+
+    /**
+     * Check if any of the {@link de.escidocng.model.AuditRecord}s matches a search
+     * 
+     * @param params the parameters of the search, only query and filter are used
+     * @return true if at least one of the audit records matches
+     */
+    boolean existsAuditRecords(SearchParameters params) throws IOException;
+
     /**
      * Create an audit record in the repository
      * @param auditRecord the audit record to store
@@ -243,6 +321,60 @@ public interface EntityService {
      */
     SearchResult searchEntities(String query, int offset, int maxRecords) throws IOException;
 
+    /**
+     * Search {@link de.escidocng.model.Entity}s in the repository.
+     * 
+     * @param params the parameters of the search
+     * @return A {@link de.escidocng.model.SearchResult} containig the search hits
+     */
+    SearchResult searchEntities(SearchParameters params) throws IOException;
+
+    /**
+     * Write all {@link de.escidocng.model.Entity}s the current user may see matching a search to a stream, one JSON
+     * document per line.
+     * 
+     * @param params the parameters of the search, maxRecords is used as the size of a batch
+     * @param sink the stream to write the entities to
+     * @return the number of entities written
+     */
+    long exportEntities(SearchParameters params, OutputStream sink) throws IOException;
+
+    /**
+     * Suggest {@link de.escidocng.model.Entity}s the current user may see whose label starts with the words of a
+     * prefix.
+     * 
+     * @param prefix the beginning of the label
+     * @param size the maximum number of suggestions
+     * @return A {@link de.escidocng.model.SearchResult} containing id, label, contentModelId and parentId of the
+     *         suggested entities
+     */
+    SearchResult suggestEntities(String prefix, int size) throws IOException;
+
+    /**
+     * Count the {@link de.escidocng.model.Entity}s the current user may see per value, date interval or number of
+     * distinct values of their fields
+     * 
+     * @param params the parameters of the facet request
+     * @return A {@link de.escidocng.model.FacetResult} containing the counts
+     */
+    FacetResult facetEntities(FacetParameters params) throws IOException;
+
+    /**
+     * Count the {@link de.escidocng.model.Entity}s the current user may see matching a search without fetching them
+     * 
+     * @param params the parameters of the search, only query and filter are used
+     * @return the number of matching entities
+     */
+    long countEntities(SearchParameters params) throws IOException;
+
+    /**
+     * Check if any of the {@link de.escidocng.model.Entity}s the current user may see matches a search
+     * 
+     * @param params the parameters of the search, only query and filter are used
+     * @return true if at least one of the entities matches
+     */
+    boolean existsEntities(SearchParameters params) throws IOException;
+
     /**
      * Retrieve all old versions of an entity from the version storage
      * 
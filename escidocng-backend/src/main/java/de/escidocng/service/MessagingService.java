@@ -17,6 +17,8 @@
 
 package de.escidocng.service;
 
+import de.escidocng.model.state.MessagingQueueState;
+
 public interface MessagingService {
 
     public void publishCreateEntity(String entityId);
@@ -65,4 +67,5 @@ public interface MessagingService {
 
     void publishWithdrawEntity(String id);
 
+    MessagingQueueState status();
 }
@@ -19,6 +19,7 @@ package de.escidocng.service.backend;
 import java.io.IOException;
 import java.io.InputStream;
 
+import de.escidocng.model.ArchiveManifest;
 import de.escidocng.model.Entity;
 
 public interface BackendArchiveBlobService {
@@ -26,6 +27,16 @@ public interface BackendArchiveBlobService {
 
     String saveOrUpdate(Entity e) throws IOException;
 
+    /**
+     * Save an incremental archival package of an {@link de.escidocng.model.Entity}
+     * 
+     * @param e the entity to archive
+     * @param base the manifest of the archive to build the package against or null for a complete package
+     * @param manifest the manifest of the new package which is populated while writing
+     * @return the path of the archival package
+     */
+    String saveOrUpdate(Entity e, ArchiveManifest base, ArchiveManifest manifest) throws IOException;
+
     void delete(final String path) throws IOException;
 
     long sizeOf(final String path) throws IOException;
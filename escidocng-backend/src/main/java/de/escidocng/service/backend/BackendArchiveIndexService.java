@@ -19,7 +19,11 @@ package de.escidocng.service.backend;
 import java.io.IOException;
 
 import de.escidocng.model.Archive;
+import de.escidocng.model.ArchiveFixity;
 import de.escidocng.model.EntityHierarchy;
+import de.escidocng.model.FacetParameters;
+import de.escidocng.model.FacetResult;
+import de.escidocng.model.SearchParameters;
 import de.escidocng.model.SearchResult;
 
 public interface BackendArchiveIndexService {
@@ -31,6 +35,15 @@ public interface BackendArchiveIndexService {
 
     boolean exists(String id, int version) throws IOException;
 
+    /**
+     * Retrieve the newest {@link de.escidocng.model.Archive} of an entity below a given version
+     * 
+     * @param id the entity's id
+     * @param version the version the archive has to be older than
+     * @return the archive or null if no earlier version of the entity has been archived
+     */
+    Archive retrieveLatestBefore(String id, int version) throws IOException;
+
     /**
      * Search {@link de.escidocng.model.Archive}s in the repository.
      * 
@@ -41,4 +54,57 @@ public interface BackendArchiveIndexService {
      */
     SearchResult searchArchives(String query, int offset, int maxRecords) throws IOException;
 
+    /**
+     * Search {@link de.escidocng.model.Archive}s in the repository supporting sorting, cursor based paging, field
+     * projection and aggregations.
+     * 
+     * @param params the parameters of the search
+     * @return A {@link de.escidocng.model.SearchResult} containig the search hits
+     */
+    SearchResult searchArchives(SearchParameters params) throws IOException;
+
+    /**
+     * Count the {@link de.escidocng.model.Archive}s matching a query per value, date interval or number of distinct
+     * values of their fields
+     * 
+     * @param params the parameters of the facet request
+     * @return A {@link de.escidocng.model.FacetResult} containing the counts
+     */
+    FacetResult facets(FacetParameters params) throws IOException;
+
+    /**
+     * Count the {@link de.escidocng.model.Archive}s matching a search without fetching them
+     * 
+     * @param params the parameters of the search, only query and filter are used
+     * @return the number of matching archives
+     */
+    long countArchives(SearchParameters params) throws IOException;
+
+    /**
+     * Check if any of the {@link de.escidocng.model.Archive}s matches a search
+     * 
+     * @param params the parameters of the search, only query and filter are used
+     * @return true if at least one of the archives matches
+     */
+    boolean existsArchives(SearchParameters params) throws IOException;
+
+    /**
+     * Iterate over all {@link de.escidocng.model.Archive}s in the repository in no particular order.
+     * 
+     * @param scrollId the scroll id returned by the previous call or null to start a new iteration
+     * @param batchSize the number of archives to fetch per call
+     * @return A {@link de.escidocng.model.SearchResult} containing the next batch of archives and the scroll id for
+     *         the next call. An empty result marks the end of the iteration.
+     */
+    SearchResult scanArchives(String scrollId, int batchSize) throws IOException;
+
+    /**
+     * Record the result of a fixity check in an {@link de.escidocng.model.Archive}
+     * 
+     * @param entityId the entity's id
+     * @param version the entity's version
+     * @param fixity the result of the check
+     */
+    void updateFixity(String entityId, int version, ArchiveFixity fixity) throws IOException;
+
 }
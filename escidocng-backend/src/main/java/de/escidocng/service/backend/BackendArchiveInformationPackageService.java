@@ -17,10 +17,55 @@
 package de.escidocng.service.backend;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Map;
 
+import de.escidocng.model.ArchiveFixity;
+import de.escidocng.model.ArchiveManifest;
 import de.escidocng.model.Entity;
 
 public interface BackendArchiveInformationPackageService {
     void write(Entity e, OutputStream out) throws IOException;
+
+    /**
+     * Write an archival package which only contains the binaries and metadata that are not listed with an equal
+     * checksum in the manifest of the base package
+     * 
+     * @param e the entity to write
+     * @param base the manifest of the base package or null if a complete package should be written
+     * @param manifest the manifest of the new package which will be populated with the package's entries
+     * @param out the sink to write the package to
+     */
+    void write(Entity e, ArchiveManifest base, ArchiveManifest manifest, OutputStream out) throws IOException;
+
+    /**
+     * Estimate the number of bytes a package written by
+     * {@link #write(Entity, ArchiveManifest, ArchiveManifest, OutputStream)} will occupy. The estimate is an upper
+     * bound of the stored content and may be used to check the available space before writing a package.
+     * 
+     * @param e the entity to write
+     * @param base the manifest of the base package or null if a complete package should be written
+     * @return the estimated size of the package in bytes
+     */
+    long estimateSize(Entity e, ArchiveManifest base) throws IOException;
+
+    /**
+     * Assemble a complete archival package from an incremental package and the packages it references
+     * 
+     * @param manifest the manifest of the incremental package
+     * @param packagePaths the paths of the packages by the entity version they have been archived for
+     * @param archiveStore the store to read the packages from
+     * @param out the sink to write the complete package to
+     */
+    void restore(ArchiveManifest manifest, Map<Integer, String> packagePaths, BackendArchiveBlobService archiveStore,
+            OutputStream out) throws IOException;
+
+    /**
+     * Read an archival package and verify its integrity and the checksums of the contained binaries and metadata
+     * 
+     * @param aip the package to verify
+     * @return the result of the verification
+     */
+    ArchiveFixity verify(InputStream aip) throws IOException;
 }
@@ -17,9 +17,16 @@
 package de.escidocng.service.backend;
 
 import java.io.IOException;
+import java.io.OutputStream;
 
 import de.escidocng.model.AuditRecord;
 import de.escidocng.model.AuditRecords;
+import de.escidocng.model.AuditSearchParameters;
+import de.escidocng.model.FacetParameters;
+import de.escidocng.model.FacetResult;
+import de.escidocng.model.SearchParameters;
+import de.escidocng.model.SearchResult;
+import de.escidocng.model.state.AuditQueueState;
 
 /**
  * Service definition for interactions of {@link de.escidocng.model.AuditRecord} objects
@@ -37,6 +44,38 @@ public interface BackendAuditService {
      */
     AuditRecords retrieve(String entityId, int offset, int numRecords) throws IOException;
 
+    /**
+     * Retrieve a page of the {@link de.escidocng.model.AuditRecord}s of an Entity in the order they were created
+     * 
+     * @param entityId The id of the {@link de.escidocng.model.Entity}
+     * @param cursor {@link de.escidocng.model.SearchParameters#CURSOR_START} for the first page, or the cursor
+     *        returned with the previous page
+     * @param numRecords The number of AuditRecords to return
+     * @return A page of AuditRecords holding the cursor of the next page
+     * @throws IOException
+     */
+    AuditRecords retrieve(String entityId, String cursor, int numRecords) throws IOException;
+
+    /**
+     * Search {@link de.escidocng.model.AuditRecord}s across all entities
+     * 
+     * @param params the parameters of the search
+     * @return A {@link de.escidocng.model.SearchResult} containing the matching audit records
+     * @throws IOException
+     */
+    SearchResult search(AuditSearchParameters params) throws IOException;
+
+    /**
+     * Write all {@link de.escidocng.model.AuditRecord}s matching a search to a stream, one JSON document per line.
+     * 
+     * @param params the parameters of the search, maxRecords is used as the size of a batch, up to the configured
+     *        maximum number of records of a search
+     * @param sink the stream to write the audit records to
+     * @return the number of audit records written
+     * @throws IOException
+     */
+    long export(AuditSearchParameters params, OutputStream sink) throws IOException;
+
     /**
      * Create a new {@link de.escidocng.model.AuditRecord} and store it in the repository
      * 
@@ -53,4 +92,37 @@ public interface BackendAuditService {
      * @throws IOException
      */
     void deleteAll(String entityId) throws IOException;
+
+    /**
+     * Count the AuditRecords matching a query per value, date interval or number of distinct values of their fields
+     * 
+     * @param params the parameters of the facet request
+     * @return the counts
+     * @throws IOException
+     */
+    FacetResult facets(FacetParameters params) throws IOException;
+
+    /**
+     * Count the {@link de.escidocng.model.AuditRecord}s matching a search without fetching them
+     * 
+     * @param params the parameters of the search, only query and filter are used
+     * @return the number of matching audit records
+     */
+    long countAuditRecords(SearchParameters params) throws IOException;
+
+    /**
+     * Check if any of the {@link de.escidocng.model.AuditRecord}s matches a search
+     * 
+     * @param params the parameters of the search, only query and filter are used
+     * @return true if at least one of the audit records matches
+     */
+    boolean existsAuditRecords(SearchParameters params) throws IOException;
+
+    /**
+     * Get the state of the queue of audit records waiting to be written
+     * 
+     * @return the {@link de.escidocng.model.state.AuditQueueState}
+     * @throws IOException
+     */
+    AuditQueueState status() throws IOException;
 }
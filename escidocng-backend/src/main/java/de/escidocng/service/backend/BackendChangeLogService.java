@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.escidocng.service.backend;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import de.escidocng.model.Change;
+import de.escidocng.model.Changes;
+
+/**
+ * Service definition for the change log, which records every change to an {@link de.escidocng.model.Entity} with a
+ * monotonically increasing sequence number, so consumers can synchronize incrementally
+ */
+public interface BackendChangeLogService {
+
+    /**
+     * Append a {@link de.escidocng.model.Change} to the log, setting its sequence number and timestamp
+     * 
+     * @param change the change to append
+     * @return the appended change
+     * @throws IOException
+     */
+    Change append(Change change) throws IOException;
+
+    /**
+     * Retrieve the changes following a sequence number. If there are none, wait for new changes until the timeout
+     * has passed.
+     * 
+     * @param since the sequence number of the last change already known to the caller, 0 to start at the beginning
+     * @param limit the maximum number of changes to return
+     * @param timeout the time in millis to wait for new changes, 0 to return right away
+     * @return the changes in the order of their sequence numbers
+     * @throws IOException
+     */
+    Changes retrieve(long since, int limit, long timeout) throws IOException;
+
+    /**
+     * Write the changes following a sequence number to a stream, one JSON document per line, until the end of the
+     * log or the limit is reached. If there are no changes, wait for new changes until the timeout has passed.
+     * 
+     * @param since the sequence number of the last change already known to the caller
+     * @param limit the maximum number of changes to write, 0 for all
+     * @param timeout the time in millis to wait for new changes, 0 to return right away
+     * @param sink the stream to write the changes to
+     * @return the number of changes written
+     * @throws IOException
+     */
+    long export(long since, long limit, long timeout, OutputStream sink) throws IOException;
+}
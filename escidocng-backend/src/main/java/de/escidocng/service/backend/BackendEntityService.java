@@ -17,10 +17,14 @@
 package de.escidocng.service.backend;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 import de.escidocng.model.Entity;
 import de.escidocng.model.EntityHierarchy;
+import de.escidocng.model.FacetParameters;
+import de.escidocng.model.FacetResult;
+import de.escidocng.model.SearchParameters;
 import de.escidocng.model.SearchResult;
 import de.escidocng.model.state.IndexState;
 
@@ -62,6 +66,60 @@ public interface BackendEntityService {
      */
     SearchResult searchEntities(String query, int offset, int maxRecords) throws IOException;
 
+    /**
+     * Search {@link de.escidocng.model.Entity}s in the repository.
+     * 
+     * @param params the parameters of the search
+     * @return A {@link de.escidocng.model.SearchResult} containig the search hits
+     */
+    SearchResult searchEntities(SearchParameters params) throws IOException;
+
+    /**
+     * Write all {@link de.escidocng.model.Entity}s matching a search to a stream, one JSON document per line. The
+     * hits are fetched batch by batch, so the next batch is only requested once the previous one has been written.
+     * 
+     * @param params the parameters of the search, maxRecords is used as the size of a batch, up to the configured
+     *        maximum number of records of a search
+     * @param sink the stream to write the entities to
+     * @return the number of entities written
+     */
+    long exportEntities(SearchParameters params, OutputStream sink) throws IOException;
+
+    /**
+     * Suggest {@link de.escidocng.model.Entity}s whose label starts with the words of a prefix.
+     * 
+     * @param params the parameters of the suggestion, the query holds the prefix and maxRecords the number of
+     *        suggestions
+     * @return A {@link de.escidocng.model.SearchResult} containing id, label, contentModelId and parentId of the
+     *         suggested entities
+     */
+    SearchResult suggestEntities(SearchParameters params) throws IOException;
+
+    /**
+     * Count the {@link de.escidocng.model.Entity}s matching a query per value, date interval or number of distinct
+     * values of their fields
+     * 
+     * @param params the parameters of the facet request
+     * @return A {@link de.escidocng.model.FacetResult} containing the counts
+     */
+    FacetResult facets(FacetParameters params) throws IOException;
+
+    /**
+     * Count the {@link de.escidocng.model.Entity}s matching a search without fetching them
+     * 
+     * @param params the parameters of the search, only query and filter are used
+     * @return the number of matching entities
+     */
+    long countEntities(SearchParameters params) throws IOException;
+
+    /**
+     * Check if any of the {@link de.escidocng.model.Entity}s matches a search
+     * 
+     * @param params the parameters of the search, only query and filter are used
+     * @return true if at least one of the entities matches
+     */
+    boolean existsEntities(SearchParameters params) throws IOException;
+
     /**
      * Get Information about level1- and level2-id of the entity with the given entityId
      * @param entityId
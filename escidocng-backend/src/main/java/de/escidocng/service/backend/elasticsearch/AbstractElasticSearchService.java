@@ -3,25 +3,99 @@ package de.escidocng.service.backend.elasticsearch;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
 import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsRequest;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.AndFilterBuilder;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.OrFilterBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.Aggregation;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogram;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.cardinality.Cardinality;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import de.escidocng.exceptions.InvalidParameterException;
+import de.escidocng.model.FacetParameters;
+import de.escidocng.model.FacetResult;
+import de.escidocng.model.SearchParameters;
+
 /**
  * Abstract service for providing utility methods used by all the different ElasticSearch services
  */
 public class AbstractElasticSearchService {
 
+    private static final Logger log = LoggerFactory.getLogger(AbstractElasticSearchService.class);
+
+    /**
+     * Index holding a marker document for every index being upgraded, so only one node of a cluster upgrades it
+     */
+    public static final String INDEX_UPGRADES = "upgrades";
+
+    private static final String UPGRADE_TYPE = "upgrade";
+
+    /**
+     * interval in which a node waiting for the upgrade of an index by another node checks if it is done
+     */
+    private static final long UPGRADE_POLL_INTERVAL = 5000;
+
+    /**
+     * Field appended to the sort criteria of cursor based searches to get a total order of the hits
+     */
+    protected static final String CURSOR_TIEBREAKER = "_uid";
+
+    private static final List<String> HISTOGRAM_INTERVALS = Arrays.asList("year", "quarter", "month", "week", "day",
+            "hour");
+
+    /* prefixes of the aggregation names, so the same field can be used by different facet types */
+    private static final String FACET_TERMS = "terms_";
+
+    private static final String FACET_HISTOGRAM = "histogram_";
+
+    private static final String FACET_CARDINALITY = "cardinality_";
+
     @Autowired
     protected Environment env;
 
@@ -40,9 +114,20 @@ public class AbstractElasticSearchService {
     }
 
     protected void checkAndOrCreateIndex(String indexName) throws IOException {
+        checkAndOrCreateIndex(indexName, indexName);
+    }
+
+    /**
+     * Create an index if it does not exist yet, using the mappings and settings of another configuration.
+     * 
+     * @param indexName the name of the index
+     * @param configName the name of the json file holding mappings and settings
+     * @throws IOException
+     */
+    protected void checkAndOrCreateIndex(String indexName, String configName) throws IOException {
         try {
             if (!indexExists(indexName)) {
-                Map properties = getMappingsAndSettings(indexName);
+                Map properties = getMappingsAndSettings(configName);
                 if (properties != null) {
                     CreateIndexRequestBuilder requestBuilder = client.admin().indices().prepareCreate(indexName);
                     if (properties.get("mappings") != null && !((Map)properties.get("mappings")).isEmpty()) {
@@ -73,6 +158,263 @@ public class AbstractElasticSearchService {
         }
     }
 
+    /**
+     * Check if a string field of an index is mapped as not analyzed, so it can be used by term filters and sorts
+     * 
+     * @param indexName the name of the index or of the alias pointing to it
+     * @param type the document type holding the field
+     * @param field the name of the field
+     * @return false if the field is analyzed or not mapped yet
+     */
+    protected boolean isNotAnalyzed(String indexName, String type, String field) throws IOException {
+        final Map properties = this.getProperties(indexName, type);
+        final Map mapping = properties == null ? null : (Map) properties.get(field);
+        return mapping != null && "not_analyzed".equals(mapping.get("index"));
+    }
+
+    /**
+     * Check if a field of an index is mapped. Subfields of multi fields and fields of objects are separated by dots.
+     * 
+     * @param indexName the name of the index or of the alias pointing to it
+     * @param type the document type holding the field
+     * @param path the path of the field, e.g. state.raw
+     * @return false if the field is not mapped yet
+     */
+    protected boolean isMapped(String indexName, String type, String path) throws IOException {
+        Map properties = this.getProperties(indexName, type);
+        for (final String name : path.split("\\.")) {
+            final Map mapping = properties == null ? null : (Map) properties.get(name);
+            if (mapping == null) {
+                return false;
+            }
+            properties = (Map) (mapping.containsKey("properties") ? mapping.get("properties") : mapping.get("fields"));
+        }
+        return true;
+    }
+
+    private Map getProperties(String indexName, String type) throws IOException {
+        try {
+            // the mappings are returned by the name of the index, which differs from the name of an alias
+            final Iterator<ImmutableOpenMap<String, MappingMetaData>> indices = client.admin().indices()
+                    .prepareGetMappings(indexName)
+                    .setTypes(type)
+                    .execute()
+                    .actionGet()
+                    .getMappings()
+                    .valuesIt();
+            final ImmutableOpenMap<String, MappingMetaData> mappings = indices.hasNext() ? indices.next() : null;
+            if (mappings == null || mappings.get(type) == null) {
+                return null;
+            }
+            return (Map) mappings.get(type).sourceAsMap().get("properties");
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+    }
+
+    /**
+     * Checks if the mappings of an index are up to date
+     */
+    protected interface MappingCheck {
+
+        boolean isUpToDate(String indexName) throws IOException;
+    }
+
+    /**
+     * Recreate an index whose mappings are outdated with the mappings and settings of its json configuration.<br>
+     * The documents are copied to a new index, which then replaces the outdated index under its name as an alias,
+     * so searches see the complete outdated index until the copy has finished. Documents written to the outdated
+     * index during the copy are lost, so all nodes have to run a version which upgrades the index.<br>
+     * A marker document makes sure only one node of a cluster upgrades an index, the other nodes wait until it is
+     * done. An upgrade interrupted by a crash is taken over by another node, or the same node after a restart, once
+     * the marker is older than escidocng.index.upgrade.lockTimeout.
+     * 
+     * @param indexName the name of the index, which is also the name of its json configuration
+     * @param check the check of the mappings
+     */
+    protected void upgradeIndex(String indexName, MappingCheck check) throws IOException {
+        if (this.getUpgradeMarker(indexName) == null
+                && (!this.indexExists(indexName) || check.isUpToDate(indexName))) {
+            return;
+        }
+        final long lockTimeout = Long.parseLong(env.getProperty("escidocng.index.upgrade.lockTimeout", "3600000"));
+        String target = null;
+        while (target == null) {
+            final GetResponse marker = this.getUpgradeMarker(indexName);
+            if (marker == null) {
+                if (!this.indexExists(indexName) || check.isUpToDate(indexName)) {
+                    // upgraded by another node
+                    return;
+                }
+                target = this.writeUpgradeMarker(indexName, indexName + "-" + System.currentTimeMillis(), -1);
+            } else if (System.currentTimeMillis() - ((Number) marker.getSource().get("started")).longValue()
+                    > lockTimeout) {
+                log.warn("Taking over the interrupted upgrade of index " + indexName);
+                target = this.writeUpgradeMarker(indexName, (String) marker.getSource().get("target"),
+                        marker.getVersion());
+            }
+            if (target == null) {
+                log.info("Waiting for the upgrade of index " + indexName + " by another node");
+                try {
+                    Thread.sleep(UPGRADE_POLL_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the upgrade of index " + indexName);
+                }
+            }
+        }
+        log.info("Upgrading index " + indexName + " to " + target);
+        try {
+            this.replaceIndex(indexName, target);
+        } catch (IOException e) {
+            if (this.indexExists(indexName)) {
+                // the outdated index is still in place, so the next start may try again right away
+                this.deleteUpgradeMarker(indexName);
+            }
+            throw e;
+        }
+        this.deleteUpgradeMarker(indexName);
+        log.info("Upgraded index " + indexName);
+    }
+
+    private void replaceIndex(String indexName, String target) throws IOException {
+        try {
+            if (!this.indexExists(indexName)) {
+                // interrupted between deleting the outdated index and adding the alias
+                client.admin().indices().prepareAliases().addAlias(target, indexName).execute().actionGet();
+                return;
+            }
+            final Iterator<String> aliased =
+                    client.admin().indices().prepareGetAliases(indexName).execute().actionGet().getAliases().keysIt();
+            final String source = aliased.hasNext() ? aliased.next() : indexName;
+            if (source.equals(target)) {
+                // interrupted after the alias has been replaced
+                return;
+            }
+            this.checkAndOrCreateIndex(target, indexName);
+            this.waitForIndex(target);
+            final long count = this.copyIndex(indexName, target);
+            log.info("Copied " + count + " documents of index " + indexName + " to " + target);
+            if (source.equals(indexName)) {
+                // an alias can not have the name of an existing index, so the name is missing for a moment
+                this.deleteIndex(indexName);
+                client.admin().indices().prepareAliases().addAlias(target, indexName).execute().actionGet();
+            } else {
+                client.admin().indices().prepareAliases()
+                        .removeAlias(source, indexName)
+                        .addAlias(target, indexName)
+                        .execute()
+                        .actionGet();
+                this.deleteIndex(source);
+            }
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+        this.waitForIndex(indexName);
+    }
+
+    private GetResponse getUpgradeMarker(String indexName) throws IOException {
+        if (!this.indexExists(INDEX_UPGRADES)) {
+            return null;
+        }
+        try {
+            final GetResponse marker =
+                    client.prepareGet(INDEX_UPGRADES, UPGRADE_TYPE, indexName).execute().actionGet();
+            return marker.isExists() ? marker : null;
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+    }
+
+    /**
+     * Write the marker of an upgrade, either creating it or replacing a stale marker of the given version
+     * 
+     * @return the target index of the upgrade or null if another node has written the marker first
+     */
+    private String writeUpgradeMarker(String indexName, String target, long version) throws IOException {
+        this.checkAndOrCreateIndex(INDEX_UPGRADES);
+        final Map<String, Object> source = new HashMap<>();
+        source.put("target", target);
+        source.put("started", System.currentTimeMillis());
+        final IndexRequestBuilder request = client.prepareIndex(INDEX_UPGRADES, UPGRADE_TYPE, indexName)
+                .setSource(source);
+        if (version < 0) {
+            request.setCreate(true);
+        } else {
+            request.setVersion(version);
+        }
+        try {
+            request.execute().actionGet();
+            return target;
+        } catch (ElasticsearchException ex) {
+            if (ex.status() == RestStatus.CONFLICT) {
+                return null;
+            }
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+    }
+
+    private void deleteUpgradeMarker(String indexName) throws IOException {
+        try {
+            client.prepareDelete(INDEX_UPGRADES, UPGRADE_TYPE, indexName).execute().actionGet();
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+    }
+
+    /**
+     * Copy all documents of an index to another index keeping their types and ids. Documents already present in the
+     * target index are overwritten, so an interrupted copy can be repeated.
+     * 
+     * @param sourceIndex the name of the index to copy from
+     * @param targetIndex the name of the index to copy to
+     * @return the number of copied documents
+     */
+    protected long copyIndex(String sourceIndex, String targetIndex) throws IOException {
+        final TimeValue keepAlive = TimeValue.timeValueMinutes(5);
+        long count = 0;
+        try {
+            SearchResponse resp = client.prepareSearch(sourceIndex)
+                    .setSearchType(SearchType.SCAN)
+                    .setScroll(keepAlive)
+                    .setQuery(QueryBuilders.matchAllQuery())
+                    .setSize(500)
+                    .execute()
+                    .actionGet();
+            while (true) {
+                resp = client.prepareSearchScroll(resp.getScrollId())
+                        .setScroll(keepAlive)
+                        .execute()
+                        .actionGet();
+                if (resp.getHits().getHits().length == 0) {
+                    break;
+                }
+                final BulkRequestBuilder bulk = client.prepareBulk();
+                for (final SearchHit hit : resp.getHits()) {
+                    bulk.add(client.prepareIndex(targetIndex, hit.getType(), hit.getId()).setSource(hit.sourceRef()));
+                }
+                final BulkResponse bulkResponse = bulk.execute().actionGet();
+                if (bulkResponse.hasFailures()) {
+                    throw new IOException("Unable to copy index " + sourceIndex + " to " + targetIndex + ": "
+                            + bulkResponse.buildFailureMessage());
+                }
+                count += resp.getHits().getHits().length;
+            }
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+        refreshIndex(targetIndex);
+        return count;
+    }
+
+    protected void deleteIndex(String indexName) throws IOException {
+        try {
+            client.admin().indices().prepareDelete(indexName).execute().actionGet();
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+    }
+
     protected void waitForIndex(String indexName) throws IOException {
         try {
             this.client.admin().cluster().prepareHealth(indexName).setWaitForYellowStatus().execute().actionGet();
@@ -92,4 +434,341 @@ public class AbstractElasticSearchService {
         return null;
     }
 
+    /**
+     * Restrict a query to the documents matching a JSON filter. The filter is applied unscored, so elasticsearch can
+     * cache it independently of the query.
+     * 
+     * @param query the query to restrict
+     * @param filter the JSON filter or null
+     * @return the restricted query
+     */
+    protected QueryBuilder restrict(final QueryBuilder query, final String filter) {
+        if (StringUtils.isBlank(filter)) {
+            return query;
+        }
+        return QueryBuilders.filteredQuery(query, FilterBuilders.wrapperFilter(filter));
+    }
+
+    /**
+     * Count the documents matching a search without fetching any of them
+     * 
+     * @param index the index to search
+     * @param type the document type to search
+     * @param params the parameters of the search, only query and filter are used
+     * @return the number of matching documents
+     */
+    protected long countHits(final String index, final String type, final SearchParameters params)
+            throws IOException {
+        final String query = StringUtils.isBlank(params.getQuery()) ? "*:*" : params.getQuery();
+        try {
+            return this.client.prepareCount(index)
+                    .setTypes(type)
+                    .setQuery(this.restrict(QueryBuilders.queryString(query), params.getFilter()))
+                    .execute()
+                    .actionGet()
+                    .getCount();
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+    }
+
+    /**
+     * Check if any document matches a search. Each shard stops searching after the first match.
+     * 
+     * @param index the index to search
+     * @param type the document type to search
+     * @param params the parameters of the search, only query and filter are used
+     * @return true if at least one document matches
+     */
+    protected boolean hasHits(final String index, final String type, final SearchParameters params)
+            throws IOException {
+        final String query = StringUtils.isBlank(params.getQuery()) ? "*:*" : params.getQuery();
+        try {
+            return this.client.prepareSearch(index)
+                    .setTypes(type)
+                    .setQuery(this.restrict(QueryBuilders.queryString(query), params.getFilter()))
+                    .setSize(0)
+                    .setTerminateAfter(1)
+                    .execute()
+                    .actionGet()
+                    .getHits()
+                    .getTotalHits() > 0;
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+    }
+
+    /**
+     * Parse sort criteria of the form <code>field:asc</code> or <code>field:desc</code>
+     * 
+     * @param sort the sort criteria
+     * @param sortableFields the fields which may be used for sorting
+     * @return the sort order mapped by field name, in the order of the criteria
+     * @throws InvalidParameterException if a criterion references a field which may not be used for sorting
+     */
+    protected Map<String, SortOrder> parseSort(final List<String> sort, final Collection<String> sortableFields)
+            throws IOException {
+        final Map<String, SortOrder> sorts = new LinkedHashMap<>();
+        if (sort == null) {
+            return sorts;
+        }
+        for (final String criterion : sort) {
+            if (StringUtils.isBlank(criterion)) {
+                continue;
+            }
+            final String[] parts = criterion.trim().split(":");
+            if (!sortableFields.contains(parts[0])) {
+                throw new InvalidParameterException("Unable to sort by field " + parts[0]);
+            }
+            if (parts.length == 1 || "asc".equalsIgnoreCase(parts[1])) {
+                sorts.put(parts[0], SortOrder.ASC);
+            } else if ("desc".equalsIgnoreCase(parts[1])) {
+                sorts.put(parts[0], SortOrder.DESC);
+            } else {
+                throw new InvalidParameterException("Invalid sort order " + parts[1]);
+            }
+        }
+        return sorts;
+    }
+
+    /**
+     * Resolve the source fields to return for each hit of a search from the requested fields or view
+     * 
+     * @param params the parameters of the search
+     * @param summaryFields the fields returned by the summary view
+     * @param allowedFields the fields which may be requested or null if all fields may be requested
+     * @return the fields to return or null if the complete source should be returned
+     * @throws InvalidParameterException if the view is unknown or a field may not be requested
+     */
+    protected String[] resolveFields(final SearchParameters params, final List<String> summaryFields,
+            final Collection<String> allowedFields) throws IOException {
+        final List<String> fields;
+        if (params.getFields() != null && !params.getFields().isEmpty()) {
+            fields = params.getFields();
+        } else if (params.getView() == null || SearchParameters.VIEW_FULL.equals(params.getView())) {
+            return null;
+        } else if (SearchParameters.VIEW_SUMMARY.equals(params.getView())) {
+            fields = summaryFields;
+        } else {
+            throw new InvalidParameterException("Unknown view " + params.getView());
+        }
+        if (allowedFields != null) {
+            for (final String field : fields) {
+                if (!allowedFields.contains(field)) {
+                    throw new InvalidParameterException("Unable to return field " + field);
+                }
+            }
+        }
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    /**
+     * Create the sort of a search on a field. Documents without a value for the field sort as if they held the lowest
+     * value, so their position can be expressed by a continuation token.
+     * 
+     * @param field the field to sort by
+     * @param order the sort order
+     * @return the sort
+     */
+    protected FieldSortBuilder createSort(final String field, final SortOrder order) {
+        return SortBuilders.fieldSort(field)
+                .order(order)
+                .missing(order == SortOrder.ASC ? "_first" : "_last");
+    }
+
+    /**
+     * Create an opaque continuation token from the sort values of the last hit of a page. The token holds the sort
+     * criteria it has been created for, so it can not be used with a different sort.
+     * 
+     * @param sorts the sort criteria of the search, ending with {@link #CURSOR_TIEBREAKER}
+     * @param sortValues the sort values of the last hit, null for a missing value
+     * @return the continuation token
+     */
+    protected String encodeCursor(final Map<String, SortOrder> sorts, final Object[] sortValues) throws IOException {
+        final Object[] values = new Object[sortValues.length];
+        for (int i = 0; i < sortValues.length; i++) {
+            // string sort values are returned as Text objects
+            values[i] = sortValues[i] == null || sortValues[i] instanceof Number ? sortValues[i] : sortValues[i]
+                    .toString();
+        }
+        final Map<String, Object> cursor = new LinkedHashMap<>();
+        cursor.put("sort", describeSort(sorts));
+        cursor.put("values", values);
+        return Base64.getUrlEncoder().encodeToString(mapper.writeValueAsBytes(cursor));
+    }
+
+    /**
+     * Create a filter only matching documents sorting after the position marked by a continuation token. This
+     * emulates a search_after request by a range filter on the first sort field which differs from the last hit.
+     * Missing values are treated as the lowest value of a field, like {@link #createSort(String, SortOrder)} does.
+     * 
+     * @param sorts the sort criteria of the search, ending with {@link #CURSOR_TIEBREAKER}
+     * @param cursor the continuation token created by {@link #encodeCursor(Map, Object[])}
+     * @return a filter matching all documents following the last hit of the previous page
+     * @throws InvalidParameterException if the token is invalid or has been created for different sort criteria
+     */
+    protected FilterBuilder createSearchAfterFilter(final Map<String, SortOrder> sorts, final String cursor)
+            throws IOException {
+        final List<?> sort;
+        final List<?> values;
+        try {
+            final Map<?, ?> decoded = mapper.readValue(
+                    Base64.getUrlDecoder().decode(cursor.getBytes(StandardCharsets.US_ASCII)), Map.class);
+            sort = (List<?>) decoded.get("sort");
+            values = (List<?>) decoded.get("values");
+        } catch (IllegalArgumentException | ClassCastException | IOException e) {
+            throw new InvalidParameterException("Invalid cursor " + cursor);
+        }
+        if (sort == null || values == null) {
+            throw new InvalidParameterException("Invalid cursor " + cursor);
+        }
+        if (!describeSort(sorts).equals(sort) || values.size() != sorts.size()) {
+            throw new InvalidParameterException("Cursor does not match the sort criteria of the search");
+        }
+        final List<String> fields = new ArrayList<>(sorts.keySet());
+        final OrFilterBuilder after = FilterBuilders.orFilter();
+        for (int i = 0; i < fields.size(); i++) {
+            final String field = fields.get(i);
+            final Object value = values.get(i);
+            final FilterBuilder following;
+            if (sorts.get(field) == SortOrder.ASC) {
+                // every value follows a missing one
+                following = value == null ? FilterBuilders.existsFilter(field)
+                        : FilterBuilders.rangeFilter(field).gt(value);
+            } else if (value == null) {
+                // nothing follows a missing value in descending order
+                continue;
+            } else {
+                following = FilterBuilders.orFilter(FilterBuilders.rangeFilter(field).lt(value),
+                        FilterBuilders.missingFilter(field));
+            }
+            final AndFilterBuilder position = FilterBuilders.andFilter();
+            for (int j = 0; j < i; j++) {
+                position.add(values.get(j) == null ? FilterBuilders.missingFilter(fields.get(j))
+                        : FilterBuilders.termFilter(fields.get(j), values.get(j)));
+            }
+            position.add(following);
+            after.add(position);
+        }
+        return after;
+    }
+
+    private static List<String> describeSort(final Map<String, SortOrder> sorts) {
+        final List<String> description = new ArrayList<>(sorts.size());
+        for (final Map.Entry<String, SortOrder> sort : sorts.entrySet()) {
+            description.add(sort.getKey() + ":" + sort.getValue().name().toLowerCase());
+        }
+        return description;
+    }
+
+    /**
+     * Count the documents matching the query of a facet request using a search which does not fetch any hits
+     * 
+     * @param index the index to search
+     * @param type the document type to search
+     * @param params the parameters of the facet request
+     * @param termFields the index fields mapped by the facet names which may be used for terms and cardinality
+     *        facets
+     * @param dateFields the date fields which may be used for histogram facets
+     * @return the calculated facets
+     * @throws InvalidParameterException if a facet references an unsupported field or interval
+     */
+    protected FacetResult facets(final String index, final String type, final FacetParameters params,
+            final Map<String, String> termFields, final Collection<String> dateFields) throws IOException {
+        final long time = System.currentTimeMillis();
+        if (params.getSize() < 1) {
+            throw new InvalidParameterException("Invalid facet size " + params.getSize());
+        }
+        final int size = Math.min(params.getSize(),
+                Integer.parseInt(env.getProperty("escidocng.facets.maxSize", "100")));
+        final String query = StringUtils.isBlank(params.getQuery()) ? "*:*" : params.getQuery();
+        final SearchRequestBuilder search = this.client.prepareSearch(index)
+                .setTypes(type)
+                .setQuery(this.restrict(QueryBuilders.queryString(query), params.getFilter()))
+                .setSize(0);
+        for (final String name : new LinkedHashSet<>(params.getTerms())) {
+            search.addAggregation(AggregationBuilders.terms(FACET_TERMS + name)
+                    .field(this.getFacetField(name, termFields))
+                    .size(size));
+        }
+        for (final String histogram : new LinkedHashSet<>(params.getHistograms())) {
+            final String[] parts = histogram.split(":");
+            if (!dateFields.contains(parts[0])) {
+                throw new InvalidParameterException("Unable to calculate a histogram of field " + parts[0]);
+            }
+            final String interval = parts.length > 1 ? parts[1] : "month";
+            if (!HISTOGRAM_INTERVALS.contains(interval)) {
+                throw new InvalidParameterException("Invalid histogram interval " + interval);
+            }
+            search.addAggregation(AggregationBuilders.dateHistogram(FACET_HISTOGRAM + parts[0])
+                    .field(parts[0])
+                    .interval(new DateHistogram.Interval(interval)));
+        }
+        for (final String name : new LinkedHashSet<>(params.getCardinalities())) {
+            search.addAggregation(AggregationBuilders.cardinality(FACET_CARDINALITY + name)
+                    .field(this.getFacetField(name, termFields)));
+        }
+        final SearchResponse resp;
+        try {
+            resp = search.execute().actionGet();
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+
+        final FacetResult result = new FacetResult();
+        result.setTotalHits(resp.getHits().getTotalHits());
+        if (resp.getAggregations() != null) {
+            for (final Aggregation aggregation : resp.getAggregations()) {
+                if (aggregation instanceof Terms) {
+                    final Map<String, Long> counts = new LinkedHashMap<>();
+                    for (final Terms.Bucket bucket : ((Terms) aggregation).getBuckets()) {
+                        counts.put(bucket.getKey(), bucket.getDocCount());
+                    }
+                    result.getTerms().put(aggregation.getName().substring(FACET_TERMS.length()), counts);
+                } else if (aggregation instanceof DateHistogram) {
+                    final Map<String, Long> counts = new LinkedHashMap<>();
+                    for (final DateHistogram.Bucket bucket : ((DateHistogram) aggregation).getBuckets()) {
+                        counts.put(bucket.getKey(), bucket.getDocCount());
+                    }
+                    result.getHistograms().put(aggregation.getName().substring(FACET_HISTOGRAM.length()), counts);
+                } else if (aggregation instanceof Cardinality) {
+                    result.getCardinalities().put(aggregation.getName().substring(FACET_CARDINALITY.length()),
+                            ((Cardinality) aggregation).getValue());
+                }
+            }
+        }
+        result.setDuration(System.currentTimeMillis() - time);
+        return result;
+    }
+
+    private String getFacetField(final String name, final Map<String, String> termFields) throws IOException {
+        final String field = termFields.get(name);
+        if (field == null) {
+            throw new InvalidParameterException("Unable to calculate facets of field " + name);
+        }
+        return field;
+    }
+
+    /**
+     * Read the buckets of all terms aggregations of a search response
+     * 
+     * @return the document count per term, mapped by the name of the aggregation
+     */
+    protected Map<String, Map<String, Long>> readTermsAggregations(final Aggregations aggregations) {
+        final Map<String, Map<String, Long>> result = new LinkedHashMap<>();
+        if (aggregations == null) {
+            return result;
+        }
+        for (final Aggregation aggregation : aggregations) {
+            if (aggregation instanceof Terms) {
+                final Map<String, Long> counts = new LinkedHashMap<>();
+                for (final Terms.Bucket bucket : ((Terms) aggregation).getBuckets()) {
+                    counts.put(bucket.getKey(), bucket.getDocCount());
+                }
+                result.put(aggregation.getName(), counts);
+            }
+        }
+        return result;
+    }
+
 }
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.service.backend.elasticsearch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Append-only journal holding the audit records which have been accepted but not yet written to the index, one
+ * JSON document per line. The journal is split into segment files named after the journal file with a sequence
+ * number appended. A new segment is started once the current one exceeds the segment size, and a segment is
+ * removed as soon as every record appended to it has been released, so the journal stays small under sustained
+ * load. The journal is replayed on startup, and the segments written before are removed once all of their records
+ * have been released as well.
+ */
+public class AuditJournal {
+
+    private static final byte NEWLINE = '\n';
+
+    private final Path file;
+
+    private final boolean fsync;
+
+    private final long segmentSize;
+
+    /* the number of records appended to a segment which have not been released yet */
+    private final Map<Long, Integer> unreleased = new HashMap<>();
+
+    private long segment;
+
+    private FileChannel channel;
+
+    public AuditJournal(Path file, boolean fsync, long segmentSize) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.fsync = fsync;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(this.file.getParent());
+        final TreeMap<Long, Path> segments = this.listSegments();
+        this.segment = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        this.channel = this.open(this.segment);
+    }
+
+    /**
+     * Append a record to the journal.
+     * 
+     * @param record the JSON representation of the record, without line breaks
+     * @return the segment the record has been appended to, which has to be passed to {@link #release(long)} once
+     *         the record has been written
+     * @throws IOException
+     */
+    public synchronized long append(byte[] record) throws IOException {
+        if (channel.size() >= segmentSize) {
+            channel.close();
+            segment++;
+            channel = this.open(segment);
+        }
+        final ByteBuffer buf = ByteBuffer.allocate(record.length + 1);
+        buf.put(record).put(NEWLINE).flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+        unreleased.merge(segment, 1, Integer::sum);
+        return segment;
+    }
+
+    /**
+     * Release a record which has been written to the index. The segment holding the record is removed once all of
+     * its records have been released.
+     * 
+     * @param recordSegment the segment returned by {@link #append(byte[])}
+     * @throws IOException
+     */
+    public synchronized void release(long recordSegment) throws IOException {
+        final Integer count = unreleased.get(recordSegment);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            unreleased.put(recordSegment, count - 1);
+            return;
+        }
+        unreleased.remove(recordSegment);
+        if (recordSegment == segment) {
+            channel.truncate(0);
+            if (fsync) {
+                channel.force(false);
+            }
+        } else {
+            Files.deleteIfExists(this.segmentPath(recordSegment));
+        }
+    }
+
+    /**
+     * Read all records of the journal. A line which was only partially written before a crash is skipped.
+     * 
+     * @return the records in the order they were appended
+     * @throws IOException
+     */
+    public synchronized List<String> readAll() throws IOException {
+        final List<String> records = new ArrayList<>();
+        for (final Path path : this.listSegments().values()) {
+            records.addAll(readSegment(path));
+        }
+        return records;
+    }
+
+    /**
+     * Read the records of the segments written before this journal was opened. The records stay in their segments
+     * until they are released like appended records, so they are not lost if the process stops before they have
+     * been written. Segments without a complete record are removed right away.
+     * 
+     * @return the records in the order they were appended
+     * @throws IOException
+     */
+    public synchronized List<Entry> recover() throws IOException {
+        final List<Entry> entries = new ArrayList<>();
+        for (final Map.Entry<Long, Path> old : this.listSegments().entrySet()) {
+            if (old.getKey() == segment || unreleased.containsKey(old.getKey())) {
+                continue;
+            }
+            final List<String> records = readSegment(old.getValue());
+            if (records.isEmpty()) {
+                Files.deleteIfExists(old.getValue());
+                continue;
+            }
+            unreleased.put(old.getKey(), records.size());
+            for (final String record : records) {
+                entries.add(new Entry(old.getKey(), record));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Remove all records from the journal.
+     * 
+     * @throws IOException
+     */
+    public synchronized void truncate() throws IOException {
+        for (final Map.Entry<Long, Path> old : this.listSegments().entrySet()) {
+            if (old.getKey() != segment) {
+                Files.deleteIfExists(old.getValue());
+            }
+        }
+        channel.truncate(0);
+        if (fsync) {
+            channel.force(false);
+        }
+        unreleased.clear();
+    }
+
+    public synchronized long size() throws IOException {
+        long size = 0;
+        for (final Path path : this.listSegments().values()) {
+            size += Files.size(path);
+        }
+        return size;
+    }
+
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private FileChannel open(long number) throws IOException {
+        return FileChannel.open(this.segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private Path segmentPath(long number) {
+        // the journal file of an earlier version is listed as segment -1
+        return number < 0 ? file : file.resolveSibling(file.getFileName() + "." + number);
+    }
+
+    private static List<String> readSegment(Path path) throws IOException {
+        final List<String> records = new ArrayList<>();
+        final byte[] data = Files.readAllBytes(path);
+        int start = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == NEWLINE) {
+                if (i > start) {
+                    records.add(new String(data, start, i - start, StandardCharsets.UTF_8));
+                }
+                start = i + 1;
+            }
+        }
+        // bytes after the last line break belong to a record which was cut off
+        return records;
+    }
+
+    /**
+     * A record read from the journal together with the segment it has to be released from
+     */
+    public static final class Entry {
+
+        private final long segment;
+
+        private final String record;
+
+        private Entry(long segment, String record) {
+            this.segment = segment;
+            this.record = record;
+        }
+
+        public long getSegment() {
+            return segment;
+        }
+
+        public String getRecord() {
+            return record;
+        }
+    }
+
+    /**
+     * List the segment files of the journal by their sequence numbers. A journal file without a sequence number has
+     * been written by an earlier version and is listed first.
+     */
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        final TreeMap<Long, Path> segments = new TreeMap<>();
+        if (Files.exists(file)) {
+            segments.put(-1L, file);
+        }
+        final String prefix = file.getFileName() + ".";
+        try (final DirectoryStream<Path> paths = Files.newDirectoryStream(file.getParent(), prefix + "*")) {
+            for (final Path path : paths) {
+                try {
+                    segments.put(Long.parseLong(path.getFileName().toString().substring(prefix.length())), path);
+                } catch (NumberFormatException e) {
+                    // not a segment of this journal
+                }
+            }
+        }
+        return segments;
+    }
+}
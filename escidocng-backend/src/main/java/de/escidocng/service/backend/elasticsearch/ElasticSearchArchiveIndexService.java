@@ -19,6 +19,9 @@ package de.escidocng.service.backend.elasticsearch;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -29,18 +32,30 @@ import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.QueryStringQueryBuilder;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import de.escidocng.model.Archive;
+import de.escidocng.model.ArchiveFixity;
 import de.escidocng.model.EntityHierarchy;
+import de.escidocng.model.FacetParameters;
+import de.escidocng.model.FacetResult;
+import de.escidocng.model.SearchParameters;
 import de.escidocng.model.SearchResult;
+import de.escidocng.model.SearchTimings;
 import de.escidocng.service.backend.BackendArchiveIndexService;
 import de.escidocng.service.backend.elasticsearch.ElasticSearchEntityService.EntitiesSearchField;
 
@@ -53,11 +68,53 @@ public class ElasticSearchArchiveIndexService extends AbstractElasticSearchServi
 
     public static final String INDEX_ARCHIVE_TYPE = "archive";
 
+    private static final List<String> SORTABLE_FIELDS = Arrays.asList(
+            ArchivesSearchField.ID.getFieldName(),
+            ArchivesSearchField.VERSION.getFieldName(),
+            ArchivesSearchField.CONTENT_MODEL.getFieldName(),
+            ArchivesSearchField.CREATOR.getFieldName(),
+            ArchivesSearchField.STATE.getFieldName(),
+            ArchivesSearchField.LEVEL1.getFieldName(),
+            ArchivesSearchField.LEVEL2.getFieldName(),
+            ArchivesSearchField.CREATED_DATE.getFieldName());
+
+    private static final List<String> SUMMARY_FIELDS = Arrays.asList(
+            ArchivesSearchField.ID.getFieldName(),
+            ArchivesSearchField.VERSION.getFieldName(),
+            ArchivesSearchField.CONTENT_MODEL.getFieldName(),
+            ArchivesSearchField.STATE.getFieldName(),
+            ArchivesSearchField.CREATED_DATE.getFieldName(),
+            "baseVersion");
+
+    private static final ArchivesSearchField[] AGGREGATION_FIELDS = new ArchivesSearchField[] {
+            ArchivesSearchField.STATE,
+            ArchivesSearchField.CONTENT_MODEL,
+            ArchivesSearchField.CREATOR,
+            ArchivesSearchField.LEVEL1 };
+
+    private static final int AGGREGATION_SIZE = 50;
+
+    private static final Map<String, String> FACET_FIELDS = new LinkedHashMap<>();
+    static {
+        for (final ArchivesSearchField field : Arrays.asList(ArchivesSearchField.ID, ArchivesSearchField.CONTENT_MODEL,
+                ArchivesSearchField.CREATOR, ArchivesSearchField.STATE, ArchivesSearchField.LEVEL1,
+                ArchivesSearchField.LEVEL2, ArchivesSearchField.FIXITY_VALID)) {
+            FACET_FIELDS.put(field.getFieldName(), field.getFieldName());
+        }
+    }
+
+    private static final List<String> DATE_FIELDS = Arrays.asList(ArchivesSearchField.CREATED_DATE.getFieldName(),
+            ArchivesSearchField.FIXITY_CHECKED.getFieldName());
+
     @Autowired
     private Client client;
 
     @PostConstruct
     public void init() throws IOException {
+        // an archives index created without the mappings of archives.json has analyzed fields, so the term filters
+        // restricting the archives a user may see would not match
+        this.upgradeIndex(INDEX_ARCHIVES, index -> this.isNotAnalyzed(index, INDEX_ARCHIVE_TYPE,
+                ArchivesSearchField.STATE.getFieldName()));
         this.checkAndOrCreateIndex(INDEX_ARCHIVES);
         this.waitForIndex(INDEX_ARCHIVES);
     }
@@ -104,42 +161,190 @@ public class ElasticSearchArchiveIndexService extends AbstractElasticSearchServi
                 .isExists();
     }
 
+    @Override
+    public Archive retrieveLatestBefore(final String id, final int version) throws IOException {
+        final SearchResponse resp;
+        try {
+            resp = this.client.prepareSearch(INDEX_ARCHIVES)
+                    .setTypes(INDEX_ARCHIVE_TYPE)
+                    .setQuery(QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(),
+                            FilterBuilders.andFilter(
+                                    FilterBuilders.termFilter(ArchivesSearchField.ID.getFieldName(), id),
+                                    FilterBuilders.rangeFilter(ArchivesSearchField.VERSION.getFieldName())
+                                            .lt(version))))
+                    .addSort(ArchivesSearchField.VERSION.getFieldName(), SortOrder.DESC)
+                    .setSize(1)
+                    .execute()
+                    .actionGet();
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+        if (resp.getHits().getHits().length == 0) {
+            return null;
+        }
+        return mapper.readValue(resp.getHits().getAt(0).getSourceAsString(), Archive.class);
+    }
+
     @Override
     public SearchResult searchArchives(String query, int offset, int maxRecords)
             throws IOException {
+        return this.searchArchives(new SearchParameters(query, offset, maxRecords));
+    }
+
+    @Override
+    public SearchResult searchArchives(final SearchParameters params) throws IOException {
         final long time = System.currentTimeMillis();
+        final SearchTimings timings = new SearchTimings();
         final SearchResponse resp;
+        String query = params.getQuery();
         if (StringUtils.isBlank(query)) {
             query = "*:*";
         }
-        QueryStringQueryBuilder builder = QueryBuilders.queryString(query);
+        final QueryStringQueryBuilder builder = QueryBuilders.queryString(query);
+        final Map<String, SortOrder> sorts = this.parseSort(params.getSort(), SORTABLE_FIELDS);
+        final String[] fields = this.resolveFields(params, SUMMARY_FIELDS, null);
+        final boolean cursorMode = params.getCursor() != null;
+        QueryBuilder searchQuery = this.restrict(builder, params.getFilter());
+        if (cursorMode) {
+            sorts.put(CURSOR_TIEBREAKER, SortOrder.ASC);
+            if (!SearchParameters.CURSOR_START.equals(params.getCursor())) {
+                searchQuery = QueryBuilders.filteredQuery(searchQuery,
+                        this.createSearchAfterFilter(sorts, params.getCursor()));
+            }
+        }
         try {
-            resp =
-                    this.client.prepareSearch(INDEX_ARCHIVES).setQuery(builder).execute()
-                            .actionGet();
+            final SearchRequestBuilder search = this.client.prepareSearch(INDEX_ARCHIVES)
+                    .setTypes(INDEX_ARCHIVE_TYPE)
+                    .setQuery(searchQuery)
+                    .setSize(params.getMaxRecords());
+            if (!cursorMode) {
+                search.setFrom(params.getOffset());
+            }
+            for (final Map.Entry<String, SortOrder> sort : sorts.entrySet()) {
+                search.addSort(this.createSort(sort.getKey(), sort.getValue()));
+            }
+            if (fields != null) {
+                search.setFetchSource(fields, null);
+            }
+            if (params.isAggregations()) {
+                for (final ArchivesSearchField field : AGGREGATION_FIELDS) {
+                    search.addAggregation(AggregationBuilders.terms(field.getFieldName())
+                            .field(field.getFieldName())
+                            .size(AGGREGATION_SIZE));
+                }
+            }
+            final long searchTime = System.currentTimeMillis();
+            resp = search.execute().actionGet();
+            timings.setSearch(System.currentTimeMillis() - searchTime);
+            timings.setTook(resp.getTookInMillis());
         } catch (ElasticsearchException ex) {
             throw new IOException(ex.getMostSpecificCause().getMessage());
         }
 
         final SearchResult result = new SearchResult();
 
+        final long deserializeTime = System.currentTimeMillis();
+        final List<Object> archives = new ArrayList<>();
+        for (final SearchHit hit : resp.getHits()) {
+            if (fields != null) {
+                archives.add(hit.getSource());
+            } else {
+                archives.add(mapper.readValue(hit.getSourceAsString(), Archive.class));
+            }
+        }
+        timings.setDeserialize(System.currentTimeMillis() - deserializeTime);
+        final SearchHit[] hits = resp.getHits().getHits();
+        if (cursorMode && hits.length > 0 && hits.length == params.getMaxRecords()) {
+            result.setScrollId(this.encodeCursor(sorts, hits[hits.length - 1].getSortValues()));
+        }
+        if (params.isAggregations()) {
+            result.setAggregations(this.readTermsAggregations(resp.getAggregations()));
+        }
+        result.setData(archives);
+        result.setTotalHits(resp.getHits().getTotalHits());
+        result.setMaxRecords(params.getMaxRecords());
+        result.setHits(archives.size());
+        result.setNumRecords(archives.size());
+        result.setTerm(new String(builder.buildAsBytes().toBytes()));
+        result.setOffset(params.getOffset());
+        result.setNextOffset(params.getOffset() + params.getMaxRecords());
+        result.setPrevOffset(Math.max(params.getOffset() - params.getMaxRecords(), 0));
+        result.setDuration(System.currentTimeMillis() - time);
+        timings.setTotal(result.getDuration());
+        result.setTimings(timings);
+        return result;
+    }
+
+    @Override
+    public long countArchives(final SearchParameters params) throws IOException {
+        return this.countHits(INDEX_ARCHIVES, INDEX_ARCHIVE_TYPE, params);
+    }
+
+    @Override
+    public boolean existsArchives(final SearchParameters params) throws IOException {
+        return this.hasHits(INDEX_ARCHIVES, INDEX_ARCHIVE_TYPE, params);
+    }
+
+    @Override
+    public FacetResult facets(final FacetParameters params) throws IOException {
+        return this.facets(INDEX_ARCHIVES, INDEX_ARCHIVE_TYPE, params, FACET_FIELDS, DATE_FIELDS);
+    }
+
+    @Override
+    public SearchResult scanArchives(final String scrollId, final int batchSize) throws IOException {
+        final long time = System.currentTimeMillis();
+        final TimeValue keepAlive = TimeValue.timeValueMinutes(10);
+        final SearchResponse resp;
+        try {
+            String currentScrollId = scrollId;
+            if (currentScrollId == null) {
+                // a scan request only returns a scroll id without any hits
+                currentScrollId = this.client.prepareSearch(INDEX_ARCHIVES)
+                        .setTypes(INDEX_ARCHIVE_TYPE)
+                        .setSearchType(SearchType.SCAN)
+                        .setScroll(keepAlive)
+                        .setQuery(QueryBuilders.matchAllQuery())
+                        .setSize(batchSize)
+                        .execute()
+                        .actionGet()
+                        .getScrollId();
+            }
+            resp = this.client.prepareSearchScroll(currentScrollId)
+                    .setScroll(keepAlive)
+                    .execute()
+                    .actionGet();
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+
+        final SearchResult result = new SearchResult();
         final List<Archive> archives = new ArrayList<>();
         for (final SearchHit hit : resp.getHits()) {
             archives.add(mapper.readValue(hit.getSourceAsString(), Archive.class));
         }
         result.setData(archives);
         result.setTotalHits(resp.getHits().getTotalHits());
-        result.setMaxRecords(maxRecords);
+        result.setMaxRecords(batchSize);
         result.setHits(archives.size());
         result.setNumRecords(archives.size());
-        result.setTerm(new String(builder.buildAsBytes().toBytes()));
-        result.setOffset(offset);
-        result.setNextOffset(offset + maxRecords);
-        result.setPrevOffset(Math.max(offset - maxRecords, 0));
+        result.setScrollId(resp.getScrollId());
         result.setDuration(System.currentTimeMillis() - time);
         return result;
     }
 
+    @Override
+    public void updateFixity(final String entityId, final int version, final ArchiveFixity fixity)
+            throws IOException {
+        try {
+            this.client.prepareUpdate(INDEX_ARCHIVES, INDEX_ARCHIVE_TYPE, entityId + "_v" + version)
+                    .setDoc(this.mapper.writeValueAsBytes(Collections.singletonMap("fixity", fixity)))
+                    .execute()
+                    .actionGet();
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+    }
+
     /**
      * Holds enabled search-fields in archives-index.
      * 
@@ -153,6 +358,9 @@ public class ElasticSearchArchiveIndexService extends AbstractElasticSearchServi
         STATE("state"),
         LEVEL1("level1"),
         LEVEL2("level2"),
+        CREATED_DATE("createdDate"),
+        FIXITY_VALID("fixity.valid"),
+        FIXITY_CHECKED("fixity.checkedDate"),
         ALL("_all");
 
         private final String searchFieldName;
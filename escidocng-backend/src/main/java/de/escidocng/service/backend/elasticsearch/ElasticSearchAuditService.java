@@ -17,20 +17,50 @@
 package de.escidocng.service.backend.elasticsearch;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
-import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.AndFilterBuilder;
 import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeFilterBuilder;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.sort.SortOrder;
@@ -40,11 +70,23 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import de.escidocng.model.AuditRecord;
 import de.escidocng.model.AuditRecords;
+import de.escidocng.model.AuditSearchParameters;
+import de.escidocng.model.FacetParameters;
+import de.escidocng.model.FacetResult;
+import de.escidocng.model.SearchParameters;
+import de.escidocng.model.SearchResult;
+import de.escidocng.model.state.AuditQueueState;
 import de.escidocng.service.backend.BackendAuditService;
 
 /**
  * Implementation of an {@link de.escidocng.service.backend.BackendAuditService} built on top of
- * ElasticSearch
+ * ElasticSearch.<br>
+ * Unless escidocng.audit.async is false, new records are appended to an {@link AuditJournal} and put into a bounded
+ * queue, from which a background thread writes them to the index with bulk requests. Reading or deleting audit
+ * records waits until the records queued before have been written.<br>
+ * Records are written to time partitioned indices (audit-yyyy.MM or audit-yyyy.MM.dd) which are all members of the
+ * alias audit-all. Reads go to the alias, and partitions older than escidocng.audit.retention.days are dropped as a
+ * whole. A pre-existing unpartitioned audit index is added to the alias and never dropped.
  */
 public class ElasticSearchAuditService extends AbstractElasticSearchService implements BackendAuditService {
 
@@ -52,36 +94,171 @@ public class ElasticSearchAuditService extends AbstractElasticSearchService impl
 
     public static final String INDEX_AUDIT_TYPE = "audit";
 
+    public static final String ALIAS_AUDIT = "audit-all";
+
+    public static final String PARTITION_PREFIX = "audit-";
+
     public static final String ENTITY_ID_FIELD = "entityId";
 
     private static final Logger log = Logger.getLogger(ElasticSearchAuditService.class);
 
+    private static final Map<String, String> FACET_FIELDS = new LinkedHashMap<>();
+    static {
+        for (final String field : Arrays.asList(ENTITY_ID_FIELD, "level2Id", "agentName", "action")) {
+            FACET_FIELDS.put(field, field);
+        }
+    }
+
+    private static final String TIMESTAMP_FIELD = "timestamp";
+
+    private static final List<String> DATE_FIELDS = Arrays.asList(TIMESTAMP_FIELD);
+
+    private static final List<String> SORTABLE_FIELDS = Arrays.asList(ENTITY_ID_FIELD, "level2Id", "agentName",
+            "action", TIMESTAMP_FIELD);
+
+    private static final List<String> SUMMARY_FIELDS = Arrays.asList("id", ENTITY_ID_FIELD, "agentName", "action",
+            TIMESTAMP_FIELD);
+
+    /**
+     * time a scroll context of an export is kept open between two batches
+     */
+    private static final TimeValue EXPORT_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
+    /* random per process, keeps ids of records created on different nodes in the same millisecond apart */
+    private static final String NODE_ID = String.format("%08x", new SecureRandom().nextInt());
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private static final DateTimeFormatter MONTHLY = DateTimeFormatter.ofPattern("yyyy.MM");
+
+    private static final DateTimeFormatter DAILY = DateTimeFormatter.ofPattern("yyyy.MM.dd");
+
     private int maxRecords = 50;
 
     @Autowired
     private ObjectMapper mapper;
 
+    private boolean async;
+
+    private DateTimeFormatter partitionFormat = MONTHLY;
+
+    private int retentionDays;
+
+    private final Set<String> partitions = ConcurrentHashMap.newKeySet();
+
+    private int batchSize;
+
+    private long flushInterval;
+
+    private long readTimeout;
+
+    private int maxRetries;
+
+    private BlockingQueue<PendingRecord> queue;
+
+    private AuditJournal journal;
+
+    private ExecutorService flusher;
+
+    private final AtomicLong enqueued = new AtomicLong();
+
+    private final AtomicLong flushed = new AtomicLong();
+
+    private final AtomicLong failedFlushes = new AtomicLong();
+
+    /* creation time of the oldest record currently being written, 0 if none */
+    private volatile long oldestInFlight;
+
+    private final Object flushMonitor = new Object();
+
     @PostConstruct
     public void init() throws IOException {
         log.debug("initialising ElasticSearchAuditService");
-        this.checkAndOrCreateIndex(INDEX_AUDIT);
-        this.waitForIndex(INDEX_AUDIT);
+        this.partitionFormat =
+                "day".equals(env.getProperty("escidocng.audit.partition.period", "month")) ? DAILY : MONTHLY;
+        this.retentionDays = Integer.parseInt(env.getProperty("escidocng.audit.retention.days", "0"));
+        if (this.indexExists(INDEX_AUDIT)) {
+            // keep the records of the unpartitioned index searchable
+            log.info("Adding the existing index " + INDEX_AUDIT + " to the alias " + ALIAS_AUDIT);
+            this.addToAlias(INDEX_AUDIT);
+        }
+        this.ensurePartition(partitionFor(System.currentTimeMillis()));
+        this.maxRecords = Integer.parseInt(env.getProperty("escidocng.audit.maxRecords", "50"));
+        this.async = Boolean.parseBoolean(env.getProperty("escidocng.audit.async", "true"));
+        if (!async) {
+            return;
+        }
+        this.queue = new ArrayBlockingQueue<>(Integer.parseInt(env.getProperty("escidocng.audit.queue.capacity",
+                "10000")));
+        this.batchSize = Integer.parseInt(env.getProperty("escidocng.audit.flush.batchSize", "500"));
+        this.flushInterval = Long.parseLong(env.getProperty("escidocng.audit.flush.interval", "200"));
+        this.readTimeout = Long.parseLong(env.getProperty("escidocng.audit.read.timeout", "10000"));
+        this.maxRetries = Integer.parseInt(env.getProperty("escidocng.audit.flush.maxRetries", "10"));
+        this.journal = new AuditJournal(Paths.get(env.getProperty("escidocng.audit.journal.path",
+                System.getProperty("java.io.tmpdir") + "/escidocng-audit.journal")),
+                Boolean.parseBoolean(env.getProperty("escidocng.audit.journal.fsync", "false")),
+                Long.parseLong(env.getProperty("escidocng.audit.journal.segmentSize", "16777216")));
+        this.flusher = Executors.newSingleThreadExecutor(r -> {
+            final Thread t = new Thread(r, "audit-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        this.flusher.execute(this::flushLoop);
+
+        // queue the records which had not been written before the last shutdown, they stay in the segments of the
+        // journal they have been read from until they are written
+        final List<AuditJournal.Entry> unwritten = journal.recover();
+        if (!unwritten.isEmpty()) {
+            log.info("Replaying " + unwritten.size() + " audit records from the journal");
+        }
+        for (final AuditJournal.Entry entry : unwritten) {
+            final AuditRecord rec;
+            try {
+                rec = mapper.readValue(entry.getRecord(), AuditRecord.class);
+            } catch (IOException e) {
+                log.warn("Skipping unreadable audit record in the journal: " + e.getMessage());
+                journal.release(entry.getSegment());
+                continue;
+            }
+            final PendingRecord pending =
+                    new PendingRecord(rec.getId(), entry.getRecord().getBytes(StandardCharsets.UTF_8));
+            pending.segment = entry.getSegment();
+            try {
+                // wait for the flusher instead of writing synchronously if there are more records than fit the queue
+                queue.put(pending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while replaying the audit journal");
+            }
+            enqueued.incrementAndGet();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+        if (flusher != null) {
+            // records still queued stay in the journal and are replayed on the next start
+            flusher.shutdownNow();
+            journal.close();
+        }
     }
 
     @Override
     public AuditRecords retrieve(String entityId, int offset, int numRecords) throws IOException {
         numRecords = numRecords > maxRecords ? maxRecords : numRecords;
+        awaitFlushed();
         final SearchResponse resp;
         try {
             resp =
                     this.client
-                            .prepareSearch(INDEX_AUDIT)
+                            .prepareSearch(ALIAS_AUDIT)
                             .setQuery(
                                     QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(),
                                             FilterBuilders
                                                     .termFilter(ENTITY_ID_FIELD, entityId)))
-                            .setSearchType(SearchType.DFS_QUERY_THEN_FETCH).setFrom(offset).setSize(numRecords)
-                            .addSort(SortBuilders.fieldSort("timestamp").ignoreUnmapped(true).order(SortOrder.ASC))
+                            .setFrom(offset).setSize(numRecords)
+                            .addSort(SortBuilders.fieldSort(TIMESTAMP_FIELD).ignoreUnmapped(true).order(SortOrder.ASC))
+                            .addSort(SortBuilders.fieldSort(CURSOR_TIEBREAKER).order(SortOrder.ASC))
                             .execute().actionGet();
         } catch (ElasticsearchException ex) {
             throw new IOException(ex.getMostSpecificCause().getMessage());
@@ -95,45 +272,516 @@ public class ElasticSearchAuditService extends AbstractElasticSearchService impl
         return new AuditRecords(records);
     }
 
+    @Override
+    public AuditRecords retrieve(String entityId, String cursor, int numRecords) throws IOException {
+        final AuditSearchParameters params = new AuditSearchParameters(null, 0, numRecords);
+        params.setEntityId(entityId);
+        params.setCursor(cursor == null ? SearchParameters.CURSOR_START : cursor);
+        final SearchResult result = this.search(params);
+        final List<AuditRecord> records = new ArrayList<>(result.getData().size());
+        for (final Object rec : result.getData()) {
+            records.add((AuditRecord) rec);
+        }
+        final AuditRecords page = new AuditRecords(records);
+        page.setCursor(result.getScrollId());
+        return page;
+    }
+
+    @Override
+    public SearchResult search(final AuditSearchParameters params) throws IOException {
+        final long time = System.currentTimeMillis();
+        final int numRecords = params.getMaxRecords() > 0 && params.getMaxRecords() < maxRecords
+                ? params.getMaxRecords() : maxRecords;
+        final Map<String, SortOrder> sorts = this.parseSort(params.getSort(), SORTABLE_FIELDS);
+        if (sorts.isEmpty()) {
+            sorts.put(TIMESTAMP_FIELD, SortOrder.ASC);
+        }
+        final String[] fields = this.resolveFields(params, SUMMARY_FIELDS, null);
+        final boolean cursorMode = params.getCursor() != null;
+        QueryBuilder searchQuery = this.createQuery(params);
+        if (cursorMode) {
+            sorts.put(CURSOR_TIEBREAKER, SortOrder.ASC);
+            if (!SearchParameters.CURSOR_START.equals(params.getCursor())) {
+                searchQuery = QueryBuilders.filteredQuery(searchQuery,
+                        this.createSearchAfterFilter(sorts, params.getCursor()));
+            }
+        }
+        awaitFlushed();
+        final SearchResponse resp;
+        try {
+            final SearchRequestBuilder search = this.client.prepareSearch(ALIAS_AUDIT)
+                    .setTypes(INDEX_AUDIT_TYPE)
+                    .setQuery(searchQuery)
+                    .setSize(numRecords);
+            if (!cursorMode) {
+                search.setFrom(params.getOffset());
+            }
+            for (final Map.Entry<String, SortOrder> sort : sorts.entrySet()) {
+                search.addSort(this.createSort(sort.getKey(), sort.getValue()));
+            }
+            if (fields != null) {
+                search.setFetchSource(fields, null);
+            }
+            resp = search.execute().actionGet();
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+
+        final List<Object> records = new ArrayList<>();
+        for (final SearchHit hit : resp.getHits()) {
+            if (fields != null) {
+                records.add(hit.getSource());
+            } else {
+                records.add(mapper.readValue(hit.getSourceAsString(), AuditRecord.class));
+            }
+        }
+        final SearchResult result = new SearchResult();
+        final SearchHit[] hits = resp.getHits().getHits();
+        if (cursorMode && hits.length > 0 && hits.length == numRecords) {
+            result.setScrollId(this.encodeCursor(sorts, hits[hits.length - 1].getSortValues()));
+        }
+        result.setData(records);
+        result.setTotalHits(resp.getHits().getTotalHits());
+        result.setMaxRecords(numRecords);
+        result.setHits(records.size());
+        result.setNumRecords(records.size());
+        result.setTerm(params.getQuery());
+        result.setOffset(params.getOffset());
+        result.setNextOffset(params.getOffset() + numRecords);
+        result.setPrevOffset(Math.max(params.getOffset() - numRecords, 0));
+        result.setDuration(System.currentTimeMillis() - time);
+        return result;
+    }
+
+    @Override
+    public long export(final AuditSearchParameters params, final OutputStream sink) throws IOException {
+        final String[] fields = this.resolveFields(params, SUMMARY_FIELDS, null);
+        // capped like the pages of a search, so a single batch does not have to be held in memory at once
+        final int batchSize = params.getMaxRecords() > 0 && params.getMaxRecords() < this.maxRecords
+                ? params.getMaxRecords() : this.maxRecords;
+        awaitFlushed();
+        long count = 0;
+        String scrollId = null;
+        try {
+            // a sorted scroll instead of a scan, so the audit trail is exported in chronological order
+            final SearchRequestBuilder search = this.client.prepareSearch(ALIAS_AUDIT)
+                    .setTypes(INDEX_AUDIT_TYPE)
+                    .setScroll(EXPORT_KEEP_ALIVE)
+                    .setQuery(this.createQuery(params))
+                    .addSort(SortBuilders.fieldSort(TIMESTAMP_FIELD).order(SortOrder.ASC))
+                    .addSort(SortBuilders.fieldSort(CURSOR_TIEBREAKER).order(SortOrder.ASC))
+                    .setSize(batchSize);
+            if (fields != null) {
+                search.setFetchSource(fields, null);
+            }
+            SearchResponse resp = search.execute().actionGet();
+            while (true) {
+                scrollId = resp.getScrollId();
+                if (resp.getHits().getHits().length == 0) {
+                    break;
+                }
+                for (final SearchHit hit : resp.getHits()) {
+                    hit.getSourceRef().writeTo(sink);
+                    sink.write('\n');
+                    count++;
+                }
+                // hand the batch to the client before fetching the next one, so a slow client throttles the scroll
+                sink.flush();
+                resp = this.client.prepareSearchScroll(scrollId)
+                        .setScroll(EXPORT_KEEP_ALIVE)
+                        .execute()
+                        .actionGet();
+            }
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        } finally {
+            if (scrollId != null) {
+                try {
+                    this.client.prepareClearScroll().addScrollId(scrollId).execute();
+                } catch (ElasticsearchException ex) {
+                    log.warn("Unable to clear scroll: " + ex.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+        log.debug("Exported " + count + " audit records");
+        return count;
+    }
+
+    /**
+     * Create the query of an audit search. Entity, agent, action and time range are applied as unscored filters.
+     */
+    private QueryBuilder createQuery(final AuditSearchParameters params) {
+        final String query = StringUtils.isBlank(params.getQuery()) ? "*:*" : params.getQuery();
+        final QueryBuilder builder = this.restrict(QueryBuilders.queryString(query), params.getFilter());
+        final AndFilterBuilder filter = FilterBuilders.andFilter();
+        boolean filtered = false;
+        if (StringUtils.isNotBlank(params.getEntityId())) {
+            filter.add(FilterBuilders.termFilter(ENTITY_ID_FIELD, params.getEntityId()));
+            filtered = true;
+        }
+        if (StringUtils.isNotBlank(params.getAgentName())) {
+            filter.add(FilterBuilders.termFilter("agentName", params.getAgentName()));
+            filtered = true;
+        }
+        if (StringUtils.isNotBlank(params.getAction())) {
+            filter.add(FilterBuilders.termFilter("action", params.getAction()));
+            filtered = true;
+        }
+        if (StringUtils.isNotBlank(params.getFrom()) || StringUtils.isNotBlank(params.getTo())) {
+            final RangeFilterBuilder range = FilterBuilders.rangeFilter(TIMESTAMP_FIELD);
+            if (StringUtils.isNotBlank(params.getFrom())) {
+                range.gte(params.getFrom());
+            }
+            if (StringUtils.isNotBlank(params.getTo())) {
+                range.lt(params.getTo());
+            }
+            filter.add(range);
+            filtered = true;
+        }
+        return filtered ? QueryBuilders.filteredQuery(builder, filter) : builder;
+    }
+
     @Override
     public String create(AuditRecord rec) throws IOException {
-        String id;
-        do {
-            id = RandomStringUtils.randomAlphabetic(16);
-        } while (this.exists(id));
+        final String id = nextId();
         rec.setId(id);
         rec.setTimestamp(ZonedDateTime.now(ZoneOffset.UTC).toString());
+        final byte[] source = mapper.writeValueAsBytes(rec);
+        if (async) {
+            submit(new PendingRecord(id, source));
+            return id;
+        }
+        final String index = partitionOf(id);
+        ensurePartition(index);
         try {
             this.client
-                    .prepareIndex(INDEX_AUDIT, INDEX_AUDIT_TYPE, id).setSource(mapper.writeValueAsBytes(rec))
+                    .prepareIndex(index, INDEX_AUDIT_TYPE, id).setSource(source)
+                    .setRefresh(true)
                     .execute()
                     .actionGet();
         } catch (ElasticsearchException ex) {
             throw new IOException(ex.getMostSpecificCause().getMessage());
         }
-        refreshIndex(INDEX_AUDIT);
         return id;
     }
 
     @Override
     public void deleteAll(String entityId) throws IOException {
         log.debug("deleting all audit-records for entity " + entityId);
+        awaitFlushed();
         try {
-            client.prepareDeleteByQuery(INDEX_AUDIT).setQuery(
+            client.prepareDeleteByQuery(ALIAS_AUDIT).setQuery(
                     QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(),
                             FilterBuilders
                                     .termFilter(ENTITY_ID_FIELD, entityId))).execute().actionGet();
-            refreshIndex(INDEX_AUDIT);
+            refreshIndex(ALIAS_AUDIT);
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+    }
+
+    @Override
+    public long countAuditRecords(final SearchParameters params) throws IOException {
+        awaitFlushed();
+        return this.countHits(ALIAS_AUDIT, INDEX_AUDIT_TYPE, params);
+    }
+
+    @Override
+    public boolean existsAuditRecords(final SearchParameters params) throws IOException {
+        awaitFlushed();
+        return this.hasHits(ALIAS_AUDIT, INDEX_AUDIT_TYPE, params);
+    }
+
+    @Override
+    public FacetResult facets(FacetParameters params) throws IOException {
+        awaitFlushed();
+        return this.facets(ALIAS_AUDIT, INDEX_AUDIT_TYPE, params, FACET_FIELDS, DATE_FIELDS);
+    }
+
+    @Override
+    public AuditQueueState status() throws IOException {
+        final AuditQueueState state = new AuditQueueState();
+        state.setAsync(async);
+        if (!async) {
+            return state;
+        }
+        state.setDepth(queue.size());
+        state.setCapacity(queue.size() + queue.remainingCapacity());
+        state.setEnqueued(enqueued.get());
+        state.setFlushed(flushed.get());
+        state.setFailedFlushes(failedFlushes.get());
+        long oldest = oldestInFlight;
+        if (oldest == 0) {
+            final PendingRecord head = queue.peek();
+            oldest = head == null ? 0 : head.created;
+        }
+        state.setFlushLag(oldest == 0 ? 0 : System.currentTimeMillis() - oldest);
+        state.setJournalSize(journal.size());
+        return state;
+    }
+
+    /**
+     * Create an id which sorts by creation time and does not collide with ids created concurrently, so no lookup
+     * is necessary: the creation time in millis, the node id and a sequence number, all hex encoded.
+     * 
+     * @return the id
+     */
+    private static String nextId() {
+        return String.format("%012x%s%06x", System.currentTimeMillis(), NODE_ID,
+                SEQUENCE.getAndIncrement() & 0xffffff);
+    }
+
+    private String partitionFor(long millis) {
+        return PARTITION_PREFIX + partitionFormat.format(Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC));
+    }
+
+    /**
+     * Get the partition of a record from the creation time encoded in its id.
+     */
+    private String partitionOf(String id) {
+        try {
+            return partitionFor(Long.parseLong(id.substring(0, 12), 16));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return partitionFor(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Create a partition and add it to the alias unless this has been done before. Creating a new partition drops
+     * the expired ones.
+     */
+    private void ensurePartition(String index) throws IOException {
+        if (partitions.contains(index)) {
+            return;
+        }
+        synchronized (partitions) {
+            if (partitions.contains(index)) {
+                return;
+            }
+            this.checkAndOrCreateIndex(index, INDEX_AUDIT);
+            this.waitForIndex(index);
+            this.addToAlias(index);
+            partitions.add(index);
+        }
+        this.dropExpiredPartitions();
+    }
+
+    private void addToAlias(String index) throws IOException {
+        try {
+            this.client.admin().indices().prepareAliases().addAlias(index, ALIAS_AUDIT).execute().actionGet();
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+    }
+
+    /**
+     * Delete the partitions which ended more than escidocng.audit.retention.days ago.
+     */
+    private void dropExpiredPartitions() throws IOException {
+        if (retentionDays <= 0) {
+            return;
+        }
+        final ZonedDateTime cutoff = ZonedDateTime.now(ZoneOffset.UTC).minusDays(retentionDays);
+        final List<String> expired = new ArrayList<>();
+        try {
+            final Iterator<String> indices =
+                    this.client.admin().indices().prepareGetAliases(ALIAS_AUDIT).execute().actionGet().getAliases()
+                            .keysIt();
+            while (indices.hasNext()) {
+                final String index = indices.next();
+                final ZonedDateTime end = partitionEnd(index);
+                if (end != null && end.isBefore(cutoff)) {
+                    expired.add(index);
+                }
+            }
+            if (!expired.isEmpty()) {
+                log.info("Dropping expired audit partitions " + expired);
+                this.client.admin().indices().prepareDelete(expired.toArray(new String[expired.size()])).execute()
+                        .actionGet();
+                partitions.removeAll(expired);
+            }
         } catch (ElasticsearchException ex) {
             throw new IOException(ex.getMostSpecificCause().getMessage());
         }
     }
 
-    private boolean exists(String id) throws IOException {
+    /**
+     * Get the end of the period covered by a partition, or null if the index is no partition
+     */
+    private static ZonedDateTime partitionEnd(String index) {
+        if (!index.startsWith(PARTITION_PREFIX)) {
+            return null;
+        }
+        final String period = index.substring(PARTITION_PREFIX.length());
+        try {
+            if (period.length() == 7) {
+                return YearMonth.parse(period, MONTHLY).plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC);
+            }
+            return LocalDate.parse(period, DAILY).plusDays(1).atStartOfDay(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Journal and queue a record. If the queue is full the record is written with the calling thread.
+     */
+    private void submit(PendingRecord pending) throws IOException {
+        synchronized (journal) {
+            pending.segment = journal.append(pending.source);
+            if (queue.offer(pending)) {
+                enqueued.incrementAndGet();
+                return;
+            }
+        }
+        final List<PendingRecord> single = new ArrayList<>(1);
+        single.add(pending);
+        if (!write(single).isEmpty()) {
+            // the record stays in the journal and is written on the next start
+            throw new IOException("Unable to write audit record " + pending.id);
+        }
+        journal.release(pending.segment);
+    }
+
+    private void flushLoop() {
+        final List<PendingRecord> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (batch.isEmpty()) {
+                    final PendingRecord first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+                oldestInFlight = batch.get(0).created;
+                final List<PendingRecord> failed = write(batch);
+                batch.removeAll(failed);
+                for (final PendingRecord pending : batch) {
+                    journal.release(pending.segment);
+                }
+                long done = batch.size();
+                batch.clear();
+                for (final PendingRecord pending : failed) {
+                    if (++pending.attempts > maxRetries) {
+                        log.error("Dropping audit record " + pending.id + " after " + maxRetries + " retries");
+                        journal.release(pending.segment);
+                        done++;
+                    } else {
+                        batch.add(pending);
+                    }
+                }
+                flushed.addAndGet(done);
+                oldestInFlight = batch.isEmpty() ? 0 : batch.get(0).created;
+                synchronized (flushMonitor) {
+                    flushMonitor.notifyAll();
+                }
+                if (!batch.isEmpty()) {
+                    // back off before retrying the records which have been rejected
+                    failedFlushes.incrementAndGet();
+                    log.warn("Retrying " + batch.size() + " audit records which could not be written");
+                    Thread.sleep(Math.max(flushInterval, 1000));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                // keep the batch and retry, the records are still in the journal
+                failedFlushes.incrementAndGet();
+                log.error("Unable to write " + batch.size() + " audit records: " + e.getMessage());
+                try {
+                    Thread.sleep(Math.max(flushInterval, 1000));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Write records to the index with a bulk request. Records failing with an error which will not go away by
+     * retrying, e.g. a mapping error, are logged and dropped.
+     * 
+     * @return the records which failed with a temporary error, e.g. a rejection due to a full bulk queue, and should
+     *         be retried
+     */
+    private List<PendingRecord> write(List<PendingRecord> records) throws IOException {
+        final BulkRequestBuilder bulk = this.client.prepareBulk().setRefresh(true);
+        for (final PendingRecord pending : records) {
+            final String index = partitionOf(pending.id);
+            ensurePartition(index);
+            bulk.add(this.client.prepareIndex(index, INDEX_AUDIT_TYPE, pending.id).setSource(pending.source));
+        }
+        final BulkResponse resp;
         try {
-            return this.client.prepareGet(INDEX_AUDIT, null, id).execute().actionGet().isExists();
+            resp = bulk.execute().actionGet();
         } catch (ElasticsearchException ex) {
             throw new IOException(ex.getMostSpecificCause().getMessage());
         }
+        final List<PendingRecord> failed = new ArrayList<>();
+        if (!resp.hasFailures()) {
+            return failed;
+        }
+        for (final BulkItemResponse item : resp.getItems()) {
+            if (!item.isFailed()) {
+                continue;
+            }
+            final RestStatus status = item.getFailure().getStatus();
+            if (status == RestStatus.TOO_MANY_REQUESTS || status.getStatus() >= 500) {
+                failed.add(records.get(item.getItemId()));
+            } else {
+                log.error("Unable to write audit record " + item.getId() + ": " + item.getFailureMessage());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Wait until the records queued before this call have been written, at most escidocng.audit.read.timeout millis.
+     */
+    private void awaitFlushed() throws IOException {
+        if (!async) {
+            return;
+        }
+        final long target = enqueued.get();
+        final long deadline = System.currentTimeMillis() + readTimeout;
+        synchronized (flushMonitor) {
+            while (flushed.get() < target) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    log.warn("Audit records are read before " + (target - flushed.get()) + " queued records have "
+                            + "been written");
+                    return;
+                }
+                try {
+                    flushMonitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for audit records to be written");
+                }
+            }
+        }
+    }
+
+    /**
+     * An audit record waiting to be written
+     */
+    private static final class PendingRecord {
+
+        private final String id;
+
+        private final byte[] source;
+
+        private final long created = System.currentTimeMillis();
+
+        /* the journal segment holding the record */
+        private long segment;
+
+        private int attempts;
+
+        private PendingRecord(String id, byte[] source) {
+            this.id = id;
+            this.source = source;
+        }
     }
 }
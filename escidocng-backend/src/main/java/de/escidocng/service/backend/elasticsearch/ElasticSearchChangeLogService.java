@@ -0,0 +1,255 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.escidocng.service.backend.elasticsearch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.escidocng.model.Change;
+import de.escidocng.model.Changes;
+import de.escidocng.service.backend.BackendChangeLogService;
+
+/**
+ * Implementation of a {@link de.escidocng.service.backend.BackendChangeLogService} built on top of ElasticSearch.<br>
+ * The sequence numbers are the versions of a single document which is indexed again for every change, so they are
+ * assigned by the cluster without gaps. Each change is stored with its sequence number as id and read with a real
+ * time multi get, so no refresh is necessary. A failed write of a change is retried up to
+ * escidocng.changes.append.maxRetries times with the same sequence number.<br>
+ * A sequence number whose change has not been written yet stops a read, until this node has seen it missing behind a
+ * later change for longer than escidocng.changes.gap.timeout, in which case the write has failed and the number is
+ * skipped. The timeout is measured with this node's own clock from the first time it saw the gap, so it does not
+ * depend on the clocks of the appending nodes.
+ */
+public class ElasticSearchChangeLogService extends AbstractElasticSearchService implements BackendChangeLogService {
+
+    public static final String INDEX_CHANGES = "changes";
+
+    public static final String INDEX_CHANGE_TYPE = "change";
+
+    private static final String SEQUENCE_TYPE = "sequence";
+
+    private static final String SEQUENCE_ID = "changes";
+
+    /**
+     * interval in which a waiting request looks for changes written by other nodes
+     */
+    private static final long POLL_INTERVAL = 1000;
+
+    private static final long APPEND_RETRY_DELAY = 100;
+
+    private static final Logger log = LoggerFactory.getLogger(ElasticSearchChangeLogService.class);
+
+    private final Object changeMonitor = new Object();
+
+    /**
+     * the time this node first saw a sequence number missing, removed once the change is found or skipped
+     */
+    private final Map<Long, Long> missingSince = new ConcurrentHashMap<>();
+
+    private int maxLimit;
+
+    private long maxTimeout;
+
+    private long gapTimeout;
+
+    private int appendMaxRetries;
+
+    @PostConstruct
+    public void init() throws IOException {
+        log.debug("initialising ElasticSearchChangeLogService");
+        this.checkAndOrCreateIndex(INDEX_CHANGES);
+        this.waitForIndex(INDEX_CHANGES);
+        this.maxLimit = Integer.parseInt(env.getProperty("escidocng.changes.maxLimit", "1000"));
+        this.maxTimeout = Long.parseLong(env.getProperty("escidocng.changes.poll.maxTimeout", "30000"));
+        this.gapTimeout = Long.parseLong(env.getProperty("escidocng.changes.gap.timeout", "5000"));
+        this.appendMaxRetries = Integer.parseInt(env.getProperty("escidocng.changes.append.maxRetries", "3"));
+    }
+
+    @Override
+    public Change append(Change change) throws IOException {
+        // concurrent appends may write their changes out of order, readers wait for the missing numbers
+        final long seq = this.retry(() -> this.client.prepareIndex(INDEX_CHANGES, SEQUENCE_TYPE, SEQUENCE_ID)
+                .setSource("{}")
+                .execute()
+                .actionGet()
+                .getVersion());
+        change.setSeq(seq);
+        change.setTimestamp(ZonedDateTime.now(ZoneOffset.UTC).toString());
+        final byte[] source = mapper.writeValueAsBytes(change);
+        this.retry(() -> this.client.prepareIndex(INDEX_CHANGES, INDEX_CHANGE_TYPE, String.valueOf(seq))
+                .setSource(source)
+                .execute()
+                .actionGet());
+        synchronized (changeMonitor) {
+            changeMonitor.notifyAll();
+        }
+        return change;
+    }
+
+    @Override
+    public Changes retrieve(long since, int limit, long timeout) throws IOException {
+        final int size = limit > maxLimit ? maxLimit : limit;
+        final long deadline = System.currentTimeMillis() + Math.min(timeout, maxTimeout);
+        while (true) {
+            final Changes changes = this.fetch(since, size);
+            final long remaining = deadline - System.currentTimeMillis();
+            if (!changes.getChanges().isEmpty() || size <= 0 || remaining <= 0) {
+                return changes;
+            }
+            // changes appended on this node wake the request up, changes of other nodes are found by polling
+            synchronized (changeMonitor) {
+                try {
+                    changeMonitor.wait(Math.min(POLL_INTERVAL, remaining));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return changes;
+                }
+            }
+        }
+    }
+
+    @Override
+    public long export(long since, long limit, long timeout, OutputStream sink) throws IOException {
+        long count = 0;
+        long seq = since;
+        long wait = timeout;
+        while (limit <= 0 || count < limit) {
+            final int size = limit <= 0 ? maxLimit : (int) Math.min(maxLimit, limit - count);
+            final Changes changes = this.retrieve(seq, size, wait);
+            if (changes.getChanges().isEmpty()) {
+                break;
+            }
+            for (final Change change : changes.getChanges()) {
+                sink.write(mapper.writeValueAsBytes(change));
+                sink.write('\n');
+                count++;
+            }
+            sink.flush();
+            seq = changes.getLastSeq();
+            // only wait for the first change
+            wait = 0;
+        }
+        return count;
+    }
+
+    /**
+     * Fetch the changes following a sequence number in order, stopping at a number whose change is still missing
+     */
+    private Changes fetch(long since, int size) throws IOException {
+        final List<Change> changes = new ArrayList<>();
+        final long head = this.currentSeq();
+        final long to = Math.min(head, since + size);
+        if (to <= since) {
+            return new Changes(changes, since, head);
+        }
+        long last = since;
+        try {
+            final MultiGetRequestBuilder request = this.client.prepareMultiGet();
+            for (long seq = since + 1; seq <= to; seq++) {
+                request.add(INDEX_CHANGES, INDEX_CHANGE_TYPE, String.valueOf(seq));
+            }
+            final MultiGetResponse resp = request.execute().actionGet();
+            final long now = System.currentTimeMillis();
+            final List<Long> missing = new ArrayList<>();
+            for (final MultiGetItemResponse item : resp.getResponses()) {
+                final long seq = Long.parseLong(item.getId());
+                if (item.isFailed() || !item.getResponse().isExists()) {
+                    missingSince.putIfAbsent(seq, now);
+                    missing.add(seq);
+                    continue;
+                }
+                missingSince.remove(seq);
+                final Change change = mapper.readValue(item.getResponse().getSourceAsBytes(), Change.class);
+                if (!missing.isEmpty()) {
+                    // the missing changes may still be written, unless they have been missing for a while
+                    if (!this.isOverdue(missing, now)) {
+                        break;
+                    }
+                    log.warn("Skipping missing changes between {} and {}", last, change.getSeq());
+                    for (final Long skipped : missing) {
+                        missingSince.remove(skipped);
+                    }
+                    missing.clear();
+                }
+                changes.add(change);
+                last = change.getSeq();
+            }
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+        return new Changes(changes, last, head);
+    }
+
+    private long currentSeq() throws IOException {
+        try {
+            final GetResponse resp = this.client.prepareGet(INDEX_CHANGES, SEQUENCE_TYPE, SEQUENCE_ID)
+                    .setFetchSource(false)
+                    .execute()
+                    .actionGet();
+            return resp.isExists() ? resp.getVersion() : 0;
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+    }
+
+    private boolean isOverdue(List<Long> missing, long now) {
+        for (final Long seq : missing) {
+            if (now - missingSince.getOrDefault(seq, now) < gapTimeout) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Execute a request, retrying it if it fails
+     */
+    private <T> T retry(Supplier<T> request) throws IOException {
+        for (int attempt = 0;; attempt++) {
+            try {
+                return request.get();
+            } catch (ElasticsearchException ex) {
+                if (attempt >= appendMaxRetries) {
+                    throw new IOException(ex.getMostSpecificCause().getMessage());
+                }
+                log.warn("Retrying to append a change: {}", ex.getMostSpecificCause().getMessage());
+                try {
+                    Thread.sleep(APPEND_RETRY_DELAY);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(ex.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+    }
+}
@@ -21,19 +21,30 @@ import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.count.CountResponse;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.QueryStringQueryBuilder;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,7 +63,9 @@ import de.escidocng.exceptions.AlreadyExistsException;
 import de.escidocng.exceptions.InvalidParameterException;
 import de.escidocng.exceptions.NotFoundException;
 import de.escidocng.model.Entity;
+import de.escidocng.model.SearchParameters;
 import de.escidocng.model.SearchResult;
+import de.escidocng.model.SearchTimings;
 import de.escidocng.model.ContentModel.FixedContentModel;
 import de.escidocng.model.security.PermissionAnchorType;
 import de.escidocng.model.security.User;
@@ -64,6 +77,7 @@ import de.escidocng.model.security.role.UserAdminRole;
 import de.escidocng.model.security.role.UserRole;
 import de.escidocng.model.security.role.Role.RoleName;
 import de.escidocng.model.security.role.Role.RoleRight;
+import de.escidocng.security.helpers.AuthenticationCache;
 import de.escidocng.service.MailService;
 import de.escidocng.service.backend.BackendCredentialsService;
 import de.escidocng.service.backend.BackendEntityService;
@@ -81,10 +95,29 @@ public class ElasticSearchCredentialsService extends AbstractElasticSearchServic
 
     public static final String INDEX_USERS_TYPE = "user";
 
+    private static final List<String> SUMMARY_FIELDS = Arrays.asList(
+            UsersSearchField.NAME.getFieldName(),
+            UsersSearchField.FIRSTNAME.getFieldName(),
+            UsersSearchField.LASTNAME.getFieldName());
+
+    /* the password hash must not be requested */
+    private static final List<String> PROJECTABLE_FIELDS = Arrays.asList(
+            UsersSearchField.NAME.getFieldName(),
+            UsersSearchField.FIRSTNAME.getFieldName(),
+            UsersSearchField.LASTNAME.getFieldName(),
+            UsersSearchField.EMAIL.getFieldName(),
+            "roles");
+
     public static final String INDEX_USERS_REQUEST = "user_requests";
 
     public static final String INDEX_USERS_REQUEST_TYPE = "user_request";
 
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
+    private static final int MAX_CONFLICT_RETRIES = 5;
+
+    private static final int SCROLL_SIZE = 100;
+
     @Autowired
     private ObjectMapper mapper;
 
@@ -94,11 +127,30 @@ public class ElasticSearchCredentialsService extends AbstractElasticSearchServic
     @Autowired
     private BackendEntityService backendEntityService;
 
+    @Autowired
+    private AuthenticationCache authenticationCache;
+
+    private long rightsCleanupAsyncThreshold;
+
+    private ExecutorService rightsCleanup;
+
     @PostConstruct
     public void setup() throws IOException {
         this.checkAndOrCreateIndex(INDEX_USERS);
         this.checkAndOrCreateIndex(INDEX_USERS_REQUEST);
         checkAndOrCreateDefaultUsers();
+        this.rightsCleanupAsyncThreshold =
+                Long.parseLong(env.getProperty("escidocng.rights.cleanup.async.threshold", "100"));
+        this.rightsCleanup = Executors.newSingleThreadExecutor(r -> {
+            final Thread t = new Thread(r, "rights-cleanup");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.rightsCleanup.shutdown();
     }
 
     private void checkAndOrCreateDefaultUsers() throws IOException {
@@ -135,6 +187,12 @@ public class ElasticSearchCredentialsService extends AbstractElasticSearchServic
     public Authentication authenticate(Authentication auth) throws AuthenticationException {
         final String name = (String) auth.getPrincipal();
         final String hash = DigestUtils.sha256Hex((String) auth.getCredentials());
+        final Authentication cached = authenticationCache.get(name, hash);
+        if (cached != null) {
+            return cached;
+        }
+        // fetched before loading the user, so a concurrent change of the user keeps the stale user out of the cache
+        final long generation = authenticationCache.generation(name);
         final GetResponse get;
         try {
             get = client.prepareGet(INDEX_USERS, INDEX_USERS_TYPE, name).execute().actionGet();
@@ -157,8 +215,10 @@ public class ElasticSearchCredentialsService extends AbstractElasticSearchServic
                     } else {
                         roles = new String[] { "ROLE_IDENTIFIED" };
                     }
-                    return new UsernamePasswordAuthenticationToken(u, auth.getCredentials(),
-                            AuthorityUtils.createAuthorityList(roles));
+                    final Authentication authenticated = new UsernamePasswordAuthenticationToken(u,
+                            auth.getCredentials(), AuthorityUtils.createAuthorityList(roles));
+                    authenticationCache.put(name, hash, authenticated, generation);
+                    return authenticated;
                 }
             } catch (IOException e) {
                 throw new BadCredentialsException("Unable to authenticate");
@@ -231,22 +291,13 @@ public class ElasticSearchCredentialsService extends AbstractElasticSearchServic
             throw new InvalidParameterException("Email can not be empty");
         }
         try {
-            final GetResponse get =
-                    this.client.prepareGet(INDEX_USERS, INDEX_USERS_TYPE, u.getName()).execute().actionGet();
-            if (!get.isExists()) {
-                throw new NotFoundException("The user " + u.getName() + " does not exist");
-            }
-
             // Roles cannot be set with update user
-            User oldUser = mapper.readValue(get.getSourceAsBytes(), User.class);
-            u.setRoles(oldUser.getRoles());
-
-            this.client
-                    .prepareIndex(INDEX_USERS, INDEX_USERS_TYPE, u.getName()).setSource(
-                            mapper.writeValueAsBytes(u))
-                    .execute().actionGet();
-        } catch (ElasticsearchException ex) {
-            throw new IOException(ex.getMostSpecificCause().getMessage());
+            this.changeUser(u.getName(), oldUser -> {
+                u.setRoles(oldUser.getRoles());
+                return u;
+            });
+        } finally {
+            this.authenticationCache.invalidate(u.getName());
         }
         this.refreshIndex(INDEX_USERS);
     }
@@ -259,21 +310,12 @@ public class ElasticSearchCredentialsService extends AbstractElasticSearchServic
         }
         validateRoles(roles);
         try {
-            final GetResponse get =
-                    this.client.prepareGet(INDEX_USERS, INDEX_USERS_TYPE, username).execute().actionGet();
-            if (!get.isExists()) {
-                throw new NotFoundException("The user " + username + " does not exist");
-            }
-
-            User user = mapper.readValue(get.getSourceAsBytes(), User.class);
-            user.setRoles(roles);
-
-            this.client
-                    .prepareIndex(INDEX_USERS, INDEX_USERS_TYPE, user.getName()).setSource(
-                            mapper.writeValueAsBytes(user))
-                    .execute().actionGet();
-        } catch (ElasticsearchException ex) {
-            throw new IOException(ex.getMostSpecificCause().getMessage());
+            this.changeUser(username, user -> {
+                user.setRoles(roles);
+                return user;
+            });
+        } finally {
+            this.authenticationCache.invalidate(username);
         }
         this.refreshIndex(INDEX_USERS);
     }
@@ -299,65 +341,55 @@ public class ElasticSearchCredentialsService extends AbstractElasticSearchServic
         }
 
         try {
-            final GetResponse get =
-                    this.client.prepareGet(INDEX_USERS, INDEX_USERS_TYPE, username).execute().actionGet();
-            if (!get.isExists()) {
-                throw new NotFoundException("The user " + username + " does not exist");
-            }
-
-            User user = mapper.readValue(get.getSourceAsBytes(), User.class);
-
-            Role existingRole = user.getRole(roleName);
-            if (RoleName.ROLE_ADMIN.equals(roleName)) {
-                // handle admin role
-                if (existingRole == null) {
-                    user.setRole(Role.getRoleObject(roleName));
-                } else {
-                    user.removeRole(roleName);
-                }
-            } else {
-                // handle other roles
-                if (existingRole != null && rights != null && !rights.isEmpty()) {
-                    List<Right> expandedRights = existingRole.getRights();
-                    if (expandedRights == null) {
-                        expandedRights = new ArrayList<Right>();
-                    }
-                    expandedRights.add(new Right(anchorId, rights));
-                    existingRole.setRights(expandedRights);
-                } else if (existingRole != null && (rights == null || rights.isEmpty())) {
-                    List<Right> expandedRights = existingRole.getRights();
-                    if (expandedRights == null) {
-                        expandedRights = new ArrayList<Right>();
+            this.changeUser(username, user -> {
+                Role existingRole = user.getRole(roleName);
+                if (RoleName.ROLE_ADMIN.equals(roleName)) {
+                    // handle admin role
+                    if (existingRole == null) {
+                        user.setRole(Role.getRoleObject(roleName));
+                    } else {
+                        user.removeRole(roleName);
                     }
-                    //remove right
-                    int index = -1;
-                    for (int i = 0; i < expandedRights.size(); i++) {
-                        if (anchorId.equals(expandedRights.get(i).getAnchorId())) {
-                            index = i;
-                            break;
+                } else {
+                    // handle other roles
+                    if (existingRole != null && rights != null && !rights.isEmpty()) {
+                        List<Right> expandedRights = existingRole.getRights();
+                        if (expandedRights == null) {
+                            expandedRights = new ArrayList<Right>();
                         }
+                        expandedRights.add(new Right(anchorId, rights));
+                        existingRole.setRights(expandedRights);
+                    } else if (existingRole != null && (rights == null || rights.isEmpty())) {
+                        List<Right> expandedRights = existingRole.getRights();
+                        if (expandedRights == null) {
+                            expandedRights = new ArrayList<Right>();
+                        }
+                        //remove right
+                        int index = -1;
+                        for (int i = 0; i < expandedRights.size(); i++) {
+                            if (anchorId.equals(expandedRights.get(i).getAnchorId())) {
+                                index = i;
+                                break;
+                            }
+                        }
+                        if (index > -1) {
+                            expandedRights.remove(index);
+                        }
+                        if (expandedRights.isEmpty()) {
+                            user.removeRole(existingRole.getRoleName());
+                        }
+                    } else if (existingRole == null && rights != null && !rights.isEmpty()) {
+                        Role newRole = Role.getRoleObject(roleName);
+                        List<Right> newRights = new ArrayList<Right>();
+                        newRights.add(new Right(anchorId, rights));
+                        newRole.setRights(newRights);
+                        user.setRole(newRole);
                     }
-                    if (index > -1) {
-                        expandedRights.remove(index);
-                    }
-                    if (expandedRights.isEmpty()) {
-                        user.removeRole(existingRole.getRoleName());
-                    }
-                } else if (existingRole == null && rights != null && !rights.isEmpty()) {
-                    Role newRole = Role.getRoleObject(roleName);
-                    List<Right> newRights = new ArrayList<Right>();
-                    newRights.add(new Right(anchorId, rights));
-                    newRole.setRights(newRights);
-                    user.setRole(newRole);
                 }
-            }
-
-            this.client
-                    .prepareIndex(INDEX_USERS, INDEX_USERS_TYPE, user.getName()).setSource(
-                            mapper.writeValueAsBytes(user))
-                    .execute().actionGet();
-        } catch (ElasticsearchException ex) {
-            throw new IOException(ex.getMostSpecificCause().getMessage());
+                return user;
+            });
+        } finally {
+            this.authenticationCache.invalidate(username);
         }
         this.refreshIndex(INDEX_USERS);
     }
@@ -378,6 +410,8 @@ public class ElasticSearchCredentialsService extends AbstractElasticSearchServic
             this.client.prepareDelete(INDEX_USERS, INDEX_USERS_TYPE, name).execute().actionGet();
         } catch (ElasticsearchException ex) {
             throw new IOException(ex.getMostSpecificCause().getMessage());
+        } finally {
+            this.authenticationCache.invalidate(name);
         }
         this.refreshIndex(INDEX_USERS);
     }
@@ -426,36 +460,71 @@ public class ElasticSearchCredentialsService extends AbstractElasticSearchServic
 
     @Override
     public SearchResult searchUsers(String query, int offset, int maxRecords) throws IOException {
+        return this.searchUsers(new SearchParameters(query, offset, maxRecords));
+    }
+
+    @Override
+    public long countUsers(final SearchParameters params) throws IOException {
+        return this.countHits(INDEX_USERS, INDEX_USERS_TYPE, params);
+    }
+
+    @Override
+    public boolean existsUsers(final SearchParameters params) throws IOException {
+        return this.hasHits(INDEX_USERS, INDEX_USERS_TYPE, params);
+    }
+
+    @Override
+    public SearchResult searchUsers(final SearchParameters params) throws IOException {
         final long time = System.currentTimeMillis();
+        final SearchTimings timings = new SearchTimings();
         final SearchResponse resp;
+        String query = params.getQuery();
         if (StringUtils.isBlank(query)) {
             query = "*:*";
         }
         QueryStringQueryBuilder builder = QueryBuilders.queryString(query);
+        final String[] fields = this.resolveFields(params, SUMMARY_FIELDS, PROJECTABLE_FIELDS);
         try {
-            resp =
-                    this.client.prepareSearch(INDEX_USERS).setQuery(builder).execute()
-                            .actionGet();
+            final SearchRequestBuilder search = this.client.prepareSearch(INDEX_USERS)
+                    .setTypes(INDEX_USERS_TYPE)
+                    .setQuery(this.restrict(builder, params.getFilter()))
+                    .setFrom(params.getOffset())
+                    .setSize(params.getMaxRecords());
+            if (fields != null) {
+                search.setFetchSource(fields, null);
+            }
+            final long searchTime = System.currentTimeMillis();
+            resp = search.execute().actionGet();
+            timings.setSearch(System.currentTimeMillis() - searchTime);
+            timings.setTook(resp.getTookInMillis());
         } catch (ElasticsearchException ex) {
             throw new IOException(ex.getMostSpecificCause().getMessage());
         }
 
         final SearchResult result = new SearchResult();
 
-        final List<User> users = new ArrayList<>();
+        final long deserializeTime = System.currentTimeMillis();
+        final List<Object> users = new ArrayList<>();
         for (final SearchHit hit : resp.getHits()) {
-            users.add(mapper.readValue(hit.getSourceAsString(), User.class));
+            if (fields != null) {
+                users.add(hit.getSource());
+            } else {
+                users.add(mapper.readValue(hit.getSourceAsString(), User.class));
+            }
         }
+        timings.setDeserialize(System.currentTimeMillis() - deserializeTime);
         result.setData(users);
         result.setTotalHits(resp.getHits().getTotalHits());
-        result.setMaxRecords(maxRecords);
+        result.setMaxRecords(params.getMaxRecords());
         result.setHits(users.size());
         result.setNumRecords(users.size());
         result.setTerm(new String(builder.buildAsBytes().toBytes()));
-        result.setOffset(offset);
-        result.setNextOffset(offset + maxRecords);
-        result.setPrevOffset(Math.max(offset - maxRecords, 0));
+        result.setOffset(params.getOffset());
+        result.setNextOffset(params.getOffset() + params.getMaxRecords());
+        result.setPrevOffset(Math.max(params.getOffset() - params.getMaxRecords(), 0));
         result.setDuration(System.currentTimeMillis() - time);
+        timings.setTotal(result.getDuration());
+        result.setTimings(timings);
         return result;
     }
 
@@ -543,46 +612,219 @@ public class ElasticSearchCredentialsService extends AbstractElasticSearchServic
         }
     }
 
-    @Override
-    public void deleteRights(String anchorId) throws IOException {
-        List<User> users = retrieveUsersWithRight(anchorId);
-        for (User user : users) {
-            if (user.getRoles() != null) {
-                List<Role> rolesToRemove = new ArrayList<Role>();
-                List<Role> userRoles = user.getRoles();
-                for (Role role : userRoles) {
-                    if (role.getRights() != null && role.hasRight(anchorId)) {
-                        role.removeRight(anchorId);
-                        if (role.getRights().isEmpty()) {
-                            rolesToRemove.add(role);
-                        }
-                    }
+    /**
+     * Read a user, apply a change and write the changed user back with the version it was read with, so a concurrent
+     * change of the user, e.g. the removal of rights for a deleted anchor, is not overwritten. On a version conflict
+     * the user is read again and the change is reapplied up to MAX_CONFLICT_RETRIES times.
+     * 
+     * @param name the name of the user
+     * @param change the change to apply
+     * @throws IOException
+     */
+    private void changeUser(final String name, final UserChange change) throws IOException {
+        try {
+            for (int attempt = 0;; attempt++) {
+                final GetResponse get =
+                        this.client.prepareGet(INDEX_USERS, INDEX_USERS_TYPE, name).execute().actionGet();
+                if (!get.isExists()) {
+                    throw new NotFoundException("The user " + name + " does not exist");
                 }
-                if (!rolesToRemove.isEmpty()) {
-                    for (Role roleToRemove : rolesToRemove) {
-                        userRoles.remove(roleToRemove);
+                final User user = change.apply(mapper.readValue(get.getSourceAsBytes(), User.class));
+                try {
+                    this.client.prepareIndex(INDEX_USERS, INDEX_USERS_TYPE, name)
+                            .setSource(mapper.writeValueAsBytes(user))
+                            .setVersion(get.getVersion())
+                            .execute().actionGet();
+                    return;
+                } catch (ElasticsearchException ex) {
+                    if (ex.status() != RestStatus.CONFLICT || attempt >= MAX_CONFLICT_RETRIES) {
+                        throw ex;
                     }
                 }
-                setRoles(user.getName(), userRoles);
             }
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
         }
     }
 
-    private List<User> retrieveUsersWithRight(String anchorId) throws IOException {
-        final SearchResponse resp;
-        QueryStringQueryBuilder builder = QueryBuilders.queryString("roles.rights.anchorId:" + anchorId);
+    /**
+     * Changes a user read from the index
+     */
+    private interface UserChange {
+
+        User apply(User user) throws IOException;
+    }
+
+    @Override
+    public void deleteRights(final String anchorId) throws IOException {
+        if (StringUtils.isBlank(anchorId)) {
+            throw new InvalidParameterException("anchorId may not be null");
+        }
+        final QueryBuilder query = QueryBuilders.matchPhraseQuery("roles.rights.anchorId", anchorId);
+        final long count;
         try {
-            resp =
-                    this.client.prepareSearch(INDEX_USERS).setQuery(builder).execute()
-                            .actionGet();
+            count = this.client.prepareCount(INDEX_USERS).setQuery(query).execute().actionGet().getCount();
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+        if (count == 0) {
+            return;
+        }
+        if (count > rightsCleanupAsyncThreshold) {
+            log.info("Removing rights for anchor {} from {} users in the background", anchorId, count);
+            this.rightsCleanup.execute(() -> {
+                try {
+                    removeRights(anchorId, query);
+                } catch (IOException e) {
+                    log.error("Unable to remove rights for anchor " + anchorId + ": " + e.getMessage());
+                }
+            });
+        } else {
+            removeRights(anchorId, query);
+        }
+    }
+
+    /**
+     * Scroll over all users matching the query, remove the rights for the given anchorId and write the changed users
+     * back with one bulk request per scroll page. Users changed concurrently are read again and retried up to
+     * MAX_CONFLICT_RETRIES times. The users index gets refreshed once at the end.
+     * 
+     * @param anchorId
+     * @param query
+     * @throws IOException
+     */
+    private void removeRights(final String anchorId, final QueryBuilder query) throws IOException {
+        final List<String> updated = new ArrayList<>();
+        final StringBuilder failures = new StringBuilder();
+        List<String> conflicts = new ArrayList<>();
+        String scrollId = null;
+        try {
+            SearchResponse resp = this.client.prepareSearch(INDEX_USERS)
+                    .setTypes(INDEX_USERS_TYPE)
+                    .setSearchType(SearchType.SCAN)
+                    .setScroll(SCROLL_KEEP_ALIVE)
+                    .setQuery(query)
+                    .setVersion(true)
+                    .setSize(SCROLL_SIZE)
+                    .execute()
+                    .actionGet();
+            scrollId = resp.getScrollId();
+            while (true) {
+                resp = this.client.prepareSearchScroll(scrollId).setScroll(SCROLL_KEEP_ALIVE).execute().actionGet();
+                scrollId = resp.getScrollId();
+                if (resp.getHits().getHits().length == 0) {
+                    break;
+                }
+                final BulkRequestBuilder bulk = this.client.prepareBulk();
+                for (final SearchHit hit : resp.getHits()) {
+                    final User user = mapper.readValue(hit.getSourceAsString(), User.class);
+                    if (removeRight(user, anchorId)) {
+                        // fail instead of overwriting a concurrent change of the user
+                        bulk.add(this.client.prepareIndex(INDEX_USERS, INDEX_USERS_TYPE, user.getName())
+                                .setSource(mapper.writeValueAsBytes(user))
+                                .setVersion(hit.getVersion()));
+                        updated.add(user.getName());
+                    }
+                }
+                if (bulk.numberOfActions() > 0) {
+                    collectFailures(bulk.execute().actionGet(), conflicts, failures);
+                }
+            }
+            for (int attempt = 0; attempt < MAX_CONFLICT_RETRIES && !conflicts.isEmpty(); attempt++) {
+                conflicts = retryRemoveRights(anchorId, conflicts, failures);
+            }
+            if (!conflicts.isEmpty()) {
+                failures.append(" concurrently changed users ").append(conflicts);
+            }
         } catch (ElasticsearchException ex) {
             throw new IOException(ex.getMostSpecificCause().getMessage());
+        } finally {
+            if (scrollId != null) {
+                this.client.prepareClearScroll().addScrollId(scrollId).execute();
+            }
+            for (String name : updated) {
+                this.authenticationCache.invalidate(name);
+            }
+        }
+        this.refreshIndex(INDEX_USERS);
+        if (failures.length() > 0) {
+            throw new IOException("Unable to remove rights for anchor " + anchorId + ": " + failures);
+        }
+    }
+
+    /**
+     * Read users whose update failed with a version conflict again and remove the rights for the given anchorId
+     * 
+     * @param anchorId
+     * @param names the names of the users
+     * @param failures collects the failures which are not version conflicts
+     * @return the names of the users whose update failed with a version conflict again
+     */
+    private List<String> retryRemoveRights(final String anchorId, final List<String> names,
+            final StringBuilder failures) throws IOException {
+        final List<String> conflicts = new ArrayList<>();
+        final BulkRequestBuilder bulk = this.client.prepareBulk();
+        for (final String name : names) {
+            final GetResponse resp = this.client.prepareGet(INDEX_USERS, INDEX_USERS_TYPE, name).execute().actionGet();
+            if (!resp.isExists()) {
+                continue;
+            }
+            final User user = mapper.readValue(resp.getSourceAsBytes(), User.class);
+            if (removeRight(user, anchorId)) {
+                bulk.add(this.client.prepareIndex(INDEX_USERS, INDEX_USERS_TYPE, user.getName())
+                        .setSource(mapper.writeValueAsBytes(user))
+                        .setVersion(resp.getVersion()));
+            }
+        }
+        if (bulk.numberOfActions() > 0) {
+            collectFailures(bulk.execute().actionGet(), conflicts, failures);
+        }
+        return conflicts;
+    }
+
+    private static void collectFailures(final BulkResponse resp, final List<String> conflicts,
+            final StringBuilder failures) {
+        if (!resp.hasFailures()) {
+            return;
+        }
+        for (final BulkItemResponse item : resp.getItems()) {
+            if (!item.isFailed()) {
+                continue;
+            }
+            if (item.getFailure().getStatus() == RestStatus.CONFLICT) {
+                conflicts.add(item.getId());
+            } else {
+                failures.append(" [").append(item.getId()).append("]: ").append(item.getFailureMessage());
+            }
+        }
+    }
+
+    /**
+     * Remove the Right with the given anchorId from all roles of the user. Roles left without rights get removed.
+     * 
+     * @param user
+     * @param anchorId
+     * @return true if the user was changed
+     */
+    private boolean removeRight(final User user, final String anchorId) {
+        if (user.getRoles() == null) {
+            return false;
+        }
+        boolean changed = false;
+        final List<Role> rolesToRemove = new ArrayList<Role>();
+        for (Role role : user.getRoles()) {
+            if (role.getRights() != null && role.hasRight(anchorId)) {
+                role.removeRight(anchorId);
+                changed = true;
+                if (role.getRights().isEmpty()) {
+                    rolesToRemove.add(role);
+                }
+            }
         }
-        final List<User> users = new ArrayList<>(resp.getHits().getHits().length);
-        for (SearchHit hit : resp.getHits()) {
-            users.add(mapper.readValue(hit.getSourceAsString(), User.class));
+        for (Role roleToRemove : rolesToRemove) {
+            user.removeRole(roleToRemove.getRoleName());
         }
-        return users;
+        return changed;
     }
 
     private void validateRoles(List<Role> roles) throws IOException {
@@ -17,8 +17,11 @@
 package de.escidocng.service.backend.elasticsearch;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -26,19 +29,21 @@ import javax.annotation.PostConstruct;
 
 import org.apache.commons.lang3.StringUtils;
 import org.elasticsearch.ElasticsearchException;
-import org.elasticsearch.action.ActionFuture;
-import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
-import org.elasticsearch.action.admin.indices.refresh.RefreshResponse;
 import org.elasticsearch.action.admin.indices.status.IndexStatus;
 import org.elasticsearch.action.admin.indices.status.IndicesStatusRequest;
 import org.elasticsearch.action.admin.indices.status.IndicesStatusResponse;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.MatchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.QueryStringQueryBuilder;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -46,11 +51,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import de.escidocng.exceptions.AlreadyExistsException;
+import de.escidocng.exceptions.InvalidParameterException;
 import de.escidocng.exceptions.NotFoundException;
 import de.escidocng.model.Entity;
 import de.escidocng.model.EntityHierarchy;
+import de.escidocng.model.FacetParameters;
+import de.escidocng.model.FacetResult;
 import de.escidocng.model.Metadata;
+import de.escidocng.model.SearchParameters;
 import de.escidocng.model.SearchResult;
+import de.escidocng.model.SearchTimings;
 import de.escidocng.model.ContentModel.FixedContentModel;
 import de.escidocng.model.Entity.EntityState;
 import de.escidocng.model.state.IndexState;
@@ -67,6 +77,60 @@ public class ElasticSearchEntityService extends AbstractElasticSearchService imp
     public static final String INDEX_ENTITY_TYPE = "entity";
 
     private static final Logger log = LoggerFactory.getLogger(ElasticSearchEntityService.class);
+
+    private static final List<String> SUMMARY_FIELDS = Arrays.asList(
+            EntitiesSearchField.ID.getFieldName(),
+            EntitiesSearchField.LABEL.getFieldName(),
+            EntitiesSearchField.STATE.getFieldName(),
+            EntitiesSearchField.CONTENT_MODEL.getFieldName(),
+            EntitiesSearchField.PARENT.getFieldName(),
+            EntitiesSearchField.VERSION.getFieldName(),
+            EntitiesSearchField.TAG.getFieldName(),
+            "utcCreated",
+            "utcLastModified");
+
+    /* the not analyzed index fields of the facet names */
+    private static final Map<String, String> FACET_FIELDS = new LinkedHashMap<>();
+    static {
+        FACET_FIELDS.put(EntitiesSearchField.STATE.getFieldName(), "state.raw");
+        for (final EntitiesSearchField field : Arrays.asList(EntitiesSearchField.CONTENT_MODEL,
+                EntitiesSearchField.PARENT, EntitiesSearchField.LEVEL1, EntitiesSearchField.LEVEL2)) {
+            FACET_FIELDS.put(field.getFieldName(), field.getFieldName());
+        }
+        FACET_FIELDS.put(EntitiesSearchField.TAG.getFieldName(), "tags.raw");
+        FACET_FIELDS.put("metadataType", "metadata.type.raw");
+    }
+
+    private static final List<String> DATE_FIELDS = Arrays.asList("utcCreated", "utcLastModified");
+
+    /**
+     * time a scroll context of an export is kept open between two batches
+     */
+    private static final TimeValue EXPORT_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
+    private static final String LABEL_SUGGEST_FIELD = EntitiesSearchField.LABEL.getFieldName() + ".suggest";
+
+    private static final String[] SUGGEST_FIELDS = new String[] { EntitiesSearchField.ID.getFieldName(),
+            EntitiesSearchField.LABEL.getFieldName(), EntitiesSearchField.CONTENT_MODEL.getFieldName(),
+            EntitiesSearchField.PARENT.getFieldName() };
+
+    private static final int MAX_SUGGESTIONS = 50;
+
+    /**
+     * subfields an entities index has to map, an index created without them is upgraded
+     */
+    private static final List<String> REQUIRED_FIELDS = Arrays.asList(
+            EntitiesSearchField.STATE.getFieldName() + ".raw",
+            EntitiesSearchField.TAG.getFieldName() + ".raw",
+            "metadata.type.raw",
+            LABEL_SUGGEST_FIELD);
+
+    private static final List<String> SORTABLE_FIELDS = Arrays.asList(
+            EntitiesSearchField.CONTENT_MODEL.getFieldName(),
+            EntitiesSearchField.PARENT.getFieldName(),
+            EntitiesSearchField.VERSION.getFieldName(),
+            EntitiesSearchField.LEVEL1.getFieldName(),
+            EntitiesSearchField.LEVEL2.getFieldName());
     
     private int maxRecords;
 
@@ -77,10 +141,20 @@ public class ElasticSearchEntityService extends AbstractElasticSearchService imp
     public void init() throws IOException {
         log.debug("initialising ElasticSearchEntityService");
         this.maxRecords = Integer.parseInt(env.getProperty("escidocng.search.maxRecords", "20"));
+        this.upgradeIndex(INDEX_ENTITIES, this::hasRequiredFields);
         this.checkAndOrCreateIndex(INDEX_ENTITIES);
         this.waitForIndex(INDEX_ENTITIES);
     }
 
+    private boolean hasRequiredFields(String indexName) throws IOException {
+        for (final String field : REQUIRED_FIELDS) {
+            if (!this.isMapped(indexName, INDEX_ENTITY_TYPE, field)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public String create(Entity e) throws IOException {
         log.debug("creating new entity");
@@ -197,7 +271,8 @@ public class ElasticSearchEntityService extends AbstractElasticSearchService imp
         try {
             resp =
                     client.admin().indices().status(new IndicesStatusRequest(INDEX_ENTITIES)).actionGet();
-            esState = resp.getIndices().get(INDEX_ENTITIES);
+            // keyed by the name of the index, which differs from the name of an upgraded index's alias
+            esState = resp.getIndices().values().iterator().next();
         } catch (ElasticsearchException ex) {
             throw new IOException(ex.getMostSpecificCause().getMessage());
         }
@@ -234,32 +309,64 @@ public class ElasticSearchEntityService extends AbstractElasticSearchService imp
     @Override
     public SearchResult searchEntities(String query, int offset, int maxRecords)
             throws IOException {
+        return searchEntities(new SearchParameters(query, offset, maxRecords));
+    }
+
+    @Override
+    public SearchResult searchEntities(SearchParameters params) throws IOException {
         final long time = System.currentTimeMillis();
-        final ActionFuture<RefreshResponse> refresh =
-                this.client.admin().indices().refresh(new RefreshRequest(ElasticSearchEntityService.INDEX_ENTITIES));
+        final SearchTimings timings = new SearchTimings();
         final SearchResponse resp;
 
+        String query = params.getQuery();
         if (StringUtils.isBlank(query)) {
             query = "*:*";
         }
+        final int offset = params.getOffset();
+        final int maxRecords = params.getMaxRecords() > -1 ? params.getMaxRecords() : this.maxRecords;
         QueryStringQueryBuilder builder = QueryBuilders.queryString(query);
 
+        /*
+         * every write refreshes the index before returning, so searches see the repository's own changes without a
+         * refresh. Refreshing per search is only needed to be consistent with writes which are still in flight.
+         */
+        if (params.isConsistent()) {
+            refreshIndex(INDEX_ENTITIES);
+            timings.setRefresh(System.currentTimeMillis() - time);
+        }
+        final Map<String, SortOrder> sorts = this.parseSort(params.getSort(), SORTABLE_FIELDS);
+        final String[] fields = this.resolveFields(params, SUMMARY_FIELDS, null);
+        final boolean cursorMode = params.getCursor() != null;
+        QueryBuilder searchQuery = this.restrict(builder, params.getFilter());
+        if (cursorMode) {
+            /* page by the position of the last hit instead of an offset, using the uid as stable tie-breaker */
+            sorts.put(CURSOR_TIEBREAKER, SortOrder.ASC);
+            if (!SearchParameters.CURSOR_START.equals(params.getCursor())) {
+                searchQuery = QueryBuilders.filteredQuery(searchQuery,
+                        this.createSearchAfterFilter(sorts, params.getCursor()));
+            }
+        }
         try {
-            refresh.actionGet();
-
-            resp =
-                    this.client
-                            .prepareSearch(ElasticSearchEntityService.INDEX_ENTITIES)
-//                            .addFields(
-//                                    EntitiesSearchField.ID.getFieldName(), EntitiesSearchField.PARENT.getFieldName(),
-//                                    EntitiesSearchField.STATE.getFieldName(),
-//                                    EntitiesSearchField.LABEL.getFieldName(),
-//                                    EntitiesSearchField.CONTENT_MODEL.getFieldName(),
-//                                    EntitiesSearchField.METADATA.getFieldName(),
-//                                    EntitiesSearchField.TAG.getFieldName())
-                            .setQuery(builder).setSearchType(SearchType.DFS_QUERY_THEN_FETCH).setFrom(offset)
-                            .setSize(maxRecords).execute()
-                            .actionGet();
+            final SearchRequestBuilder search = this.client
+                    .prepareSearch(ElasticSearchEntityService.INDEX_ENTITIES)
+                    .setTypes(INDEX_ENTITY_TYPE)
+                    .setQuery(searchQuery)
+                    .setSearchType(params.isDfs() ? SearchType.DFS_QUERY_THEN_FETCH : SearchType.QUERY_THEN_FETCH)
+                    .setSize(maxRecords);
+            if (!cursorMode) {
+                search.setFrom(offset);
+            }
+            for (final Map.Entry<String, SortOrder> sort : sorts.entrySet()) {
+                search.addSort(this.createSort(sort.getKey(), sort.getValue()));
+            }
+            if (fields != null) {
+                /* only fetch the requested part of the source, which skips e.g. inline metadata */
+                search.setFetchSource(fields, null);
+            }
+            final long searchTime = System.currentTimeMillis();
+            resp = search.execute().actionGet();
+            timings.setSearch(System.currentTimeMillis() - searchTime);
+            timings.setTook(resp.getTookInMillis());
         } catch (ElasticsearchException ex) {
             throw new IOException(ex.getMostSpecificCause().getMessage());
         }
@@ -267,38 +374,19 @@ public class ElasticSearchEntityService extends AbstractElasticSearchService imp
                 .buildAsBytes().toBytes()));
         final SearchResult result = new SearchResult();
 
-        final List<Entity> entities = new ArrayList<>();
+        final long deserializeTime = System.currentTimeMillis();
+        final List<Object> entities = new ArrayList<>();
         for (final SearchHit hit : resp.getHits()) {
-//            String parentId =
-//                    hit.field(EntitiesSearchField.PARENT.getFieldName()) != null ? hit.field(
-//                            EntitiesSearchField.PARENT.getFieldName()).getValue() : null;
-//            String label =
-//                    hit.field(EntitiesSearchField.LABEL.getFieldName()) != null ? hit.field(
-//                            EntitiesSearchField.LABEL.getFieldName()).getValue() : "";
-//            String contentModelId =
-//                    hit.field(EntitiesSearchField.CONTENT_MODEL.getFieldName()) != null ? hit.field(
-//                            EntitiesSearchField.CONTENT_MODEL.getFieldName()).getValue() : "";
-//            String state =
-//                    hit.field(EntitiesSearchField.STATE.getFieldName()) != null ? hit.field(
-//                            EntitiesSearchField.STATE.getFieldName()).getValue() : "";
-                            
-            final Entity e = mapper.readValue(hit.source(), Entity.class);
-//            final Entity e = new Entity();
-//            e.setId(hit.field(EntitiesSearchField.ID.getFieldName()).getValue());
-//            e.setParentId(parentId);
-//            e.setContentModelId(contentModelId);
-//            e.setState(EntityState.valueOf(state));
-//            e.setLabel(label);
-//
-//            final List<String> tags = new ArrayList<>();
-//            if (hit.field(EntitiesSearchField.TAG.getFieldName()) != null) {
-//                for (Object o : hit.field(EntitiesSearchField.TAG.getFieldName()).values()) {
-//                    tags.add((String) o);
-//                }
-//            }
-//            e.setTags(tags);
-            
-            entities.add(e);
+            if (fields != null) {
+                entities.add(hit.getSource());
+            } else {
+                entities.add(mapper.readValue(hit.source(), Entity.class));
+            }
+        }
+        timings.setDeserialize(System.currentTimeMillis() - deserializeTime);
+        final SearchHit[] hits = resp.getHits().getHits();
+        if (cursorMode && hits.length > 0 && hits.length == maxRecords) {
+            result.setScrollId(this.encodeCursor(sorts, hits[hits.length - 1].getSortValues()));
         }
         result.setData(entities);
         result.setTotalHits(resp.getHits().getTotalHits());
@@ -310,9 +398,120 @@ public class ElasticSearchEntityService extends AbstractElasticSearchService imp
         result.setNextOffset(offset + maxRecords);
         result.setPrevOffset(Math.max(offset - maxRecords, 0));
         result.setDuration(System.currentTimeMillis() - time);
+        timings.setTotal(result.getDuration());
+        result.setTimings(timings);
+        return result;
+    }
+
+    @Override
+    public long exportEntities(final SearchParameters params, final OutputStream sink) throws IOException {
+        final String query = StringUtils.isBlank(params.getQuery()) ? "*:*" : params.getQuery();
+        final String[] fields = this.resolveFields(params, SUMMARY_FIELDS, null);
+        // the size of a scan is per shard, so it is capped like the pages of a search
+        final int batchSize = params.getMaxRecords() > 0 && params.getMaxRecords() < this.maxRecords
+                ? params.getMaxRecords() : this.maxRecords;
+        long count = 0;
+        String scrollId = null;
+        try {
+            final SearchRequestBuilder search = this.client.prepareSearch(INDEX_ENTITIES)
+                    .setTypes(INDEX_ENTITY_TYPE)
+                    .setSearchType(SearchType.SCAN)
+                    .setScroll(EXPORT_KEEP_ALIVE)
+                    .setQuery(this.restrict(QueryBuilders.queryString(query), params.getFilter()))
+                    .setSize(batchSize);
+            if (fields != null) {
+                search.setFetchSource(fields, null);
+            }
+            // a scan request only returns a scroll id without any hits
+            scrollId = search.execute().actionGet().getScrollId();
+            while (true) {
+                final SearchResponse resp = this.client.prepareSearchScroll(scrollId)
+                        .setScroll(EXPORT_KEEP_ALIVE)
+                        .execute()
+                        .actionGet();
+                scrollId = resp.getScrollId();
+                if (resp.getHits().getHits().length == 0) {
+                    break;
+                }
+                for (final SearchHit hit : resp.getHits()) {
+                    /* the source is stored as compact JSON, so it can be copied without being parsed */
+                    hit.getSourceRef().writeTo(sink);
+                    sink.write('\n');
+                    count++;
+                }
+                /* hand the batch to the client before fetching the next one, so a slow client throttles the scroll */
+                sink.flush();
+            }
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        } finally {
+            if (scrollId != null) {
+                // release the scroll context right away, also if the client has disconnected
+                try {
+                    this.client.prepareClearScroll().addScrollId(scrollId).execute();
+                } catch (ElasticsearchException ex) {
+                    log.warn("Unable to clear scroll: {}", ex.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+        log.debug("Exported {} entities for '{}'", count, query);
+        return count;
+    }
+
+    @Override
+    public SearchResult suggestEntities(final SearchParameters params) throws IOException {
+        final long time = System.currentTimeMillis();
+        if (StringUtils.isBlank(params.getQuery())) {
+            throw new InvalidParameterException("The prefix of a suggestion may not be empty");
+        }
+        if (params.getMaxRecords() < 1 || params.getMaxRecords() > MAX_SUGGESTIONS) {
+            throw new InvalidParameterException("The number of suggestions has to be between 1 and "
+                    + MAX_SUGGESTIONS);
+        }
+        final SearchResponse resp;
+        try {
+            /* the edge n-grams of the label are indexed, so a prefix is looked up like a plain term */
+            resp = this.client.prepareSearch(INDEX_ENTITIES)
+                    .setTypes(INDEX_ENTITY_TYPE)
+                    .setQuery(this.restrict(QueryBuilders.matchQuery(LABEL_SUGGEST_FIELD, params.getQuery())
+                            .operator(MatchQueryBuilder.Operator.AND), params.getFilter()))
+                    .setSize(params.getMaxRecords())
+                    .setFetchSource(SUGGEST_FIELDS, null)
+                    .execute()
+                    .actionGet();
+        } catch (ElasticsearchException ex) {
+            throw new IOException(ex.getMostSpecificCause().getMessage());
+        }
+        final List<Object> suggestions = new ArrayList<>();
+        for (final SearchHit hit : resp.getHits()) {
+            suggestions.add(hit.getSource());
+        }
+        final SearchResult result = new SearchResult();
+        result.setData(suggestions);
+        result.setTotalHits(resp.getHits().getTotalHits());
+        result.setMaxRecords(params.getMaxRecords());
+        result.setHits(suggestions.size());
+        result.setNumRecords(suggestions.size());
+        result.setTerm(params.getQuery());
+        result.setDuration(System.currentTimeMillis() - time);
         return result;
     }
 
+    @Override
+    public long countEntities(final SearchParameters params) throws IOException {
+        return this.countHits(INDEX_ENTITIES, INDEX_ENTITY_TYPE, params);
+    }
+
+    @Override
+    public boolean existsEntities(final SearchParameters params) throws IOException {
+        return this.hasHits(INDEX_ENTITIES, INDEX_ENTITY_TYPE, params);
+    }
+
+    @Override
+    public FacetResult facets(FacetParameters params) throws IOException {
+        return this.facets(INDEX_ENTITIES, INDEX_ENTITY_TYPE, params, FACET_FIELDS, DATE_FIELDS);
+    }
+
     @Override
     public EntityHierarchy getHierarchy(String entityId) throws IOException {
         final GetResponse resp;
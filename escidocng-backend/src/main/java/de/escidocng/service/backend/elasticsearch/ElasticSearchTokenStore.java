@@ -0,0 +1,413 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.service.backend.elasticsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+import de.escidocng.exceptions.NotFoundException;
+import de.escidocng.model.security.User;
+import de.escidocng.service.backend.BackendCredentialsService;
+
+/**
+ * Implementation of a spring-security-oauth2 {@link org.springframework.security.oauth2.provider.token.TokenStore}
+ * which uses an ElasticSearch index as persistence layer, so tokens issued by one node are valid on all nodes of
+ * the cluster. Token lookups are served from a {@link TokenNearCache} where possible. The user of a token is stored
+ * by name only and loaded from the users index when the token is read.
+ */
+public class ElasticSearchTokenStore extends AbstractElasticSearchService implements TokenStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ElasticSearchTokenStore.class);
+
+    public static final String INDEX_TOKENS = "oauth_tokens";
+
+    public static final String INDEX_ACCESS_TOKEN_TYPE = "access_token";
+
+    public static final String INDEX_REFRESH_TOKEN_TYPE = "refresh_token";
+
+    private static final String TOKEN_FIELD = "token";
+
+    private static final String AUTHENTICATION_FIELD = "authentication";
+
+    private static final String AUTHENTICATION_ID_FIELD = "authenticationId";
+
+    private static final String USER_NAME_FIELD = "userName";
+
+    private static final String CLIENT_ID_FIELD = "clientId";
+
+    private static final String REFRESH_TOKEN_FIELD = "refreshToken";
+
+    private static final String EXPIRATION_FIELD = "expiration";
+
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
+    private static final int SCROLL_SIZE = 100;
+
+    @Autowired
+    private BackendCredentialsService backendCredentialsService;
+
+    private final AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+
+    private TokenNearCache nearCache;
+
+    private ScheduledExecutorService cleanup;
+
+    @PostConstruct
+    public void setup() throws IOException {
+        this.checkAndOrCreateIndex(INDEX_TOKENS);
+        this.nearCache = new TokenNearCache(Integer.parseInt(env.getProperty("escidocng.oauth.tokens.cache.size",
+                "10000")), Long.parseLong(env.getProperty("escidocng.oauth.tokens.cache.ttl", "30000")),
+                Long.parseLong(env.getProperty("escidocng.oauth.tokens.cache.negativeTtl", "5000")));
+        this.cleanup = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "oauth-token-cleanup");
+            t.setDaemon(true);
+            return t;
+        });
+        final long interval = Long.parseLong(env.getProperty("escidocng.oauth.tokens.cleanup.interval", "300"));
+        if (interval > 0) {
+            this.cleanup.scheduleWithFixedDelay(this::removeExpiredTokens, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.cleanup.shutdownNow();
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(final OAuth2AccessToken token) {
+        return this.readAuthentication(token.getValue());
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(final String token) {
+        return this.loadAccessToken(token).getAuthentication();
+    }
+
+    @Override
+    public void storeAccessToken(final OAuth2AccessToken token, final OAuth2Authentication authentication) {
+        final Map<String, Object> source = new HashMap<>();
+        source.put(TOKEN_FIELD, serialize(token));
+        source.put(AUTHENTICATION_FIELD, serialize(this.toStoredAuthentication(authentication)));
+        source.put(AUTHENTICATION_ID_FIELD, authenticationKeyGenerator.extractKey(authentication));
+        source.put(CLIENT_ID_FIELD, authentication.getOAuth2Request().getClientId());
+        if (!authentication.isClientOnly()) {
+            source.put(USER_NAME_FIELD, getUserName(authentication.getUserAuthentication()));
+        }
+        if (token.getRefreshToken() != null) {
+            source.put(REFRESH_TOKEN_FIELD, extractTokenKey(token.getRefreshToken().getValue()));
+        }
+        if (token.getExpiration() != null) {
+            source.put(EXPIRATION_FIELD, token.getExpiration().getTime());
+        }
+        this.index(INDEX_ACCESS_TOKEN_TYPE, token.getValue(), source);
+        this.nearCache.put(token, authentication);
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(final String tokenValue) {
+        return this.loadAccessToken(tokenValue).getToken();
+    }
+
+    @Override
+    public void removeAccessToken(final OAuth2AccessToken token) {
+        this.delete(INDEX_ACCESS_TOKEN_TYPE, token.getValue());
+        this.nearCache.putMissing(token.getValue());
+    }
+
+    @Override
+    public void storeRefreshToken(final OAuth2RefreshToken refreshToken, final OAuth2Authentication authentication) {
+        final Map<String, Object> source = new HashMap<>();
+        source.put(TOKEN_FIELD, serialize(refreshToken));
+        source.put(AUTHENTICATION_FIELD, serialize(this.toStoredAuthentication(authentication)));
+        if (refreshToken instanceof ExpiringOAuth2RefreshToken
+                && ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration() != null) {
+            source.put(EXPIRATION_FIELD, ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration().getTime());
+        }
+        this.index(INDEX_REFRESH_TOKEN_TYPE, refreshToken.getValue(), source);
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(final String tokenValue) {
+        final Map<String, Object> source = this.get(INDEX_REFRESH_TOKEN_TYPE, tokenValue);
+        return source == null ? null : (OAuth2RefreshToken) deserialize(source.get(TOKEN_FIELD));
+    }
+
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(final OAuth2RefreshToken token) {
+        final Map<String, Object> source = this.get(INDEX_REFRESH_TOKEN_TYPE, token.getValue());
+        if (source == null) {
+            return null;
+        }
+        final OAuth2Authentication authentication =
+                this.toAuthentication((OAuth2Authentication) deserialize(source.get(AUTHENTICATION_FIELD)));
+        if (authentication == null) {
+            /* the user of the token does not exist anymore, the token services expect an authentication */
+            throw new InvalidGrantException("Invalid refresh token: " + token.getValue());
+        }
+        return authentication;
+    }
+
+    @Override
+    public void removeRefreshToken(final OAuth2RefreshToken token) {
+        this.delete(INDEX_REFRESH_TOKEN_TYPE, token.getValue());
+    }
+
+    @Override
+    public void removeAccessTokenUsingRefreshToken(final OAuth2RefreshToken refreshToken) {
+        for (final OAuth2AccessToken token : this.findTokens(FilterBuilders.termFilter(REFRESH_TOKEN_FIELD,
+                extractTokenKey(refreshToken.getValue())))) {
+            this.removeAccessToken(token);
+        }
+    }
+
+    @Override
+    public OAuth2AccessToken getAccessToken(final OAuth2Authentication authentication) {
+        final SearchResponse resp;
+        try {
+            resp = this.client.prepareSearch(INDEX_TOKENS)
+                    .setTypes(INDEX_ACCESS_TOKEN_TYPE)
+                    .setQuery(QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), FilterBuilders.termFilter(
+                            AUTHENTICATION_ID_FIELD, authenticationKeyGenerator.extractKey(authentication))))
+                    .setSize(1)
+                    .execute()
+                    .actionGet();
+        } catch (ElasticsearchException ex) {
+            throw new AuthenticationServiceException(ex.getMostSpecificCause().getMessage());
+        }
+        if (resp.getHits().getHits().length == 0) {
+            return null;
+        }
+        return (OAuth2AccessToken) deserialize(resp.getHits().getAt(0).getSource().get(TOKEN_FIELD));
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(final String clientId,
+            final String userName) {
+        return this.findTokens(FilterBuilders.andFilter(FilterBuilders.termFilter(CLIENT_ID_FIELD, clientId),
+                FilterBuilders.termFilter(USER_NAME_FIELD, userName)));
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientId(final String clientId) {
+        return this.findTokens(FilterBuilders.termFilter(CLIENT_ID_FIELD, clientId));
+    }
+
+    /**
+     * Delete all access and refresh tokens which are expired
+     */
+    public void removeExpiredTokens() {
+        try {
+            this.client.prepareDeleteByQuery(INDEX_TOKENS)
+                    .setTypes(INDEX_ACCESS_TOKEN_TYPE, INDEX_REFRESH_TOKEN_TYPE)
+                    .setQuery(QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(),
+                            FilterBuilders.rangeFilter(EXPIRATION_FIELD).lt(System.currentTimeMillis())))
+                    .execute()
+                    .actionGet();
+        } catch (ElasticsearchException ex) {
+            log.error("Unable to remove expired tokens: " + ex.getMostSpecificCause().getMessage());
+        }
+    }
+
+    private TokenNearCache.Entry loadAccessToken(final String tokenValue) {
+        final TokenNearCache.Entry cached = this.nearCache.get(tokenValue);
+        if (cached != null) {
+            return cached;
+        }
+        final Map<String, Object> source = this.get(INDEX_ACCESS_TOKEN_TYPE, tokenValue);
+        if (source == null) {
+            return this.nearCache.putMissing(tokenValue);
+        }
+        final OAuth2Authentication authentication =
+                this.toAuthentication((OAuth2Authentication) deserialize(source.get(AUTHENTICATION_FIELD)));
+        if (authentication == null) {
+            /* the user of the token does not exist anymore */
+            return this.nearCache.putMissing(tokenValue);
+        }
+        return this.nearCache.put((OAuth2AccessToken) deserialize(source.get(TOKEN_FIELD)), authentication);
+    }
+
+    /**
+     * Replace the user of an authentication with his name, so the authentication can be serialized
+     * 
+     * @param authentication the authentication
+     * @return the authentication to store
+     */
+    private OAuth2Authentication toStoredAuthentication(final OAuth2Authentication authentication) {
+        if (authentication.isClientOnly()) {
+            return authentication;
+        }
+        final Authentication user = authentication.getUserAuthentication();
+        return new OAuth2Authentication(authentication.getOAuth2Request(), new UsernamePasswordAuthenticationToken(
+                getUserName(user), null, user.getAuthorities()));
+    }
+
+    /**
+     * Replace the name of the user of a stored authentication with the user loaded from the users index
+     * 
+     * @param stored the stored authentication
+     * @return the authentication or null if the user does not exist anymore
+     */
+    private OAuth2Authentication toAuthentication(final OAuth2Authentication stored) {
+        if (stored.isClientOnly()) {
+            return stored;
+        }
+        final Authentication storedUser = stored.getUserAuthentication();
+        final User user;
+        try {
+            user = backendCredentialsService.addDefaultRights(backendCredentialsService.retrieveUser(
+                    (String) storedUser.getPrincipal()));
+        } catch (NotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            throw new AuthenticationServiceException(e.getMessage());
+        }
+        return new OAuth2Authentication(stored.getOAuth2Request(), new UsernamePasswordAuthenticationToken(user,
+                null, storedUser.getAuthorities()));
+    }
+
+    private Collection<OAuth2AccessToken> findTokens(final FilterBuilder filter) {
+        final List<OAuth2AccessToken> tokens = new ArrayList<>();
+        String scrollId = null;
+        try {
+            SearchResponse resp = this.client.prepareSearch(INDEX_TOKENS)
+                    .setTypes(INDEX_ACCESS_TOKEN_TYPE)
+                    .setSearchType(SearchType.SCAN)
+                    .setScroll(SCROLL_KEEP_ALIVE)
+                    .setQuery(QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), filter))
+                    .setSize(SCROLL_SIZE)
+                    .execute()
+                    .actionGet();
+            scrollId = resp.getScrollId();
+            while (true) {
+                resp = this.client.prepareSearchScroll(scrollId).setScroll(SCROLL_KEEP_ALIVE).execute().actionGet();
+                scrollId = resp.getScrollId();
+                if (resp.getHits().getHits().length == 0) {
+                    break;
+                }
+                for (final SearchHit hit : resp.getHits()) {
+                    tokens.add((OAuth2AccessToken) deserialize(hit.getSource().get(TOKEN_FIELD)));
+                }
+            }
+        } catch (ElasticsearchException ex) {
+            throw new AuthenticationServiceException(ex.getMostSpecificCause().getMessage());
+        } finally {
+            if (scrollId != null) {
+                this.client.prepareClearScroll().addScrollId(scrollId).execute();
+            }
+        }
+        return tokens;
+    }
+
+    private Map<String, Object> get(final String type, final String tokenValue) {
+        final GetResponse get;
+        try {
+            get = this.client.prepareGet(INDEX_TOKENS, type, extractTokenKey(tokenValue)).execute().actionGet();
+        } catch (ElasticsearchException ex) {
+            throw new AuthenticationServiceException(ex.getMostSpecificCause().getMessage());
+        }
+        return get.isExists() ? get.getSource() : null;
+    }
+
+    private void index(final String type, final String tokenValue, final Map<String, Object> source) {
+        try {
+            /* refresh, so the token can be found by authentication on all nodes right away */
+            this.client.prepareIndex(INDEX_TOKENS, type, extractTokenKey(tokenValue))
+                    .setSource(source)
+                    .setRefresh(true)
+                    .execute()
+                    .actionGet();
+        } catch (ElasticsearchException ex) {
+            throw new AuthenticationServiceException(ex.getMostSpecificCause().getMessage());
+        }
+    }
+
+    private void delete(final String type, final String tokenValue) {
+        try {
+            this.client.prepareDelete(INDEX_TOKENS, type, extractTokenKey(tokenValue))
+                    .setRefresh(true)
+                    .execute()
+                    .actionGet();
+        } catch (ElasticsearchException ex) {
+            throw new AuthenticationServiceException(ex.getMostSpecificCause().getMessage());
+        }
+    }
+
+    private static String getUserName(final Authentication user) {
+        if (user.getPrincipal() instanceof User) {
+            return ((User) user.getPrincipal()).getName();
+        }
+        return user.getName();
+    }
+
+    /**
+     * Hash a token value for the ids of the token documents and the fields referencing a token. This only keeps the
+     * raw value out of ids and references, the token documents still hold the serialized tokens including their
+     * values.
+     * 
+     * @param tokenValue the value of a token
+     * @return the id of the token in the index
+     */
+    private static String extractTokenKey(final String tokenValue) {
+        return DigestUtils.md5Hex(tokenValue);
+    }
+
+    private static String serialize(final Object object) {
+        return Base64.getEncoder().encodeToString(SerializationUtils.serialize(object));
+    }
+
+    private static Object deserialize(final Object encoded) {
+        return SerializationUtils.deserialize(Base64.getDecoder().decode((String) encoded));
+    }
+}
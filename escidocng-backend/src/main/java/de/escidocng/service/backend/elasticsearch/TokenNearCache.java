@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.service.backend.elasticsearch;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * Node local cache in front of the OAuth2 token index, so validating a token on every request is mostly served from
+ * memory. Tokens which were found are cached for a short time to live, tokens which were not found for an even
+ * shorter one. Tokens removed on another node may therefore still be accepted until their entry expires.
+ */
+public class TokenNearCache {
+
+    private final long ttl;
+
+    private final long negativeTtl;
+
+    private final Map<String, Entry> cache;
+
+    /**
+     * Create a new cache
+     * 
+     * @param size the maximum number of cached tokens
+     * @param ttl the time to live of a found token in milliseconds
+     * @param negativeTtl the time to live of a token which was not found in milliseconds
+     */
+    public TokenNearCache(final int size, final long ttl, final long negativeTtl) {
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > size;
+            }
+        });
+    }
+
+    /**
+     * Get the cached entry of a token
+     * 
+     * @param tokenValue the value of the access token
+     * @return the entry or null if the token is not cached or the entry expired
+     */
+    public Entry get(final String tokenValue) {
+        final Entry entry = cache.get(tokenValue);
+        if (entry == null || entry.validUntil < System.currentTimeMillis()) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Cache a token which was found
+     * 
+     * @param token the access token
+     * @param authentication the authentication the token was issued for
+     * @return the cached entry
+     */
+    public Entry put(final OAuth2AccessToken token, final OAuth2Authentication authentication) {
+        final Entry entry = new Entry(token, authentication, System.currentTimeMillis() + ttl);
+        cache.put(token.getValue(), entry);
+        return entry;
+    }
+
+    /**
+     * Cache a token which was not found or has been removed
+     * 
+     * @param tokenValue the value of the access token
+     * @return the cached entry
+     */
+    public Entry putMissing(final String tokenValue) {
+        final Entry entry = new Entry(null, null, System.currentTimeMillis() + negativeTtl);
+        cache.put(tokenValue, entry);
+        return entry;
+    }
+
+    /**
+     * A cached access token and its authentication, both null if the token does not exist
+     */
+    public static class Entry {
+
+        private final OAuth2AccessToken token;
+
+        private final OAuth2Authentication authentication;
+
+        private final long validUntil;
+
+        private Entry(final OAuth2AccessToken token, final OAuth2Authentication authentication,
+                final long validUntil) {
+            this.token = token;
+            this.authentication = authentication;
+            this.validUntil = validUntil;
+        }
+
+        public OAuth2AccessToken getToken() {
+            return token;
+        }
+
+        public OAuth2Authentication getAuthentication() {
+            return authentication;
+        }
+    }
+}
@@ -3,6 +3,9 @@
  */
 package de.escidocng.service.backend.elasticsearch.queryrestriction;
 
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+
 import de.escidocng.model.security.role.Role;
 
 
@@ -20,24 +23,24 @@ public class AdminRoleQueryRestriction extends RoleQueryRestriction {
      * Admin may see all entities
      */
     @Override
-    public String getEntitiesRestrictionQuery() {
-        return "(*:*)";
+    public FilterBuilder getEntitiesRestrictionFilter() {
+        return FilterBuilders.matchAllFilter();
     }
 
     /**
      * Admin may see all users
      */
     @Override
-    public String getUsersRestrictionQuery() {
-        return "(*:*)";
+    public FilterBuilder getUsersRestrictionFilter() {
+        return FilterBuilders.matchAllFilter();
     }
 
     /**
      * Admin may see all archives
      */
     @Override
-    public String getArchivesRestrictionQuery() {
-        return "(*:*)";
+    public FilterBuilder getArchivesRestrictionFilter() {
+        return FilterBuilders.matchAllFilter();
     }
 
 }
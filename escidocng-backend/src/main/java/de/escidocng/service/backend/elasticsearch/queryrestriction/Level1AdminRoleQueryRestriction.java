@@ -4,9 +4,13 @@
 
 package de.escidocng.service.backend.elasticsearch.queryrestriction;
 
-import java.util.List;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.index.query.BoolFilterBuilder;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
 
 import de.escidocng.model.ContentModel.FixedContentModel;
 import de.escidocng.model.security.role.Right;
@@ -28,100 +32,60 @@ public class Level1AdminRoleQueryRestriction extends RoleQueryRestriction {
      * Level1-Admin may see all level1 + level2-entities belonging to the level1 he has rights for.
      */
     @Override
-    public String getEntitiesRestrictionQuery() {
-        StringBuilder restrictionQueryBuilder = new StringBuilder("(");
-        // restrict to nothing
-        restrictionQueryBuilder.append(EntitiesSearchField.STATE.getFieldName()).append(":NONEXISTING");
-
-        // add restrictions
-        if (getRole() != null && getRole().getRights() != null) {
-            for (Right right : getRole().getRights()) {
-                List<RoleRight> userRights = right.getRoleRights();
-                for (RoleRight userRight : userRights) {
-                    if (RoleRight.READ.equals(userRight)) {
-                        restrictionQueryBuilder.append(" OR ").append(
-                                getLevel1AndLevel2EntitiesRestrictionQuery(right.getAnchorId()));
-                    }
-                }
-            }
-        }
-        restrictionQueryBuilder.append(")");
-        return restrictionQueryBuilder.toString();
+    public FilterBuilder getEntitiesRestrictionFilter() {
+        return getLevel1AndLevel2RestrictionFilter(EntitiesSearchField.CONTENT_MODEL.getFieldName(),
+                EntitiesSearchField.LEVEL1.getFieldName());
     }
 
     /**
      * Level1-Admin may see all users
      */
     @Override
-    public String getUsersRestrictionQuery() {
-        return "(*:*)";
+    public FilterBuilder getUsersRestrictionFilter() {
+        return FilterBuilders.matchAllFilter();
     }
 
     /**
      * Level1-Admin may see archives of all level1 + level2-entities belonging to the level1 he has rights for.
      */
     @Override
-    public String getArchivesRestrictionQuery() {
-        StringBuilder restrictionQueryBuilder = new StringBuilder("(");
-        // restrict to nothing
-        restrictionQueryBuilder.append(ArchivesSearchField.STATE.getFieldName()).append(":NONEXISTING");
+    public FilterBuilder getArchivesRestrictionFilter() {
+        return getLevel1AndLevel2RestrictionFilter(ArchivesSearchField.CONTENT_MODEL.getFieldName(),
+                ArchivesSearchField.LEVEL1.getFieldName());
+    }
 
-        // add restrictions
+    /**
+     * Generate a filter that restricts to level2s and level1s belonging to the level1Ids the role has rights for.
+     * 
+     * @param contentModelField name of the content-model field
+     * @param level1Field name of the level1 field
+     * @return FilterBuilder subRestrictionFilter
+     */
+    private FilterBuilder getLevel1AndLevel2RestrictionFilter(String contentModelField, String level1Field) {
+        final Set<String> level1Ids = new LinkedHashSet<>();
+        boolean allLevel1 = false;
         if (getRole() != null && getRole().getRights() != null) {
             for (Right right : getRole().getRights()) {
-                List<RoleRight> userRights = right.getRoleRights();
-                for (RoleRight userRight : userRights) {
-                    if (RoleRight.READ.equals(userRight)) {
-                        restrictionQueryBuilder.append(" OR ").append(
-                                getLevel1AndLevel2ArchivesRestrictionQuery(right.getAnchorId()));
+                if (right.getRoleRights() != null && right.getRoleRights().contains(RoleRight.READ)) {
+                    if (StringUtils.isBlank(right.getAnchorId())) {
+                        allLevel1 = true;
+                    } else {
+                        level1Ids.add(right.getAnchorId());
                     }
                 }
             }
         }
-        restrictionQueryBuilder.append(")");
-        return restrictionQueryBuilder.toString();
-    }
-
-    /**
-     * Generate a subquery that restrict to level2s and level1s belonging to a distinct level1Id.
-     * 
-     * @param level1Id
-     * @return BoolQueryBuilder subRestrictionQuery
-     */
-    private StringBuilder getLevel1AndLevel2EntitiesRestrictionQuery(String level1Id) {
-        StringBuilder subRestrictionQueryBuilder = new StringBuilder("(");
-        subRestrictionQueryBuilder.append("(");
-        subRestrictionQueryBuilder.append(EntitiesSearchField.CONTENT_MODEL.getFieldName()).append(":").append(
-                FixedContentModel.LEVEL1.getName());
-        subRestrictionQueryBuilder.append(" OR ").append(EntitiesSearchField.CONTENT_MODEL.getFieldName())
-                .append(":").append(FixedContentModel.LEVEL2.getName());
-        subRestrictionQueryBuilder.append(")");
-        if (StringUtils.isNotBlank(level1Id)) {
-            subRestrictionQueryBuilder.append(" AND ").append(EntitiesSearchField.LEVEL1.getFieldName()).append(":").append(level1Id);
+        if (!allLevel1 && level1Ids.isEmpty()) {
+            // restrict to nothing
+            return matchNothing();
         }
-        subRestrictionQueryBuilder.append(")");
-        return subRestrictionQueryBuilder;
-    }
-
-    /**
-     * Generate a subquery that restrict to level2s and level1s belonging to a distinct level1Id.
-     * 
-     * @param level1Id
-     * @return BoolQueryBuilder subRestrictionQuery
-     */
-    private StringBuilder getLevel1AndLevel2ArchivesRestrictionQuery(String level1Id) {
-        StringBuilder subRestrictionQueryBuilder = new StringBuilder("(");
-        subRestrictionQueryBuilder.append("(");
-        subRestrictionQueryBuilder.append(ArchivesSearchField.CONTENT_MODEL.getFieldName()).append(":").append(
-                FixedContentModel.LEVEL1.getName());
-        subRestrictionQueryBuilder.append(" OR ").append(ArchivesSearchField.CONTENT_MODEL.getFieldName())
-                .append(":").append(FixedContentModel.LEVEL2.getName());
-        subRestrictionQueryBuilder.append(")");
-        if (StringUtils.isNotBlank(level1Id)) {
-            subRestrictionQueryBuilder.append(" AND ").append(ArchivesSearchField.LEVEL1.getFieldName()).append(":").append(level1Id);
+        final BoolFilterBuilder filter = FilterBuilders.boolFilter().must(
+                FilterBuilders.termsFilter(contentModelField, FixedContentModel.LEVEL1.getName(),
+                        FixedContentModel.LEVEL2.getName()));
+        if (!allLevel1) {
+            filter.must(FilterBuilders.termsFilter(level1Field, level1Ids));
         }
-        subRestrictionQueryBuilder.append(")");
-        return subRestrictionQueryBuilder;
+        return filter;
     }
 
 }
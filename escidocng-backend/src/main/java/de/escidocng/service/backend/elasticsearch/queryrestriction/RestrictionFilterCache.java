@@ -0,0 +1,195 @@
+/**
+ * 
+ */
+package de.escidocng.service.backend.elasticsearch.queryrestriction;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.BoolFilterBuilder;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.MatchAllFilterBuilder;
+
+import de.escidocng.model.security.User;
+import de.escidocng.model.security.role.Right;
+import de.escidocng.model.security.role.Role;
+import de.escidocng.service.backend.elasticsearch.ElasticSearchCredentialsService.UsersSearchField;
+
+/**
+ * Memoizes the restriction filters of a user as serialized JSON, so the filters of users with many rights are only
+ * compiled once. Each entry keeps an immutable copy of the roles and rights it was compiled from and is recompiled as
+ * soon as the roles of the user are no longer equal to that copy.
+ * 
+ * @author mih
+ */
+public class RestrictionFilterCache {
+
+    private final Map<String, CachedRestriction> cache;
+
+    public RestrictionFilterCache(final int size) {
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, CachedRestriction>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedRestriction> eldest) {
+                return size() > size;
+            }
+        });
+    }
+
+    /**
+     * Get the filter restricting a search to entities the user may see.
+     * 
+     * @param user the searching user
+     * @return JSON filter
+     */
+    public String getEntitiesFilter(final User user) throws IOException {
+        if (user == null || user.getRoles() == null || user.getRoles().isEmpty()) {
+            return toJson(RoleQueryRestriction.matchNothing());
+        }
+        final CachedRestriction cached = this.getCachedRestriction(user);
+        if (cached.entities == null) {
+            final BoolFilterBuilder filter = FilterBuilders.boolFilter();
+            for (Role role : user.getRoles()) {
+                final FilterBuilder roleFilter =
+                        QueryRestrictionFactory.getRoleQueryRestriction(role).getEntitiesRestrictionFilter();
+                if (roleFilter instanceof MatchAllFilterBuilder) {
+                    cached.entities = toJson(roleFilter);
+                    return cached.entities;
+                }
+                filter.should(roleFilter);
+            }
+            cached.entities = toJson(filter.cache(true));
+        }
+        return cached.entities;
+    }
+
+    /**
+     * Get the filter restricting a search to archives the user may see.
+     * 
+     * @param user the searching user
+     * @return JSON filter
+     */
+    public String getArchivesFilter(final User user) throws IOException {
+        if (user == null || user.getRoles() == null || user.getRoles().isEmpty()) {
+            return toJson(RoleQueryRestriction.matchNothing());
+        }
+        final CachedRestriction cached = this.getCachedRestriction(user);
+        if (cached.archives == null) {
+            final BoolFilterBuilder filter = FilterBuilders.boolFilter();
+            for (Role role : user.getRoles()) {
+                final FilterBuilder roleFilter =
+                        QueryRestrictionFactory.getRoleQueryRestriction(role).getArchivesRestrictionFilter();
+                if (roleFilter instanceof MatchAllFilterBuilder) {
+                    cached.archives = toJson(roleFilter);
+                    return cached.archives;
+                }
+                filter.should(roleFilter);
+            }
+            cached.archives = toJson(filter.cache(true));
+        }
+        return cached.archives;
+    }
+
+    /**
+     * Get the filter restricting a search to users the user may see. A user may always see himself.
+     * 
+     * @param user the searching user
+     * @return JSON filter
+     */
+    public String getUsersFilter(final User user) throws IOException {
+        if (user == null) {
+            return toJson(RoleQueryRestriction.matchNothing());
+        }
+        final CachedRestriction cached = this.getCachedRestriction(user);
+        if (cached.users == null) {
+            final BoolFilterBuilder filter = FilterBuilders.boolFilter()
+                    .should(FilterBuilders.termFilter(UsersSearchField.NAME.getFieldName(), user.getName()));
+            if (user.getRoles() != null) {
+                for (Role role : user.getRoles()) {
+                    final FilterBuilder roleFilter =
+                            QueryRestrictionFactory.getRoleQueryRestriction(role).getUsersRestrictionFilter();
+                    if (roleFilter instanceof MatchAllFilterBuilder) {
+                        cached.users = toJson(roleFilter);
+                        return cached.users;
+                    }
+                    filter.should(roleFilter);
+                }
+            }
+            cached.users = toJson(filter.cache(true));
+        }
+        return cached.users;
+    }
+
+    /**
+     * Remove the cached filters of a user
+     * 
+     * @param name the name of the user
+     */
+    public void invalidate(final String name) {
+        this.cache.remove(name);
+    }
+
+    private CachedRestriction getCachedRestriction(final User user) {
+        final List<Object> roles = snapshot(user);
+        CachedRestriction cached = this.cache.get(user.getName());
+        if (cached == null || !cached.roles.equals(roles)) {
+            cached = new CachedRestriction(roles);
+            this.cache.put(user.getName(), cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Copy the role names and rights of a user into an immutable structure which is equal to the copy of another user
+     * exactly if both have the same roles with the same rights in the same order.
+     * 
+     * @param user the user
+     * @return the immutable copy of the roles
+     */
+    private static List<Object> snapshot(final User user) {
+        final List<Object> roles = new ArrayList<>();
+        if (user.getRoles() != null) {
+            for (Role role : user.getRoles()) {
+                final List<Object> rights = new ArrayList<>();
+                if (role.getRights() != null) {
+                    for (Right right : role.getRights()) {
+                        rights.add(Arrays.asList(right.getAnchorId(), right.getRoleRights() == null ? null
+                                : Collections.unmodifiableList(new ArrayList<>(right.getRoleRights()))));
+                    }
+                }
+                roles.add(Arrays.asList(role.getRoleName(), Collections.unmodifiableList(rights)));
+            }
+        }
+        return Collections.unmodifiableList(roles);
+    }
+
+    private static String toJson(final FilterBuilder filter) throws IOException {
+        final XContentBuilder builder = XContentFactory.jsonBuilder();
+        filter.toXContent(builder, ToXContent.EMPTY_PARAMS);
+        return builder.string();
+    }
+
+    private static class CachedRestriction {
+
+        private final List<Object> roles;
+
+        private volatile String entities;
+
+        private volatile String archives;
+
+        private volatile String users;
+
+        private CachedRestriction(final List<Object> roles) {
+            this.roles = roles;
+        }
+    }
+}
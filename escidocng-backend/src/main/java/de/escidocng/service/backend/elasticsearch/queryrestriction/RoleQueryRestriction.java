@@ -3,12 +3,16 @@
  */
 package de.escidocng.service.backend.elasticsearch.queryrestriction;
 
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+
 import de.escidocng.model.security.role.Role;
 
 
 /**
  * Abstract Class that defines Methods extending classes have to implement.
- * Responsible to deliver Restriction-Queries for Searches, dependent on Roles the searching user has.
+ * Responsible to deliver Restriction-Filters for Searches, dependent on Roles the searching user has.
+ * The filters only consist of term(s) filters, so elasticsearch can cache them independently of the query.
  * 
  * @author mih
  *
@@ -26,24 +30,33 @@ public abstract class RoleQueryRestriction {
     }
     
     /**
-     * Generate a Restriction-Query for a search for entities
+     * Generate a Restriction-Filter for a search for entities
+     * 
+     * @return FilterBuilder with restriction-Filter
+     */
+    public abstract FilterBuilder getEntitiesRestrictionFilter();
+
+    /**
+     * Generate a Restriction-Filter for a search for users
      * 
-     * @return String with restriction-Query
+     * @return FilterBuilder with restriction-Filter
      */
-    public abstract String getEntitiesRestrictionQuery();
+    public abstract FilterBuilder getUsersRestrictionFilter();
 
     /**
-     * Generate a Restriction-Query for a search for users
+     * Generate a Restriction-Filter for a search for archives
      * 
-     * @return String with restriction-Query
+     * @return FilterBuilder with restriction-Filter
      */
-    public abstract String getUsersRestrictionQuery();
+    public abstract FilterBuilder getArchivesRestrictionFilter();
 
     /**
-     * Generate a Restriction-Query for a search for archives
+     * Generate a Filter that matches no document
      * 
-     * @return String with restriction-Query
+     * @return FilterBuilder matching nothing
      */
-    public abstract String getArchivesRestrictionQuery();
+    public static FilterBuilder matchNothing() {
+        return FilterBuilders.notFilter(FilterBuilders.matchAllFilter());
+    }
 
 }
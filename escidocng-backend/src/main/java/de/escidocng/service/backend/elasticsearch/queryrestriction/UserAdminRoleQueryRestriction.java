@@ -3,14 +3,17 @@
  */
 package de.escidocng.service.backend.elasticsearch.queryrestriction;
 
-import java.util.List;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
 
 import de.escidocng.model.security.role.Right;
 import de.escidocng.model.security.role.Role;
 import de.escidocng.model.security.role.Role.RoleRight;
-import de.escidocng.service.backend.elasticsearch.ElasticSearchEntityService.EntitiesSearchField;
+import de.escidocng.service.backend.elasticsearch.ElasticSearchCredentialsService.UsersSearchField;
 
 
 /**
@@ -27,52 +30,39 @@ public class UserAdminRoleQueryRestriction extends RoleQueryRestriction {
      * User-Admin may see no entities.
      */
     @Override
-    public String getEntitiesRestrictionQuery() {
-        StringBuilder restrictionQueryBuilder = new StringBuilder("(");
-        // restrict to nothing
-        restrictionQueryBuilder.append(EntitiesSearchField.STATE.getFieldName()).append(":NONEXISTING");
-        restrictionQueryBuilder.append(")");
-        return restrictionQueryBuilder.toString();
+    public FilterBuilder getEntitiesRestrictionFilter() {
+        return matchNothing();
     }
 
     /**
      * User-Admin may see users according to the rights he has (blank: all users, otherwise users with id of right).
      */
     @Override
-    public String getUsersRestrictionQuery() {
-        StringBuilder restrictionQueryBuilder = new StringBuilder("(");
-        // restrict to nothing
-        restrictionQueryBuilder.append("name:NONEXISTING");
-
-        // add restrictions
+    public FilterBuilder getUsersRestrictionFilter() {
+        final Set<String> names = new LinkedHashSet<>();
         if (getRole() != null && getRole().getRights() != null) {
             for (Right right : getRole().getRights()) {
-                List<RoleRight> userRights = right.getRoleRights();
-                for (RoleRight userRight : userRights) {
-                    if (RoleRight.READ.equals(userRight)) {
-                        if (StringUtils.isNotBlank(right.getAnchorId())) {
-                            restrictionQueryBuilder.append(" OR name:").append(right.getAnchorId());
-                        } else {
-                            restrictionQueryBuilder.append(" OR name:*");
-                        }
+                if (right.getRoleRights() != null && right.getRoleRights().contains(RoleRight.READ)) {
+                    if (StringUtils.isBlank(right.getAnchorId())) {
+                        return FilterBuilders.matchAllFilter();
                     }
+                    names.add(right.getAnchorId());
                 }
             }
         }
-        restrictionQueryBuilder.append(")");
-        return restrictionQueryBuilder.toString();
+        if (names.isEmpty()) {
+            // restrict to nothing
+            return matchNothing();
+        }
+        return FilterBuilders.termsFilter(UsersSearchField.NAME.getFieldName(), names);
     }
 
     /**
      * User-Admin may see no archives.
      */
     @Override
-    public String getArchivesRestrictionQuery() {
-        StringBuilder restrictionQueryBuilder = new StringBuilder("(");
-        // restrict to nothing
-        restrictionQueryBuilder.append(EntitiesSearchField.STATE.getFieldName()).append(":NONEXISTING");
-        restrictionQueryBuilder.append(")");
-        return restrictionQueryBuilder.toString();
+    public FilterBuilder getArchivesRestrictionFilter() {
+        return matchNothing();
     }
 
 }
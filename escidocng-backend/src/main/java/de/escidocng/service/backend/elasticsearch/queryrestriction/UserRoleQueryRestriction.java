@@ -4,9 +4,15 @@
 
 package de.escidocng.service.backend.elasticsearch.queryrestriction;
 
-import java.util.List;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.index.query.BoolFilterBuilder;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
 
 import de.escidocng.model.ContentModel.FixedContentModel;
 import de.escidocng.model.Entity.EntityState;
@@ -21,6 +27,11 @@ import de.escidocng.service.backend.elasticsearch.ElasticSearchEntityService.Ent
  */
 public class UserRoleQueryRestriction extends RoleQueryRestriction {
 
+    /**
+     * the state of entities is analyzed, so the filter uses the not_analyzed sub-field
+     */
+    private static final String ENTITIES_STATE_FIELD = EntitiesSearchField.STATE.getFieldName() + ".raw";
+
     public UserRoleQueryRestriction(Role role) {
         super(role);
     }
@@ -29,175 +40,111 @@ public class UserRoleQueryRestriction extends RoleQueryRestriction {
      * User may see entities below level2 he has rights for + level2-entities he has rights for in correct state.
      */
     @Override
-    public String getEntitiesRestrictionQuery() {
-        StringBuilder restrictionQueryBuilder = new StringBuilder("(");
-        // restrict to nothing
-        restrictionQueryBuilder.append(EntitiesSearchField.STATE.getFieldName()).append(":NONEXISTING");
-
-        // add restrictions
-        if (getRole() != null && getRole().getRights() != null) {
-            for (Right right : getRole().getRights()) {
-                List<RoleRight> userRights = right.getRoleRights();
-                for (RoleRight userRight : userRights) {
-                    if (RoleRight.READ_PENDING_METADATA.equals(userRight)) {
-                        restrictionQueryBuilder.append(" OR ").append(
-                                getDataEntitiesRestrictionQuery(EntityState.PENDING,
-                                        right.getAnchorId()));
-                    } else if (RoleRight.READ_PUBLISHED_METADATA.equals(userRight)) {
-                        restrictionQueryBuilder.append(" OR ").append(
-                                getDataEntitiesRestrictionQuery(EntityState.PUBLISHED,
-                                        right.getAnchorId()));
-                    } else if (RoleRight.READ_SUBMITTED_METADATA.equals(userRight)) {
-                        restrictionQueryBuilder.append(" OR ").append(
-                                getDataEntitiesRestrictionQuery(EntityState.SUBMITTED,
-                                        right.getAnchorId()));
-                    } else if (RoleRight.READ_WITHDRAWN_METADATA.equals(userRight)) {
-                        restrictionQueryBuilder.append(" OR ").append(
-                                getDataEntitiesRestrictionQuery(EntityState.WITHDRAWN,
-                                        right.getAnchorId()));
-                    } else if (RoleRight.READ_LEVEL2.equals(userRight)) {
-                        restrictionQueryBuilder.append(" OR ").append(
-                                getLevel2EntitiesRestrictionQuery(right.getAnchorId()));
-                    }
-                }
-            }
-        }
-        restrictionQueryBuilder.append(")");
-        return restrictionQueryBuilder.toString();
+    public FilterBuilder getEntitiesRestrictionFilter() {
+        return getRestrictionFilter(ENTITIES_STATE_FIELD, EntitiesSearchField.CONTENT_MODEL.getFieldName(),
+                EntitiesSearchField.LEVEL2.getFieldName());
     }
 
     /**
      * User may not see users.
      */
     @Override
-    public String getUsersRestrictionQuery() {
-        StringBuilder restrictionQueryBuilder = new StringBuilder("(");
-        // restrict to nothing
-        restrictionQueryBuilder.append("name:NONEXISTING");
-        restrictionQueryBuilder.append(")");
-        return restrictionQueryBuilder.toString();
+    public FilterBuilder getUsersRestrictionFilter() {
+        return matchNothing();
     }
 
     /**
      * User may see archives below level2 he has rights for + level2-archives he has rights for in correct state.
      */
     @Override
-    public String getArchivesRestrictionQuery() {
-        StringBuilder restrictionQueryBuilder = new StringBuilder("(");
-        // restrict to nothing
-        restrictionQueryBuilder.append(ArchivesSearchField.STATE.getFieldName()).append(":NONEXISTING");
+    public FilterBuilder getArchivesRestrictionFilter() {
+        return getRestrictionFilter(ArchivesSearchField.STATE.getFieldName(),
+                ArchivesSearchField.CONTENT_MODEL.getFieldName(), ArchivesSearchField.LEVEL2.getFieldName());
+    }
 
-        // add restrictions
+    /**
+     * Generate a filter with one clause per right, each holding all level2Ids the right has been granted for.
+     * 
+     * @param stateField name of the state field
+     * @param contentModelField name of the content-model field
+     * @param level2Field name of the level2 field
+     * @return FilterBuilder restrictionFilter
+     */
+    private FilterBuilder getRestrictionFilter(String stateField, String contentModelField, String level2Field) {
+        final Map<EntityState, Set<String>> dataLevel2Ids = new EnumMap<>(EntityState.class);
+        Set<String> level2Ids = null;
         if (getRole() != null && getRole().getRights() != null) {
             for (Right right : getRole().getRights()) {
-                List<RoleRight> userRights = right.getRoleRights();
-                for (RoleRight userRight : userRights) {
-                    if (RoleRight.READ_PENDING_METADATA.equals(userRight)) {
-                        restrictionQueryBuilder.append(" OR ").append(
-                                getDataArchivesRestrictionQuery(EntityState.PENDING,
-                                        right.getAnchorId()));
-                    } else if (RoleRight.READ_PUBLISHED_METADATA.equals(userRight)) {
-                        restrictionQueryBuilder.append(" OR ").append(
-                                getDataArchivesRestrictionQuery(EntityState.PUBLISHED,
-                                        right.getAnchorId()));
-                    } else if (RoleRight.READ_SUBMITTED_METADATA.equals(userRight)) {
-                        restrictionQueryBuilder.append(" OR ").append(
-                                getDataArchivesRestrictionQuery(EntityState.SUBMITTED,
-                                        right.getAnchorId()));
-                    } else if (RoleRight.READ_WITHDRAWN_METADATA.equals(userRight)) {
-                        restrictionQueryBuilder.append(" OR ").append(
-                                getDataArchivesRestrictionQuery(EntityState.WITHDRAWN,
-                                        right.getAnchorId()));
+                if (right.getRoleRights() == null) {
+                    continue;
+                }
+                for (RoleRight userRight : right.getRoleRights()) {
+                    final EntityState state = getReadableState(userRight);
+                    if (state != null) {
+                        if (!dataLevel2Ids.containsKey(state)) {
+                            dataLevel2Ids.put(state, new LinkedHashSet<String>());
+                        }
+                        dataLevel2Ids.get(state).add(StringUtils.trimToEmpty(right.getAnchorId()));
                     } else if (RoleRight.READ_LEVEL2.equals(userRight)) {
-                        restrictionQueryBuilder.append(" OR ").append(
-                                getLevel2ArchivesRestrictionQuery(right.getAnchorId()));
+                        if (level2Ids == null) {
+                            level2Ids = new LinkedHashSet<>();
+                        }
+                        level2Ids.add(StringUtils.trimToEmpty(right.getAnchorId()));
                     }
                 }
             }
         }
-        restrictionQueryBuilder.append(")");
-        return restrictionQueryBuilder.toString();
-    }
-
-    /**
-     * Generate a subquery that restrict to a certain level2 and entities with certain state
-     * 
-     * @param state
-     * @param level2Id
-     * @return StringBuilder subRestrictionQuery
-     */
-    private StringBuilder getDataEntitiesRestrictionQuery(EntityState state, String level2Id) {
-        StringBuilder subRestrictionQueryBuilder = new StringBuilder("(");
-        subRestrictionQueryBuilder.append(EntitiesSearchField.STATE.getFieldName()).append(":").append(state.name());
-        subRestrictionQueryBuilder.append(" AND NOT ").append(EntitiesSearchField.CONTENT_MODEL.getFieldName()).append(
-                ":").append(FixedContentModel.LEVEL1.getName());
-        subRestrictionQueryBuilder.append(" AND NOT ").append(EntitiesSearchField.CONTENT_MODEL.getFieldName()).append(
-                ":").append(FixedContentModel.LEVEL2.getName());
-        if (StringUtils.isNotBlank(level2Id)) {
-            subRestrictionQueryBuilder.append(" AND ").append(EntitiesSearchField.LEVEL2.getFieldName()).append(
-                    ":").append(level2Id);
+        if (dataLevel2Ids.isEmpty() && level2Ids == null) {
+            // restrict to nothing
+            return matchNothing();
         }
-        subRestrictionQueryBuilder.append(")");
-        return subRestrictionQueryBuilder;
-    }
-
-    /**
-     * Generate a subquery that restrict to a certain level2
-     * 
-     * @param level2Id
-     * @return BoolQueryBuilder subRestrictionQuery
-     */
-    private StringBuilder getLevel2EntitiesRestrictionQuery(String level2Id) {
-        StringBuilder subRestrictionQueryBuilder = new StringBuilder("(");
-        subRestrictionQueryBuilder.append(EntitiesSearchField.CONTENT_MODEL.getFieldName()).append(":").append(
-                FixedContentModel.LEVEL2.getName());
-        if (StringUtils.isNotBlank(level2Id)) {
-            subRestrictionQueryBuilder.append(" AND ").append(EntitiesSearchField.LEVEL2.getFieldName()).append(":")
-                    .append(
-                            level2Id);
+        final BoolFilterBuilder filter = FilterBuilders.boolFilter();
+        for (Map.Entry<EntityState, Set<String>> entry : dataLevel2Ids.entrySet()) {
+            final BoolFilterBuilder dataFilter = FilterBuilders.boolFilter()
+                    .must(FilterBuilders.termFilter(stateField, entry.getKey().name()))
+                    .mustNot(FilterBuilders.termsFilter(contentModelField, FixedContentModel.LEVEL1.getName(),
+                            FixedContentModel.LEVEL2.getName()));
+            addLevel2Restriction(dataFilter, level2Field, entry.getValue());
+            filter.should(dataFilter);
+        }
+        if (level2Ids != null) {
+            final BoolFilterBuilder level2Filter = FilterBuilders.boolFilter()
+                    .must(FilterBuilders.termFilter(contentModelField, FixedContentModel.LEVEL2.getName()));
+            addLevel2Restriction(level2Filter, level2Field, level2Ids);
+            filter.should(level2Filter);
         }
-        subRestrictionQueryBuilder.append(")");
-        return subRestrictionQueryBuilder;
+        return filter;
     }
 
     /**
-     * Generate a subquery that restrict to a certain level2 and archives with certain state
+     * Restrict a filter to the given level2Ids, unless a right has been granted without anchor.
      * 
-     * @param state
-     * @param level2Id
-     * @return StringBuilder subRestrictionQuery
+     * @param filter the filter to restrict
+     * @param level2Field name of the level2 field
+     * @param level2Ids the level2Ids, an empty id stands for all level2s
      */
-    private StringBuilder getDataArchivesRestrictionQuery(EntityState state, String level2Id) {
-        StringBuilder subRestrictionQueryBuilder = new StringBuilder("(");
-        subRestrictionQueryBuilder.append(ArchivesSearchField.STATE.getFieldName()).append(":").append(state.name());
-        subRestrictionQueryBuilder.append(" AND NOT ").append(ArchivesSearchField.CONTENT_MODEL.getFieldName()).append(
-                ":").append(FixedContentModel.LEVEL1.getName());
-        subRestrictionQueryBuilder.append(" AND NOT ").append(ArchivesSearchField.CONTENT_MODEL.getFieldName()).append(
-                ":").append(FixedContentModel.LEVEL2.getName());
-        if (StringUtils.isNotBlank(level2Id)) {
-            subRestrictionQueryBuilder.append(" AND ").append(ArchivesSearchField.LEVEL2.getFieldName()).append(
-                    ":").append(level2Id);
+    private void addLevel2Restriction(BoolFilterBuilder filter, String level2Field, Set<String> level2Ids) {
+        if (!level2Ids.contains("")) {
+            filter.must(FilterBuilders.termsFilter(level2Field, level2Ids));
         }
-        subRestrictionQueryBuilder.append(")");
-        return subRestrictionQueryBuilder;
     }
 
     /**
-     * Generate a subquery that restrict to a certain level2
+     * Get the state of the entities a right allows to read the metadata of.
      * 
-     * @param level2Id
-     * @return BoolQueryBuilder subRestrictionQuery
+     * @param userRight the right
+     * @return EntityState or null if the right does not allow to read metadata
      */
-    private StringBuilder getLevel2ArchivesRestrictionQuery(String level2Id) {
-        StringBuilder subRestrictionQueryBuilder = new StringBuilder("(");
-        subRestrictionQueryBuilder.append(ArchivesSearchField.CONTENT_MODEL.getFieldName()).append(":").append(
-                FixedContentModel.LEVEL2.getName());
-        if (StringUtils.isNotBlank(level2Id)) {
-            subRestrictionQueryBuilder.append(" AND ").append(ArchivesSearchField.LEVEL2.getFieldName()).append(":")
-                    .append(
-                            level2Id);
+    private EntityState getReadableState(RoleRight userRight) {
+        if (RoleRight.READ_PENDING_METADATA.equals(userRight)) {
+            return EntityState.PENDING;
+        } else if (RoleRight.READ_PUBLISHED_METADATA.equals(userRight)) {
+            return EntityState.PUBLISHED;
+        } else if (RoleRight.READ_SUBMITTED_METADATA.equals(userRight)) {
+            return EntityState.SUBMITTED;
+        } else if (RoleRight.READ_WITHDRAWN_METADATA.equals(userRight)) {
+            return EntityState.WITHDRAWN;
         }
-        subRestrictionQueryBuilder.append(")");
-        return subRestrictionQueryBuilder;
+        return null;
     }
 }
@@ -15,6 +15,7 @@
  */
 package de.escidocng.service.backend.fs;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -22,8 +23,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -37,6 +40,7 @@ import org.springframework.beans.factory.annotation.Value;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import de.escidocng.model.ArchiveManifest;
 import de.escidocng.model.Entity;
 import de.escidocng.service.backend.BackendArchiveBlobService;
 import de.escidocng.service.backend.BackendArchiveInformationPackageService;
@@ -44,9 +48,29 @@ import de.escidocng.service.backend.BackendBlobstoreService;
 
 public class FileSystemArchiveService implements BackendArchiveBlobService {
 
+    /** prefix of the temp files packages are written to before they are renamed into place */
+    public static final String TMP_PREFIX = ".aip_";
+
+    /** suffix of the temp files packages are written to before they are renamed into place */
+    public static final String TMP_SUFFIX = ".tmp";
+
+    private static final int BUFFER_SIZE = 65536;
+
+    /** don't force written packages to disk but leave it to the operating system */
+    public static final String FSYNC_NONE = "none";
+
+    /** force the content of written packages to disk before renaming them */
+    public static final String FSYNC_FILE = "file";
+
+    /** force the content of written packages and the archive directory holding the renamed package to disk */
+    public static final String FSYNC_DIRECTORY = "directory";
+
     @Value("${archive.fs.path}")
     private String archivePath;
 
+    @Value("${archive.fs.fsync:file}")
+    private String fsync;
+
     @Autowired
     private ObjectMapper mapper;
 
@@ -87,11 +111,29 @@ public class FileSystemArchiveService implements BackendArchiveBlobService {
         if (!directory.canRead()) {
             throw new IllegalArgumentException("Insufficient permissions to read from " + directory.getAbsolutePath());
         }
+        if (!FSYNC_NONE.equals(fsync) && !FSYNC_FILE.equals(fsync) && !FSYNC_DIRECTORY.equals(fsync)) {
+            throw new IllegalArgumentException("Invalid fsync policy " + fsync);
+        }
 
+        /* remove packages which have not been written completely before a shutdown */
+        final File[] stale =
+                directory.listFiles((dir, name) -> name.startsWith(TMP_PREFIX) && name.endsWith(TMP_SUFFIX));
+        if (stale != null) {
+            for (final File f : stale) {
+                log.info("Removing incomplete archival package " + f.getAbsolutePath());
+                f.delete();
+            }
+        }
     }
 
     @Override
     public String saveOrUpdate(final Entity e) throws IOException {
+        return this.saveOrUpdate(e, null, null);
+    }
+
+    @Override
+    public String saveOrUpdate(final Entity e, final ArchiveManifest base, final ArchiveManifest manifest)
+            throws IOException {
         log.info("Creating archival package");
         checkExistsAndIsReadable(directory);
         final File target = getZipFile(e.getId(), e.getVersion());
@@ -99,22 +141,36 @@ public class FileSystemArchiveService implements BackendArchiveBlobService {
         if (target.exists() && !target.canWrite()) {
             throw new IOException("Insufficient permissions to write to " + target.getAbsolutePath());
         }
-
-        /* save the entity by first writing to a tmp file and then moving it to the right place */
-        final File tmpNew = File.createTempFile("entity", "zip");
-        try (final OutputStream sink = new FileOutputStream(tmpNew)){
-            this.aipService.write(e, sink);
+        final long required = this.aipService.estimateSize(e, base);
+        if (directory.getUsableSpace() < required) {
+            throw new IOException("Insufficient space in " + directory.getAbsolutePath() + " to write an AIP of "
+                    + required + " bytes");
         }
 
-        if (target.exists()) {
-            final File orig = File.createTempFile("entity", "zip");
-            Files.move(target.toPath(), orig.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            Files.move(tmpNew.toPath(), target.toPath());
-            orig.delete();
-            tmpNew.delete();
-        } else {
-            Files.move(tmpNew.toPath(), target.toPath());
-            tmpNew.delete();
+        /*
+         * save the entity by writing to a tmp file in the archive directory and renaming it afterwards, so the package
+         * is never copied and readers never see a partially written package
+         */
+        final File tmpNew = File.createTempFile(TMP_PREFIX, TMP_SUFFIX, directory);
+        try {
+            try (final FileOutputStream out = new FileOutputStream(tmpNew);
+                    final OutputStream sink = new BufferedOutputStream(out, BUFFER_SIZE)) {
+                this.aipService.write(e, base, manifest, sink);
+                sink.flush();
+                if (!FSYNC_NONE.equals(fsync)) {
+                    out.getChannel().force(true);
+                }
+            }
+            Files.move(tmpNew.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpNew.toPath());
+        }
+        if (FSYNC_DIRECTORY.equals(fsync)) {
+            /* make the rename durable as well */
+            try (final FileChannel dir = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+                dir.force(true);
+            }
         }
         return target.getAbsolutePath();
     }
@@ -23,17 +23,22 @@ import java.io.OutputStream;
 import java.util.EnumSet;
 import java.util.UUID;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import org.apache.sshd.client.SftpClient;
 import org.apache.sshd.common.SshException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
 
+import de.escidocng.model.ArchiveManifest;
 import de.escidocng.model.Entity;
 import de.escidocng.service.backend.BackendArchiveBlobService;
 import de.escidocng.service.backend.BackendArchiveInformationPackageService;
 import de.escidocng.service.backend.BackendBlobstoreService;
-import de.escidocng.util.SftpUtil;
 
 public class SftpArchiveService implements BackendArchiveBlobService {
 
@@ -49,53 +54,139 @@ public class SftpArchiveService implements BackendArchiveBlobService {
     @Value("${archive.sftp.path}")
     private String archivePath;
 
-    private SftpClient sftp;
+    private static final String TMP_SUFFIX = ".part";
+
+    private static final Logger log = LoggerFactory.getLogger(SftpArchiveService.class);
+
+    private SftpSessionPool pool;
+
+    private long maxPackageSize;
+
+    private int bufferSize;
+
+    private int window;
+
+    @PostConstruct
+    public void init() {
+        this.bufferSize = Integer.parseInt(env.getProperty("archive.sftp.buffer.size", "32768"));
+        this.window = Integer.parseInt(env.getProperty("archive.sftp.window", "4"));
+        this.maxPackageSize = Long.parseLong(env.getProperty("archive.sftp.package.maxsize", "0"));
+        this.pool = new SftpSessionPool(env.getRequiredProperty("archive.sftp.user"),
+                env.getProperty("archive.sftp.passwd", ""),
+                env.getRequiredProperty("archive.sftp.host"),
+                Integer.parseInt(env.getRequiredProperty("archive.sftp.port")),
+                env.getRequiredProperty("archive.sftp.basepath"),
+                Integer.parseInt(env.getProperty("archive.sftp.pool.size", "8")),
+                Long.parseLong(env.getProperty("archive.sftp.pool.timeout", "30000")));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.pool.close();
+    }
 
     @Override
     public InputStream retrieve(final String path) throws IOException {
-        return getSftpClient().read(path);
+        return new SftpInputStream(pool, path, bufferSize, window);
     }
 
     @Override
     public String saveOrUpdate(final Entity e) throws IOException {
+        return this.saveOrUpdate(e, null, null);
+    }
+
+    @Override
+    public String saveOrUpdate(final Entity e, final ArchiveManifest base, final ArchiveManifest manifest)
+            throws IOException {
         if (e == null) {
             throw new IOException("Unable to archive null entity");
         }
         ensureDirectoryExists(archivePath);
         final String fileName = "aip_" + UUID.randomUUID() + ".zip";
         final String path = archivePath + "/" + fileName;
+        final String tmpPath = path + TMP_SUFFIX;
+        final long required = this.aipService.estimateSize(e, base);
+        if (maxPackageSize > 0 && required > maxPackageSize) {
+            throw new IOException("The estimated AIP size of " + required + " bytes exceeds the limit of "
+                    + maxPackageSize + " bytes");
+        }
 
-        try (final OutputStream sink = getSftpClient().write(path)) {
-            this.aipService.write(e, sink);
+        /* write to a temporary name and rename it on the server, so a failed transfer never leaves a package behind */
+        boolean renamed = false;
+        try {
+            final long written;
+            try (final SftpOutputStream sink = new SftpOutputStream(pool, tmpPath, bufferSize, window)) {
+                this.aipService.write(e, base, manifest, sink);
+                sink.flush();
+                written = sink.getBytesWritten();
+            }
+            final long stored = this.sizeOf(tmpPath);
+            if (stored != written) {
+                // a full disk on the server may truncate the file without failing a write request
+                throw new IOException("Incomplete transfer of " + tmpPath + ": " + stored + " of " + written
+                        + " bytes stored");
+            }
+            pool.execute(sftp -> {
+                sftp.rename(tmpPath, path);
+                return null;
+            });
+            renamed = true;
+        } finally {
+            if (!renamed) {
+                this.removeQuietly(tmpPath);
+            }
         }
         return path;
     }
 
     @Override
     public void delete(final String path) throws IOException {
-        getSftpClient().remove(path);
+        pool.execute(sftp -> {
+            sftp.remove(path);
+            return null;
+        });
     }
 
     @Override
     public long sizeOf(final String path) throws IOException {
-        final SftpClient.Attributes attrs = getSftpClient().stat(path);
+        final SftpClient.Attributes attrs = pool.execute(sftp -> sftp.stat(path));
         if (attrs == null) {
             throw new FileNotFoundException("Unable to locate archive " + path);
         }
         return attrs.size;
     }
 
+    private void removeQuietly(final String path) {
+        try {
+            pool.execute(sftp -> {
+                sftp.remove(path);
+                return null;
+            });
+        } catch (IOException e) {
+            log.warn("Unable to remove incomplete archival package " + path, e);
+        }
+    }
+
     private void ensureDirectoryExists(String path) throws IOException {
         if (!exists(path)) {
-            getSftpClient().mkdir(path);
+            pool.execute(sftp -> {
+                sftp.mkdir(path);
+                return null;
+            });
         }
     }
 
     private boolean exists(final String path) throws IOException {
-        final SftpClient.Handle handle = getSftpClient().open(path, EnumSet.of(SftpClient.OpenMode.Read));
         try {
-            getSftpClient().stat(handle);
-            return true;
+            return pool.execute(sftp -> {
+                final SftpClient.Handle handle = sftp.open(path, EnumSet.of(SftpClient.OpenMode.Read));
+                try {
+                    sftp.stat(handle);
+                } finally {
+                    sftp.close(handle);
+                }
+                return true;
+            });
         } catch (SshException e) {
             // ugly flow control by exception handling, but there is no check for existence method in the sftp client
             // it seems, and this is all I could get to work
@@ -105,20 +196,4 @@ public class SftpArchiveService implements BackendArchiveBlobService {
             throw new IOException(e);
         }
     }
-
-    private SftpClient getSftpClient() throws IOException {
-        if (sftp == null) {
-            try {
-                sftp =
-                        SftpUtil.getSftpClient(env.getRequiredProperty("archive.sftp.user"),
-                                env.getRequiredProperty("archive.sftp.passwd"),
-                                env.getRequiredProperty("archive.sftp.host"),
-                                Integer.parseInt(env.getRequiredProperty("archive.sftp.port")),
-                                env.getRequiredProperty("archive.sftp.basepath"));
-            } catch (Exception e) {
-                throw new IOException(e.getMessage());
-            }
-        }
-        return sftp;
-    }
 }
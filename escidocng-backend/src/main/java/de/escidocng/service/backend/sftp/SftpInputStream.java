@@ -13,38 +13,190 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package de.escidocng.service.backend.sftp;
 
-import org.apache.sshd.client.SftpClient;
+package de.escidocng.service.backend.sftp;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import org.apache.sshd.client.SftpClient;
+
+/**
+ * An {@link java.io.InputStream} reading a remote file in chunks of a configurable size. Up to {@code window} chunks
+ * are requested ahead of the reader, each on its own channel borrowed from a {@link SftpSessionPool}, so that the
+ * transfer is not bound by the round trip time of a single request.
+ */
 public class SftpInputStream extends InputStream {
-    private final SftpClient.Handle fileHandle;
-    private final byte[] buffer = new byte[4096];
-    private int available = 0;
-    private final SftpClient sftp;
-    private int bytesRead = 0;
-    private int offset;
 
-    public SftpInputStream(SftpClient sftp, SftpClient.Handle fileHandle) {
-        this.fileHandle = fileHandle;
-        this.sftp = sftp;
+    private final SftpSessionPool pool;
+
+    private final int bufferSize;
+
+    private final List<SftpClient> lanes = new ArrayList<>();
+
+    private final List<SftpClient.Handle> handles = new ArrayList<>();
+
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private long size;
+
+    private long nextOffset = 0;
+
+    private int nextLane = 0;
+
+    private byte[] current = new byte[0];
+
+    private int pos = 0;
+
+    private boolean failed = false;
+
+    private boolean closed = false;
+
+    public SftpInputStream(SftpSessionPool pool, String path, int bufferSize, int window) throws IOException {
+        this.pool = pool;
+        this.bufferSize = bufferSize;
+        try {
+            openLane(pool.borrow(), path);
+            SftpClient sftp;
+            while (lanes.size() < window && (sftp = pool.tryBorrow()) != null) {
+                openLane(sftp, path);
+            }
+            this.size = lanes.get(0).stat(handles.get(0)).size;
+        } catch (IOException e) {
+            this.close();
+            throw e;
+        }
+        this.requestChunks();
     }
 
     @Override
     public int read() throws IOException {
-        if (available == 0) {
-            int num;
-            if ((num = sftp.read(fileHandle, bytesRead, buffer, 0, 4096)) < 0) {
-                return -1;
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return current[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        final int num = Math.min(len, current.length - pos);
+        System.arraycopy(current, pos, b, off, num);
+        pos += num;
+        return num;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current.length - pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        /* the channels may only be reused once no request is outstanding anymore */
+        for (final Future<byte[]> chunk : pending) {
+            try {
+                chunk.get();
+            } catch (InterruptedException | ExecutionException e) {
+                failed = true;
             }
-            bytesRead += num;
-            available = num;
-            offset = 0;
         }
-        available--;
-        return buffer[offset++];
+        pending.clear();
+        for (int i = 0; i < lanes.size(); i++) {
+            final SftpClient sftp = lanes.get(i);
+            try {
+                if (i < handles.size()) {
+                    sftp.close(handles.get(i));
+                }
+                if (failed) {
+                    pool.invalidate(sftp);
+                } else {
+                    pool.release(sftp);
+                }
+            } catch (IOException e) {
+                pool.invalidate(sftp);
+            }
+        }
+    }
+
+    private void openLane(final SftpClient sftp, final String path) throws IOException {
+        final SftpClient.Handle handle;
+        try {
+            handle = sftp.open(path, EnumSet.of(SftpClient.OpenMode.Read));
+        } catch (IOException e) {
+            pool.release(sftp);
+            throw e;
+        }
+        lanes.add(sftp);
+        handles.add(handle);
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        if (closed) {
+            throw new IOException("Stream has been closed");
+        }
+        while (pos >= current.length) {
+            final Future<byte[]> next = pending.pollFirst();
+            if (next == null) {
+                return false;
+            }
+            try {
+                current = next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed = true;
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                failed = true;
+                throw new IOException("Unable to read from SFTP archive", e.getCause());
+            }
+            pos = 0;
+            this.requestChunks();
+        }
+        return true;
+    }
+
+    /*
+     * Keep one request outstanding per channel. Chunk n is always requested on channel n % lanes, and since it is only
+     * requested after chunk n - lanes has been consumed, no channel is ever used by two threads at once.
+     */
+    private void requestChunks() {
+        while (nextOffset < size && pending.size() < lanes.size()) {
+            final SftpClient sftp = lanes.get(nextLane);
+            final SftpClient.Handle handle = handles.get(nextLane);
+            final long offset = nextOffset;
+            final int len = (int) Math.min(bufferSize, size - offset);
+            pending.addLast(pool.getExecutor().submit(() -> {
+                final byte[] chunk = new byte[len];
+                int filled = 0;
+                while (filled < len) {
+                    final int num = sftp.read(handle, offset + filled, chunk, filled, len - filled);
+                    if (num < 0) {
+                        break;
+                    }
+                    filled += num;
+                }
+                return filled == len ? chunk : Arrays.copyOf(chunk, filled);
+            }));
+            nextOffset += len;
+            nextLane = (nextLane + 1) % lanes.size();
+        }
     }
 }
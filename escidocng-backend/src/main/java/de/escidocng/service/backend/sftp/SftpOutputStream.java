@@ -0,0 +1,206 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.service.backend.sftp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.sshd.client.SftpClient;
+
+/**
+ * An {@link java.io.OutputStream} writing a remote file in chunks of a configurable size. Full chunks are handed to
+ * up to {@code window} channels borrowed from a {@link SftpSessionPool} and written concurrently while the caller
+ * fills the next chunk.
+ */
+public class SftpOutputStream extends OutputStream {
+
+    private final SftpSessionPool pool;
+
+    private final List<SftpClient> lanes = new ArrayList<>();
+
+    private final List<SftpClient.Handle> handles = new ArrayList<>();
+
+    private Future<?>[] inFlight;
+
+    private byte[][] laneBuffers;
+
+    private byte[] buffer;
+
+    private int count = 0;
+
+    private long offset = 0;
+
+    private int nextLane = 0;
+
+    private boolean failed = false;
+
+    private boolean closed = false;
+
+    public SftpOutputStream(SftpSessionPool pool, String path, int bufferSize, int window) throws IOException {
+        this.pool = pool;
+        this.buffer = new byte[bufferSize];
+        try {
+            openLane(pool.borrow(), path, EnumSet.of(SftpClient.OpenMode.Write, SftpClient.OpenMode.Create,
+                    SftpClient.OpenMode.Truncate));
+            SftpClient sftp;
+            while (lanes.size() < window && (sftp = pool.tryBorrow()) != null) {
+                openLane(sftp, path, EnumSet.of(SftpClient.OpenMode.Write));
+            }
+        } catch (IOException e) {
+            failed = true;
+            this.releaseLanes();
+            throw e;
+        }
+        this.inFlight = new Future<?>[lanes.size()];
+        this.laneBuffers = new byte[lanes.size()][];
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (count == buffer.length) {
+            this.writeChunk();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == buffer.length) {
+                this.writeChunk();
+            }
+            final int num = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, num);
+            count += num;
+            off += num;
+            len -= num;
+        }
+    }
+
+    /**
+     * @return the number of bytes handed to the server so far
+     */
+    public long getBytesWritten() {
+        return offset;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.writeChunk();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (!failed) {
+                this.writeChunk();
+            }
+            for (int i = 0; i < lanes.size(); i++) {
+                this.await(i);
+            }
+        } finally {
+            closed = true;
+            this.releaseLanes();
+        }
+    }
+
+    private void openLane(final SftpClient sftp, final String path, final EnumSet<SftpClient.OpenMode> mode)
+            throws IOException {
+        final SftpClient.Handle handle;
+        try {
+            handle = sftp.open(path, mode);
+        } catch (IOException e) {
+            pool.release(sftp);
+            throw e;
+        }
+        lanes.add(sftp);
+        handles.add(handle);
+    }
+
+    /*
+     * Hand the buffered chunk to the next channel. The channel's previous write has to be finished first, after which
+     * its buffer can be reused for filling the next chunk.
+     */
+    private void writeChunk() throws IOException {
+        if (closed) {
+            throw new IOException("Stream has been closed");
+        }
+        if (count == 0) {
+            return;
+        }
+        final int lane = nextLane;
+        this.await(lane);
+        final SftpClient sftp = lanes.get(lane);
+        final SftpClient.Handle handle = handles.get(lane);
+        final byte[] data = buffer;
+        final int len = count;
+        final long pos = offset;
+        inFlight[lane] = pool.getExecutor().submit(() -> {
+            sftp.write(handle, pos, data, 0, len);
+            return null;
+        });
+        buffer = laneBuffers[lane] != null ? laneBuffers[lane] : new byte[data.length];
+        laneBuffers[lane] = data;
+        offset += len;
+        count = 0;
+        nextLane = (nextLane + 1) % lanes.size();
+    }
+
+    private void await(final int lane) throws IOException {
+        if (inFlight[lane] == null) {
+            return;
+        }
+        try {
+            inFlight[lane].get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed = true;
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            failed = true;
+            throw new IOException("Unable to write to SFTP archive", e.getCause());
+        } finally {
+            inFlight[lane] = null;
+        }
+    }
+
+    private void releaseLanes() {
+        for (int i = 0; i < lanes.size(); i++) {
+            final SftpClient sftp = lanes.get(i);
+            try {
+                sftp.close(handles.get(i));
+                if (failed) {
+                    pool.invalidate(sftp);
+                } else {
+                    pool.release(sftp);
+                }
+            } catch (IOException e) {
+                pool.invalidate(sftp);
+            }
+        }
+        lanes.clear();
+        handles.clear();
+    }
+}
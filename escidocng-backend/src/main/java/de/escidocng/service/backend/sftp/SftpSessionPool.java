@@ -0,0 +1,230 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.service.backend.sftp;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.ClientSession;
+import org.apache.sshd.SshClient;
+import org.apache.sshd.client.SftpClient;
+import org.apache.sshd.common.SshException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.escidocng.util.SftpUtil;
+
+/**
+ * A thread safe pool of SFTP channels. All channels are multiplexed over a single SSH session which is reestablished
+ * transparently once it has been closed. A {@link org.apache.sshd.client.SftpClient} borrowed from the pool must not
+ * be shared between threads and has to be returned using {@link #release(SftpClient)} or
+ * {@link #invalidate(SftpClient)}.
+ */
+public class SftpSessionPool {
+
+    private static final Logger log = LoggerFactory.getLogger(SftpSessionPool.class);
+
+    private final String username;
+
+    private final String password;
+
+    private final String host;
+
+    private final int port;
+
+    private final String rootPath;
+
+    private final long borrowTimeout;
+
+    private final Semaphore permits;
+
+    private final LinkedBlockingDeque<SftpClient> idle = new LinkedBlockingDeque<>();
+
+    private final Map<SftpClient, ClientSession> owners = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        final Thread t = new Thread(r, "sftp-transfer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private SshClient ssh;
+
+    private ClientSession session;
+
+    private boolean rootChecked = false;
+
+    public SftpSessionPool(String username, String password, String host, int port, String rootPath, int size,
+            long borrowTimeout) {
+        this.username = username;
+        this.password = password;
+        this.host = host;
+        this.port = port;
+        this.rootPath = rootPath;
+        this.borrowTimeout = borrowTimeout;
+        this.permits = new Semaphore(size, true);
+    }
+
+    /**
+     * Borrow a channel from the pool, waiting for a free channel if all channels are in use
+     * 
+     * @return a channel exclusively usable by the calling thread
+     * @throws IOException if no channel became available in time or a connection could not be established
+     */
+    public SftpClient borrow() throws IOException {
+        try {
+            if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timeout while waiting for a free SFTP channel to " + host + ":" + port);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        return obtain();
+    }
+
+    /**
+     * Borrow a channel from the pool without waiting
+     * 
+     * @return a channel or null if all channels are in use
+     */
+    public SftpClient tryBorrow() throws IOException {
+        if (!permits.tryAcquire()) {
+            return null;
+        }
+        return obtain();
+    }
+
+    /**
+     * Return a healthy channel to the pool
+     */
+    public void release(SftpClient sftp) {
+        idle.offerFirst(sftp);
+        permits.release();
+    }
+
+    /**
+     * Return a channel which has seen a transport error. The channel is closed and will not be reused.
+     */
+    public void invalidate(SftpClient sftp) {
+        discard(sftp);
+        permits.release();
+    }
+
+    /**
+     * Run a callback with a channel borrowed from the pool
+     * 
+     * @param callback the callback to run
+     * @return the callback's result
+     */
+    public <T> T execute(SftpCallback<T> callback) throws IOException {
+        final SftpClient sftp = borrow();
+        final T result;
+        try {
+            result = callback.doWithClient(sftp);
+        } catch (SshException e) {
+            // SFTP status errors e.g. for missing files leave the channel in a usable state
+            release(sftp);
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            invalidate(sftp);
+            throw e;
+        }
+        release(sftp);
+        return result;
+    }
+
+    /**
+     * @return the executor used to run the outstanding requests of pipelined transfers
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public synchronized void close() {
+        executor.shutdownNow();
+        SftpClient sftp;
+        while ((sftp = idle.pollFirst()) != null) {
+            discard(sftp);
+        }
+        if (session != null) {
+            session.close(false);
+            session = null;
+        }
+        if (ssh != null) {
+            ssh.stop();
+            ssh = null;
+        }
+    }
+
+    private SftpClient obtain() throws IOException {
+        SftpClient sftp;
+        while ((sftp = idle.pollFirst()) != null) {
+            final ClientSession owner = owners.get(sftp);
+            if (owner != null && !owner.isClosed()) {
+                return sftp;
+            }
+            discard(sftp);
+        }
+        try {
+            return createClient();
+        } catch (IOException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private synchronized SftpClient createClient() throws IOException {
+        if (ssh == null) {
+            ssh = SshClient.setUpDefaultClient();
+            ssh.start();
+        }
+        if (session == null || session.isClosed()) {
+            log.info("Opening SSH session to " + host + ":" + port);
+            session = SftpUtil.connect(ssh, username, password, host, port);
+        }
+        final SftpClient sftp = session.createSftpClient();
+        if (!rootChecked) {
+            SftpUtil.ensureRootDirectory(sftp, rootPath);
+            rootChecked = true;
+        }
+        owners.put(sftp, session);
+        return sftp;
+    }
+
+    private void discard(SftpClient sftp) {
+        owners.remove(sftp);
+        try {
+            sftp.close();
+        } catch (IOException e) {
+            log.warn("Unable to close SFTP channel", e);
+        }
+    }
+
+    /**
+     * Callback for operations on a pooled {@link org.apache.sshd.client.SftpClient}
+     */
+    public interface SftpCallback<T> {
+        T doWithClient(SftpClient sftp) throws IOException;
+    }
+}
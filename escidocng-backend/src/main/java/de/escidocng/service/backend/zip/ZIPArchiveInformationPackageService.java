@@ -19,10 +19,14 @@ package de.escidocng.service.backend.zip;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import de.escidocng.model.ArchiveFixity;
+import de.escidocng.model.ArchiveManifest;
+import de.escidocng.model.ArchiveManifestEntry;
 import de.escidocng.model.Binary;
 import de.escidocng.model.Entity;
 import de.escidocng.model.Metadata;
 import de.escidocng.model.source.UrlSource;
+import de.escidocng.service.backend.BackendArchiveBlobService;
 import de.escidocng.service.backend.BackendArchiveInformationPackageService;
 import de.escidocng.service.backend.BackendBlobstoreService;
 import de.escidocng.service.backend.BackendEntityService;
@@ -34,8 +38,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.math.BigInteger;
 import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 /**
@@ -43,6 +59,11 @@ import java.util.zip.ZipOutputStream;
  */
 public class ZIPArchiveInformationPackageService implements BackendArchiveInformationPackageService {
 
+    public static final String MANIFEST_NAME = "manifest.json";
+
+    /* the size of the local header and central directory record of a zip entry with a generous name length */
+    private static final long ENTRY_OVERHEAD = 1024;
+
     @Autowired
     private BackendBlobstoreService blobstoreService;
 
@@ -54,35 +75,197 @@ public class ZIPArchiveInformationPackageService implements BackendArchiveInform
 
     @Override
     public void write(final Entity e, final OutputStream sink) throws IOException {
+        this.write(e, null, null, sink);
+    }
+
+    @Override
+    public void write(final Entity e, final ArchiveManifest base, final ArchiveManifest manifest,
+            final OutputStream sink) throws IOException {
+        final Map<String, ArchiveManifestEntry> baseEntries = new HashMap<>();
+        if (base != null && base.getEntries() != null) {
+            for (final ArchiveManifestEntry entry : base.getEntries()) {
+                baseEntries.put(entry.getPath(), entry);
+            }
+        }
         final ZipOutputStream zipSink = new ZipOutputStream(sink);
-        this.writeEntity("", e, zipSink);
+        this.writeEntity("", e, zipSink, baseEntries, manifest);
+        if (manifest != null) {
+            /* write the manifest so the package can be resolved without the index */
+            zipSink.putNextEntry(new ZipEntry(MANIFEST_NAME));
+            IOUtils.write(this.mapper.writeValueAsString(manifest), zipSink);
+            zipSink.closeEntry();
+        }
         zipSink.finish();
         zipSink.flush();
     }
 
-    private void writeEntity(final String prefix, final Entity e, final ZipOutputStream zipSink) throws IOException {
+    @Override
+    public long estimateSize(final Entity e, final ArchiveManifest base) throws IOException {
+        final Map<String, ArchiveManifestEntry> baseEntries = new HashMap<>();
+        if (base != null && base.getEntries() != null) {
+            for (final ArchiveManifestEntry entry : base.getEntries()) {
+                baseEntries.put(entry.getPath(), entry);
+            }
+        }
+        return this.estimateEntitySize("", e, baseEntries) + ENTRY_OVERHEAD;
+    }
+
+    @Override
+    public void restore(final ArchiveManifest manifest, final Map<Integer, String> packagePaths,
+            final BackendArchiveBlobService archiveStore, final OutputStream sink) throws IOException {
+        final Map<String, Integer> locations = new HashMap<>();
+        for (final ArchiveManifestEntry entry : manifest.getEntries()) {
+            locations.put(entry.getPath(), entry.getArchiveVersion());
+        }
+        final Set<String> restored = new HashSet<>();
+        final ZipOutputStream zipSink = new ZipOutputStream(sink);
+        /* copy the content of each referenced package exactly once, oldest package first */
+        for (final Map.Entry<Integer, String> pkg : new TreeMap<>(packagePaths).entrySet()) {
+            final boolean isRequestedPackage = pkg.getKey() == manifest.getEntityVersion();
+            try (final ZipInputStream zipSource = new ZipInputStream(archiveStore.retrieve(pkg.getValue()))) {
+                ZipEntry entry;
+                while ((entry = zipSource.getNextEntry()) != null) {
+                    if (MANIFEST_NAME.equals(entry.getName())) {
+                        continue;
+                    }
+                    final Integer location = locations.get(entry.getName());
+                    if ((isRequestedPackage && location == null) || pkg.getKey().equals(location)) {
+                        zipSink.putNextEntry(new ZipEntry(entry.getName()));
+                        IOUtils.copy(zipSource, zipSink);
+                        zipSink.closeEntry();
+                        restored.add(entry.getName());
+                    }
+                }
+            }
+        }
+        for (final String path : locations.keySet()) {
+            if (!restored.contains(path)) {
+                /* do not finish the zip, so an incomplete package is not mistaken for a valid one */
+                throw new IOException("Unable to restore archive of entity " + manifest.getEntityId() + " version "
+                        + manifest.getEntityVersion() + ": missing entry " + path + " in package of version "
+                        + locations.get(path));
+            }
+        }
+        zipSink.finish();
+        zipSink.flush();
+    }
+
+    @Override
+    public ArchiveFixity verify(final InputStream aip) throws IOException {
+        final ArchiveFixity fixity = new ArchiveFixity();
+        final Map<String, String> digests = new HashMap<>();
+        final List<Entity> entities = new ArrayList<>();
+        ArchiveManifest manifest = null;
+        final byte[] buffer = new byte[8192];
+        try (final ZipInputStream zipSource = new ZipInputStream(aip)) {
+            ZipEntry entry;
+            while ((entry = zipSource.getNextEntry()) != null) {
+                if (MANIFEST_NAME.equals(entry.getName())) {
+                    manifest = this.mapper.readValue(IOUtils.toByteArray(zipSource), ArchiveManifest.class);
+                } else if (entry.getName().matches("(.*/)?entity_[^/]+\\.json")) {
+                    entities.add(this.mapper.readValue(IOUtils.toByteArray(zipSource), Entity.class));
+                } else {
+                    /* the zip stream checks the entry's CRC once the entry has been read completely */
+                    final MessageDigest digest = createDigest();
+                    int num;
+                    while ((num = zipSource.read(buffer)) != -1) {
+                        digest.update(buffer, 0, num);
+                    }
+                    digests.put(entry.getName(), new BigInteger(1, digest.digest()).toString(16));
+                }
+            }
+        } catch (ZipException e) {
+            fixity.getErrors().add("Corrupt package: " + e.getMessage());
+        }
+
+        for (final Entity e : entities) {
+            if (e.getBinaries() != null) {
+                for (final Binary bin : e.getBinaries()) {
+                    this.verifyEntry(bin.getPath(), bin.getChecksum(), bin.getChecksumType(), digests, manifest, fixity);
+                    if (bin.getMetadata() != null) {
+                        for (final Metadata md : bin.getMetadata()) {
+                            this.verifyEntry(md.getPath(), md.getChecksum(), md.getChecksumType(), digests, manifest,
+                                    fixity);
+                        }
+                    }
+                }
+            }
+            if (e.getMetadata() != null) {
+                for (final Metadata md : e.getMetadata()) {
+                    this.verifyEntry(md.getPath(), md.getChecksum(), md.getChecksumType(), digests, manifest, fixity);
+                }
+            }
+        }
+        if (entities.isEmpty()) {
+            fixity.getErrors().add("Package does not contain an entity");
+        }
+        fixity.setValid(fixity.getErrors().isEmpty());
+        return fixity;
+    }
+
+    private void verifyEntry(final String path, final String checksum, final String checksumType,
+            final Map<String, String> digests, final ArchiveManifest manifest, final ArchiveFixity fixity) {
+        final String digest = digests.get(path);
+        if (digest == null) {
+            // content of incremental packages may be held by an earlier package
+            if (manifest == null || manifest.getBaseVersion() == null || isHeldByPackage(path, manifest)) {
+                fixity.getErrors().add("Missing entry " + path);
+            }
+            return;
+        }
+        if (checksum == null || !"MD5".equals(checksumType)) {
+            return;
+        }
+        fixity.setCheckedEntries(fixity.getCheckedEntries() + 1);
+        if (!checksum.equals(digest)) {
+            fixity.getErrors().add("Checksum mismatch for " + path + ": expected " + checksum + " but was " + digest);
+        }
+    }
+
+    private boolean isHeldByPackage(final String path, final ArchiveManifest manifest) {
+        for (final ArchiveManifestEntry entry : manifest.getEntries()) {
+            if (entry.getPath().equals(path)) {
+                return entry.getArchiveVersion() == manifest.getEntityVersion();
+            }
+        }
+        return true;
+    }
+
+    private MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void writeEntity(final String prefix, final Entity e, final ZipOutputStream zipSink,
+            final Map<String, ArchiveManifestEntry> baseEntries, final ArchiveManifest manifest) throws IOException {
         /* write the binaries to the package */
         if (e.getBinaries()!= null) {
             for (final Binary bin : e.getBinaries()) {
 
                 bin.setSource(new UrlSource(URI.create(prefix + "binaries/" + bin.getName() + "/" + bin.getFilename()), false));
 
-                /* save the binary content */
-                zipSink.putNextEntry(new ZipEntry(prefix + "binaries/" + bin.getName() + "/" + bin.getFilename()));
-                InputStream in = null;
-                try {
-                    in = this.blobstoreService.retrieve(bin.getPath());
-                    IOUtils.copy(in, zipSink);
-                } finally {
-                    if (in != null) {
-                        try {
-                            in.close();
-                        } catch (IOException ex) {
-                            Log.warn("Problem closing input-stream " + bin.getPath());
+                /* save the binary content if it has changed since the base package */
+                if (this.addToManifest(prefix + "binaries/" + bin.getName() + "/" + bin.getFilename(),
+                        bin.getChecksum(), bin.getChecksumType(), baseEntries, manifest)) {
+                    zipSink.putNextEntry(new ZipEntry(prefix + "binaries/" + bin.getName() + "/" + bin.getFilename()));
+                    InputStream in = null;
+                    try {
+                        in = this.blobstoreService.retrieve(bin.getPath());
+                        IOUtils.copy(in, zipSink);
+                    } finally {
+                        if (in != null) {
+                            try {
+                                in.close();
+                            } catch (IOException ex) {
+                                Log.warn("Problem closing input-stream " + bin.getPath());
+                            }
                         }
                     }
+                    zipSink.closeEntry();
                 }
-                zipSink.closeEntry();
 
                 // update the path to point in the zip file
                 bin.setPath(prefix + "binaries/" + bin.getName() + "/" + bin.getFilename());
@@ -90,7 +273,8 @@ public class ZIPArchiveInformationPackageService implements BackendArchiveInform
                 /* write the metadatas to the package */
                 if (bin.getMetadata()!= null) {
                     for (final Metadata md : bin.getMetadata()) {
-                        writeMetadata(prefix + "binaries/" + bin.getName() + "/metadata/", md, zipSink);
+                        writeMetadata(prefix + "binaries/" + bin.getName() + "/metadata/", md, zipSink, baseEntries,
+                                manifest);
                     }
                 }
             }
@@ -98,7 +282,7 @@ public class ZIPArchiveInformationPackageService implements BackendArchiveInform
         /* write the metadatas to the package */
         if (e.getMetadata()!= null) {
             for (final Metadata md : e.getMetadata()) {
-                writeMetadata(prefix + "metadata/", md, zipSink);
+                writeMetadata(prefix + "metadata/", md, zipSink, baseEntries, manifest);
             }
         }
 
@@ -109,32 +293,97 @@ public class ZIPArchiveInformationPackageService implements BackendArchiveInform
 
         /* recurse for all child entities */
         for (final String childId : this.entityService.fetchChildren(e.getId())) {
-            this.writeEntity(prefix + "child_" + childId + "/", this.entityService.retrieve(childId), zipSink);
+            this.writeEntity(prefix + "child_" + childId + "/", this.entityService.retrieve(childId), zipSink,
+                    baseEntries, manifest);
         }
     }
     
-    private void writeMetadata(final String prefix, final Metadata metadata, final ZipOutputStream zipSink) throws IOException {
+    private long estimateEntitySize(final String prefix, final Entity e,
+            final Map<String, ArchiveManifestEntry> baseEntries) throws IOException {
+        long size = 0;
+        if (e.getBinaries() != null) {
+            for (final Binary bin : e.getBinaries()) {
+                final String path = prefix + "binaries/" + bin.getName() + "/";
+                size += this.estimateEntrySize(path + bin.getFilename(), bin.getSize(), bin.getChecksum(),
+                        bin.getChecksumType(), baseEntries);
+                if (bin.getMetadata() != null) {
+                    for (final Metadata md : bin.getMetadata()) {
+                        size += this.estimateEntrySize(path + "metadata/" + md.getName() + "/" + md.getFilename(),
+                                md.getSize(), md.getChecksum(), md.getChecksumType(), baseEntries);
+                    }
+                }
+            }
+        }
+        if (e.getMetadata() != null) {
+            for (final Metadata md : e.getMetadata()) {
+                size += this.estimateEntrySize(prefix + "metadata/" + md.getName() + "/" + md.getFilename(),
+                        md.getSize(), md.getChecksum(), md.getChecksumType(), baseEntries);
+            }
+        }
+        size += this.mapper.writeValueAsBytes(e).length + ENTRY_OVERHEAD;
+        for (final String childId : this.entityService.fetchChildren(e.getId())) {
+            size += this.estimateEntitySize(prefix + "child_" + childId + "/", this.entityService.retrieve(childId),
+                    baseEntries);
+        }
+        return size;
+    }
+
+    private long estimateEntrySize(final String path, final long size, final String checksum,
+            final String checksumType, final Map<String, ArchiveManifestEntry> baseEntries) {
+        final ArchiveManifestEntry previous = baseEntries.get(path);
+        if (previous != null && previous.matches(checksum, checksumType)) {
+            return ENTRY_OVERHEAD;
+        }
+        return size + ENTRY_OVERHEAD;
+    }
+
+    private void writeMetadata(final String prefix, final Metadata metadata, final ZipOutputStream zipSink,
+            final Map<String, ArchiveManifestEntry> baseEntries, final ArchiveManifest manifest) throws IOException {
         metadata.setSource(new UrlSource(URI.create(prefix + metadata.getName() + "/" + metadata.getFilename()), false));
 
-        /* save the metadata content */
-        zipSink.putNextEntry(new ZipEntry(prefix + metadata.getName() + "/" + metadata.getFilename()));
-        InputStream in = null;
-        try {
-            in = this.blobstoreService.retrieve(metadata.getPath());
-            IOUtils.copy(in, zipSink);
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    Log.warn("Problem closing input-stream " + metadata.getPath());
+        /* save the metadata content if it has changed since the base package */
+        if (this.addToManifest(prefix + metadata.getName() + "/" + metadata.getFilename(), metadata.getChecksum(),
+                metadata.getChecksumType(), baseEntries, manifest)) {
+            zipSink.putNextEntry(new ZipEntry(prefix + metadata.getName() + "/" + metadata.getFilename()));
+            InputStream in = null;
+            try {
+                in = this.blobstoreService.retrieve(metadata.getPath());
+                IOUtils.copy(in, zipSink);
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        Log.warn("Problem closing input-stream " + metadata.getPath());
+                    }
                 }
             }
+            zipSink.closeEntry();
         }
-        zipSink.closeEntry();
 
         // update the path to point in the zip file
         metadata.setPath(prefix + metadata.getName() + "/" + metadata.getFilename());
     }
-    
+
+    /**
+     * Add an entry to the manifest of the package. If the base package already holds content with an equal checksum
+     * at the same path the entry references the package containing the data instead.
+     * 
+     * @return true if the content has to be written to the package
+     */
+    private boolean addToManifest(final String path, final String checksum, final String checksumType,
+            final Map<String, ArchiveManifestEntry> baseEntries, final ArchiveManifest manifest) {
+        if (manifest == null) {
+            return true;
+        }
+        final ArchiveManifestEntry previous = baseEntries.get(path);
+        if (previous != null && previous.matches(checksum, checksumType)) {
+            manifest.getEntries().add(
+                    new ArchiveManifestEntry(path, checksum, checksumType, previous.getArchiveVersion()));
+            return false;
+        }
+        manifest.getEntries().add(new ArchiveManifestEntry(path, checksum, checksumType, manifest.getEntityVersion()));
+        return true;
+    }
+
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+
+import de.escidocng.helpers.ThrottledInputStream;
+import de.escidocng.helpers.ThrottledInputStream.Throttle;
+import de.escidocng.model.Archive;
+import de.escidocng.model.ArchiveFixity;
+import de.escidocng.model.SearchResult;
+import de.escidocng.service.ArchiveFixityService;
+import de.escidocng.service.backend.BackendArchiveBlobService;
+import de.escidocng.service.backend.BackendArchiveIndexService;
+import de.escidocng.service.backend.BackendArchiveInformationPackageService;
+
+/**
+ * Default implementation of a {@link de.escidocng.service.ArchiveFixityService}. Archives are verified by a bounded
+ * number of worker threads, while the total read throughput and the pause between two packages can be limited so the
+ * verification does not compete with regular archive I/O.
+ */
+public class DefaultArchiveFixityService implements ArchiveFixityService {
+
+    private static final Logger log = LoggerFactory.getLogger(DefaultArchiveFixityService.class);
+
+    @Autowired
+    private BackendArchiveBlobService archiveBlobStore;
+
+    @Autowired
+    private BackendArchiveIndexService archiveIndex;
+
+    @Autowired
+    private BackendArchiveInformationPackageService aipService;
+
+    @Autowired
+    private Environment env;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private ExecutorService workers;
+
+    private ScheduledExecutorService scheduler;
+
+    private Throttle throttle;
+
+    private int threads;
+
+    private long pause;
+
+    @PostConstruct
+    public void init() {
+        this.threads = Integer.parseInt(env.getProperty("archive.fixity.threads", "2"));
+        this.pause = Long.parseLong(env.getProperty("archive.fixity.pause", "0"));
+        this.throttle = new Throttle(Long.parseLong(env.getProperty("archive.fixity.maxBytesPerSecond", "0")));
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            final Thread t = new Thread(r, "archive-fixity");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "archive-fixity-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        final long interval = Long.parseLong(env.getProperty("archive.fixity.interval", "0"));
+        if (interval > 0) {
+            log.info("Scheduling archive fixity checks every " + interval + " seconds");
+            this.scheduler.scheduleWithFixedDelay(this::runVerification, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.scheduler.shutdownNow();
+        this.workers.shutdownNow();
+    }
+
+    @Override
+    public ArchiveFixity verify(final String entityId, final int version) throws IOException {
+        return this.verify(archiveIndex.retrieve(entityId, version));
+    }
+
+    @Override
+    public boolean verifyAll() {
+        if (running.get()) {
+            return false;
+        }
+        this.scheduler.execute(this::runVerification);
+        return true;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private ArchiveFixity verify(final Archive a) throws IOException {
+        final long time = System.currentTimeMillis();
+        ArchiveFixity fixity;
+        try (final InputStream src = new ThrottledInputStream(archiveBlobStore.retrieve(a.getPath()), throttle)) {
+            fixity = aipService.verify(src);
+        } catch (IOException e) {
+            fixity = new ArchiveFixity();
+            fixity.getErrors().add("Unable to read package " + a.getPath() + ": " + e.getMessage());
+        }
+        fixity.setCheckedDate(ZonedDateTime.now(ZoneOffset.UTC).toString());
+        fixity.setDuration(System.currentTimeMillis() - time);
+        archiveIndex.updateFixity(a.getEntityId(), a.getEntityVersion(), fixity);
+        if (!fixity.isValid()) {
+            log.error("Fixity check failed for archive of entity " + a.getEntityId() + " version "
+                    + a.getEntityVersion() + ": " + fixity.getErrors());
+        }
+        return fixity;
+    }
+
+    private void runVerification() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        final long time = System.currentTimeMillis();
+        final Semaphore slots = new Semaphore(threads);
+        final AtomicInteger checked = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        try {
+            SearchResult batch = archiveIndex.scanArchives(null, 50);
+            while (!batch.getData().isEmpty()) {
+                for (final Object o : batch.getData()) {
+                    final Archive a = (Archive) o;
+                    slots.acquire();
+                    workers.execute(() -> {
+                        try {
+                            if (!verify(a).isValid()) {
+                                failed.incrementAndGet();
+                            }
+                            checked.incrementAndGet();
+                            if (pause > 0) {
+                                Thread.sleep(pause);
+                            }
+                        } catch (IOException e) {
+                            log.error("Unable to record fixity of archive " + a.getPath(), e);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                }
+                batch = archiveIndex.scanArchives(batch.getScrollId(), 50);
+            }
+            /* wait for the outstanding checks */
+            slots.acquire(threads);
+            slots.release(threads);
+            log.info("Verified " + checked.get() + " archives in " + (System.currentTimeMillis() - time) + " ms, "
+                    + failed.get() + " failed");
+        } catch (IOException e) {
+            log.error("Archive fixity run aborted", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.set(false);
+        }
+    }
+}
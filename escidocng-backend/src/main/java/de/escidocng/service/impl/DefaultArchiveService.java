@@ -17,33 +17,50 @@ package de.escidocng.service.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
 
-import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
 import org.springframework.security.core.context.SecurityContextHolder;
 
+import de.escidocng.exceptions.InvalidParameterException;
 import de.escidocng.model.Archive;
+import de.escidocng.model.ArchiveManifest;
+import de.escidocng.model.ArchiveManifestEntry;
 import de.escidocng.model.Entity;
+import de.escidocng.model.FacetParameters;
+import de.escidocng.model.FacetResult;
+import de.escidocng.model.SearchParameters;
 import de.escidocng.model.SearchResult;
 import de.escidocng.model.security.User;
-import de.escidocng.model.security.role.Role;
 import de.escidocng.service.ArchiveService;
 import de.escidocng.service.AuthorizationService;
 import de.escidocng.service.EntityService;
 import de.escidocng.service.backend.BackendArchiveBlobService;
 import de.escidocng.service.backend.BackendArchiveIndexService;
+import de.escidocng.service.backend.BackendArchiveInformationPackageService;
 import de.escidocng.service.backend.BackendEntityService;
+import de.escidocng.service.backend.elasticsearch.ElasticSearchArchiveIndexService;
 import de.escidocng.service.backend.elasticsearch.ElasticSearchArchiveIndexService.ArchivesSearchField;
-import de.escidocng.service.backend.elasticsearch.queryrestriction.QueryRestrictionFactory;
-import de.escidocng.service.backend.elasticsearch.queryrestriction.RoleQueryRestriction;
+import de.escidocng.service.backend.elasticsearch.queryrestriction.RestrictionFilterCache;
 
 public class DefaultArchiveService implements ArchiveService {
 
+    private static final Logger log = LoggerFactory.getLogger(DefaultArchiveService.class);
+
     @Autowired
     private BackendArchiveBlobService archiveBlobStore;
 
+    @Autowired
+    private BackendArchiveInformationPackageService aipService;
+
     @Autowired
     private BackendArchiveIndexService archiveIndex;
 
@@ -56,10 +73,34 @@ public class DefaultArchiveService implements ArchiveService {
     @Autowired
     private AuthorizationService defaultAuthorizationService;
 
+    @Autowired
+    private RestrictionFilterCache restrictionFilterCache;
+
+    @Autowired
+    private SearchProfiler searchProfiler;
+
+    @Autowired
+    private Environment env;
+
     @Override
     public void archive(final String entityId, final int version) throws IOException {
         final Entity e = entityService.retrieve(entityId, version);
-        final String path = archiveBlobStore.saveOrUpdate(e);
+        final Archive previous =
+                archiveIndex.exists(entityId, version) ? archiveIndex.retrieve(entityId, version) : null;
+        if (previous != null && isReferenced(entityId, version)) {
+            // rebuilding the archive would drop content which later incremental archives still point to
+            throw new InvalidParameterException("Archive of entity " + entityId + " version " + version
+                    + " is referenced by incremental archives of later versions");
+        }
+        final Archive base = findBaseArchive(entityId, version);
+        final ArchiveManifest manifest = new ArchiveManifest();
+        manifest.setEntityId(entityId);
+        manifest.setEntityVersion(version);
+        if (base != null) {
+            manifest.setBaseVersion(base.getEntityVersion());
+        }
+        final String path =
+                archiveBlobStore.saveOrUpdate(e, base == null ? null : base.getManifest(), manifest);
         final String userName = ((User) SecurityContextHolder.getContext().getAuthentication()
                 .getPrincipal()).getName();
         Archive a = new Archive();
@@ -70,7 +111,13 @@ public class DefaultArchiveService implements ArchiveService {
         a.setCreatedDate(ZonedDateTime.now(ZoneOffset.UTC).toString());
         a.setPath(path);
         a.setCreator(userName);
+        a.setBaseVersion(manifest.getBaseVersion());
+        a.setManifest(manifest);
         archiveIndex.saveOrUpdate(a, backendEntityService.getHierarchy(e));
+        if (previous != null && !path.equals(previous.getPath())) {
+            // the replaced package is stored under another name and would be orphaned otherwise
+            archiveBlobStore.delete(previous.getPath());
+        }
     }
 
     @Override
@@ -79,14 +126,29 @@ public class DefaultArchiveService implements ArchiveService {
     }
 
     @Override
-    public InputStream retrieveData(final String entityId, final int version) throws IOException {
+    public void retrieveData(final String entityId, final int version, final OutputStream sink)
+            throws IOException {
         final Archive a = archiveIndex.retrieve(entityId, version);
-        return archiveBlobStore.retrieve(a.getPath());
+        final Map<Integer, String> packagePaths = resolvePackagePaths(a);
+        if (packagePaths.size() == 1) {
+            /* the archive is self-contained */
+            try (final InputStream src = archiveBlobStore.retrieve(a.getPath())) {
+                IOUtils.copy(src, sink);
+            }
+            return;
+        }
+        log.debug("Restoring archive of entity " + entityId + " version " + version + " from "
+                + packagePaths.size() + " packages");
+        aipService.restore(a.getManifest(), packagePaths, archiveBlobStore, sink);
     }
 
     @Override
     public void delete(final String entityId, final int version) throws IOException {
         final Archive a = archiveIndex.retrieve(entityId, version);
+        if (isReferenced(entityId, version)) {
+            throw new InvalidParameterException("Archive of entity " + entityId + " version " + version
+                    + " is referenced by incremental archives of later versions");
+        }
         archiveIndex.delete(entityId, version);
         archiveBlobStore.delete(a.getPath());
     }
@@ -105,41 +167,84 @@ public class DefaultArchiveService implements ArchiveService {
     @Override
     public SearchResult searchArchives(String query, int offset, int maxRecords)
             throws IOException {
+        return this.searchArchives(new SearchParameters(query, offset, maxRecords));
+    }
+
+    @Override
+    public SearchResult searchArchives(SearchParameters params) throws IOException {
+        final long start = System.currentTimeMillis();
+        final User user = defaultAuthorizationService.getCurrentUser();
+        // add user restriction
+        params.setFilter(restrictionFilterCache.getArchivesFilter(user));
+        final long restriction = System.currentTimeMillis() - start;
+        return searchProfiler.finish(ElasticSearchArchiveIndexService.INDEX_ARCHIVES,
+                user == null ? null : user.getName(), params, archiveIndex.searchArchives(params), start, restriction);
+    }
+
+    @Override
+    public long countArchives(SearchParameters params) throws IOException {
+        // add user restriction
+        params.setFilter(restrictionFilterCache.getArchivesFilter(defaultAuthorizationService.getCurrentUser()));
+        return archiveIndex.countArchives(params);
+    }
+
+    @Override
+    public boolean existsArchives(SearchParameters params) throws IOException {
+        // add user restriction
+        params.setFilter(restrictionFilterCache.getArchivesFilter(defaultAuthorizationService.getCurrentUser()));
+        return archiveIndex.existsArchives(params);
+    }
+
+    @Override
+    public FacetResult facetArchives(FacetParameters params) throws IOException {
         // add user restriction
-        StringBuilder queryBuilder = new StringBuilder("");
-        if (StringUtils.isNotBlank(query)) {
-            queryBuilder.append("(").append(query).append(") AND ");
+        params.setFilter(restrictionFilterCache.getArchivesFilter(defaultAuthorizationService.getCurrentUser()));
+        return archiveIndex.facets(params);
+    }
+
+    /**
+     * Find the most recent archive of an entity prior to the given version which can be used as the base of an
+     * incremental archive
+     * 
+     * @return the archive or null if a complete archive has to be written
+     */
+    private Archive findBaseArchive(final String entityId, final int version) throws IOException {
+        if (!Boolean.parseBoolean(env.getProperty("archive.incremental", "true"))) {
+            return null;
         }
-        queryBuilder.append(getArchivesUserRestrictionQuery());
-        return archiveIndex.searchArchives(queryBuilder.toString(), offset, maxRecords);
+        final Archive previous = archiveIndex.retrieveLatestBefore(entityId, version);
+        // archives without a manifest have been written before incremental archiving was available
+        return previous == null || previous.getManifest() == null ? null : previous;
+    }
+
+    /**
+     * Check if incremental archives of other versions of an entity reference content of an archive
+     */
+    private boolean isReferenced(final String entityId, final int version) throws IOException {
+        final String referencedQuery = new StringBuilder(ArchivesSearchField.ID.getFieldName())
+                .append(":\"").append(entityId).append("\" AND manifest.entries.archiveVersion:").append(version)
+                .append(" AND NOT ").append(ArchivesSearchField.VERSION.getFieldName()).append(":").append(version)
+                .toString();
+        return archiveIndex.existsArchives(new SearchParameters(referencedQuery, 0, 0));
     }
 
     /**
-     * Get Query that restricts a search to archives the user may see.
+     * Get the paths of all packages holding content of an archive
      * 
-     * @return QueryBuilder with user-restriction query
+     * @return the package paths mapped by the entity version they have been archived for
      */
-    private String getArchivesUserRestrictionQuery() throws IOException {
-        User currentUser = defaultAuthorizationService.getCurrentUser();
-        StringBuilder restrictionQueryBuilder = new StringBuilder("(");
-        if (currentUser == null || currentUser.getRoles() == null || currentUser.getRoles().isEmpty()) {
-            // restrict to nothing
-            restrictionQueryBuilder.append(ArchivesSearchField.STATE.getFieldName()).append(":NONEXISTING");
-            restrictionQueryBuilder.append(")");
-            return restrictionQueryBuilder.toString();
-        } else {
-            int counter = 0;
-            for (Role role : currentUser.getRoles()) {
-                if (counter > 0) {
-                    restrictionQueryBuilder.append(" OR ");
+    private Map<Integer, String> resolvePackagePaths(final Archive a) throws IOException {
+        final Map<Integer, String> packagePaths = new HashMap<>();
+        packagePaths.put(a.getEntityVersion(), a.getPath());
+        if (a.getManifest() != null) {
+            for (final ArchiveManifestEntry entry : a.getManifest().getEntries()) {
+                if (!packagePaths.containsKey(entry.getArchiveVersion())) {
+                    packagePaths.put(entry.getArchiveVersion(),
+                            archiveIndex.retrieve(a.getEntityId(), entry.getArchiveVersion()).getPath());
                 }
-                RoleQueryRestriction roleQueryRestriction = QueryRestrictionFactory.getRoleQueryRestriction(role);
-                restrictionQueryBuilder.append(roleQueryRestriction.getArchivesRestrictionQuery());
-                counter++;
             }
         }
-        restrictionQueryBuilder.append(")");
-        return restrictionQueryBuilder.toString();
+        return packagePaths;
     }
 
 }
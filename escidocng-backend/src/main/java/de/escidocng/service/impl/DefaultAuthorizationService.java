@@ -37,6 +37,7 @@ import de.escidocng.model.security.ObjectType;
 import de.escidocng.model.security.PermissionType;
 import de.escidocng.model.security.User;
 import de.escidocng.model.security.annotation.Permission;
+import de.escidocng.model.security.role.Role;
 import de.escidocng.model.security.role.Role.RoleName;
 import de.escidocng.service.AuthorizationService;
 import de.escidocng.service.backend.BackendCredentialsService;
@@ -163,7 +164,8 @@ public class DefaultAuthorizationService implements AuthorizationService {
                     return;
                 }
             } else {
-                if (!currentUser.hasRole(permission.rolename())) {
+                final Role role = currentUser.getRole(permission.rolename());
+                if (role == null) {
                     continue;
                 }
                 if (checkObject == null) {
@@ -189,8 +191,7 @@ public class DefaultAuthorizationService implements AuthorizationService {
                         entityHierarchySet = true;
                     }
                 }
-                if (currentUser.getRole(permission.rolename()).compare(permission, objectType, checkObject,
-                        entityHierarchy)) {
+                if (role.compare(permission, objectType, checkObject, entityHierarchy)) {
                     return;
                 }
             }
@@ -27,7 +27,7 @@ import de.escidocng.exceptions.AlreadyExistsException;
 import de.escidocng.exceptions.InvalidParameterException;
 import de.escidocng.exceptions.NotFoundException;
 import de.escidocng.model.ContentModel;
-import de.escidocng.model.SearchResult;
+import de.escidocng.model.SearchParameters;
 import de.escidocng.model.ContentModel.FixedContentModel;
 import de.escidocng.service.ContentModelService;
 import de.escidocng.service.backend.BackendContentModelService;
@@ -91,9 +91,8 @@ public class DefaultContentModelService implements ContentModelService {
             throw new NotFoundException("content model with id " + id + " was not found");
         }
         // check if content-model is used by any entity
-        SearchResult searchResult =
-                backendEntityService.searchEntities(EntitiesSearchField.CONTENT_MODEL + ":" + id, 0);
-        if (searchResult.getHits() > 0) {
+        if (backendEntityService.existsEntities(new SearchParameters(
+                EntitiesSearchField.CONTENT_MODEL.getFieldName() + ":\"" + id + "\"", 0, 0))) {
             throw new InvalidParameterException("ContentModel " + id + " is used by entities");
         }
         // delete
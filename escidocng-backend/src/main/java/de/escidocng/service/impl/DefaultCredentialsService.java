@@ -19,10 +19,10 @@ package de.escidocng.service.impl;
 import java.io.IOException;
 import java.util.List;
 
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import de.escidocng.exceptions.NotFoundException;
+import de.escidocng.model.SearchParameters;
 import de.escidocng.model.SearchResult;
 import de.escidocng.model.security.User;
 import de.escidocng.model.security.UserRequest;
@@ -32,9 +32,8 @@ import de.escidocng.model.security.role.Role.RoleRight;
 import de.escidocng.service.AuthorizationService;
 import de.escidocng.service.CredentialsService;
 import de.escidocng.service.backend.BackendCredentialsService;
-import de.escidocng.service.backend.elasticsearch.ElasticSearchCredentialsService.UsersSearchField;
-import de.escidocng.service.backend.elasticsearch.queryrestriction.QueryRestrictionFactory;
-import de.escidocng.service.backend.elasticsearch.queryrestriction.RoleQueryRestriction;
+import de.escidocng.service.backend.elasticsearch.ElasticSearchCredentialsService;
+import de.escidocng.service.backend.elasticsearch.queryrestriction.RestrictionFilterCache;
 
 /**
  * Default implementation of a {@link de.escidocng.service.CredentialsService}.
@@ -47,6 +46,12 @@ public class DefaultCredentialsService implements CredentialsService {
     @Autowired
     private AuthorizationService defaultAuthorizationService;
 
+    @Autowired
+    private RestrictionFilterCache restrictionFilterCache;
+
+    @Autowired
+    private SearchProfiler searchProfiler;
+
     @Override
     public User createUser(User u) throws IOException {
         return backendCredentialsService.createUser(u);
@@ -93,13 +98,32 @@ public class DefaultCredentialsService implements CredentialsService {
 
     @Override
     public SearchResult searchUsers(String query, int offset, int maxRecords) throws IOException {
+        return this.searchUsers(new SearchParameters(query, offset, maxRecords));
+    }
+
+    @Override
+    public SearchResult searchUsers(SearchParameters params) throws IOException {
+        final long start = System.currentTimeMillis();
+        final User user = defaultAuthorizationService.getCurrentUser();
         // add user restriction
-        StringBuilder queryBuilder = new StringBuilder("");
-        if (StringUtils.isNotBlank(query)) {
-            queryBuilder.append("(").append(query).append(") AND ");
-        }
-        queryBuilder.append(getUsersUserRestrictionQuery());
-        return backendCredentialsService.searchUsers(queryBuilder.toString(), offset, maxRecords);
+        params.setFilter(restrictionFilterCache.getUsersFilter(user));
+        final long restriction = System.currentTimeMillis() - start;
+        return searchProfiler.finish(ElasticSearchCredentialsService.INDEX_USERS, user == null ? null : user.getName(),
+                params, backendCredentialsService.searchUsers(params), start, restriction);
+    }
+
+    @Override
+    public long countUsers(SearchParameters params) throws IOException {
+        // add user restriction
+        params.setFilter(restrictionFilterCache.getUsersFilter(defaultAuthorizationService.getCurrentUser()));
+        return backendCredentialsService.countUsers(params);
+    }
+
+    @Override
+    public boolean existsUsers(SearchParameters params) throws IOException {
+        // add user restriction
+        params.setFilter(restrictionFilterCache.getUsersFilter(defaultAuthorizationService.getCurrentUser()));
+        return backendCredentialsService.existsUsers(params);
     }
 
     @Override
@@ -117,32 +141,4 @@ public class DefaultCredentialsService implements CredentialsService {
         backendCredentialsService.deleteUserRequest(token);
     }
 
-    /**
-     * Get Query that restricts a search to users the user may see.
-     * 
-     * @return QueryBuilder with user-restriction query
-     */
-    protected String getUsersUserRestrictionQuery() throws IOException {
-        User currentUser = defaultAuthorizationService.getCurrentUser();
-        StringBuilder restrictionQueryBuilder = new StringBuilder("(");
-        if (currentUser == null) {
-            //restrict to nothing
-            restrictionQueryBuilder.append(UsersSearchField.NAME.getFieldName()).append(":NONEXISTING");
-            restrictionQueryBuilder.append(")");
-            return restrictionQueryBuilder.toString();
-        } else {
-            // user may see himself
-            restrictionQueryBuilder.append(UsersSearchField.NAME.getFieldName()).append(":").append(currentUser.getName());
-            if (currentUser.getRoles() != null) {
-                for (Role role : currentUser.getRoles()) {
-                    RoleQueryRestriction roleQueryRestriction = QueryRestrictionFactory.getRoleQueryRestriction(role);
-                    restrictionQueryBuilder.append(" OR ");
-                    restrictionQueryBuilder.append(roleQueryRestriction.getUsersRestrictionQuery());
-                }
-            }
-        }
-        restrictionQueryBuilder.append(")");
-        return restrictionQueryBuilder.toString();
-    }
-
 }
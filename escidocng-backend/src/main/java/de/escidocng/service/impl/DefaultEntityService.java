@@ -19,6 +19,7 @@ package de.escidocng.service.impl;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.net.URI;
 import java.security.MessageDigest;
@@ -26,6 +27,7 @@ import java.security.NoSuchAlgorithmException;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -53,17 +55,23 @@ import de.escidocng.helpers.SizeCalculatingDigestInputStream;
 import de.escidocng.model.AlternativeIdentifier;
 import de.escidocng.model.AuditRecord;
 import de.escidocng.model.AuditRecords;
+import de.escidocng.model.AuditSearchParameters;
 import de.escidocng.model.Binary;
+import de.escidocng.model.Change;
+import de.escidocng.model.Changes;
 import de.escidocng.model.Entities;
 import de.escidocng.model.Entity;
 import de.escidocng.model.EntityHierarchy;
 import de.escidocng.model.EscidocngConstants;
+import de.escidocng.model.FacetParameters;
+import de.escidocng.model.FacetResult;
 import de.escidocng.model.Metadata;
 import de.escidocng.model.Relation;
+import de.escidocng.model.SearchParameters;
 import de.escidocng.model.SearchResult;
+import de.escidocng.model.ContentModel.FixedContentModel;
 import de.escidocng.model.Entity.EntityState;
 import de.escidocng.model.security.User;
-import de.escidocng.model.security.role.Role;
 import de.escidocng.model.source.UrlSource;
 import de.escidocng.service.AuthorizationService;
 import de.escidocng.service.EntityService;
@@ -71,13 +79,14 @@ import de.escidocng.service.EntityValidatorService;
 import de.escidocng.service.ExportService;
 import de.escidocng.service.backend.BackendAuditService;
 import de.escidocng.service.backend.BackendBlobstoreService;
+import de.escidocng.service.backend.BackendChangeLogService;
 import de.escidocng.service.backend.BackendCredentialsService;
 import de.escidocng.service.backend.BackendEntityService;
 import de.escidocng.service.backend.BackendSchemaService;
 import de.escidocng.service.backend.BackendVersionService;
+import de.escidocng.service.backend.elasticsearch.ElasticSearchEntityService;
 import de.escidocng.service.backend.elasticsearch.ElasticSearchEntityService.EntitiesSearchField;
-import de.escidocng.service.backend.elasticsearch.queryrestriction.QueryRestrictionFactory;
-import de.escidocng.service.backend.elasticsearch.queryrestriction.RoleQueryRestriction;
+import de.escidocng.service.backend.elasticsearch.queryrestriction.RestrictionFilterCache;
 
 /**
  * The default implementation of {@link de.escidocng.service.EntityService} responsible for performing CRUD
@@ -90,6 +99,9 @@ public class DefaultEntityService implements EntityService {
     @Autowired
     private BackendAuditService backendAuditService;
 
+    @Autowired
+    private BackendChangeLogService backendChangeLogService;
+
     @Autowired
     private BackendBlobstoreService backendBlobstoreService;
 
@@ -117,6 +129,15 @@ public class DefaultEntityService implements EntityService {
     @Autowired
     private AuthorizationService defaultAuthorizationService;
 
+    @Autowired
+    private RestrictionFilterCache restrictionFilterCache;
+
+    @Autowired
+    private SearchProfiler searchProfiler;
+
+    @Autowired
+    private SearchResultCache searchResultCache;
+
     @Autowired
     private BackendSchemaService backendSchemaService;
 
@@ -170,6 +191,8 @@ public class DefaultEntityService implements EntityService {
         e.setUtcCreated(now);
         e.setUtcLastModified(now);
         final String id = this.backendEntityService.create(e);
+        this.searchResultCache.invalidate();
+        this.logChange(Change.Action.CREATE, e);
         log.debug("finished creating Entity {}", id);
 
         // export the created entity
@@ -282,6 +305,22 @@ public class DefaultEntityService implements EntityService {
         md.setUtcLastModified(now);
     }
 
+    /**
+     * Append a change to the change log. The change has already been written, so a failure to log it must not fail
+     * the request; it is logged instead, and consumers of the change log miss this change.
+     */
+    private void logChange(Change.Action action, Entity e) {
+        final Change change = new Change(action, e.getId());
+        change.setVersion(e.getVersion());
+        change.setState(e.getState() == null ? null : e.getState().name());
+        try {
+            this.backendChangeLogService.append(change);
+        } catch (IOException ex) {
+            log.error("Unable to log change {} of entity {} in version {}: {}", action, e.getId(), e.getVersion(),
+                    ex.getMessage());
+        }
+    }
+
     private String generateId() throws IOException {
         String generated;
         do {
@@ -363,6 +402,8 @@ public class DefaultEntityService implements EntityService {
             }
         }
         this.backendEntityService.update(e);
+        this.searchResultCache.invalidate();
+        this.logChange(Change.Action.UPDATE, e);
         if (autoExport) {
             exportService.export(e);
             log.debug("exported entity {} ", e.getId());
@@ -427,6 +468,8 @@ public class DefaultEntityService implements EntityService {
         e.setVersion(e.getVersion() + 1);
         e.setUtcLastModified(now);
         this.backendEntityService.update(e);
+        this.searchResultCache.invalidate();
+        this.logChange(Change.Action.UPDATE, e);
         if (autoExport) {
             exportService.export(e);
             log.debug("exported entity {} ", e.getId());
@@ -456,6 +499,8 @@ public class DefaultEntityService implements EntityService {
         e.setVersion(e.getVersion() + 1);
         e.setUtcLastModified(now);
         this.backendEntityService.update(e);
+        this.searchResultCache.invalidate();
+        this.logChange(Change.Action.UPDATE, e);
         if (autoExport) {
             exportService.export(e);
             log.debug("exported entity {} ", e.getId());
@@ -490,6 +535,8 @@ public class DefaultEntityService implements EntityService {
         e.setVersion(e.getVersion() + 1);
         e.setUtcLastModified(now);
         this.backendEntityService.update(e);
+        this.searchResultCache.invalidate();
+        this.logChange(Change.Action.UPDATE, e);
 
         if (autoExport) {
             exportService.export(e);
@@ -564,6 +611,8 @@ public class DefaultEntityService implements EntityService {
         }
         newVersion.getRelation(predicate).getObjects().add(object);
         this.backendEntityService.update(newVersion);
+        this.searchResultCache.invalidate();
+        this.logChange(Change.Action.UPDATE, newVersion);
     }
 
     @Override
@@ -657,6 +706,8 @@ public class DefaultEntityService implements EntityService {
         newVersion.getAlternativeIdentifiers().add(new AlternativeIdentifier(type, value));
 
         this.backendEntityService.update(newVersion);
+        this.searchResultCache.invalidate();
+        this.logChange(Change.Action.UPDATE, newVersion);
     }
 
     @Override
@@ -695,6 +746,8 @@ public class DefaultEntityService implements EntityService {
         }
 
         this.backendEntityService.update(newVersion);
+        this.searchResultCache.invalidate();
+        this.logChange(Change.Action.UPDATE, newVersion);
     }
 
     @Override
@@ -706,6 +759,8 @@ public class DefaultEntityService implements EntityService {
         if (!EntityState.SUBMITTED.equals(e.getState())) {
             e.setState(EntityState.SUBMITTED);
             this.backendEntityService.update(e);
+            this.searchResultCache.invalidate();
+            this.logChange(Change.Action.SUBMIT, e);
         }
     }
 
@@ -715,6 +770,8 @@ public class DefaultEntityService implements EntityService {
         if (!EntityState.PUBLISHED.equals(e.getState())) {
             e.setState(EntityState.PUBLISHED);
             this.backendEntityService.update(e);
+            this.searchResultCache.invalidate();
+            this.logChange(Change.Action.PUBLISH, e);
         }
     }
 
@@ -724,6 +781,8 @@ public class DefaultEntityService implements EntityService {
         if (!EntityState.WITHDRAWN.equals(e.getState())) {
             e.setState(EntityState.WITHDRAWN);
             this.backendEntityService.update(e);
+            this.searchResultCache.invalidate();
+            this.logChange(Change.Action.WITHDRAW, e);
         }
     }
 
@@ -736,7 +795,25 @@ public class DefaultEntityService implements EntityService {
         if (!EntityState.PENDING.equals(e.getState())) {
             e.setState(EntityState.PENDING);
             this.backendEntityService.update(e);
+            this.searchResultCache.invalidate();
+            this.logChange(Change.Action.PENDING, e);
+        }
+    }
+
+    @Override
+    public Changes retrieveChanges(long since, int limit, long timeout) throws IOException {
+        if (since < 0 || limit < 0 || timeout < 0) {
+            throw new InvalidParameterException("since, limit and timeout may not be negative");
         }
+        return backendChangeLogService.retrieve(since, limit, timeout);
+    }
+
+    @Override
+    public long exportChanges(long since, long limit, long timeout, OutputStream sink) throws IOException {
+        if (since < 0 || limit < 0 || timeout < 0) {
+            throw new InvalidParameterException("since, limit and timeout may not be negative");
+        }
+        return backendChangeLogService.export(since, limit, timeout, sink);
     }
 
     @Override
@@ -745,6 +822,21 @@ public class DefaultEntityService implements EntityService {
         return backendAuditService.retrieve(entityId, offset, count);
     }
 
+    @Override
+    public AuditRecords retrieveAuditRecords(String entityId, String cursor, int count) throws IOException {
+        return backendAuditService.retrieve(entityId, cursor, count);
+    }
+
+    @Override
+    public SearchResult searchAuditRecords(AuditSearchParameters params) throws IOException {
+        return backendAuditService.search(params);
+    }
+
+    @Override
+    public long exportAuditRecords(AuditSearchParameters params, OutputStream sink) throws IOException {
+        return backendAuditService.export(params, sink);
+    }
+
     @Override
     public void createAuditRecord(AuditRecord auditRecord) throws IOException {
         backendAuditService.create(auditRecord);
@@ -753,58 +845,86 @@ public class DefaultEntityService implements EntityService {
     @Override
     public SearchResult searchEntities(String query, int offset)
             throws IOException {
-        // add user restriction
-        StringBuilder queryBuilder = new StringBuilder("");
-        if (StringUtils.isNotBlank(query)) {
-            queryBuilder.append("(").append(query).append(") AND ");
-        }
-        queryBuilder.append(getEntitesUserRestrictionQuery());
-        return backendEntityService.searchEntities(queryBuilder.toString(), offset);
+        return this.searchEntities(new SearchParameters(query, offset, -1));
     }
 
     @Override
     public SearchResult searchEntities(String query, int offset, int maxRecords)
             throws IOException {
+        return this.searchEntities(new SearchParameters(query, offset, maxRecords));
+    }
+
+    @Override
+    public SearchResult searchEntities(SearchParameters params) throws IOException {
+        final long start = System.currentTimeMillis();
+        final User user = defaultAuthorizationService.getCurrentUser();
         // add user restriction
-        StringBuilder queryBuilder = new StringBuilder("");
-        if (StringUtils.isNotBlank(query)) {
-            queryBuilder.append("(").append(query).append(") AND ");
-        }
-        queryBuilder.append(getEntitesUserRestrictionQuery());
-        return backendEntityService.searchEntities(queryBuilder.toString(), offset, maxRecords);
+        params.setFilter(restrictionFilterCache.getEntitiesFilter(user));
+        final long restriction = System.currentTimeMillis() - start;
+        final String userName = user == null ? null : user.getName();
+        if (params.isProfile()) {
+            // bypass the result cache to measure the search itself
+            return searchProfiler.finish(ElasticSearchEntityService.INDEX_ENTITIES, userName, params,
+                    backendEntityService.searchEntities(params), start, restriction);
+        }
+        return searchResultCache.get(params, p -> searchProfiler.finish(ElasticSearchEntityService.INDEX_ENTITIES,
+                userName, p, backendEntityService.searchEntities(p), start, restriction));
     }
 
     @Override
-    public Entities getOldVersions(String id) throws IOException {
-        return backendVersionService.getOldVersions(id);
+    public long exportEntities(SearchParameters params, OutputStream sink) throws IOException {
+        // add user restriction
+        params.setFilter(restrictionFilterCache.getEntitiesFilter(defaultAuthorizationService.getCurrentUser()));
+        return backendEntityService.exportEntities(params, sink);
     }
 
-    /**
-     * Get Query that restricts a search to entities the user may see.
-     * 
-     * @return QueryBuilder with user-restriction query
-     */
-    private String getEntitesUserRestrictionQuery() throws IOException {
-        User currentUser = defaultAuthorizationService.getCurrentUser();
-        StringBuilder restrictionQueryBuilder = new StringBuilder("(");
-        if (currentUser == null || currentUser.getRoles() == null || currentUser.getRoles().isEmpty()) {
-            // restrict to nothing
-            restrictionQueryBuilder.append(EntitiesSearchField.STATE.getFieldName()).append(":NONEXISTING");
-            restrictionQueryBuilder.append(")");
-            return restrictionQueryBuilder.toString();
-        } else {
-            int counter = 0;
-            for (Role role : currentUser.getRoles()) {
-                if (counter > 0) {
-                    restrictionQueryBuilder.append(" OR ");
-                }
-                RoleQueryRestriction roleQueryRestriction = QueryRestrictionFactory.getRoleQueryRestriction(role);
-                restrictionQueryBuilder.append(roleQueryRestriction.getEntitiesRestrictionQuery());
-                counter++;
-            }
-        }
-        restrictionQueryBuilder.append(")");
-        return restrictionQueryBuilder.toString();
+    @Override
+    public SearchResult suggestEntities(String prefix, int size) throws IOException {
+        final SearchParameters params = new SearchParameters(prefix, 0, size);
+        // add user restriction
+        params.setFilter(restrictionFilterCache.getEntitiesFilter(defaultAuthorizationService.getCurrentUser()));
+        return backendEntityService.suggestEntities(params);
+    }
+
+    @Override
+    public long countEntities(SearchParameters params) throws IOException {
+        // add user restriction
+        params.setFilter(restrictionFilterCache.getEntitiesFilter(defaultAuthorizationService.getCurrentUser()));
+        return backendEntityService.countEntities(params);
+    }
+
+    @Override
+    public boolean existsEntities(SearchParameters params) throws IOException {
+        // add user restriction
+        params.setFilter(restrictionFilterCache.getEntitiesFilter(defaultAuthorizationService.getCurrentUser()));
+        return backendEntityService.existsEntities(params);
+    }
+
+    @Override
+    public FacetResult facetEntities(FacetParameters params) throws IOException {
+        // add user restriction
+        params.setFilter(restrictionFilterCache.getEntitiesFilter(defaultAuthorizationService.getCurrentUser()));
+        return backendEntityService.facets(params);
+    }
+
+    @Override
+    public FacetResult facetAuditRecords(FacetParameters params) throws IOException {
+        return backendAuditService.facets(params);
+    }
+
+    @Override
+    public long countAuditRecords(SearchParameters params) throws IOException {
+        return backendAuditService.countAuditRecords(params);
+    }
+
+    @Override
+    public boolean existsAuditRecords(SearchParameters params) throws IOException {
+        return backendAuditService.existsAuditRecords(params);
+    }
+
+    @Override
+    public Entities getOldVersions(String id) throws IOException {
+        return backendVersionService.getOldVersions(id);
     }
 
     /**
@@ -875,16 +995,28 @@ public class DefaultEntityService implements EntityService {
      */
     private boolean hasPublishedChildren(String id) throws IOException {
         final Entity e = retrieve(id);
-        if (e.getChildren() == null) {
-            return false;
-        } else {
-            for (String childId : e.getChildren()) {
-                if (isPublished(childId)) {
+        final String published = EntitiesSearchField.STATE.getFieldName() + ":" + EntityState.PUBLISHED.name();
+        if (FixedContentModel.LEVEL1.getName().equals(e.getContentModelId()) ||
+                FixedContentModel.LEVEL2.getName().equals(e.getContentModelId())) {
+            // all descendants of a level1 or level2 are indexed with its id
+            final EntitiesSearchField level =
+                    FixedContentModel.LEVEL1.getName().equals(e.getContentModelId()) ? EntitiesSearchField.LEVEL1
+                            : EntitiesSearchField.LEVEL2;
+            return backendEntityService.existsEntities(new SearchParameters(level.getFieldName() + ":\"" + id +
+                    "\" AND NOT " + EntitiesSearchField.ID.getFieldName() + ":\"" + id + "\" AND " + published, 0, 0));
+        }
+        // data entities are checked generation by generation
+        List<String> parentIds = Collections.singletonList(id);
+        while (!parentIds.isEmpty()) {
+            final List<String> childIds = new ArrayList<>();
+            for (String parentId : parentIds) {
+                if (backendEntityService.existsEntities(new SearchParameters(EntitiesSearchField.PARENT
+                        .getFieldName() + ":\"" + parentId + "\" AND " + published, 0, 0))) {
                     return true;
-                } else {
-                    return hasPublishedChildren(childId);
                 }
+                childIds.addAll(backendEntityService.fetchChildren(parentId));
             }
+            parentIds = childIds;
         }
         return false;
     }
@@ -920,6 +1052,8 @@ public class DefaultEntityService implements EntityService {
 
         // delete entity
         this.backendEntityService.delete(id);
+        this.searchResultCache.invalidate();
+        this.logChange(Change.Action.DELETE, e);
 
         // delete rights having this entity as anchorId
         this.backendCredentialsService.deleteRights(id);
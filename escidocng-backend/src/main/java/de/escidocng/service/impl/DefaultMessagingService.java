@@ -14,23 +14,50 @@
  * limitations under the License.
  */
 
-
 package de.escidocng.service.impl;
 
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.jms.JMSException;
-import javax.jms.Message;
+import javax.jms.MessageProducer;
 import javax.jms.Session;
+import javax.jms.TextMessage;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
 import org.springframework.jms.core.JmsTemplate;
-import org.springframework.jms.core.MessageCreator;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.escidocng.model.RepositoryEvent;
+import de.escidocng.model.RepositoryEvent.Type;
+import de.escidocng.model.state.MessagingQueueState;
 import de.escidocng.service.MessagingService;
 
+/**
+ * Publishes {@link de.escidocng.model.RepositoryEvent}s as JSON text messages. The type of the event and the id of
+ * the entity are set as JMS properties, so consumers can filter with message selectors.<br>
+ * Unless escidocng.messaging.async is false, events are put into a bounded queue and a background thread sends them
+ * in batches, so a slow broker does not block the request threads. Events are dropped if the queue is full.<br>
+ * A batch which could not be sent is retried in full. With a transacted session (the default acknowledge mode) the
+ * failed batch has been rolled back, but with any other acknowledge mode the events sent before the failure are
+ * sent again, so consumers may receive duplicates.
+ */
 public class DefaultMessagingService implements MessagingService {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultMessagingService.class);
@@ -41,144 +68,306 @@ public class DefaultMessagingService implements MessagingService {
     @Autowired
     private Environment env;
 
+    @Autowired
+    private ObjectMapper mapper;
+
     private boolean enabled;
 
+    private boolean async;
+
+    private int batchSize;
+
+    private BlockingQueue<RepositoryEvent> queue;
+
+    private ExecutorService sender;
+
+    private volatile boolean running;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong published = new AtomicLong();
+
+    private final AtomicLong failedSends = new AtomicLong();
+
     @PostConstruct
     public void init() {
         final String en = env.getProperty("escidocng.messaging.enabled");
         enabled = en != null && en.equalsIgnoreCase("true");
+        async = Boolean.parseBoolean(env.getProperty("escidocng.messaging.async", "true"));
+        if (!enabled || !async) {
+            return;
+        }
+        batchSize = Integer.parseInt(env.getProperty("escidocng.messaging.batchSize", "100"));
+        queue = new ArrayBlockingQueue<>(Integer.parseInt(env.getProperty("escidocng.messaging.queue.capacity",
+                "10000")));
+        running = true;
+        sender = Executors.newSingleThreadExecutor(r -> {
+            final Thread t = new Thread(r, "jms-publisher");
+            t.setDaemon(true);
+            return t;
+        });
+        sender.execute(this::sendLoop);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        if (sender != null) {
+            // let the sender publish the events which are still queued
+            running = false;
+            sender.shutdown();
+            if (!sender.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Unable to publish {} queued events before shutdown", queue.size());
+                sender.shutdownNow();
+            }
+        }
     }
 
-    private void publish(final String text) {
+    private void publish(final RepositoryEvent event) {
         if (!enabled) {
             return;
         }
-        if (text == null || text.isEmpty()) {
-            throw new RuntimeException("Text for JMS Message can not be empty");
+        event.setTimestamp(ZonedDateTime.now(ZoneOffset.UTC).toString());
+        if (!async) {
+            send(Collections.singletonList(event));
+            published.incrementAndGet();
+            return;
         }
-        this.template.send(new MessageCreator() {
-            @Override
-            public Message createMessage(Session session) throws JMSException {
-                return session.createTextMessage(text);
+        if (!queue.offer(event)) {
+            if (dropped.incrementAndGet() % 1000 == 1) {
+                log.warn("The event queue is full, {} events have been dropped so far", dropped.get());
             }
-        });
+        }
+    }
+
+    private void sendLoop() {
+        final List<RepositoryEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    final RepositoryEvent first = queue.poll(200, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                send(batch);
+                published.addAndGet(batch.size());
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // keep the batch and retry, a transacted session has been rolled back
+                failedSends.incrementAndGet();
+                log.error("Unable to publish {} events: {}", batch.size(), e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Send a batch of events with a single session and producer. A transacted session is committed once per batch.
+     */
+    private void send(final List<RepositoryEvent> events) {
+        this.template.execute((Session session) -> {
+            final MessageProducer producer = session.createProducer(template.getDefaultDestination());
+            try {
+                for (final RepositoryEvent event : events) {
+                    final TextMessage msg;
+                    try {
+                        msg = session.createTextMessage(mapper.writeValueAsString(event));
+                    } catch (JsonProcessingException e) {
+                        log.error("Unable to serialize event {}: {}", event.getType(), e.getMessage());
+                        continue;
+                    }
+                    msg.setStringProperty(RepositoryEvent.PROPERTY_TYPE, event.getType().name());
+                    if (event.getEntityId() != null) {
+                        msg.setStringProperty(RepositoryEvent.PROPERTY_ENTITY_ID, event.getEntityId());
+                    }
+                    producer.send(msg, template.getDeliveryMode(), template.getPriority(), template.getTimeToLive());
+                }
+                if (session.getTransacted()) {
+                    session.commit();
+                }
+            } catch (JMSException e) {
+                if (session.getTransacted()) {
+                    session.rollback();
+                }
+                throw e;
+            } finally {
+                producer.close();
+            }
+            return null;
+        }, true);
+    }
+
+    @Override
+    public MessagingQueueState status() {
+        final MessagingQueueState state = new MessagingQueueState();
+        state.setEnabled(enabled);
+        state.setAsync(async);
+        state.setPublished(published.get());
+        state.setFailedSends(failedSends.get());
+        state.setDropped(dropped.get());
+        if (queue != null) {
+            state.setDepth(queue.size());
+            state.setCapacity(queue.size() + queue.remainingCapacity());
+        }
+        return state;
     }
 
     @Override
     public void publishCreateEntity(String entityId) {
-        this.publish("Created entity " + entityId);
+        this.publish(new RepositoryEvent(Type.CREATE_ENTITY, entityId));
     }
 
     @Override
     public void publishUpdateEntity(String entityId) {
-        this.publish("Update entity " + entityId);
+        this.publish(new RepositoryEvent(Type.UPDATE_ENTITY, entityId));
     }
 
     @Override
     public void publishDeleteEntity(String entityId) {
-        this.publish("Deleted entity " + entityId);
+        this.publish(new RepositoryEvent(Type.DELETE_ENTITY, entityId));
     }
 
     @Override
     public void publishCreateBinary(String entityId, String binaryName) {
-        this.publish("Created binary " + binaryName + " on entity " + entityId);
+        this.publish(binaryEvent(Type.CREATE_BINARY, entityId, binaryName));
     }
 
     @Override
     public void publishUpdateBinary(String entityId, String binaryName) {
-        this.publish("Updated binary " + binaryName + " on entity " + entityId);
+        this.publish(binaryEvent(Type.UPDATE_BINARY, entityId, binaryName));
     }
 
     @Override
     public void publishDeleteBinary(String entityId, String binaryName) {
-        this.publish("Deleted binary " + binaryName + " on entity " + entityId);
+        this.publish(binaryEvent(Type.DELETE_BINARY, entityId, binaryName));
     }
 
     @Override
     public void publishCreateMetadata(String entityId, String mdName) {
-        this.publish("Created meta data " + mdName + " on entity " + entityId);
+        this.publish(metadataEvent(Type.CREATE_METADATA, entityId, null, mdName));
     }
 
     @Override
     public void publishUpdateMetadata(String entityId, String mdName) {
-        this.publish("Updated meta data " + mdName + " on entity " + entityId);
+        this.publish(metadataEvent(Type.UPDATE_METADATA, entityId, null, mdName));
     }
 
     @Override
     public void publishDeleteMetadata(String entityId, String mdName) {
-        this.publish("Deleted meta data " + mdName + " on entity " + entityId);
-
+        this.publish(metadataEvent(Type.DELETE_METADATA, entityId, null, mdName));
     }
 
     @Override
     public void publishCreateIdentifier(String entityId, String type, String value) {
-        this.publish("Created identifier of type " + type + " with value " + value + " on entity " + entityId);
+        this.publish(identifierEvent(Type.CREATE_IDENTIFIER, entityId, type, value));
     }
 
     @Override
     public void publishDeleteIdentifier(String entityId, String type, String value) {
-        this.publish("Deleted identifier of type " + type + " with value " + value + " on entity " + entityId);
-
+        this.publish(identifierEvent(Type.DELETE_IDENTIFIER, entityId, type, value));
     }
 
     @Override
     public void publishCreateBinaryMetadata(String entityId, String binaryName, String mdName) {
-        this.publish("Created meta data " + mdName + " on binary " + binaryName + " of entity " + entityId);
+        this.publish(metadataEvent(Type.CREATE_BINARY_METADATA, entityId, binaryName, mdName));
     }
 
     @Override
     public void publishUpdateBinaryMetadata(String entityId, String binaryName, String mdName) {
-        this.publish("Updated meta data " + mdName + " on binary " + binaryName + " of entity " + entityId);
+        this.publish(metadataEvent(Type.UPDATE_BINARY_METADATA, entityId, binaryName, mdName));
     }
 
     @Override
     public void publishDeleteBinaryMetadata(String entityId, String binaryName, String mdName) {
-        this.publish("Deleted meta data " + mdName + " on binary " + binaryName + " of entity " + entityId);
+        this.publish(metadataEvent(Type.DELETE_BINARY_METADATA, entityId, binaryName, mdName));
     }
 
     @Override
     public void publishAddUser(String userName) {
-        this.publish("Added user " + userName);
+        this.publish(userEvent(Type.CREATE_USER, userName));
     }
 
     @Override
     public void publishDeleteUser(String userName) {
-        this.publish("Deleted user " + userName);
+        this.publish(userEvent(Type.DELETE_USER, userName));
     }
 
     @Override
     public void publishUpdateUser(String userName) {
-        this.publish("Update user " + userName);
+        this.publish(userEvent(Type.UPDATE_USER, userName));
     }
 
     @Override
     public void publishCreateRelation(String subject, String predicate, String object) {
-        this.publish("Added relation " + subject + " " + predicate + " " + object);
+        this.publish(relationEvent(Type.CREATE_RELATION, subject, predicate, object));
     }
 
     @Override
     public void publishDeleteRelation(String subject, String predicate, String object) {
-        this.publish("Deleted relation " + subject + " " + predicate + " " + object);
+        this.publish(relationEvent(Type.DELETE_RELATION, subject, predicate, object));
     }
 
     @Override
     public void publishPendingEntity(String id) {
-        this.publish("Set entity state to pending" + id);
+        this.publish(new RepositoryEvent(Type.PENDING_ENTITY, id));
     }
 
     @Override
     public void publishPublishEntity(String id) {
-        this.publish("Published entity " + id);
+        this.publish(new RepositoryEvent(Type.PUBLISH_ENTITY, id));
     }
 
     @Override
     public void publishSubmitEntity(String id) {
-        this.publish("Submitted entity " + id);
+        this.publish(new RepositoryEvent(Type.SUBMIT_ENTITY, id));
     }
 
     @Override
     public void publishWithdrawEntity(String id) {
-        this.publish("Withdrawn entity " + id);
+        this.publish(new RepositoryEvent(Type.WITHDRAW_ENTITY, id));
+    }
+
+    private static RepositoryEvent binaryEvent(Type type, String entityId, String binaryName) {
+        final RepositoryEvent event = new RepositoryEvent(type, entityId);
+        event.setBinaryName(binaryName);
+        return event;
+    }
+
+    private static RepositoryEvent metadataEvent(Type type, String entityId, String binaryName, String mdName) {
+        final RepositoryEvent event = new RepositoryEvent(type, entityId);
+        event.setBinaryName(binaryName);
+        event.setMetadataName(mdName);
+        return event;
+    }
+
+    private static RepositoryEvent identifierEvent(Type type, String entityId, String idType, String value) {
+        final RepositoryEvent event = new RepositoryEvent(type, entityId);
+        event.setIdentifierType(idType);
+        event.setIdentifierValue(value);
+        return event;
+    }
+
+    private static RepositoryEvent relationEvent(Type type, String subject, String predicate, String object) {
+        final RepositoryEvent event = new RepositoryEvent(type, subject);
+        event.setPredicate(predicate);
+        event.setObject(object);
+        return event;
+    }
+
+    private static RepositoryEvent userEvent(Type type, String userName) {
+        final RepositoryEvent event = new RepositoryEvent(type, null);
+        event.setUserName(userName);
+        return event;
     }
 
 }
@@ -28,7 +28,10 @@ import org.springframework.security.access.annotation.Secured;
 
 import de.escidocng.model.Describe;
 import de.escidocng.model.state.EscidocngState;
+import de.escidocng.security.helpers.AuthenticationCache;
+import de.escidocng.service.MessagingService;
 import de.escidocng.service.RepositoryService;
+import de.escidocng.service.backend.BackendAuditService;
 import de.escidocng.service.backend.BackendBlobstoreService;
 import de.escidocng.service.backend.BackendEntityService;
 
@@ -51,11 +54,27 @@ public class DefaultRepositoryService implements RepositoryService {
     @Autowired
     private Client client;
 
+    @Autowired
+    private SearchResultCache searchResultCache;
+
+    @Autowired
+    private AuthenticationCache authenticationCache;
+
+    @Autowired
+    private BackendAuditService backendAuditService;
+
+    @Autowired
+    private MessagingService messagingService;
+
     @Override
     public EscidocngState status() throws IOException {
         final EscidocngState state = new EscidocngState();
         state.setBlobstoreState(backendBlobstoreService.status());
         state.setIndexState(backendEntityService.status());
+        state.setSearchCacheState(searchResultCache.status());
+        state.setAuthenticationCacheState(authenticationCache.status());
+        state.setAuditQueueState(backendAuditService.status());
+        state.setMessagingQueueState(messagingService.status());
         return state;
     }
 
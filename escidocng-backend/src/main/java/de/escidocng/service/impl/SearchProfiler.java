@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.service.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.escidocng.model.SearchParameters;
+import de.escidocng.model.SearchResult;
+import de.escidocng.model.SearchTimings;
+import de.escidocng.model.SlowQuery;
+
+/**
+ * Completes the timings of searches and keeps the most recent searches which took longer than a threshold in a
+ * bounded ring buffer.
+ */
+public class SearchProfiler {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchProfiler.class);
+
+    private final long threshold;
+
+    private final int size;
+
+    private final Deque<SlowQuery> slowQueries;
+
+    /**
+     * Create a new profiler
+     * 
+     * @param threshold the duration in milliseconds from which on a search is captured as slow
+     * @param size the maximum number of captured slow searches
+     */
+    public SearchProfiler(final long threshold, final int size) {
+        this.threshold = threshold;
+        this.size = size;
+        this.slowQueries = new ArrayDeque<>(size);
+    }
+
+    /**
+     * Add the restriction and total time to the timings of a search, capture the search if it was slow and remove
+     * the timings from the result if profiling was not requested
+     * 
+     * @param index the name of the searched index
+     * @param user the name of the searching user
+     * @param params the parameters of the search
+     * @param result the result returned by the backend
+     * @param start the time the search started at
+     * @param restriction the time spent building the restriction filter
+     * @return the result
+     */
+    public SearchResult finish(final String index, final String user, final SearchParameters params,
+            final SearchResult result, final long start, final long restriction) {
+        SearchTimings timings = result.getTimings();
+        if (timings == null) {
+            timings = new SearchTimings();
+        }
+        timings.setRestriction(restriction);
+        timings.setTotal(System.currentTimeMillis() - start);
+        if (timings.getTotal() >= threshold && size > 0) {
+            final SlowQuery slow = new SlowQuery();
+            slow.setTimestamp(start);
+            slow.setIndex(index);
+            slow.setUser(user);
+            slow.setQuery(params.getQuery());
+            slow.setOffset(params.getOffset());
+            slow.setMaxRecords(params.getMaxRecords());
+            slow.setTotalHits(result.getTotalHits());
+            slow.setRestrictionSize(params.getFilter() == null ? 0 : params.getFilter().length());
+            slow.setTimings(timings);
+            log.warn("Slow search in {} took {} ms: '{}'", index, timings.getTotal(), params.getQuery());
+            synchronized (slowQueries) {
+                if (slowQueries.size() >= size) {
+                    slowQueries.removeFirst();
+                }
+                slowQueries.addLast(slow);
+            }
+        }
+        result.setTimings(params.isProfile() ? timings : null);
+        return result;
+    }
+
+    /**
+     * Get the captured slow searches, the most recent one first
+     * 
+     * @return the slow searches
+     */
+    public List<SlowQuery> getSlowQueries() {
+        final List<SlowQuery> queries = new ArrayList<>(size);
+        synchronized (slowQueries) {
+            slowQueries.descendingIterator().forEachRemaining(queries::add);
+        }
+        return queries;
+    }
+
+    /**
+     * Remove all captured slow searches
+     */
+    public void clear() {
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.service.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.escidocng.model.SearchParameters;
+import de.escidocng.model.SearchResult;
+import de.escidocng.model.state.SearchCacheState;
+
+/**
+ * Caches the results of entity searches, so frequently repeated searches do not hit the index each time. Results are
+ * keyed by the normalized query, paging, projection and the restriction filter of the searching user. All results
+ * are discarded as soon as an entity is written on this node and expire after a configurable time to live.<br>
+ * Consistent searches, which have to see the writes made on any node, and DFS searches bypass the cache.
+ */
+public class SearchResultCache {
+
+    /* the number of cached results serialized to estimate the memory used by the cache */
+    private static final int MEMORY_SAMPLE_SIZE = 16;
+
+    private final int maxSize;
+
+    private final long ttl;
+
+    private final ObjectMapper mapper;
+
+    private final Map<List<Object>, CachedResult> cache;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create a new cache
+     * 
+     * @param maxSize the maximum number of cached results, 0 disables the cache
+     * @param ttl the time to live of a cached result in milliseconds
+     * @param mapper the {@link com.fasterxml.jackson.databind.ObjectMapper} used to estimate the size of the results
+     */
+    public SearchResultCache(final int maxSize, final long ttl, final ObjectMapper mapper) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.mapper = mapper;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<List<Object>, CachedResult>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedResult> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Get the result of a search from the cache or load it and cache it if there is no valid cached result
+     * 
+     * @param params the parameters of the search including the restriction filter
+     * @param loader executes the search if the result is not cached
+     * @return the result of the search
+     */
+    public SearchResult get(final SearchParameters params, final Loader loader) throws IOException {
+        if (maxSize <= 0 || params.isConsistent() || params.isDfs()) {
+            return loader.load(params);
+        }
+        final List<Object> key = key(params);
+        final long currentGeneration = generation.get();
+        final CachedResult cached = cache.get(key);
+        if (cached != null) {
+            if (cached.generation == currentGeneration
+                    && System.currentTimeMillis() - cached.created < ttl) {
+                hits.incrementAndGet();
+                return cached.result;
+            }
+            this.remove(key, cached);
+        }
+        misses.incrementAndGet();
+        final SearchResult result = loader.load(params);
+        /* do not cache results which might have been loaded before an entity was written */
+        if (generation.get() == currentGeneration) {
+            cache.put(key, new CachedResult(result, currentGeneration));
+        }
+        return result;
+    }
+
+    /**
+     * Discard all cached results, called whenever an entity is written
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    /**
+     * Get the statistics of the cache
+     * 
+     * @return the {@link de.escidocng.model.state.SearchCacheState}
+     */
+    public SearchCacheState status() {
+        final SearchCacheState state = new SearchCacheState();
+        final long numHits = hits.get();
+        final long numMisses = misses.get();
+        state.setSize(cache.size());
+        state.setMaxSize(maxSize);
+        state.setTtl(ttl);
+        state.setGeneration(generation.get());
+        state.setHits(numHits);
+        state.setMisses(numMisses);
+        state.setEvictions(evictions.get());
+        state.setHitRatio(numHits + numMisses == 0 ? 0d : (double) numHits / (numHits + numMisses));
+        state.setEstimatedMemory(estimateMemory());
+        return state;
+    }
+
+    /**
+     * Estimate the memory used by the cached results from the serialized size of a sample of them, so results do
+     * not have to be serialized when they are cached
+     */
+    private long estimateMemory() {
+        final List<SearchResult> sample = new ArrayList<>(MEMORY_SAMPLE_SIZE);
+        final int size;
+        synchronized (cache) {
+            size = cache.size();
+            for (final CachedResult cached : cache.values()) {
+                if (sample.size() == MEMORY_SAMPLE_SIZE) {
+                    break;
+                }
+                sample.add(cached.result);
+            }
+        }
+        if (sample.isEmpty()) {
+            return 0;
+        }
+        long bytes = 0;
+        for (final SearchResult result : sample) {
+            try {
+                bytes += mapper.writeValueAsBytes(result).length;
+            } catch (JsonProcessingException e) {
+                // leave the result out of the estimate
+            }
+        }
+        return bytes * size / sample.size();
+    }
+
+    private void remove(final List<Object> key, final CachedResult cached) {
+        synchronized (cache) {
+            if (cache.get(key) == cached) {
+                cache.remove(key);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static List<Object> key(final SearchParameters params) {
+        final String query = params.getQuery() == null ? "" : params.getQuery().trim().replaceAll("\\s+", " ");
+        return Arrays.asList(query, params.getOffset(), params.getMaxRecords(), params.getSort(),
+                params.getFields(), params.getView(), params.getCursor(), params.isAggregations(), params.getFilter());
+    }
+
+    /**
+     * Executes a search whose result is not cached
+     */
+    public interface Loader {
+
+        SearchResult load(SearchParameters params) throws IOException;
+    }
+
+    private static class CachedResult {
+
+        private final SearchResult result;
+
+        private final long generation;
+
+        private final long created = System.currentTimeMillis();
+
+        private CachedResult(final SearchResult result, final long generation) {
+            this.result = result;
+            this.generation = generation;
+        }
+    }
+}
@@ -35,6 +35,18 @@ public class SftpUtil {
     public static SftpClient getSftpClient(String username, String password, String host, int port, String rootPath) throws Exception {
         SshClient ssh = SshClient.setUpDefaultClient();
         ssh.start();
+        SftpClient sftp = connect(ssh, username, password, host, port).createSftpClient();
+        ensureRootDirectory(sftp, rootPath);
+        return sftp;
+    }
+
+    /**
+     * Open an authenticated session using an already started {@link org.apache.sshd.SshClient}
+     * 
+     * @return the authenticated session which can be used to create SFTP channels
+     */
+    public static ClientSession connect(SshClient ssh, String username, String password, String host, int port)
+            throws IOException {
         ClientSession currentSession = null;
         try {
             ConnectFuture conn = ssh.connect(username, host, port);
@@ -53,8 +65,10 @@ public class SftpUtil {
         } catch (InterruptedException e) {
             throw new IOException(e);
         }
-        SftpClient sftp = currentSession.createSftpClient();
+        return currentSession;
+    }
 
+    public static void ensureRootDirectory(SftpClient sftp, String rootPath) throws IOException {
         try {
             sftp.stat("/");
         } catch (IOException e) {
@@ -74,7 +88,6 @@ public class SftpUtil {
                 throw e;
             }
         }
-        return sftp;
     }
 
 }
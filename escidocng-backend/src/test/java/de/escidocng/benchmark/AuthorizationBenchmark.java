@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.escidocng.model.ContentModel.FixedContentModel;
+import de.escidocng.model.Entity;
+import de.escidocng.model.Entity.EntityState;
+import de.escidocng.model.EntityHierarchy;
+import de.escidocng.model.security.ObjectType;
+import de.escidocng.model.security.PermissionType;
+import de.escidocng.model.security.User;
+import de.escidocng.model.security.annotation.Permission;
+import de.escidocng.model.security.role.Level1AdminRole;
+import de.escidocng.model.security.role.Right;
+import de.escidocng.model.security.role.Role.RoleName;
+import de.escidocng.model.security.role.Role.RoleRight;
+import de.escidocng.model.security.role.UserAdminRole;
+import de.escidocng.model.security.role.UserRole;
+
+/**
+ * JMH benchmark of the role checks done for every secured controller call, using synthetic users holding
+ * between 10 and 100k rights per role. The anchor that is checked is the last one of the right-list, which is
+ * the worst case for a list scan.<br>
+ * Run with: <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=de.escidocng.benchmark.AuthorizationBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthorizationBenchmark {
+
+    @Param({ "10", "1000", "10000", "100000" })
+    private int rights;
+
+    private User user;
+
+    private Permission level1AdminPermission;
+
+    private Permission userPermission;
+
+    private Permission userAdminPermission;
+
+    private Entity level1Entity;
+
+    private EntityHierarchy level1Hierarchy;
+
+    private Entity publishedEntity;
+
+    private EntityHierarchy level2Hierarchy;
+
+    private User checkUser;
+
+    @Setup
+    public void setup() throws Exception {
+        final List<Right> level1Rights = new ArrayList<>(rights);
+        final List<Right> level2Rights = new ArrayList<>(rights);
+        final List<Right> userRights = new ArrayList<>(rights);
+        for (int i = 0; i < rights; i++) {
+            level1Rights.add(new Right("level1-" + i, Arrays.asList(RoleRight.READ, RoleRight.WRITE)));
+            level2Rights.add(new Right("level2-" + i, Arrays.asList(RoleRight.READ_LEVEL2,
+                    RoleRight.READ_PUBLISHED_METADATA, RoleRight.READ_PUBLISHED_BINARY)));
+            userRights.add(new Right("user-" + i, Arrays.asList(RoleRight.READ)));
+        }
+        final Level1AdminRole level1AdminRole = new Level1AdminRole();
+        level1AdminRole.setRights(level1Rights);
+        final UserRole userRole = new UserRole();
+        userRole.setRights(level2Rights);
+        final UserAdminRole userAdminRole = new UserAdminRole();
+        userAdminRole.setRights(userRights);
+        user = new User();
+        user.setName("benchmark");
+        user.setRole(level1AdminRole);
+        user.setRole(userRole);
+        user.setRole(userAdminRole);
+
+        level1AdminPermission = permission("level1AdminWrite");
+        userPermission = permission("userReadPublished");
+        userAdminPermission = permission("userAdminRead");
+
+        final String lastLevel1 = "level1-" + (rights - 1);
+        level1Entity = new Entity();
+        level1Entity.setId(lastLevel1);
+        level1Entity.setContentModelId(FixedContentModel.LEVEL1.getName());
+        level1Hierarchy = new EntityHierarchy();
+        level1Hierarchy.setLevel1Id(lastLevel1);
+
+        publishedEntity = new Entity();
+        publishedEntity.setId("entity");
+        publishedEntity.setContentModelId(FixedContentModel.DATA.getName());
+        publishedEntity.setState(EntityState.PUBLISHED);
+        level2Hierarchy = new EntityHierarchy();
+        level2Hierarchy.setLevel2Id("level2-" + (rights - 1));
+
+        checkUser = new User();
+        checkUser.setName("user-" + (rights - 1));
+    }
+
+    @Benchmark
+    @Permission(rolename = RoleName.ROLE_LEVEL1_ADMIN, permissionType = PermissionType.WRITE)
+    public boolean level1AdminWrite() {
+        return user.getRole(RoleName.ROLE_LEVEL1_ADMIN).compare(level1AdminPermission, ObjectType.ENTITY, level1Entity,
+                level1Hierarchy);
+    }
+
+    @Benchmark
+    @Permission(rolename = RoleName.ROLE_USER, permissionType = PermissionType.READ)
+    public boolean userReadPublished() {
+        return user.getRole(RoleName.ROLE_USER).compare(userPermission, ObjectType.ENTITY, publishedEntity,
+                level2Hierarchy);
+    }
+
+    @Benchmark
+    @Permission(rolename = RoleName.ROLE_USER_ADMIN, permissionType = PermissionType.READ)
+    public boolean userAdminRead() {
+        return user.getRole(RoleName.ROLE_USER_ADMIN).compare(userAdminPermission, ObjectType.USER, checkUser, null);
+    }
+
+    private static Permission permission(String benchmark) throws NoSuchMethodException {
+        return AuthorizationBenchmark.class.getMethod(benchmark).getAnnotation(Permission.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AuthorizationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
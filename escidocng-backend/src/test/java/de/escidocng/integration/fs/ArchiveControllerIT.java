@@ -20,15 +20,25 @@ import org.apache.http.client.fluent.Request;
 import org.junit.Test;
 
 import de.escidocng.model.Archive;
+import de.escidocng.model.ArchiveFixity;
+import de.escidocng.model.ArchiveManifestEntry;
 import de.escidocng.model.ContentModel;
 import de.escidocng.model.Entity;
+import de.escidocng.model.SearchResult;
+import de.escidocng.service.backend.fs.FileSystemArchiveService;
 
+import java.io.File;
+import java.net.URLEncoder;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import static de.escidocng.test.util.Fixtures.LEVEL2_ID;
 import static de.escidocng.test.util.Fixtures.createFixtureEntity;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -48,6 +58,18 @@ public class ArchiveControllerIT extends AbstractFSEscidocngIT {
         assertEquals(e.getVersion(), a.getEntityVersion());
     }
 
+    @Test
+    public void testArchiveLeavesNoPartialPackages() throws Exception {
+        Entity e = this.ingestAndArchive(createFixtureEntity(false));
+        Archive a = this.retrieveArchive(e.getId(), e.getVersion(), 200);
+        File aip = new File(a.getPath());
+        assertTrue(aip.exists());
+        for (String name : aip.getParentFile().list()) {
+            assertFalse(name, name.startsWith(FileSystemArchiveService.TMP_PREFIX)
+                    && name.endsWith(FileSystemArchiveService.TMP_SUFFIX));
+        }
+    }
+
     @Test
     public void testArchiveNonExisting() throws Exception {
         HttpResponse resp = this.executeAsAdmin(Request.Put(hostUrl + "/archive/foo_entity_NON_EXISTANT/1"));
@@ -86,4 +108,108 @@ public class ArchiveControllerIT extends AbstractFSEscidocngIT {
         Entity child_2 = this.createEntity(Entity.EntityState.PENDING, ContentModel.FixedContentModel.DATA.getName(), parent.getId(), false);
         Entity archived = this.archive(parent);
     }
+
+    @Test
+    public void testIncrementalArchive() throws Exception {
+        Entity e = this.ingestAndArchive(createFixtureEntity(false));
+        e.setLabel("My updated label");
+        Entity updated = this.updateEntity(e, 200);
+        assertTrue(updated.getVersion() > e.getVersion());
+        this.archive(updated);
+
+        Archive a = this.retrieveArchive(updated.getId(), updated.getVersion(), 200);
+        assertEquals(Integer.valueOf(e.getVersion()), a.getBaseVersion());
+        assertNotNull(a.getManifest());
+        assertTrue(a.getManifest().getEntries().size() > 0);
+        for (ArchiveManifestEntry entry : a.getManifest().getEntries()) {
+            // the binaries and metadata did not change, so everything is referenced from the first archive
+            assertEquals(e.getVersion(), entry.getArchiveVersion());
+        }
+
+        Set<String> complete = this.readEntryNames(this.retrieveContent(e.getId(), e.getVersion(), 200));
+        Set<String> restored = this.readEntryNames(this.retrieveContent(updated.getId(), updated.getVersion(), 200));
+        complete.remove("manifest.json");
+        assertEquals(complete, restored);
+    }
+
+    @Test
+    public void testRearchiveReferencedVersion() throws Exception {
+        Entity e = this.ingestAndArchive(createFixtureEntity(false));
+        e.setLabel("My updated label");
+        Entity updated = this.updateEntity(e, 200);
+        this.archive(updated);
+
+        // the content of the first archive is referenced by the incremental archive of the update
+        HttpResponse resp = this.executeAsAdmin(Request.Put(hostUrl + "/archive/" + e.getId() + "/" + e.getVersion()));
+        assertEquals(400, resp.getStatusLine().getStatusCode());
+        // nothing references the newest archive, so it can be replaced
+        this.archive(updated);
+
+        Set<String> complete = this.readEntryNames(this.retrieveContent(e.getId(), e.getVersion(), 200));
+        Set<String> restored = this.readEntryNames(this.retrieveContent(updated.getId(), updated.getVersion(), 200));
+        complete.remove("manifest.json");
+        assertEquals(complete, restored);
+    }
+
+    @Test
+    public void testVerifyArchive() throws Exception {
+        Entity e = this.ingestAndArchive(createFixtureEntity(false));
+        HttpResponse resp = this.executeAsAdmin(Request.Put(hostUrl + "/archive/" + e.getId() + "/" + e.getVersion()
+                + "/fixity"));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        ArchiveFixity fixity = this.mapper.readValue(resp.getEntity().getContent(), ArchiveFixity.class);
+        assertTrue(fixity.getErrors().toString(), fixity.isValid());
+        // two binaries with one metadata record each and one entity metadata record
+        assertEquals(5, fixity.getCheckedEntries());
+
+        Archive a = this.retrieveArchive(e.getId(), e.getVersion(), 200);
+        assertNotNull(a.getFixity());
+        assertNotNull(a.getFixity().getCheckedDate());
+        assertTrue(a.getFixity().isValid());
+    }
+
+    @Test
+    public void testSearchArchivesWithCursor() throws Exception {
+        Entity e = this.ingestAndArchive(createFixtureEntity(false));
+        e.setLabel("My updated label");
+        Entity updated = this.updateEntity(e, 200);
+        this.archive(updated);
+
+        String query = URLEncoder.encode("entityId:" + e.getId(), "UTF-8");
+        String url = hostUrl + "/search/archives?query=" + query
+                + "&maxRecords=1&sort=entityVersion:desc&fields=entityId,entityVersion&aggregations=true";
+        SearchResult first = this.searchArchives(url + "&cursor=*");
+        assertEquals(2, first.getTotalHits());
+        assertEquals(1, first.getData().size());
+        assertNotNull(first.getScrollId());
+        long aggregated = 0;
+        for (Long count : first.getAggregations().get("contentModelId").values()) {
+            aggregated += count;
+        }
+        assertEquals(2, aggregated);
+        Map<String, Object> newest = (Map<String, Object>) first.getData().get(0);
+        assertEquals(updated.getVersion(), newest.get("entityVersion"));
+        assertFalse(newest.containsKey("state"));
+
+        SearchResult second = this.searchArchives(url + "&cursor=" + first.getScrollId());
+        assertEquals(1, second.getData().size());
+        Map<String, Object> oldest = (Map<String, Object>) second.getData().get(0);
+        assertEquals(e.getVersion(), oldest.get("entityVersion"));
+    }
+
+    private SearchResult searchArchives(String url) throws Exception {
+        HttpResponse resp = this.executeAsAdmin(Request.Get(url));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        return this.mapper.readValue(resp.getEntity().getContent(), SearchResult.class);
+    }
+
+    private Set<String> readEntryNames(ZipInputStream zip) throws Exception {
+        Set<String> names = new HashSet<>();
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            names.add(entry.getName());
+        }
+        zip.close();
+        return names;
+    }
 }
@@ -19,6 +19,14 @@ package de.escidocng.integration.fs;
 
 import static de.escidocng.test.util.Fixtures.LEVEL2_ID;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.client.fluent.Request;
@@ -29,6 +37,7 @@ import org.slf4j.LoggerFactory;
 import de.escidocng.model.AuditRecord;
 import de.escidocng.model.AuditRecords;
 import de.escidocng.model.Entity;
+import de.escidocng.model.SearchResult;
 import de.escidocng.model.ContentModel.FixedContentModel;
 import de.escidocng.model.Entity.EntityState;
 
@@ -94,6 +103,80 @@ public class AuditRecordControllerIT extends AbstractFSEscidocngIT {
         AuditRecords fetched = mapper.readValue(resp.getEntity().getContent(), AuditRecords.class);
         assertEquals(0, fetched.getAuditRecords().size());
     }
-    
+
+    @Test
+    public void testRetrieveAuditRecordsWithCursor() throws Exception {
+        Entity entity = createEntity(EntityState.PENDING, FixedContentModel.DATA.getName(), LEVEL2_ID, false);
+        entity = addIdentifier(entity, IGNORE, IGNORE, 201);
+        entity = removeIdentifier(entity, IGNORE, IGNORE, 200);
+
+        List<String> actions = new ArrayList<>();
+        String cursor = "*";
+        while (cursor != null) {
+            HttpResponse resp =
+                    this.executeAsAdmin(
+                            Request.Get(entityUrl + entity.getId() + "/audit?count=2&cursor=" + cursor));
+            assertEquals(200, resp.getStatusLine().getStatusCode());
+            AuditRecords page = mapper.readValue(resp.getEntity().getContent(), AuditRecords.class);
+            for (AuditRecord auditRecord : page.getAuditRecords()) {
+                actions.add(auditRecord.getAction());
+            }
+            cursor = page.getCursor();
+        }
+        assertEquals(3, actions.size());
+        assertEquals(AuditRecord.EVENT_CREATE_ENTITY, actions.get(0));
+        assertEquals(AuditRecord.EVENT_CREATE_IDENTIFIER, actions.get(1));
+        assertEquals(AuditRecord.EVENT_DELETE_IDENTIFIER, actions.get(2));
+    }
+
+    @Test
+    public void testSearchAuditRecords() throws Exception {
+        Entity entity = createEntity(EntityState.PENDING, FixedContentModel.DATA.getName(), LEVEL2_ID, false);
+        entity = addIdentifier(entity, IGNORE, IGNORE, 201);
+
+        HttpResponse resp =
+                this.executeAsAdmin(
+                        Request.Get(hostUrl + "search/audit?entityId=" + entity.getId() + "&action="
+                                + URLEncoder.encode(AuditRecord.EVENT_CREATE_IDENTIFIER, "UTF-8") + "&cursor=*"));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        SearchResult result = mapper.readValue(resp.getEntity().getContent(), SearchResult.class);
+        assertEquals(1, result.getTotalHits());
+        assertNull(result.getScrollId());
+
+        resp = this.executeAsAdmin(Request.Get(hostUrl + "search/audit?from=2000-01-01T00:00:00Z&maxRecords=1"
+                + "&cursor=*"));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        result = mapper.readValue(resp.getEntity().getContent(), SearchResult.class);
+        assertEquals(1, result.getData().size());
+        assertNotNull(result.getScrollId());
+
+        resp = this.executeAsAdmin(Request.Get(hostUrl + "search/audit?to=2000-01-01T00:00:00Z"));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        result = mapper.readValue(resp.getEntity().getContent(), SearchResult.class);
+        assertEquals(0, result.getTotalHits());
+    }
+
+    @Test
+    public void testExportAuditRecords() throws Exception {
+        Entity entity = createEntity(EntityState.PENDING, FixedContentModel.DATA.getName(), LEVEL2_ID, false);
+        entity = addIdentifier(entity, IGNORE, IGNORE, 201);
+        entity = removeIdentifier(entity, IGNORE, IGNORE, 200);
+
+        HttpResponse resp =
+                this.executeAsAdmin(
+                        Request.Get(hostUrl + "search/audit/export?batchSize=1&entityId=" + entity.getId()));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        List<AuditRecord> records = new ArrayList<>();
+        try (BufferedReader reader =
+                new BufferedReader(new InputStreamReader(resp.getEntity().getContent(), "UTF-8"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                records.add(mapper.readValue(line, AuditRecord.class));
+            }
+        }
+        assertEquals(3, records.size());
+        assertEquals(AuditRecord.EVENT_CREATE_ENTITY, records.get(0).getAction());
+        assertEquals(AuditRecord.EVENT_DELETE_IDENTIFIER, records.get(2).getAction());
+    }
 
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.integration.fs;
+
+import static de.escidocng.test.util.Fixtures.LEVEL2_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.fluent.Request;
+import org.junit.Test;
+
+import de.escidocng.model.Change;
+import de.escidocng.model.Changes;
+import de.escidocng.model.Entity;
+import de.escidocng.model.ContentModel.FixedContentModel;
+import de.escidocng.model.Entity.EntityState;
+
+public class ChangeControllerIT extends AbstractFSEscidocngIT {
+
+    @Test
+    public void testRetrieveChanges() throws Exception {
+        long head = retrieveChanges("changes?limit=0").getHead();
+
+        Entity entity = createEntity(EntityState.PENDING, FixedContentModel.DATA.getName(), LEVEL2_ID, false);
+        entity = addIdentifier(entity, IGNORE, IGNORE, 201);
+        HttpResponse resp = this.executeAsAdmin(Request.Delete(entityUrl + entity.getId()));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+
+        List<Change.Action> actions = new ArrayList<>();
+        long since = head;
+        long lastSeq = head;
+        Changes changes;
+        do {
+            changes = retrieveChanges("changes?limit=2&since=" + since);
+            for (Change change : changes.getChanges()) {
+                assertTrue(change.getSeq() > lastSeq);
+                lastSeq = change.getSeq();
+                if (entity.getId().equals(change.getEntityId())) {
+                    actions.add(change.getAction());
+                }
+            }
+            since = changes.getLastSeq();
+        } while (!changes.getChanges().isEmpty());
+        assertEquals(3, actions.size());
+        assertEquals(Change.Action.CREATE, actions.get(0));
+        assertEquals(Change.Action.UPDATE, actions.get(1));
+        assertEquals(Change.Action.DELETE, actions.get(2));
+    }
+
+    @Test
+    public void testRetrieveChangesTimeout() throws Exception {
+        createEntity(EntityState.PENDING, FixedContentModel.DATA.getName(), LEVEL2_ID, false);
+        long head = retrieveChanges("changes?limit=0").getHead();
+
+        long start = System.currentTimeMillis();
+        Changes changes = retrieveChanges("changes?timeout=500&since=" + head);
+        assertTrue(System.currentTimeMillis() - start >= 500);
+        assertEquals(0, changes.getChanges().size());
+        assertEquals(head, changes.getLastSeq());
+    }
+
+    @Test
+    public void testRetrieveChangesNegativeSince() throws Exception {
+        HttpResponse resp = this.executeAsAdmin(Request.Get(hostUrl + "changes?since=-1"));
+        assertEquals(400, resp.getStatusLine().getStatusCode());
+    }
+
+    @Test
+    public void testExportChanges() throws Exception {
+        long head = retrieveChanges("changes?limit=0").getHead();
+        Entity entity = createEntity(EntityState.PENDING, FixedContentModel.DATA.getName(), LEVEL2_ID, false);
+        entity = addIdentifier(entity, IGNORE, IGNORE, 201);
+
+        HttpResponse resp = this.executeAsAdmin(Request.Get(hostUrl + "changes/export?since=" + head));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        List<Change> changes = new ArrayList<>();
+        try (BufferedReader reader =
+                new BufferedReader(new InputStreamReader(resp.getEntity().getContent(), "UTF-8"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Change change = mapper.readValue(line, Change.class);
+                if (entity.getId().equals(change.getEntityId())) {
+                    changes.add(change);
+                }
+            }
+        }
+        assertEquals(2, changes.size());
+        assertEquals(Change.Action.CREATE, changes.get(0).getAction());
+        assertEquals(Change.Action.UPDATE, changes.get(1).getAction());
+        assertTrue(changes.get(0).getSeq() < changes.get(1).getSeq());
+    }
+
+    private Changes retrieveChanges(String path) throws Exception {
+        HttpResponse resp = this.executeAsAdmin(Request.Get(hostUrl + path));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        return mapper.readValue(resp.getEntity().getContent(), Changes.class);
+    }
+
+}
@@ -2,12 +2,23 @@
 package de.escidocng.integration.fs;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import de.escidocng.test.util.Fixtures;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import de.escidocng.model.security.User;
+import de.escidocng.model.security.role.Level1AdminRole;
+import de.escidocng.model.security.role.Right;
+import de.escidocng.model.security.role.Role.RoleName;
+import de.escidocng.model.security.role.Role.RoleRight;
 import de.escidocng.service.backend.elasticsearch.ElasticSearchCredentialsService;
 
 /*
@@ -64,6 +75,38 @@ public class ElasticSearchCredentialsServiceIT extends AbstractFSEscidocngIT {
         this.credentialsService.retrieveUser(u.getName());
     }
 
+    @Test
+    public void testDeleteRights() throws Exception {
+        final String anchorId = RandomStringUtils.randomAlphanumeric(16);
+        final String otherAnchorId = RandomStringUtils.randomAlphanumeric(16);
+        final List<String> names = new ArrayList<>();
+        // more users than fit on one page of search results
+        for (int i = 0; i < 25; i++) {
+            User u = Fixtures.createUser();
+            Level1AdminRole role = new Level1AdminRole();
+            List<Right> rights = new ArrayList<>();
+            rights.add(new Right(anchorId, Arrays.asList(RoleRight.READ, RoleRight.WRITE)));
+            if (i % 2 == 0) {
+                rights.add(new Right(otherAnchorId, Arrays.asList(RoleRight.READ)));
+            }
+            role.setRights(rights);
+            u.setRole(role);
+            this.credentialsService.createUser(u);
+            names.add(u.getName());
+        }
+        this.credentialsService.deleteRights(anchorId);
+        for (int i = 0; i < names.size(); i++) {
+            User u = this.credentialsService.retrieveUser(names.get(i));
+            if (i % 2 == 0) {
+                assertEquals(1, u.getRoles().size());
+                assertFalse(u.getRole(RoleName.ROLE_LEVEL1_ADMIN).hasRight(anchorId));
+                assertTrue(u.getRole(RoleName.ROLE_LEVEL1_ADMIN).hasRight(otherAnchorId));
+            } else {
+                assertEquals(0, u.getRoles().size());
+            }
+        }
+    }
+
     @Test(expected = Exception.class)
     public void testAddUserNoEmail() throws Exception {
         User u = Fixtures.createUser();
@@ -25,6 +25,9 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 
 import de.escidocng.test.util.Fixtures;
 
@@ -62,6 +65,24 @@ public class EscidocngClientIT extends AbstractFSEscidocngIT {
         assertEquals(e.getBinaries().size(), fetched.getBinaries().size());
     }
 
+    @Test
+    public void testIterateEntities() throws Exception {
+        String label = RandomStringUtils.randomAlphabetic(12).toLowerCase();
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            Entity e = Fixtures.createFixtureEntityWithRandomId();
+            e.setLabel(label);
+            client.postEntity(e);
+            ids.add(e.getId());
+        }
+        Set<String> fetched = new HashSet<>();
+        Iterator<Entity> entities = client.iterateEntities("label:" + label, 2);
+        while (entities.hasNext()) {
+            assertTrue(fetched.add(entities.next().getId()));
+        }
+        assertEquals(ids, fetched);
+    }
+
     @Test
     public void testRetrieveState() throws Exception {
         EscidocngState state = this.client.retrieveState();
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.integration.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+
+import de.escidocng.service.backend.sftp.SftpInputStream;
+import de.escidocng.service.backend.sftp.SftpOutputStream;
+import de.escidocng.service.backend.sftp.SftpSessionPool;
+
+public class SftpTransportIT extends AbstractFSEscidocngIT {
+
+    @Autowired
+    private Environment env;
+
+    private SftpSessionPool pool;
+
+    @Before
+    public void setupPool() {
+        pool = new SftpSessionPool(env.getRequiredProperty("archive.sftp.user"),
+                env.getRequiredProperty("archive.sftp.passwd"),
+                env.getRequiredProperty("archive.sftp.host"),
+                Integer.parseInt(env.getRequiredProperty("archive.sftp.port")),
+                env.getRequiredProperty("archive.sftp.basepath"), 3, 10000);
+    }
+
+    @After
+    public void closePool() {
+        pool.close();
+    }
+
+    @Test
+    public void testPipelinedWriteAndRead() throws Exception {
+        final byte[] data = new byte[1024 * 1024 + 17];
+        new Random().nextBytes(data);
+        final String path = env.getRequiredProperty("archive.sftp.path") + "/transport_"
+                + RandomStringUtils.randomAlphabetic(8) + ".bin";
+
+        try (OutputStream sink = new SftpOutputStream(pool, path, 1000, 3)) {
+            sink.write(data, 0, 10);
+            sink.write(data[10]);
+            sink.write(data, 11, data.length - 11);
+        }
+        final ByteArrayOutputStream fetched = new ByteArrayOutputStream();
+        try (InputStream src = new SftpInputStream(pool, path, 1000, 3)) {
+            fetched.write(src.read());
+            IOUtils.copy(src, fetched);
+            assertEquals(-1, src.read());
+        }
+        assertArrayEquals(data, fetched.toByteArray());
+    }
+
+    @Test
+    public void testConcurrentTransfers() throws Exception {
+        final byte[] data = new byte[256 * 1024];
+        new Random().nextBytes(data);
+        final ExecutorService executor = Executors.newFixedThreadPool(6);
+        final List<Future<byte[]>> results = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            final String path = env.getRequiredProperty("archive.sftp.path") + "/transport_"
+                    + RandomStringUtils.randomAlphabetic(8) + ".bin";
+            results.add(executor.submit(() -> {
+                try (OutputStream sink = new SftpOutputStream(pool, path, 4096, 2)) {
+                    sink.write(data);
+                }
+                try (InputStream src = new SftpInputStream(pool, path, 4096, 2)) {
+                    return IOUtils.toByteArray(src);
+                }
+            }));
+        }
+        for (Future<byte[]> result : results) {
+            assertArrayEquals(data, result.get());
+        }
+        executor.shutdown();
+    }
+}
@@ -43,4 +43,12 @@ public class AuthorizeAuditRecordControllerIT extends AbstractAuthorizeEscidocng
                 .build());
     }
 
+    @Test
+    public void testSearchAuditRecords() throws Exception {
+        testUserRoleAuth(new AuthConfigurer.AuthConfigurerBuilder(
+                HttpMethod.GET, hostUrl + "search/audit?action=Create+entity")
+                .roleRestriction(RoleRestriction.ADMIN)
+                .build());
+    }
+
 }
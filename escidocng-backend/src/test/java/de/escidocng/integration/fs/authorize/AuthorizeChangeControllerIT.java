@@ -0,0 +1,43 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.integration.fs.authorize;
+
+import de.escidocng.integration.fs.helpers.AuthConfigurer;
+import de.escidocng.integration.fs.helpers.AuthConfigurer.RoleRestriction;
+
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+
+public class AuthorizeChangeControllerIT extends AbstractAuthorizeEscidocngIT {
+
+    @Test
+    public void testRetrieveChanges() throws Exception {
+        testUserRoleAuth(new AuthConfigurer.AuthConfigurerBuilder(
+                HttpMethod.GET, hostUrl + "changes?limit=1")
+                .roleRestriction(RoleRestriction.ADMIN)
+                .build());
+    }
+
+    @Test
+    public void testExportChanges() throws Exception {
+        testUserRoleAuth(new AuthConfigurer.AuthConfigurerBuilder(
+                HttpMethod.GET, hostUrl + "changes/export?limit=1")
+                .roleRestriction(RoleRestriction.ADMIN)
+                .build());
+    }
+
+}
@@ -37,4 +37,12 @@ public class AuthorizeStateControllerIT extends AbstractAuthorizeEscidocngIT {
                 .build());
     }
 
+    @Test
+    public void testRetrieveAuthorizationCoverage() throws Exception {
+        testUserRoleAuth(new AuthConfigurer.AuthConfigurerBuilder(
+                HttpMethod.GET, hostUrl + "state/authorization")
+                .roleRestriction(RoleRestriction.ADMIN)
+                .build());
+    }
+
 }
@@ -21,12 +21,29 @@ import de.escidocng.integration.fs.AbstractFSEscidocngIT;
 import de.escidocng.test.util.Fixtures;
 import static de.escidocng.test.util.Fixtures.createFixtureEntity;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URLEncoder;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.fluent.Request;
 
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.escidocng.model.CountResult;
 import de.escidocng.model.Entity;
+import de.escidocng.model.FacetResult;
+import de.escidocng.model.SearchResult;
 import de.escidocng.model.ContentModel.FixedContentModel;
 import de.escidocng.model.Entity.EntityState;
 
@@ -150,4 +167,149 @@ public class EntityControllerCreateIT extends AbstractFSEscidocngIT {
         createEntity(e, 400);
     }
 
+    @Test
+    public void testSearchCreatedEntitySummary() throws Exception {
+        Entity entity = createEntity(Fixtures.createFixtureEntity(true), 201);
+        HttpResponse resp = this.executeAsAdmin(Request.Get(entitySearchUrl + "?query="
+                + URLEncoder.encode("id:\"" + entity.getId() + "\"", "UTF-8") + "&view=summary"));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        SearchResult result = mapper.readValue(resp.getEntity().getContent(), SearchResult.class);
+        assertEquals(1, result.getData().size());
+        Map<String, Object> hit = (Map<String, Object>) result.getData().get(0);
+        assertEquals(entity.getId(), hit.get("id"));
+        assertEquals(entity.getLabel(), hit.get("label"));
+        assertFalse(hit.containsKey("metadata"));
+        assertFalse(hit.containsKey("binaries"));
+
+        resp = this.executeAsAdmin(Request.Get(entitySearchUrl + "?view=unknown"));
+        assertEquals(400, resp.getStatusLine().getStatusCode());
+    }
+
+    @Test
+    public void testSearchWithCursorSortedByMissingField() throws Exception {
+        createEntity(Fixtures.createFixtureEntity(true), 201);
+        // level1 entities have no parent, so their position has to be kept by the cursor as well
+        for (String order : new String[] { "asc", "desc" }) {
+            String url = entitySearchUrl + "?maxRecords=2&fields=id&sort=parentId:" + order + "&cursor=";
+            Set<Object> ids = new HashSet<>();
+            long total = -1;
+            String cursor = "*";
+            while (cursor != null) {
+                HttpResponse resp = this.executeAsAdmin(Request.Get(url + cursor));
+                assertEquals(200, resp.getStatusLine().getStatusCode());
+                SearchResult page = mapper.readValue(resp.getEntity().getContent(), SearchResult.class);
+                total = page.getTotalHits();
+                for (Object hit : page.getData()) {
+                    assertTrue(ids.add(((Map<String, Object>) hit).get("id")));
+                }
+                if (page.getScrollId() != null) {
+                    // a cursor can not be used with a different sort
+                    resp = this.executeAsAdmin(Request.Get(entitySearchUrl + "?maxRecords=2&sort=version&cursor="
+                            + page.getScrollId()));
+                    assertEquals(400, resp.getStatusLine().getStatusCode());
+                }
+                cursor = page.getScrollId();
+            }
+            assertEquals(total, ids.size());
+        }
+    }
+
+    @Test
+    public void testExportCreatedEntity() throws Exception {
+        Entity entity = createEntity(Fixtures.createFixtureEntity(true), 201);
+        HttpResponse resp = this.executeAsAdmin(Request.Get(entitySearchUrl + "/export?batchSize=1&query="
+                + URLEncoder.encode("id:\"" + entity.getId() + "\"", "UTF-8")));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        List<String> lines = IOUtils.readLines(resp.getEntity().getContent(), "UTF-8");
+        assertEquals(1, lines.size());
+        Entity exported = mapper.readValue(lines.get(0), Entity.class);
+        assertEquals(entity.getId(), exported.getId());
+        assertEquals(entity.getLabel(), exported.getLabel());
+
+        resp = this.executeAsAdmin(Request.Get(entitySearchUrl + "/export?view=summary&query="
+                + URLEncoder.encode("id:\"" + entity.getId() + "\"", "UTF-8")));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        lines = IOUtils.readLines(resp.getEntity().getContent(), "UTF-8");
+        assertEquals(1, lines.size());
+        Map<String, Object> hit = mapper.readValue(lines.get(0), Map.class);
+        assertEquals(entity.getId(), hit.get("id"));
+        assertFalse(hit.containsKey("metadata"));
+    }
+
+    @Test
+    public void testCountCreatedEntity() throws Exception {
+        Entity entity = createEntity(Fixtures.createFixtureEntity(true), 201);
+        String query = URLEncoder.encode("id:\"" + entity.getId() + "\"", "UTF-8");
+        HttpResponse resp = this.executeAsAdmin(Request.Get(entitySearchUrl + "/count?query=" + query));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        CountResult result = mapper.readValue(resp.getEntity().getContent(), CountResult.class);
+        assertEquals(Long.valueOf(1), result.getCount());
+        assertTrue(result.isExists());
+
+        resp = this.executeAsAdmin(Request.Get(entitySearchUrl + "/exists?query=" + query));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        result = mapper.readValue(resp.getEntity().getContent(), CountResult.class);
+        assertTrue(result.isExists());
+
+        resp = this.executeAsAdmin(Request.Get(entitySearchUrl + "/exists?query="
+                + URLEncoder.encode("id:\"NONEXISTING\"", "UTF-8")));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        result = mapper.readValue(resp.getEntity().getContent(), CountResult.class);
+        assertFalse(result.isExists());
+    }
+
+    @Test
+    public void testProfileSearch() throws Exception {
+        Entity entity = createEntity(Fixtures.createFixtureEntity(true), 201);
+        String query = URLEncoder.encode("id:\"" + entity.getId() + "\"", "UTF-8");
+        HttpResponse resp = this.executeAsAdmin(Request.Get(entitySearchUrl + "?profile=true&query=" + query));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        SearchResult result = mapper.readValue(resp.getEntity().getContent(), SearchResult.class);
+        assertEquals(1, result.getNumRecords());
+        assertNotNull(result.getTimings());
+        assertTrue(result.getTimings().getTotal() >= result.getTimings().getTook());
+
+        resp = this.executeAsAdmin(Request.Get(entitySearchUrl + "?query=" + query));
+        result = mapper.readValue(resp.getEntity().getContent(), SearchResult.class);
+        assertNull(result.getTimings());
+
+        resp = this.executeAsAdmin(Request.Get(hostUrl + "search/slow"));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+    }
+
+    @Test
+    public void testSuggestCreatedEntity() throws Exception {
+        Entity fixture = Fixtures.createFixtureEntity(true);
+        String word = "Suggest" + System.currentTimeMillis();
+        fixture.setLabel(word + " label");
+        Entity entity = createEntity(fixture, 201);
+        HttpResponse resp = this.executeAsAdmin(Request.Get(entitySearchUrl + "/suggest?size=5&prefix="
+                + URLEncoder.encode(word.substring(0, word.length() - 2).toLowerCase(), "UTF-8")));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        SearchResult result = mapper.readValue(resp.getEntity().getContent(), SearchResult.class);
+        assertEquals(1, result.getNumRecords());
+        Map<String, Object> hit = (Map<String, Object>) result.getData().get(0);
+        assertEquals(entity.getId(), hit.get("id"));
+        assertEquals(entity.getLabel(), hit.get("label"));
+
+        resp = this.executeAsAdmin(Request.Get(entitySearchUrl + "/suggest?prefix=%20"));
+        assertEquals(400, resp.getStatusLine().getStatusCode());
+    }
+
+    @Test
+    public void testFacetCreatedEntities() throws Exception {
+        Entity entity = createEntity(Fixtures.createFixtureEntity(true), 201);
+        HttpResponse resp = this.executeAsAdmin(Request.Get(entitySearchUrl + "/facets?query="
+                + URLEncoder.encode("id:\"" + entity.getId() + "\"", "UTF-8")
+                + "&terms=state&cardinalities=contentModelId&histograms=utcCreated:day"));
+        assertEquals(200, resp.getStatusLine().getStatusCode());
+        FacetResult result = mapper.readValue(resp.getEntity().getContent(), FacetResult.class);
+        assertEquals(1, result.getTotalHits());
+        assertEquals(Long.valueOf(1), result.getTerms().get("state").get(entity.getState().name()));
+        assertEquals(Long.valueOf(1), result.getCardinalities().get("contentModelId"));
+        assertEquals(1, result.getHistograms().get("utcCreated").size());
+
+        resp = this.executeAsAdmin(Request.Get(entitySearchUrl + "/facets?terms=label"));
+        assertEquals(400, resp.getStatusLine().getStatusCode());
+    }
 }
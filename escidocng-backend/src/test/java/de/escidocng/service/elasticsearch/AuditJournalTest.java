@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.escidocng.service.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.escidocng.service.backend.elasticsearch.AuditJournal;
+
+public class AuditJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    private AuditJournal journal;
+
+    @Before
+    public void setup() throws Exception {
+        file = new File(folder.getRoot(), "audit/journal.log");
+        journal = new AuditJournal(file.toPath(), false, 32);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journal.close();
+    }
+
+    @Test
+    public void testAppendAndReadAll() throws Exception {
+        journal.append("{\"id\":\"1\"}".getBytes(StandardCharsets.UTF_8));
+        journal.append("{\"id\":\"2\"}".getBytes(StandardCharsets.UTF_8));
+        List<String> records = journal.readAll();
+        assertEquals(2, records.size());
+        assertEquals("{\"id\":\"1\"}", records.get(0));
+        assertEquals("{\"id\":\"2\"}", records.get(1));
+    }
+
+    @Test
+    public void testPartialRecordIsSkipped() throws Exception {
+        long segment = journal.append("{\"id\":\"1\"}".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(file.getPath() + "." + segment).toPath(), "{\"id\":".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        assertEquals(1, journal.readAll().size());
+    }
+
+    @Test
+    public void testReleasedSegmentsAreRemoved() throws Exception {
+        long first = journal.append("{\"id\":\"0000000001\"}".getBytes(StandardCharsets.UTF_8));
+        long second = journal.append("{\"id\":\"0000000002\"}".getBytes(StandardCharsets.UTF_8));
+        long third = journal.append("{\"id\":\"0000000003\"}".getBytes(StandardCharsets.UTF_8));
+        assertEquals(first, second);
+        assertTrue(third > second);
+
+        journal.release(first);
+        assertEquals(3, journal.readAll().size());
+        journal.release(second);
+        List<String> records = journal.readAll();
+        assertEquals(1, records.size());
+        assertEquals("{\"id\":\"0000000003\"}", records.get(0));
+        assertFalse(new File(file.getPath() + "." + first).exists());
+
+        journal.release(third);
+        assertEquals(0, journal.size());
+    }
+
+    @Test
+    public void testReplayAfterRestart() throws Exception {
+        journal.append("{\"id\":\"0000000001\"}".getBytes(StandardCharsets.UTF_8));
+        journal.append("{\"id\":\"0000000002\"}".getBytes(StandardCharsets.UTF_8));
+        journal.append("{\"id\":\"0000000003\"}".getBytes(StandardCharsets.UTF_8));
+        journal.close();
+
+        journal = new AuditJournal(file.toPath(), false, 32);
+        List<AuditJournal.Entry> recovered = journal.recover();
+        assertEquals(3, recovered.size());
+        assertEquals("{\"id\":\"0000000001\"}", recovered.get(0).getRecord());
+        journal.close();
+
+        // nothing has been released before the second restart, so the records are recovered again
+        journal = new AuditJournal(file.toPath(), false, 32);
+        recovered = journal.recover();
+        assertEquals(3, recovered.size());
+        for (AuditJournal.Entry entry : recovered) {
+            journal.release(entry.getSegment());
+        }
+        assertEquals(0, journal.readAll().size());
+        assertEquals(0, journal.size());
+    }
+
+    @Test
+    public void testTruncate() throws Exception {
+        journal.append("{\"id\":\"1\"}".getBytes(StandardCharsets.UTF_8));
+        journal.truncate();
+        assertEquals(0, journal.size());
+        assertEquals(0, journal.readAll().size());
+        journal.append("{\"id\":\"2\"}".getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, journal.readAll().size());
+    }
+}
@@ -21,13 +21,19 @@ import static org.easymock.EasyMock.anyString;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
-import static org.easymock.EasyMock.isNull;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
 
 import org.elasticsearch.action.ListenableActionFuture;
-import org.elasticsearch.action.get.GetRequestBuilder;
-import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.client.AdminClient;
 import org.elasticsearch.client.Client;
@@ -113,35 +119,36 @@ public class ElasticSearchAuditServiceTest {
     @SuppressWarnings("unchecked")
     @Test
     public void testCreate() throws Exception {
-        GetRequestBuilder mockGetRequestBuilder = createMock(GetRequestBuilder.class);
         ListenableActionFuture mockFuture = createMock(ListenableActionFuture.class);
-        GetResponse mockResponse = createMock(GetResponse.class);
         IndexRequestBuilder mockIndexRequestBuilder = createMock(IndexRequestBuilder.class);
+        String partition = ElasticSearchAuditService.PARTITION_PREFIX
+                + DateTimeFormatter.ofPattern("yyyy.MM").format(ZonedDateTime.now(ZoneOffset.UTC));
+        ((Set<String>) ReflectionTestUtils.getField(auditService, "partitions")).add(partition);
 
-        expect(mockClient.prepareGet(eq(ElasticSearchAuditService.INDEX_AUDIT), isNull(), anyString())).andReturn(
-                mockGetRequestBuilder);
-        expect(mockGetRequestBuilder.execute()).andReturn(mockFuture);
-        expect(mockFuture.actionGet()).andReturn(mockResponse);
-        expect(mockResponse.isExists()).andReturn(false);
-
-        expect(mockClient.prepareIndex(eq(ElasticSearchAuditService.INDEX_AUDIT), eq("audit"), anyString()))
+        expect(mockClient.prepareIndex(eq(partition), eq("audit"), anyString()))
                 .andReturn(
-                        mockIndexRequestBuilder);
-        expect(mockIndexRequestBuilder.setSource((byte[]) anyObject())).andReturn(mockIndexRequestBuilder);
-        expect(mockIndexRequestBuilder.execute()).andReturn(mockFuture);
-        expect(mockFuture.actionGet()).andReturn(null);
-
-        /* index refresh */
-        expect(mockClient.admin()).andReturn(mockAdminClient);
-        expect(mockAdminClient.indices()).andReturn(mockIndicesAdminClient);
-        expect(mockIndicesAdminClient.refresh(anyObject())).andReturn(mockFuture);
-        expect(mockFuture.actionGet()).andReturn(null);
-
-        replay(mockIndicesAdminClient, mockAdminClient, mockClient, mockGetRequestBuilder, mockFuture, mockResponse,
-                mockIndexRequestBuilder);
-        auditService.create(AuditRecordHelper.createEntityRecord("id"));
-        verify(mockIndicesAdminClient, mockAdminClient, mockClient, mockGetRequestBuilder, mockFuture, mockResponse,
-                mockIndexRequestBuilder);
+                        mockIndexRequestBuilder).times(2);
+        expect(mockIndexRequestBuilder.setSource((byte[]) anyObject())).andReturn(mockIndexRequestBuilder).times(2);
+        expect(mockIndexRequestBuilder.setRefresh(true)).andReturn(mockIndexRequestBuilder).times(2);
+        expect(mockIndexRequestBuilder.execute()).andReturn(mockFuture).times(2);
+        expect(mockFuture.actionGet()).andReturn(null).times(2);
+
+        replay(mockIndicesAdminClient, mockAdminClient, mockClient, mockFuture, mockIndexRequestBuilder);
+        String first = auditService.create(AuditRecordHelper.createEntityRecord("id"));
+        String second = auditService.create(AuditRecordHelper.createEntityRecord("id"));
+        verify(mockIndicesAdminClient, mockAdminClient, mockClient, mockFuture, mockIndexRequestBuilder);
+        assertNotEquals(first, second);
+        assertTrue(first.compareTo(second) < 0);
+    }
+
+    @Test
+    public void testPartitionEnd() throws Exception {
+        assertEquals(ZonedDateTime.of(2015, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC),
+                (ZonedDateTime) ReflectionTestUtils.invokeMethod(auditService, "partitionEnd", "audit-2014.12"));
+        assertEquals(ZonedDateTime.of(2014, 12, 2, 0, 0, 0, 0, ZoneOffset.UTC),
+                (ZonedDateTime) ReflectionTestUtils.invokeMethod(auditService, "partitionEnd", "audit-2014.12.01"));
+        assertNull(ReflectionTestUtils.invokeMethod(auditService, "partitionEnd", "audit"));
+        assertNull(ReflectionTestUtils.invokeMethod(auditService, "partitionEnd", "audit-all"));
     }
 
 }
@@ -17,12 +17,15 @@
 package de.escidocng.service.elasticsearch;
 
 import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -40,9 +43,13 @@ import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.AdminClient;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.search.SearchHits;
+import org.easymock.Capture;
+import org.easymock.IAnswer;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -53,6 +60,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import de.escidocng.model.SearchResult;
 import de.escidocng.model.security.User;
+import de.escidocng.model.security.role.AdminRole;
+import de.escidocng.model.security.role.Role;
+import de.escidocng.model.security.role.Role.RoleName;
+import de.escidocng.security.helpers.AuthenticationCache;
 import de.escidocng.service.backend.elasticsearch.ElasticSearchCredentialsService;
 
 public class ElasticSearchCredentialsServiceTest {
@@ -75,6 +86,7 @@ public class ElasticSearchCredentialsServiceTest {
         mockIndicesAdminClient = createMock(IndicesAdminClient.class);
         ReflectionTestUtils.setField(credentialsService, "mapper", mapper);
         ReflectionTestUtils.setField(credentialsService, "client", mockClient);
+        ReflectionTestUtils.setField(credentialsService, "authenticationCache", new AuthenticationCache(10, 60000));
     }
 
     @SuppressWarnings("unchecked")
@@ -103,6 +115,73 @@ public class ElasticSearchCredentialsServiceTest {
         assertEquals(u.getName(), ((User) auth.getPrincipal()).getName());
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testAuthenticateCached() throws Exception {
+        User u = Fixtures.createUser();
+        GetResponse mockResponse = createMock(GetResponse.class);
+        GetRequestBuilder mockGetRequestBuilder = createMock(GetRequestBuilder.class);
+        ListenableActionFuture mockFuture = createMock(ListenableActionFuture.class);
+
+        /* the user is only loaded once */
+        expect(mockClient.prepareGet(ElasticSearchCredentialsService.INDEX_USERS,
+                ElasticSearchCredentialsService.INDEX_USERS_TYPE, u.getName())).andReturn(mockGetRequestBuilder);
+        expect(mockGetRequestBuilder.execute()).andReturn(mockFuture);
+        expect(mockFuture.actionGet()).andReturn(mockResponse);
+        expect(mockResponse.isExists()).andReturn(true);
+        expect(mockResponse.getSourceAsBytes()).andReturn(mapper.writeValueAsBytes(u));
+
+        replay(mockClient, mockFuture, mockGetRequestBuilder, mockResponse);
+        Authentication first =
+                this.credentialsService.authenticate(new UsernamePasswordAuthenticationToken(u.getName(),
+                        "test"));
+        Authentication second =
+                this.credentialsService.authenticate(new UsernamePasswordAuthenticationToken(u.getName(),
+                        "test"));
+        verify(mockClient, mockFuture, mockGetRequestBuilder, mockResponse);
+
+        assertSame(first, second);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testAuthenticateNotCachedWhenInvalidatedDuringLoad() throws Exception {
+        final User u = Fixtures.createUser();
+        final GetResponse mockResponse = createMock(GetResponse.class);
+        GetRequestBuilder mockGetRequestBuilder = createMock(GetRequestBuilder.class);
+        ListenableActionFuture mockFuture = createMock(ListenableActionFuture.class);
+        final AuthenticationCache cache =
+                (AuthenticationCache) ReflectionTestUtils.getField(credentialsService, "authenticationCache");
+
+        /* the user is changed while the first login loads it, so the second login has to load it again */
+        expect(mockClient.prepareGet(ElasticSearchCredentialsService.INDEX_USERS,
+                ElasticSearchCredentialsService.INDEX_USERS_TYPE, u.getName())).andReturn(mockGetRequestBuilder)
+                .times(2);
+        expect(mockGetRequestBuilder.execute()).andReturn(mockFuture).times(2);
+        expect(mockFuture.actionGet()).andAnswer(new IAnswer<Object>() {
+
+            @Override
+            public Object answer() throws Throwable {
+                cache.invalidate(u.getName());
+                return mockResponse;
+            }
+        }).andReturn(mockResponse);
+        expect(mockResponse.isExists()).andReturn(true).times(2);
+        expect(mockResponse.getSourceAsBytes()).andReturn(mapper.writeValueAsBytes(u)).times(2);
+
+        replay(mockClient, mockFuture, mockGetRequestBuilder, mockResponse);
+        Authentication first =
+                this.credentialsService.authenticate(new UsernamePasswordAuthenticationToken(u.getName(),
+                        "test"));
+        Authentication second =
+                this.credentialsService.authenticate(new UsernamePasswordAuthenticationToken(u.getName(),
+                        "test"));
+        verify(mockClient, mockFuture, mockGetRequestBuilder, mockResponse);
+
+        assertNotNull(first);
+        assertNotSame(first, second);
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void testCreateUser() throws Exception {
@@ -178,6 +257,56 @@ public class ElasticSearchCredentialsServiceTest {
                 mockFuture, mockIndexRequestBuilder);
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testSetRolesRetriesOnVersionConflict() throws Exception {
+        User u = Fixtures.createUser();
+        GetResponse mockGetResponse = createMock(GetResponse.class);
+        GetRequestBuilder mockGetRequestBuilder = createMock(GetRequestBuilder.class);
+        ListenableActionFuture mockFuture = createMock(ListenableActionFuture.class);
+        IndexRequestBuilder mockIndexRequestBuilder = createMock(IndexRequestBuilder.class);
+        Capture<byte[]> source = new Capture<>();
+
+        /* the first write conflicts with a concurrent change, so the user is read and written again */
+        expect(mockClient.prepareGet(ElasticSearchCredentialsService.INDEX_USERS,
+                ElasticSearchCredentialsService.INDEX_USERS_TYPE, u.getName())).andReturn(mockGetRequestBuilder)
+                .times(2);
+        expect(mockGetRequestBuilder.execute()).andReturn(mockFuture).times(2);
+        expect(mockGetResponse.isExists()).andReturn(true).times(2);
+        expect(mockGetResponse.getSourceAsBytes()).andReturn(mapper.writeValueAsBytes(u)).times(2);
+        expect(mockGetResponse.getVersion()).andReturn(1L).andReturn(2L);
+        expect(mockClient.prepareIndex(ElasticSearchCredentialsService.INDEX_USERS,
+                ElasticSearchCredentialsService.INDEX_USERS_TYPE, u.getName())).andReturn(mockIndexRequestBuilder)
+                .times(2);
+        expect(mockIndexRequestBuilder.setSource(capture(source))).andReturn(mockIndexRequestBuilder).times(2);
+        expect(mockIndexRequestBuilder.setVersion(1L)).andReturn(mockIndexRequestBuilder);
+        expect(mockIndexRequestBuilder.setVersion(2L)).andReturn(mockIndexRequestBuilder);
+        expect(mockIndexRequestBuilder.execute()).andReturn(mockFuture).times(2);
+        expect(mockFuture.actionGet()).andReturn(mockGetResponse)
+                .andThrow(new VersionConflictEngineException(new ShardId(
+                        ElasticSearchCredentialsService.INDEX_USERS, 0),
+                        ElasticSearchCredentialsService.INDEX_USERS_TYPE, u.getName(), 2L, 1L))
+                .andReturn(mockGetResponse)
+                .andReturn(null);
+
+        /* index refresh */
+        expect(mockClient.admin()).andReturn(mockAdminClient);
+        expect(mockAdminClient.indices()).andReturn(mockIndicesAdminClient);
+        expect(mockIndicesAdminClient.refresh(anyObject())).andReturn(mockFuture);
+        expect(mockFuture.actionGet()).andReturn(null);
+
+        replay(mockClient, mockAdminClient, mockIndicesAdminClient, mockGetRequestBuilder, mockGetResponse,
+                mockFuture, mockIndexRequestBuilder);
+        List<Role> roles = Arrays.asList(new AdminRole());
+        this.credentialsService.setRoles(u.getName(), roles);
+        verify(mockClient, mockAdminClient, mockIndicesAdminClient, mockGetRequestBuilder, mockGetResponse,
+                mockFuture, mockIndexRequestBuilder);
+
+        User written = mapper.readValue(source.getValue(), User.class);
+        assertEquals(1, written.getRoles().size());
+        assertEquals(RoleName.ROLE_ADMIN, written.getRoles().get(0).getRoleName());
+    }
+
     @SuppressWarnings("unchecked")
 //    @Test
     public void testDeleteUser() throws Exception {
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.service.elasticsearch;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.elasticsearch.action.ListenableActionFuture;
+import org.elasticsearch.action.get.GetRequestBuilder;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.client.Client;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import de.escidocng.exceptions.NotFoundException;
+import de.escidocng.service.backend.BackendCredentialsService;
+import de.escidocng.service.backend.elasticsearch.ElasticSearchTokenStore;
+import de.escidocng.service.backend.elasticsearch.TokenNearCache;
+
+public class ElasticSearchTokenStoreTest {
+
+    private ElasticSearchTokenStore tokenStore;
+
+    private Client mockClient;
+
+    @Before
+    public void setup() {
+        tokenStore = new ElasticSearchTokenStore();
+        mockClient = createMock(Client.class);
+        ReflectionTestUtils.setField(tokenStore, "client", mockClient);
+        ReflectionTestUtils.setField(tokenStore, "nearCache", new TokenNearCache(10, 60000, 60000));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testReadMissingTokenIsCached() throws Exception {
+        GetResponse mockResponse = createMock(GetResponse.class);
+        GetRequestBuilder mockGetRequestBuilder = createMock(GetRequestBuilder.class);
+        ListenableActionFuture mockFuture = createMock(ListenableActionFuture.class);
+
+        /* the index is only asked once */
+        expect(mockClient.prepareGet(ElasticSearchTokenStore.INDEX_TOKENS,
+                ElasticSearchTokenStore.INDEX_ACCESS_TOKEN_TYPE, DigestUtils.md5Hex("missing"))).andReturn(
+                mockGetRequestBuilder);
+        expect(mockGetRequestBuilder.execute()).andReturn(mockFuture);
+        expect(mockFuture.actionGet()).andReturn(mockResponse);
+        expect(mockResponse.isExists()).andReturn(false);
+
+        replay(mockClient, mockGetRequestBuilder, mockFuture, mockResponse);
+        assertNull(tokenStore.readAccessToken("missing"));
+        assertNull(tokenStore.readAuthentication("missing"));
+        verify(mockClient, mockGetRequestBuilder, mockFuture, mockResponse);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testReadTokenIsCached() throws Exception {
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("value");
+        OAuth2Request request = new OAuth2Request(Collections.<String, String> emptyMap(), "client",
+                Collections.<GrantedAuthority> emptyList(), true, Collections.singleton("read"),
+                Collections.singleton("escidocng"), null, null, Collections.<String, Serializable> emptyMap());
+        Map<String, Object> source = new HashMap<>();
+        source.put("token", Base64.getEncoder().encodeToString(SerializationUtils.serialize(token)));
+        source.put("authentication", Base64.getEncoder().encodeToString(
+                SerializationUtils.serialize(new OAuth2Authentication(request, null))));
+        GetResponse mockResponse = createMock(GetResponse.class);
+        GetRequestBuilder mockGetRequestBuilder = createMock(GetRequestBuilder.class);
+        ListenableActionFuture mockFuture = createMock(ListenableActionFuture.class);
+
+        expect(mockClient.prepareGet(ElasticSearchTokenStore.INDEX_TOKENS,
+                ElasticSearchTokenStore.INDEX_ACCESS_TOKEN_TYPE, DigestUtils.md5Hex("value"))).andReturn(
+                mockGetRequestBuilder);
+        expect(mockGetRequestBuilder.execute()).andReturn(mockFuture);
+        expect(mockFuture.actionGet()).andReturn(mockResponse);
+        expect(mockResponse.isExists()).andReturn(true);
+        expect(mockResponse.getSource()).andReturn(source);
+
+        replay(mockClient, mockGetRequestBuilder, mockFuture, mockResponse);
+        assertEquals("value", tokenStore.readAccessToken("value").getValue());
+        OAuth2Authentication auth = tokenStore.readAuthentication("value");
+        verify(mockClient, mockGetRequestBuilder, mockFuture, mockResponse);
+        assertTrue(auth.isClientOnly());
+        assertEquals("client", auth.getOAuth2Request().getClientId());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test(expected = InvalidGrantException.class)
+    public void testReadAuthenticationForRefreshTokenOfDeletedUser() throws Exception {
+        DefaultOAuth2RefreshToken token = new DefaultOAuth2RefreshToken("refresh");
+        OAuth2Request request = new OAuth2Request(Collections.<String, String> emptyMap(), "client",
+                Collections.<GrantedAuthority> emptyList(), true, Collections.singleton("read"),
+                Collections.singleton("escidocng"), null, null, Collections.<String, Serializable> emptyMap());
+        Map<String, Object> source = new HashMap<>();
+        source.put("token", Base64.getEncoder().encodeToString(SerializationUtils.serialize(token)));
+        source.put("authentication", Base64.getEncoder().encodeToString(
+                SerializationUtils.serialize(new OAuth2Authentication(request,
+                        new UsernamePasswordAuthenticationToken("deleted", null)))));
+        BackendCredentialsService mockCredentialsService = createMock(BackendCredentialsService.class);
+        GetResponse mockResponse = createMock(GetResponse.class);
+        GetRequestBuilder mockGetRequestBuilder = createMock(GetRequestBuilder.class);
+        ListenableActionFuture mockFuture = createMock(ListenableActionFuture.class);
+        ReflectionTestUtils.setField(tokenStore, "backendCredentialsService", mockCredentialsService);
+
+        expect(mockClient.prepareGet(ElasticSearchTokenStore.INDEX_TOKENS,
+                ElasticSearchTokenStore.INDEX_REFRESH_TOKEN_TYPE, DigestUtils.md5Hex("refresh"))).andReturn(
+                mockGetRequestBuilder);
+        expect(mockGetRequestBuilder.execute()).andReturn(mockFuture);
+        expect(mockFuture.actionGet()).andReturn(mockResponse);
+        expect(mockResponse.isExists()).andReturn(true);
+        expect(mockResponse.getSource()).andReturn(source);
+        expect(mockCredentialsService.retrieveUser("deleted")).andThrow(new NotFoundException("deleted"));
+
+        replay(mockClient, mockGetRequestBuilder, mockFuture, mockResponse, mockCredentialsService);
+        tokenStore.readAuthenticationForRefreshToken(token);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.service.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.escidocng.model.security.User;
+import de.escidocng.model.security.role.AdminRole;
+import de.escidocng.model.security.role.Right;
+import de.escidocng.model.security.role.Role;
+import de.escidocng.model.security.role.Role.RoleRight;
+import de.escidocng.model.security.role.UserRole;
+import de.escidocng.service.backend.elasticsearch.queryrestriction.RestrictionFilterCache;
+
+public class RestrictionFilterCacheTest {
+
+    private RestrictionFilterCache cache;
+
+    @Before
+    public void setup() {
+        cache = new RestrictionFilterCache(10);
+    }
+
+    @Test
+    public void testUserWithoutRolesSeesNothing() throws Exception {
+        User u = createUser();
+        String filter = cache.getEntitiesFilter(u);
+        assertTrue(filter.contains("\"not\""));
+        assertTrue(filter.contains("\"match_all\""));
+        assertEquals(filter, cache.getEntitiesFilter(null));
+    }
+
+    @Test
+    public void testAdminSeesEverything() throws Exception {
+        User u = createUser(new AdminRole());
+        assertEquals("{\"match_all\":{}}", cache.getEntitiesFilter(u));
+        assertEquals("{\"match_all\":{}}", cache.getArchivesFilter(u));
+        assertEquals("{\"match_all\":{}}", cache.getUsersFilter(u));
+    }
+
+    @Test
+    public void testRightsAreGroupedPerState() throws Exception {
+        User u = createUser(createUserRole("level2-a", "level2-b"));
+        String filter = cache.getEntitiesFilter(u);
+        assertTrue(filter.contains("\"level2\":[\"level2-a\",\"level2-b\"]"));
+        assertTrue(filter.contains("\"state.raw\":\"PENDING\""));
+        assertTrue(cache.getArchivesFilter(u).contains("\"state\":\"PENDING\""));
+    }
+
+    @Test
+    public void testFilterIsRecompiledOnRoleChange() throws Exception {
+        User u = createUser(createUserRole("level2-a"));
+        String filter = cache.getEntitiesFilter(u);
+        assertSame(filter, cache.getEntitiesFilter(createUser(createUserRole("level2-a"))));
+
+        User changed = createUser(createUserRole("level2-a", "level2-c"));
+        String changedFilter = cache.getEntitiesFilter(changed);
+        assertNotSame(filter, changedFilter);
+        assertTrue(changedFilter.contains("level2-c"));
+    }
+
+    @Test
+    public void testFilterIsRecompiledOnRoleRightChange() throws Exception {
+        User u = createUser(createUserRole("level2-a"));
+        String filter = cache.getEntitiesFilter(u);
+
+        Role role = createUserRole("level2-a");
+        role.getRights().get(0).getRoleRights().set(0, RoleRight.READ_PUBLISHED_METADATA);
+        String changedFilter = cache.getEntitiesFilter(createUser(role));
+        assertNotSame(filter, changedFilter);
+        assertTrue(changedFilter.contains("\"state.raw\":\"PUBLISHED\""));
+
+        role.getRights().get(0).getRoleRights().set(0, RoleRight.READ_PENDING_METADATA);
+        assertNotSame(changedFilter, cache.getEntitiesFilter(createUser(role)));
+    }
+
+    private User createUser(Role... roles) {
+        User u = new User();
+        u.setName("test");
+        u.setRoles(new ArrayList<>(Arrays.asList(roles)));
+        return u;
+    }
+
+    private Role createUserRole(String... level2Ids) throws Exception {
+        List<Right> rights = new ArrayList<>();
+        for (String level2Id : level2Ids) {
+            rights.add(new Right(level2Id, new ArrayList<>(Arrays.asList(RoleRight.READ_PENDING_METADATA))));
+        }
+        Role role = new UserRole();
+        role.setRights(rights);
+        return role;
+    }
+}
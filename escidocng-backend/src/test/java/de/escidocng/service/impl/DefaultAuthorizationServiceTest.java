@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.service.impl;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import de.escidocng.model.ContentModel.FixedContentModel;
+import de.escidocng.model.Entity;
+import de.escidocng.model.security.ObjectType;
+import de.escidocng.model.security.PermissionType;
+import de.escidocng.model.security.User;
+import de.escidocng.model.security.annotation.Permission;
+import de.escidocng.model.security.role.Level1AdminRole;
+import de.escidocng.model.security.role.Right;
+import de.escidocng.model.security.role.Role.RoleName;
+import de.escidocng.model.security.role.Role.RoleRight;
+
+public class DefaultAuthorizationServiceTest {
+
+    private DefaultAuthorizationService authorizationService;
+
+    private Level1AdminRole role;
+
+    @Before
+    public void setup() throws Exception {
+        authorizationService = new DefaultAuthorizationService();
+        List<Right> rights = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            rights.add(new Right("level1-" + i, Arrays.asList(RoleRight.READ)));
+        }
+        role = new Level1AdminRole();
+        role.setRights(rights);
+        User user = new User();
+        user.setName("level1admin");
+        user.setRole(role);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, null));
+    }
+
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void testAuthorizeRead() throws Exception {
+        authorizationService.authorize(null, ObjectType.ENTITY, null, null, level1("level1-9999"), permissions("read"));
+    }
+
+    @Test(expected = AccessDeniedException.class)
+    public void testAuthorizeWriteDenied() throws Exception {
+        authorizationService.authorize(null, ObjectType.ENTITY, null, null, level1("level1-9999"),
+                permissions("write"));
+    }
+
+    @Test(expected = AccessDeniedException.class)
+    public void testAuthorizeRemovedRight() throws Exception {
+        authorizationService.authorize(null, ObjectType.ENTITY, null, null, level1("level1-42"), permissions("read"));
+        role.removeRight("level1-42");
+        authorizationService.authorize(null, ObjectType.ENTITY, null, null, level1("level1-42"), permissions("read"));
+    }
+
+    @Test
+    public void testAuthorizeAddedRight() throws Exception {
+        role.getRights().add(new Right("level1-new", Arrays.asList(RoleRight.READ, RoleRight.WRITE)));
+        authorizationService.authorize(null, ObjectType.ENTITY, null, null, level1("level1-new"), permissions("write"));
+    }
+
+    private static Entity level1(String id) {
+        Entity entity = new Entity();
+        entity.setId(id);
+        entity.setContentModelId(FixedContentModel.LEVEL1.getName());
+        return entity;
+    }
+
+    private static Permission[] permissions(String methodName) throws Exception {
+        Method method = DefaultAuthorizationServiceTest.class.getDeclaredMethod(methodName);
+        return new Permission[] { method.getAnnotation(Permission.class) };
+    }
+
+    @Permission(rolename = RoleName.ROLE_LEVEL1_ADMIN, permissionType = PermissionType.READ)
+    private void read() {
+    }
+
+    @Permission(rolename = RoleName.ROLE_LEVEL1_ADMIN, permissionType = PermissionType.WRITE)
+    private void write() {
+    }
+}
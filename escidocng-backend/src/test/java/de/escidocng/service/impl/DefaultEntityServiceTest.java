@@ -17,18 +17,22 @@
 package de.escidocng.service.impl;
 
 import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 
 import de.escidocng.test.util.Fixtures;
 
+import org.easymock.Capture;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.test.util.ReflectionTestUtils;
@@ -36,11 +40,13 @@ import org.springframework.test.util.ReflectionTestUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import de.escidocng.model.Binary;
+import de.escidocng.model.Change;
 import de.escidocng.model.Entity;
 import de.escidocng.model.source.ByteArraySource;
 import de.escidocng.service.EntityValidatorService;
 import de.escidocng.service.ExportService;
 import de.escidocng.service.backend.BackendBlobstoreService;
+import de.escidocng.service.backend.BackendChangeLogService;
 import de.escidocng.service.backend.BackendEntityService;
 import de.escidocng.service.backend.BackendVersionService;
 import de.escidocng.service.impl.DefaultEntityService;
@@ -60,6 +66,8 @@ public class DefaultEntityServiceTest {
 
     private BackendVersionService mockVersionService;
 
+    private BackendChangeLogService mockChangeLogService;
+
     @Before
     public void setup() {
         entityService = new DefaultEntityService();
@@ -68,12 +76,16 @@ public class DefaultEntityServiceTest {
         mockExportService = createMock(ExportService.class);
         mockVersionService = createMock(BackendVersionService.class);
         mockEntityValidatorService = createMock(DefaultEntityValidatorService.class);
+        mockChangeLogService = createMock(BackendChangeLogService.class);
         ReflectionTestUtils.setField(entityService, "mapper", new ObjectMapper());
         ReflectionTestUtils.setField(entityService, "backendEntityService", mockEntitiesService);
         ReflectionTestUtils.setField(entityService, "exportService", mockExportService);
         ReflectionTestUtils.setField(entityService, "backendBlobstoreService", mockBlobstoreService);
         ReflectionTestUtils.setField(entityService, "backendVersionService", mockVersionService);
         ReflectionTestUtils.setField(entityService, "defaultEntityValidatorService", mockEntityValidatorService);
+        ReflectionTestUtils.setField(entityService, "backendChangeLogService", mockChangeLogService);
+        ReflectionTestUtils.setField(entityService, "searchResultCache",
+                new SearchResultCache(0, 0, new ObjectMapper()));
     }
 
     //@Test
@@ -137,12 +149,13 @@ public class DefaultEntityServiceTest {
         expect(mockBlobstoreService.create(anyObject(InputStream.class))).andReturn("/path/to/bin");
         mockEntitiesService.update(e);
         expectLastCall();
+        expect(mockChangeLogService.append(anyObject(Change.class))).andReturn(null);
 
-        replay(mockEntitiesService, mockExportService, mockBlobstoreService);
+        replay(mockEntitiesService, mockExportService, mockBlobstoreService, mockChangeLogService);
         b.setMimetype("application/octet-stream");
         b.setSource(new ByteArraySource(new byte[3]));
         this.entityService.createBinary(e.getId(), b);
-        verify(mockEntitiesService, mockExportService, mockBlobstoreService);
+        verify(mockEntitiesService, mockExportService, mockBlobstoreService, mockChangeLogService);
     }
 
     //@Test
@@ -169,10 +182,30 @@ public class DefaultEntityServiceTest {
         expect(mockEntitiesService.fetchChildren(e.getId())).andReturn(new ArrayList<String>()).times(1);
         mockEntitiesService.update(e);
         expectLastCall();
+        Capture<Change> change = new Capture<>();
+        expect(mockChangeLogService.append(capture(change))).andReturn(null);
 
-        replay(mockEntitiesService, mockExportService, mockBlobstoreService);
+        replay(mockEntitiesService, mockExportService, mockBlobstoreService, mockChangeLogService);
         this.entityService.createRelation(e.getId(), "<http://example.com/hasType>", "test");
-        verify(mockEntitiesService, mockExportService, mockBlobstoreService);
+        verify(mockEntitiesService, mockExportService, mockBlobstoreService, mockChangeLogService);
+        assertEquals(Change.Action.UPDATE, change.getValue().getAction());
+        assertEquals(e.getId(), change.getValue().getEntityId());
+
+    }
+
+    @Test
+    public void testCreateRelationWithFailingChangeLog() throws Exception {
+        Entity e = Fixtures.createEntity();
+
+        /* the relation has been written, so the failure to log the change must not fail the request */
+        expect(mockEntitiesService.retrieve(e.getId())).andReturn(e);
+        expect(mockEntitiesService.fetchChildren(e.getId())).andReturn(new ArrayList<String>()).times(1);
+        mockEntitiesService.update(e);
+        expectLastCall();
+        expect(mockChangeLogService.append(anyObject(Change.class))).andThrow(new IOException("unavailable"));
 
+        replay(mockEntitiesService, mockExportService, mockBlobstoreService, mockChangeLogService);
+        this.entityService.createRelation(e.getId(), "<http://example.com/hasType>", "test");
+        verify(mockEntitiesService, mockExportService, mockBlobstoreService, mockChangeLogService);
     }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.escidocng.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.escidocng.model.RepositoryEvent;
+import de.escidocng.model.state.MessagingQueueState;
+
+public class DefaultMessagingServiceTest {
+
+    private static final String BROKER_URI = "vm://messaging-test?broker.persistent=false&broker.useJmx=false";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private ActiveMQQueue queue;
+
+    private Connection conn;
+
+    private Session session;
+
+    private DefaultMessagingService messagingService;
+
+    @Before
+    public void setup() throws Exception {
+        final ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(BROKER_URI);
+        conn = factory.createConnection();
+        conn.start();
+        session = conn.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        queue = new ActiveMQQueue("escidocng-test-" + System.nanoTime());
+
+        final JmsTemplate template = new JmsTemplate(factory);
+        template.setDefaultDestination(queue);
+        template.setSessionTransacted(true);
+        final MockEnvironment env = new MockEnvironment();
+        env.setProperty("escidocng.messaging.enabled", "true");
+        env.setProperty("escidocng.messaging.batchSize", "10");
+
+        messagingService = new DefaultMessagingService();
+        ReflectionTestUtils.setField(messagingService, "template", template);
+        ReflectionTestUtils.setField(messagingService, "env", env);
+        ReflectionTestUtils.setField(messagingService, "mapper", mapper);
+        messagingService.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        messagingService.destroy();
+        conn.close();
+    }
+
+    @Test
+    public void testPublishEvent() throws Exception {
+        MessageConsumer consumer = session.createConsumer(queue);
+        messagingService.publishCreateBinary("entity-1", "binary-1");
+
+        TextMessage msg = (TextMessage) consumer.receive(5000);
+        assertNotNull(msg);
+        assertEquals("CREATE_BINARY", msg.getStringProperty(RepositoryEvent.PROPERTY_TYPE));
+        assertEquals("entity-1", msg.getStringProperty(RepositoryEvent.PROPERTY_ENTITY_ID));
+        RepositoryEvent event = mapper.readValue(msg.getText(), RepositoryEvent.class);
+        assertEquals(RepositoryEvent.Type.CREATE_BINARY, event.getType());
+        assertEquals("entity-1", event.getEntityId());
+        assertEquals("binary-1", event.getBinaryName());
+        assertNull(event.getMetadataName());
+        assertNotNull(event.getTimestamp());
+
+        MessagingQueueState state = messagingService.status();
+        assertTrue(state.isAsync());
+        assertEquals(10000, state.getCapacity());
+        assertEquals(0, state.getDropped());
+    }
+
+    @Test
+    public void testSelectEvents() throws Exception {
+        MessageConsumer consumer = session.createConsumer(queue,
+                RepositoryEvent.PROPERTY_TYPE + " = 'DELETE_ENTITY' AND " + RepositoryEvent.PROPERTY_ENTITY_ID
+                        + " = 'entity-2'");
+        for (int i = 0; i < 50; i++) {
+            messagingService.publishUpdateEntity("entity-" + i);
+        }
+        messagingService.publishDeleteEntity("entity-1");
+        messagingService.publishDeleteEntity("entity-2");
+
+        TextMessage msg = (TextMessage) consumer.receive(5000);
+        assertNotNull(msg);
+        assertEquals("entity-2", mapper.readValue(msg.getText(), RepositoryEvent.class).getEntityId());
+        assertNull(consumer.receiveNoWait());
+    }
+}
@@ -20,6 +20,7 @@ import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
 
 import org.elasticsearch.action.ListenableActionFuture;
 import org.elasticsearch.action.admin.cluster.state.ClusterStateRequestBuilder;
@@ -41,8 +42,15 @@ import org.junit.Test;
 import org.springframework.core.env.Environment;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import de.escidocng.model.Describe;
+import de.escidocng.model.state.AuditQueueState;
 import de.escidocng.model.state.EscidocngState;
+import de.escidocng.model.state.MessagingQueueState;
+import de.escidocng.security.helpers.AuthenticationCache;
+import de.escidocng.service.MessagingService;
+import de.escidocng.service.backend.BackendAuditService;
 import de.escidocng.service.backend.BackendBlobstoreService;
 import de.escidocng.service.backend.BackendEntityService;
 import de.escidocng.service.impl.DefaultRepositoryService;
@@ -57,6 +65,10 @@ public class DefaultRepositoryServiceTest {
 
     private BackendEntityService mockEntitiesService;
 
+    private BackendAuditService mockAuditService;
+
+    private MessagingService mockMessagingService;
+
     private Environment mockEnv;
 
     private AdminClient mockAdminClient;
@@ -69,6 +81,8 @@ public class DefaultRepositoryServiceTest {
         mockClient = createMock(Client.class);
         mockBlobstoreService = createMock(BackendBlobstoreService.class);
         mockEntitiesService = createMock(BackendEntityService.class);
+        mockAuditService = createMock(BackendAuditService.class);
+        mockMessagingService = createMock(MessagingService.class);
         mockEnv = createMock(Environment.class);
         mockAdminClient = createMock(AdminClient.class);
         mockClusterAdminClient = createMock(ClusterAdminClient.class);
@@ -76,16 +90,31 @@ public class DefaultRepositoryServiceTest {
         ReflectionTestUtils.setField(repositoryService, "backendBlobstoreService", mockBlobstoreService);
         ReflectionTestUtils.setField(repositoryService, "backendEntityService", mockEntitiesService);
         ReflectionTestUtils.setField(repositoryService, "env", mockEnv);
+        ReflectionTestUtils.setField(repositoryService, "searchResultCache",
+                new SearchResultCache(10, 1000, new ObjectMapper()));
+        ReflectionTestUtils.setField(repositoryService, "authenticationCache", new AuthenticationCache(10, 1000));
+        ReflectionTestUtils.setField(repositoryService, "backendAuditService", mockAuditService);
+        ReflectionTestUtils.setField(repositoryService, "messagingService", mockMessagingService);
     }
 
     @Test
     public void testStatus() throws Exception {
         expect(mockEntitiesService.status()).andReturn(null);
         expect(mockBlobstoreService.status()).andReturn(null);
-
-        replay(mockClient, mockEntitiesService, mockBlobstoreService);
+        AuditQueueState auditQueueState = new AuditQueueState();
+        auditQueueState.setDepth(3);
+        expect(mockAuditService.status()).andReturn(auditQueueState);
+        MessagingQueueState messagingQueueState = new MessagingQueueState();
+        messagingQueueState.setDropped(2);
+        expect(mockMessagingService.status()).andReturn(messagingQueueState);
+
+        replay(mockClient, mockEntitiesService, mockBlobstoreService, mockAuditService, mockMessagingService);
         EscidocngState state = this.repositoryService.status();
-        verify(mockClient, mockEntitiesService, mockBlobstoreService);
+        verify(mockClient, mockEntitiesService, mockBlobstoreService, mockAuditService, mockMessagingService);
+        assertEquals(10, state.getSearchCacheState().getMaxSize());
+        assertEquals(10, state.getAuthenticationCacheState().getMaxSize());
+        assertEquals(3, state.getAuditQueueState().getDepth());
+        assertEquals(2, state.getMessagingQueueState().getDropped());
     }
 
     @SuppressWarnings("unchecked")
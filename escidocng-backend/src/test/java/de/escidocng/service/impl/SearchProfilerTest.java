@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.escidocng.model.SearchParameters;
+import de.escidocng.model.SearchResult;
+import de.escidocng.model.SearchTimings;
+import de.escidocng.model.SlowQuery;
+
+public class SearchProfilerTest {
+
+    @Test
+    public void testTimingsOnlyReturnedIfRequested() throws Exception {
+        SearchProfiler profiler = new SearchProfiler(60000, 10);
+        SearchParameters params = new SearchParameters("*:*", 0, 10);
+        SearchResult result = profiler.finish("entities", "admin", params, result(), System.currentTimeMillis(), 2);
+        assertNull(result.getTimings());
+
+        params.setProfile(true);
+        result = profiler.finish("entities", "admin", params, result(), System.currentTimeMillis(), 2);
+        assertNotNull(result.getTimings());
+        assertEquals(2, result.getTimings().getRestriction());
+        assertEquals(5, result.getTimings().getTook());
+        assertTrue(profiler.getSlowQueries().isEmpty());
+    }
+
+    @Test
+    public void testSlowQueriesAreBounded() throws Exception {
+        SearchProfiler profiler = new SearchProfiler(0, 2);
+        for (int i = 0; i < 3; i++) {
+            SearchParameters params = new SearchParameters("label:" + i, 0, 10);
+            params.setFilter("{\"match_all\":{}}");
+            profiler.finish("entities", "admin", params, result(), System.currentTimeMillis(), 0);
+        }
+        List<SlowQuery> slow = profiler.getSlowQueries();
+        assertEquals(2, slow.size());
+        assertEquals("label:2", slow.get(0).getQuery());
+        assertEquals("label:1", slow.get(1).getQuery());
+        assertEquals(16, slow.get(0).getRestrictionSize());
+        assertEquals("admin", slow.get(0).getUser());
+
+        profiler.clear();
+        assertTrue(profiler.getSlowQueries().isEmpty());
+    }
+
+    private static SearchResult result() {
+        SearchResult result = new SearchResult();
+        SearchTimings timings = new SearchTimings();
+        timings.setTook(5);
+        result.setTimings(timings);
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.escidocng.model.SearchParameters;
+import de.escidocng.model.SearchResult;
+import de.escidocng.model.state.SearchCacheState;
+
+public class SearchResultCacheTest {
+
+    private SearchResultCache cache;
+
+    private AtomicInteger loads;
+
+    @Before
+    public void setup() {
+        cache = new SearchResultCache(2, 60000, new ObjectMapper());
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    public void testHit() throws Exception {
+        SearchResult first = cache.get(params("label:test", "filter"), this::load);
+        SearchResult second = cache.get(params("  label:test ", "filter"), this::load);
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        SearchCacheState state = cache.status();
+        assertEquals(1, state.getHits());
+        assertEquals(1, state.getMisses());
+        assertEquals(0.5d, state.getHitRatio(), 0.001d);
+        assertTrue(state.getEstimatedMemory() > 0);
+    }
+
+    @Test
+    public void testRestrictionIsPartOfKey() throws Exception {
+        SearchResult first = cache.get(params("label:test", "filter1"), this::load);
+        SearchResult second = cache.get(params("label:test", "filter2"), this::load);
+        assertNotSame(first, second);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testConsistentAndDfsSearchesBypassCache() throws Exception {
+        SearchParameters consistent = params("label:test", "filter");
+        consistent.setConsistent(true);
+        cache.get(consistent, this::load);
+        cache.get(consistent, this::load);
+        SearchParameters dfs = params("label:test", "filter");
+        dfs.setDfs(true);
+        cache.get(dfs, this::load);
+        assertEquals(3, loads.get());
+        assertEquals(0, cache.status().getSize());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        cache.get(params("label:test", "filter"), this::load);
+        cache.invalidate();
+        cache.get(params("label:test", "filter"), this::load);
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.status().getGeneration());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        cache.get(params("label:one", "filter"), this::load);
+        cache.get(params("label:two", "filter"), this::load);
+        cache.get(params("label:three", "filter"), this::load);
+        SearchCacheState state = cache.status();
+        assertEquals(2, state.getSize());
+        assertEquals(1, state.getEvictions());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        cache = new SearchResultCache(2, 0, new ObjectMapper());
+        cache.get(params("label:test", "filter"), this::load);
+        cache.get(params("label:test", "filter"), this::load);
+        assertEquals(2, loads.get());
+    }
+
+    private SearchResult load(SearchParameters params) {
+        loads.incrementAndGet();
+        SearchResult result = new SearchResult();
+        result.setTerm(params.getQuery());
+        return result;
+    }
+
+    private static SearchParameters params(String query, String filter) {
+        SearchParameters params = new SearchParameters(query, 0, 10);
+        params.setFilter(filter);
+        return params;
+    }
+}
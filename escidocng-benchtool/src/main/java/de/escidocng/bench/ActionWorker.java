@@ -97,6 +97,10 @@ public class ActionWorker implements Callable<BenchToolResult> {
             return authCreateEntity();
         case AUTH_RETRIEVE_ENTITY:
             return authRetrieveEntity();
+        case SEARCH_ENTITY:
+            return searchEntity(false);
+        case SEARCH_ENTITY_CONSISTENT:
+            return searchEntity(true);
         default:
             throw new IllegalArgumentException("Unknown action '" + this.action + "'");
         }
@@ -148,6 +152,18 @@ public class ActionWorker implements Callable<BenchToolResult> {
         return new BenchToolResult(size, System.currentTimeMillis() - time);
     }
 
+    private BenchToolResult searchEntity(boolean consistent) throws IOException {
+        /* create an entity */
+        final Entity e = BenchToolEntities.createRandomFullEntity(level2Id, size, false);
+        final String entityId = this.escidocngClient.postEntity(e);
+
+        /* measure the search duration */
+        long time = System.currentTimeMillis();
+        this.escidocngClient.searchEntities("level2:" + level2Id + " AND label:\"" + e.getLabel() + "\"", 0, 20,
+                consistent);
+        return new BenchToolResult(size, System.currentTimeMillis() - time);
+    }
+
     private BenchToolResult authRetrieveEntity() throws IOException {
     	String password = "passwd";
     	List<String> level2Ids = new ArrayList<String>();
@@ -147,6 +147,10 @@ public class BenchTool {
                     numThreads, size);
             runAction("RETRIEVE METADATA", Action.RETRIEVE_METADATA, escidocngUri, user, password, numActions,
                     numThreads, size);
+            runAction("SEARCH ENTITY", Action.SEARCH_ENTITY, escidocngUri, user, password, numActions,
+                    numThreads, size);
+            runAction("SEARCH ENTITY CONSISTENT", Action.SEARCH_ENTITY_CONSISTENT, escidocngUri, user, password,
+                    numActions, numThreads, size);
 
         } catch (IOException e) {
             log.error("Error while running bench\n", e);
@@ -303,7 +307,9 @@ public class BenchTool {
         RETRIEVE_BINARY,
         RETRIEVE_METADATA,
         AUTH_CREATE_ENTITY,
-        AUTH_RETRIEVE_ENTITY;
+        AUTH_RETRIEVE_ENTITY,
+        SEARCH_ENTITY,
+        SEARCH_ENTITY_CONSISTENT;
     }
 
     public static enum MdSize {
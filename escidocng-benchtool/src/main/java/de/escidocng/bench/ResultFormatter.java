@@ -18,6 +18,7 @@ package de.escidocng.bench;
 
 import java.io.OutputStream;
 import java.text.DecimalFormat;
+import java.util.Arrays;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -52,6 +53,8 @@ public class ResultFormatter {
         log.info("Avg. duration of request\t\t{} secs", format.format((float) duration / 1000f / (float) results.size()));
         log.info("Avg. throughput of request\t\t{} mb/sec", format.format(throughput / (float) results.size()));
         log.info("Aggregate duration of requests\t{} secs", format.format((float) duration / 1000f));
+        log.info("p50 duration of request\t\t{} ms", percentile(results, 50));
+        log.info("p99 duration of request\t\t{} ms", percentile(results, 99));
         log.info("-----------------------------------------------------------------------");
         if (minTroughput > 0f) {
             if (throughput < minTroughput) {
@@ -64,6 +67,22 @@ public class ResultFormatter {
         }
     }
     
+    /**
+     * Calculate a percentile of the request durations using the nearest rank method
+     */
+    public static long percentile(List<BenchToolResult> results, int percentile) {
+        if (results.isEmpty()) {
+            return 0;
+        }
+        final long[] durations = new long[results.size()];
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = results.get(i).getDuration();
+        }
+        Arrays.sort(durations);
+        final int rank = (int) Math.ceil(percentile / 100d * durations.length);
+        return durations[Math.max(rank - 1, 0)];
+    }
+
     public static void print(String msg) {
         log.info(msg);
     }
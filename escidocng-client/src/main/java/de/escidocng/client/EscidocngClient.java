@@ -24,13 +24,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Map.Entry;
 
 import org.apache.commons.codec.binary.Base64;
@@ -68,6 +73,7 @@ import de.escidocng.model.Binary;
 import de.escidocng.model.Describe;
 import de.escidocng.model.Entity;
 import de.escidocng.model.Metadata;
+import de.escidocng.model.SearchResult;
 import de.escidocng.model.security.role.Right;
 import de.escidocng.model.security.role.Role;
 import de.escidocng.model.security.role.UserRole;
@@ -836,6 +842,90 @@ public class EscidocngClient {
         return resp.getEntity().getContent();
     }
 
+    /**
+     * Search entities using a HTTP GET from the Escidocng server
+     * 
+     * @param query the search query
+     * @param offset the number of the first hit to return
+     * @param maxRecords the maximum number of hits to return
+     * @param consistent whether the server should refresh the index before searching
+     * @return the search result
+     */
+    public SearchResult searchEntities(String query, int offset, int maxRecords, boolean consistent)
+            throws IOException {
+        final HttpResponse resp = this.execute(Request.Get(escidocngUri + "/search/entities?query="
+                + URLEncoder.encode(query, "UTF-8") + "&offset=" + offset + "&maxRecords=" + maxRecords
+                + "&consistent=" + consistent)
+                .addHeader("Accept", "application/json"))
+                .returnResponse();
+        if (resp.getStatusLine().getStatusCode() != 200) {
+            log.error("Unable to search entities at {}\n{}", escidocngUri, EntityUtils.toString(resp.getEntity()));
+            throw new IOException("Unable to search entities");
+        }
+        return mapper.readValue(resp.getEntity().getContent(), SearchResult.class);
+    }
+
+    /**
+     * Fetch a page of a cursor based entity search using a HTTP GET from the Escidocng server
+     * 
+     * @param query the search query
+     * @param cursor the scrollId of the previous page or "*" for the first page
+     * @param maxRecords the maximum number of hits per page
+     * @return the search result holding the cursor of the next page as scrollId, which is null on the last page
+     */
+    public SearchResult searchEntities(String query, String cursor, int maxRecords) throws IOException {
+        final HttpResponse resp = this.execute(Request.Get(escidocngUri + "/search/entities?query="
+                + URLEncoder.encode(query, "UTF-8") + "&cursor=" + URLEncoder.encode(cursor, "UTF-8")
+                + "&maxRecords=" + maxRecords)
+                .addHeader("Accept", "application/json"))
+                .returnResponse();
+        if (resp.getStatusLine().getStatusCode() != 200) {
+            log.error("Unable to search entities at {}\n{}", escidocngUri, EntityUtils.toString(resp.getEntity()));
+            throw new IOException("Unable to search entities");
+        }
+        return mapper.readValue(resp.getEntity().getContent(), SearchResult.class);
+    }
+
+    /**
+     * Iterate over all entities matching a query. The pages are fetched lazily using a cursor based search, so the
+     * costs of fetching a page do not depend on its position in the result.
+     * 
+     * @param query the search query
+     * @param pageSize the number of entities to fetch with one request
+     * @return an iterator over the matching entities, which throws an {@link UncheckedIOException} if a page can not
+     *         be fetched
+     */
+    public Iterator<Entity> iterateEntities(final String query, final int pageSize) {
+        return new Iterator<Entity>() {
+
+            private String cursor = "*";
+
+            private Iterator<?> page = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && cursor != null) {
+                    try {
+                        final SearchResult result = searchEntities(query, cursor, pageSize);
+                        cursor = result.getScrollId();
+                        page = result.getData() != null ? result.getData().iterator() : Collections.emptyIterator();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public Entity next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return mapper.convertValue(page.next(), Entity.class);
+            }
+        };
+    }
+
     /**
      * Create new user with given name + password + UserRole for given level2Ids
      * 
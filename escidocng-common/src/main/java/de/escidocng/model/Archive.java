@@ -33,6 +33,12 @@ public class Archive {
 
     private String creator;
 
+    private Integer baseVersion;
+
+    private ArchiveManifest manifest;
+
+    private ArchiveFixity fixity;
+
     public String getPath() {
         return path;
     }
@@ -105,4 +111,47 @@ public class Archive {
         this.state = state;
     }
     
+
+    /**
+     * @return the version of the archive this incremental archive is based on, or null for a complete archive
+     */
+    public Integer getBaseVersion() {
+        return baseVersion;
+    }
+
+    /**
+     * @param baseVersion the version of the archive this incremental archive is based on
+     */
+    public void setBaseVersion(Integer baseVersion) {
+        this.baseVersion = baseVersion;
+    }
+
+    /**
+     * @return the manifest listing the content of the archive
+     */
+    public ArchiveManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * @param manifest the manifest listing the content of the archive
+     */
+    public void setManifest(ArchiveManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    /**
+     * @return the result of the last fixity check or null if the archive has not been checked yet
+     */
+    public ArchiveFixity getFixity() {
+        return fixity;
+    }
+
+    /**
+     * @param fixity the result of the last fixity check
+     */
+    public void setFixity(ArchiveFixity fixity) {
+        this.fixity = fixity;
+    }
+
 }
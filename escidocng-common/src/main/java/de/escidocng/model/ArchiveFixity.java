@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.escidocng.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DTO holding the result of the last fixity check of an archival package
+ */
+public class ArchiveFixity {
+
+    private String checkedDate;
+
+    private boolean valid;
+
+    private int checkedEntries;
+
+    private long duration;
+
+    private List<String> errors = new ArrayList<>();
+
+    public String getCheckedDate() {
+        return checkedDate;
+    }
+
+    public void setCheckedDate(String checkedDate) {
+        this.checkedDate = checkedDate;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public void setValid(boolean valid) {
+        this.valid = valid;
+    }
+
+    /**
+     * @return the number of binaries and metadata records whose checksum has been verified
+     */
+    public int getCheckedEntries() {
+        return checkedEntries;
+    }
+
+    public void setCheckedEntries(int checkedEntries) {
+        this.checkedEntries = checkedEntries;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<String> errors) {
+        this.errors = errors;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.escidocng.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DTO describing the content of an archival package. Incremental packages only carry the binaries and metadata that
+ * changed since the previously archived version of an entity; all other content is referenced by the version of the
+ * package which physically holds it.
+ */
+public class ArchiveManifest {
+
+    private String entityId;
+
+    private int entityVersion;
+
+    private Integer baseVersion;
+
+    private List<ArchiveManifestEntry> entries = new ArrayList<>();
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(String entityId) {
+        this.entityId = entityId;
+    }
+
+    public int getEntityVersion() {
+        return entityVersion;
+    }
+
+    public void setEntityVersion(int entityVersion) {
+        this.entityVersion = entityVersion;
+    }
+
+    /**
+     * @return the version of the archive this package was built against, or null if the package is complete
+     */
+    public Integer getBaseVersion() {
+        return baseVersion;
+    }
+
+    /**
+     * @param baseVersion the version of the archive this package was built against
+     */
+    public void setBaseVersion(Integer baseVersion) {
+        this.baseVersion = baseVersion;
+    }
+
+    public List<ArchiveManifestEntry> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<ArchiveManifestEntry> entries) {
+        this.entries = entries;
+    }
+}
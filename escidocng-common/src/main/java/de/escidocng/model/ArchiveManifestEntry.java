@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.escidocng.model;
+
+/**
+ * A single binary or metadata record listed in an {@link de.escidocng.model.ArchiveManifest}
+ */
+public class ArchiveManifestEntry {
+
+    private String path;
+
+    private String checksum;
+
+    private String checksumType;
+
+    private int archiveVersion;
+
+    public ArchiveManifestEntry() {
+        super();
+    }
+
+    public ArchiveManifestEntry(String path, String checksum, String checksumType, int archiveVersion) {
+        this.path = path;
+        this.checksum = checksum;
+        this.checksumType = checksumType;
+        this.archiveVersion = archiveVersion;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    public String getChecksumType() {
+        return checksumType;
+    }
+
+    public void setChecksumType(String checksumType) {
+        this.checksumType = checksumType;
+    }
+
+    /**
+     * @return the entity version of the archival package which contains the data of this entry
+     */
+    public int getArchiveVersion() {
+        return archiveVersion;
+    }
+
+    /**
+     * @param archiveVersion the entity version of the archival package which contains the data of this entry
+     */
+    public void setArchiveVersion(int archiveVersion) {
+        this.archiveVersion = archiveVersion;
+    }
+
+    /**
+     * Check if this entry describes the same content as the given checksum
+     * 
+     * @param otherChecksum the checksum to compare
+     * @param otherChecksumType the algorithm used to create the checksum
+     * @return true if the checksums match
+     */
+    public boolean matches(String otherChecksum, String otherChecksumType) {
+        return checksum != null && checksum.equals(otherChecksum) && checksumType != null
+                && checksumType.equals(otherChecksumType);
+    }
+}
@@ -25,6 +25,8 @@ public class AuditRecords {
 
     private List<AuditRecord> auditRecords = new ArrayList<AuditRecord>();
 
+    private String cursor;
+
     /**
      * Default Constructor.
      */
@@ -61,4 +63,18 @@ public class AuditRecords {
         }
     }
 
+    /**
+     * @return the cursor of the next page or null if there are no more records
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @param cursor the cursor of the next page
+     */
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.escidocng.model;
+
+/**
+ * A DTO holding the parameters of a search for {@link AuditRecord}s. Besides the query the records can be restricted
+ * to an entity, an agent, an action and a time range, which are applied as filters.
+ */
+public class AuditSearchParameters extends SearchParameters {
+
+    private String entityId;
+
+    private String agentName;
+
+    private String action;
+
+    /**
+     * The earliest timestamp of a record, inclusive
+     */
+    private String from;
+
+    /**
+     * The latest timestamp of a record, exclusive
+     */
+    private String to;
+
+    public AuditSearchParameters() {
+        super();
+    }
+
+    public AuditSearchParameters(String query, int offset, int maxRecords) {
+        super(query, offset, maxRecords);
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(String entityId) {
+        this.entityId = entityId;
+    }
+
+    public String getAgentName() {
+        return agentName;
+    }
+
+    public void setAgentName(String agentName) {
+        this.agentName = agentName;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public void setAction(String action) {
+        this.action = action;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public void setTo(String to) {
+        this.to = to;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.escidocng.model;
+
+/**
+ * An entry of the change log of the repository. Every change to an {@link Entity} gets a sequence number which is
+ * higher than the sequence numbers of all changes before it.
+ */
+public class Change {
+
+    /**
+     * The kind of a {@link Change}
+     */
+    public enum Action {
+        CREATE, UPDATE, DELETE, SUBMIT, PUBLISH, WITHDRAW, PENDING;
+    }
+
+    private long seq;
+
+    private String entityId;
+
+    private Action action;
+
+    private Integer version;
+
+    private String state;
+
+    private String timestamp;
+
+    public Change() {
+        super();
+    }
+
+    public Change(Action action, String entityId) {
+        this.action = action;
+        this.entityId = entityId;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(String entityId) {
+        this.entityId = entityId;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public void setAction(Action action) {
+        this.action = action;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(String timestamp) {
+        this.timestamp = timestamp;
+    }
+}
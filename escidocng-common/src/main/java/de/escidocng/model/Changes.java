@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.escidocng.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Object holds a page of the change log
+ */
+public class Changes {
+
+    private List<Change> changes = new ArrayList<Change>();
+
+    private long lastSeq;
+
+    private long head;
+
+    public Changes() {
+        super();
+    }
+
+    public Changes(List<Change> changes, long lastSeq, long head) {
+        this.setChanges(changes);
+        this.lastSeq = lastSeq;
+        this.head = head;
+    }
+
+    /**
+     * @return the changes in the order of their sequence numbers
+     */
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * @param changes the changes to set
+     */
+    public void setChanges(List<Change> changes) {
+        if (changes == null) {
+            this.changes = new ArrayList<Change>();
+        }
+        else {
+            this.changes = changes;
+        }
+    }
+
+    /**
+     * @return the sequence number to continue with, i.e. to pass as since with the next request
+     */
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * @param lastSeq the sequence number to continue with
+     */
+    public void setLastSeq(long lastSeq) {
+        this.lastSeq = lastSeq;
+    }
+
+    /**
+     * @return the highest sequence number assigned so far
+     */
+    public long getHead() {
+        return head;
+    }
+
+    /**
+     * @param head the highest sequence number assigned so far
+     */
+    public void setHead(long head) {
+        this.head = head;
+    }
+}
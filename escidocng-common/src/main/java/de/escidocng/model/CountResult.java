@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.model;
+
+/**
+ * A DTO holding the result of a count or exists request, which only checks the number of documents matching a query
+ * without returning them
+ */
+public class CountResult {
+
+    private Long count;
+
+    private boolean exists;
+
+    private long duration;
+
+    public CountResult() {
+        super();
+    }
+
+    /**
+     * Create the result of a count request
+     * 
+     * @param count the number of matching documents
+     */
+    public CountResult(long count) {
+        this.count = count;
+        this.exists = count > 0;
+    }
+
+    /**
+     * Create the result of an exists request
+     * 
+     * @param exists true if at least one document matches
+     */
+    public CountResult(boolean exists) {
+        this.exists = exists;
+    }
+
+    /**
+     * @return the number of documents matching the query, or null if only their existence has been checked
+     */
+    public Long getCount() {
+        return count;
+    }
+
+    public void setCount(Long count) {
+        this.count = count;
+    }
+
+    /**
+     * @return true if at least one document matches the query
+     */
+    public boolean isExists() {
+        return exists;
+    }
+
+    public void setExists(boolean exists) {
+        this.exists = exists;
+    }
+
+    /**
+     * @return the duration of the request in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.escidocng.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DTO holding the parameters of a facet request, which counts the documents matching a query without returning
+ * them
+ */
+public class FacetParameters {
+
+    private String query;
+
+    private List<String> terms = new ArrayList<>();
+
+    private List<String> histograms = new ArrayList<>();
+
+    private List<String> cardinalities = new ArrayList<>();
+
+    private int size = 10;
+
+    private String filter;
+
+    public FacetParameters() {
+        super();
+    }
+
+    public FacetParameters(String query) {
+        this.query = query;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    /**
+     * @return the fields for which the number of documents per value should be counted
+     */
+    public List<String> getTerms() {
+        return terms;
+    }
+
+    public void setTerms(List<String> terms) {
+        this.terms = terms;
+    }
+
+    /**
+     * @return the date fields for which the number of documents per interval should be counted, in the form
+     *         <code>field:interval</code> with an interval of year, quarter, month, week, day or hour
+     */
+    public List<String> getHistograms() {
+        return histograms;
+    }
+
+    public void setHistograms(List<String> histograms) {
+        this.histograms = histograms;
+    }
+
+    /**
+     * @return the fields for which the approximate number of distinct values should be calculated
+     */
+    public List<String> getCardinalities() {
+        return cardinalities;
+    }
+
+    public void setCardinalities(List<String> cardinalities) {
+        this.cardinalities = cardinalities;
+    }
+
+    /**
+     * @return the maximum number of values to return for each terms facet
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    /**
+     * @return a JSON filter the hits are restricted to in addition to the query, or null
+     */
+    public String getFilter() {
+        return filter;
+    }
+
+    public void setFilter(String filter) {
+        this.filter = filter;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.escidocng.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A DTO holding the document counts calculated for a facet request
+ */
+public class FacetResult {
+
+    private long totalHits;
+
+    private long duration;
+
+    private Map<String, Map<String, Long>> terms = new LinkedHashMap<>();
+
+    private Map<String, Map<String, Long>> histograms = new LinkedHashMap<>();
+
+    private Map<String, Long> cardinalities = new LinkedHashMap<>();
+
+    /**
+     * @return the number of documents matching the query
+     */
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    public void setTotalHits(long totalHits) {
+        this.totalHits = totalHits;
+    }
+
+    /**
+     * @return the duration of the request in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * @return the number of documents per value, mapped by field name
+     */
+    public Map<String, Map<String, Long>> getTerms() {
+        return terms;
+    }
+
+    public void setTerms(Map<String, Map<String, Long>> terms) {
+        this.terms = terms;
+    }
+
+    /**
+     * @return the number of documents per interval start, mapped by field name
+     */
+    public Map<String, Map<String, Long>> getHistograms() {
+        return histograms;
+    }
+
+    public void setHistograms(Map<String, Map<String, Long>> histograms) {
+        this.histograms = histograms;
+    }
+
+    /**
+     * @return the approximate number of distinct values, mapped by field name
+     */
+    public Map<String, Long> getCardinalities() {
+        return cardinalities;
+    }
+
+    public void setCardinalities(Map<String, Long> cardinalities) {
+        this.cardinalities = cardinalities;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.escidocng.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * An event published to the message queue when an object in the repository has been changed. Only the fields
+ * relevant for the type of the event are set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RepositoryEvent {
+
+    /**
+     * The name of the JMS property holding the type of the event
+     */
+    public static final String PROPERTY_TYPE = "eventType";
+
+    /**
+     * The name of the JMS property holding the id of the changed entity
+     */
+    public static final String PROPERTY_ENTITY_ID = "entityId";
+
+    /**
+     * The type of a {@link RepositoryEvent}
+     */
+    public enum Type {
+        CREATE_ENTITY, UPDATE_ENTITY, DELETE_ENTITY, PENDING_ENTITY, SUBMIT_ENTITY, PUBLISH_ENTITY, WITHDRAW_ENTITY,
+        CREATE_BINARY, UPDATE_BINARY, DELETE_BINARY, CREATE_METADATA, UPDATE_METADATA, DELETE_METADATA,
+        CREATE_BINARY_METADATA, UPDATE_BINARY_METADATA, DELETE_BINARY_METADATA, CREATE_IDENTIFIER,
+        DELETE_IDENTIFIER, CREATE_RELATION, DELETE_RELATION, CREATE_USER, UPDATE_USER, DELETE_USER;
+    }
+
+    private Type type;
+
+    private String entityId;
+
+    private Integer version;
+
+    private String binaryName;
+
+    private String metadataName;
+
+    private String identifierType;
+
+    private String identifierValue;
+
+    private String predicate;
+
+    private String object;
+
+    private String userName;
+
+    private String timestamp;
+
+    public RepositoryEvent() {
+        super();
+    }
+
+    public RepositoryEvent(Type type, String entityId) {
+        this.type = type;
+        this.entityId = entityId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(String entityId) {
+        this.entityId = entityId;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
+    public String getBinaryName() {
+        return binaryName;
+    }
+
+    public void setBinaryName(String binaryName) {
+        this.binaryName = binaryName;
+    }
+
+    public String getMetadataName() {
+        return metadataName;
+    }
+
+    public void setMetadataName(String metadataName) {
+        this.metadataName = metadataName;
+    }
+
+    public String getIdentifierType() {
+        return identifierType;
+    }
+
+    public void setIdentifierType(String identifierType) {
+        this.identifierType = identifierType;
+    }
+
+    public String getIdentifierValue() {
+        return identifierValue;
+    }
+
+    public void setIdentifierValue(String identifierValue) {
+        this.identifierValue = identifierValue;
+    }
+
+    public String getPredicate() {
+        return predicate;
+    }
+
+    public void setPredicate(String predicate) {
+        this.predicate = predicate;
+    }
+
+    public String getObject() {
+        return object;
+    }
+
+    public void setObject(String object) {
+        this.object = object;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public void setUserName(String userName) {
+        this.userName = userName;
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(String timestamp) {
+        this.timestamp = timestamp;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.escidocng.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DTO holding the parameters of a search request
+ */
+public class SearchParameters {
+
+    /**
+     * The cursor value used to start a cursor based search
+     */
+    public static final String CURSOR_START = "*";
+
+    /**
+     * The view returning the complete documents
+     */
+    public static final String VIEW_FULL = "full";
+
+    /**
+     * The view returning only the fields needed to list the hits
+     */
+    public static final String VIEW_SUMMARY = "summary";
+
+    private String query;
+
+    private int offset;
+
+    private int maxRecords;
+
+    private List<String> sort = new ArrayList<>();
+
+    private List<String> fields = new ArrayList<>();
+
+    private String view;
+
+    private String cursor;
+
+    private boolean aggregations;
+
+    private boolean consistent;
+
+    private boolean dfs;
+
+    private boolean profile;
+
+    private String filter;
+
+    public SearchParameters() {
+        super();
+    }
+
+    public SearchParameters(String query, int offset, int maxRecords) {
+        this.query = query;
+        this.offset = offset;
+        this.maxRecords = maxRecords;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int getMaxRecords() {
+        return maxRecords;
+    }
+
+    public void setMaxRecords(int maxRecords) {
+        this.maxRecords = maxRecords;
+    }
+
+    /**
+     * @return the sort criteria in the form <code>field:asc</code> or <code>field:desc</code>
+     */
+    public List<String> getSort() {
+        return sort;
+    }
+
+    public void setSort(List<String> sort) {
+        this.sort = sort;
+    }
+
+    /**
+     * @return the fields to return for each hit, all fields are returned if the list is empty
+     */
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public void setFields(List<String> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * @return the view of the hits, either {@link #VIEW_FULL} or {@link #VIEW_SUMMARY}. The view is ignored if fields
+     *         are given.
+     */
+    public String getView() {
+        return view;
+    }
+
+    public void setView(String view) {
+        this.view = view;
+    }
+
+    /**
+     * @return the continuation token of a cursor based search, {@link #CURSOR_START} for the first page or null for
+     *         an offset based search
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return true if the document counts per value of the aggregatable fields should be calculated
+     */
+    public boolean isAggregations() {
+        return aggregations;
+    }
+
+    public void setAggregations(boolean aggregations) {
+        this.aggregations = aggregations;
+    }
+
+    /**
+     * @return true if the index should be refreshed before searching, so that changes which are not yet visible to
+     *         searches are included
+     */
+    public boolean isConsistent() {
+        return consistent;
+    }
+
+    public void setConsistent(boolean consistent) {
+        this.consistent = consistent;
+    }
+
+    /**
+     * @return true if term frequencies should be collected from all shards before scoring the hits
+     */
+    public boolean isDfs() {
+        return dfs;
+    }
+
+    public void setDfs(boolean dfs) {
+        this.dfs = dfs;
+    }
+
+    /**
+     * @return true if the time spent in the phases of the search should be returned with the result
+     */
+    public boolean isProfile() {
+        return profile;
+    }
+
+    public void setProfile(boolean profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * @return a JSON filter the hits are restricted to in addition to the query, or null
+     */
+    public String getFilter() {
+        return filter;
+    }
+
+    public void setFilter(String filter) {
+        this.filter = filter;
+    }
+}
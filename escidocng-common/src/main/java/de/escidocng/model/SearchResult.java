@@ -17,6 +17,7 @@
 package de.escidocng.model;
 
 import java.util.List;
+import java.util.Map;
 
 public class SearchResult {
 
@@ -42,6 +43,10 @@ public class SearchResult {
 
     private List<?> data;
 
+    private Map<String, Map<String, Long>> aggregations;
+
+    private SearchTimings timings;
+
     /**
      * Get the total hit number
      * 
@@ -151,7 +156,8 @@ public class SearchResult {
     }
 
     /**
-     * Get the scroll id for this search result
+     * Get the scroll id for this search result. For cursor based searches this is the opaque token which has to be
+     * passed as cursor to fetch the next page, or null if there are no more results.
      * 
      * @return the scroll id
      */
@@ -239,4 +245,40 @@ public class SearchResult {
     public void setData(List<?> data) {
         this.data = data;
     }
+
+    /**
+     * Get the aggregations calculated for this search
+     * 
+     * @return the document counts per value, mapped by the name of the aggregation
+     */
+    public Map<String, Map<String, Long>> getAggregations() {
+        return aggregations;
+    }
+
+    /**
+     * Set the aggregations calculated for this search
+     * 
+     * @param aggregations the aggregations to set
+     */
+    public void setAggregations(Map<String, Map<String, Long>> aggregations) {
+        this.aggregations = aggregations;
+    }
+
+    /**
+     * Get the time spent in the phases of the search, only set if profiling was requested
+     * 
+     * @return the timings of the search
+     */
+    public SearchTimings getTimings() {
+        return timings;
+    }
+
+    /**
+     * Set the time spent in the phases of the search
+     * 
+     * @param timings the timings to set
+     */
+    public void setTimings(SearchTimings timings) {
+        this.timings = timings;
+    }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.model;
+
+/**
+ * The time in milliseconds spent in the phases of a search
+ */
+public class SearchTimings {
+
+    private long restriction;
+
+    private long refresh;
+
+    private long took;
+
+    private long search;
+
+    private long deserialize;
+
+    private long total;
+
+    /**
+     * @return the time spent building the restriction filter of the searching user
+     */
+    public long getRestriction() {
+        return restriction;
+    }
+
+    public void setRestriction(long restriction) {
+        this.restriction = restriction;
+    }
+
+    /**
+     * @return the time spent refreshing the index before searching
+     */
+    public long getRefresh() {
+        return refresh;
+    }
+
+    public void setRefresh(long refresh) {
+        this.refresh = refresh;
+    }
+
+    /**
+     * @return the time the index reported for executing the search, including the dfs, query and fetch phases
+     */
+    public long getTook() {
+        return took;
+    }
+
+    public void setTook(long took) {
+        this.took = took;
+    }
+
+    /**
+     * @return the time the search request took as seen by the repository, including the transport
+     */
+    public long getSearch() {
+        return search;
+    }
+
+    public void setSearch(long search) {
+        this.search = search;
+    }
+
+    /**
+     * @return the time spent deserializing the hits
+     */
+    public long getDeserialize() {
+        return deserialize;
+    }
+
+    public void setDeserialize(long deserialize) {
+        this.deserialize = deserialize;
+    }
+
+    /**
+     * @return the total time of the search
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.model;
+
+/**
+ * A search which took longer than the configured threshold
+ */
+public class SlowQuery {
+
+    private long timestamp;
+
+    private String index;
+
+    private String user;
+
+    private String query;
+
+    private int offset;
+
+    private int maxRecords;
+
+    private long totalHits;
+
+    private int restrictionSize;
+
+    private SearchTimings timings;
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public void setIndex(String index) {
+        this.index = index;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public void setUser(String user) {
+        this.user = user;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int getMaxRecords() {
+        return maxRecords;
+    }
+
+    public void setMaxRecords(int maxRecords) {
+        this.maxRecords = maxRecords;
+    }
+
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    public void setTotalHits(long totalHits) {
+        this.totalHits = totalHits;
+    }
+
+    /**
+     * @return the length in characters of the restriction filter generated for the searching user
+     */
+    public int getRestrictionSize() {
+        return restrictionSize;
+    }
+
+    public void setRestrictionSize(int restrictionSize) {
+        this.restrictionSize = restrictionSize;
+    }
+
+    public SearchTimings getTimings() {
+        return timings;
+    }
+
+    public void setTimings(SearchTimings timings) {
+        this.timings = timings;
+    }
+}
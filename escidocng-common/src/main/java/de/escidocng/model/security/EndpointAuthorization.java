@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.model.security;
+
+import java.util.List;
+
+/**
+ * Describes how a controller method is protected by the PreAuth/PostAuth annotations
+ */
+public class EndpointAuthorization {
+
+    private String controller;
+
+    private String method;
+
+    private List<String> paths;
+
+    private List<String> requestMethods;
+
+    private boolean preAuth;
+
+    private boolean postAuth;
+
+    private ObjectType objectType;
+
+    private List<String> permissions;
+
+    public String getController() {
+        return controller;
+    }
+
+    public void setController(String controller) {
+        this.controller = controller;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    public void setPaths(List<String> paths) {
+        this.paths = paths;
+    }
+
+    public List<String> getRequestMethods() {
+        return requestMethods;
+    }
+
+    public void setRequestMethods(List<String> requestMethods) {
+        this.requestMethods = requestMethods;
+    }
+
+    public boolean isPreAuth() {
+        return preAuth;
+    }
+
+    public void setPreAuth(boolean preAuth) {
+        this.preAuth = preAuth;
+    }
+
+    public boolean isPostAuth() {
+        return postAuth;
+    }
+
+    public void setPostAuth(boolean postAuth) {
+        this.postAuth = postAuth;
+    }
+
+    public ObjectType getObjectType() {
+        return objectType;
+    }
+
+    public void setObjectType(ObjectType objectType) {
+        this.objectType = objectType;
+    }
+
+    public List<String> getPermissions() {
+        return permissions;
+    }
+
+    public void setPermissions(List<String> permissions) {
+        this.permissions = permissions;
+    }
+}
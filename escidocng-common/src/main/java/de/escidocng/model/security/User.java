@@ -17,7 +17,10 @@
 package de.escidocng.model.security;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 import de.escidocng.model.security.role.Role;
 import de.escidocng.model.security.role.Role.RoleName;
@@ -39,6 +42,8 @@ public class User {
 
     private List<Role> roles;
 
+    private transient volatile CompiledRoles compiledRoles;
+
     /**
      * Get the user's name
      * 
@@ -145,30 +150,23 @@ public class User {
      */
     public void setRoles(List<Role> roles) {
         this.roles = roles;
+        this.compiledRoles = null;
     }
     
     public boolean hasRole(RoleName roleName) {
-        if (roleName == null || roles == null) {
-            return false;
-        }
-        for (Role role : roles) {
-            if (roleName.equals(role.getRoleName())) {
-                return true;
-            }
-        }
-        return false;
+        return getRole(roleName) != null;
     }
 
     public Role getRole(RoleName roleName) {
         if (roleName == null || roles == null) {
             return null;
         }
-        for (Role role : roles) {
-            if (roleName.equals(role.getRoleName())) {
-                return role;
-            }
+        CompiledRoles compiled = this.compiledRoles;
+        if (compiled == null || !compiled.isCompiledFrom(roles)) {
+            compiled = new CompiledRoles(roles);
+            this.compiledRoles = compiled;
         }
-        return null;
+        return compiled.roles.get(roleName);
     }
 
     public void setRole(Role role) {
@@ -177,6 +175,7 @@ public class User {
         }
         removeRole(role.getRoleName());
         roles.add(role);
+        this.compiledRoles = null;
     }
 
     public void removeRole(RoleName roleName) {
@@ -186,6 +185,7 @@ public class User {
         for (Role role : roles) {
             if (roleName.equals(role.getRoleName())) {
                 roles.remove(role);
+                this.compiledRoles = null;
                 return;
             }
         }
@@ -218,4 +218,33 @@ public class User {
         result = 31 * result + (roles != null ? roles.hashCode() : 0);
         return result;
     }
+
+    /**
+     * Immutable lookup of the user's roles by RoleName, built from the role-list on first access and rebuilt
+     * whenever the list is replaced or changes its size. The first role of a name wins, as it did for the list scan.
+     */
+    private static final class CompiledRoles {
+
+        private final List<Role> source;
+
+        private final int size;
+
+        private final Map<RoleName, Role> roles;
+
+        private CompiledRoles(List<Role> source) {
+            this.source = source;
+            this.size = source.size();
+            final Map<RoleName, Role> roleMap = new EnumMap<>(RoleName.class);
+            for (Role role : source) {
+                if (role != null && role.getRoleName() != null && !roleMap.containsKey(role.getRoleName())) {
+                    roleMap.put(role.getRoleName(), role);
+                }
+            }
+            this.roles = Collections.unmodifiableMap(roleMap);
+        }
+
+        private boolean isCompiledFrom(List<Role> roles) {
+            return this.source == roles && this.size == roles.size();
+        }
+    }
 }
@@ -60,6 +60,7 @@ public class Level1AdminRole extends Role {
     @Override
     public void setRights(List<Right> rights) throws IOException {
         this.rights = rights;
+        rightsChanged();
     }
 
     @Override
@@ -89,15 +90,11 @@ public class Level1AdminRole extends Role {
             return false;
         }
         if (permission.permissionType().equals(PermissionType.READ) &&
-                (getRight(entityHierarchy.getLevel1Id()).getRoleRights() == null || !getRight(
-                        entityHierarchy.getLevel1Id()).getRoleRights()
-                        .contains(RoleRight.READ))) {
+                !hasRoleRight(entityHierarchy.getLevel1Id(), RoleRight.READ)) {
             return false;
         }
         if (permission.permissionType().equals(PermissionType.WRITE) &&
-                (getRight(entityHierarchy.getLevel1Id()).getRoleRights() == null || !getRight(
-                        entityHierarchy.getLevel1Id()).getRoleRights()
-                        .contains(RoleRight.WRITE))) {
+                !hasRoleRight(entityHierarchy.getLevel1Id(), RoleRight.WRITE)) {
             return false;
         }
         return true;
@@ -5,7 +5,12 @@ package de.escidocng.model.security.role;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonSubTypes.Type;
@@ -36,7 +41,13 @@ import de.escidocng.model.security.annotation.Permission;
         @Type(value = Level1AdminRole.class, name = "ROLE_LEVEL1_ADMIN")
         })
 public abstract class Role {
-    
+
+    /**
+     * Rights compiled into a map keyed by anchorId, built lazily on the first lookup and rebuilt whenever the
+     * right-list is replaced or changes its size.
+     */
+    private transient volatile CompiledRights compiledRights;
+
     /**
      * get the name of the Role
      * 
@@ -92,14 +103,10 @@ public abstract class Role {
      * @return boolean true|false
      */
     public boolean hasRight(String anchorId) {
-        if (anchorId != null && getRights() != null) {
-            for(Right r : getRights()) {
-                if (anchorId.equals(r.getAnchorId())) {
-                    return true;
-                }
-            }
+        if (anchorId == null) {
+            return false;
         }
-        return false;
+        return compiledRights().rights.containsKey(anchorId);
     }
 
     /**
@@ -109,16 +116,45 @@ public abstract class Role {
      * @return Right
      */
     public Right getRight(String anchorId) {
-        if (anchorId != null && getRights() != null) {
-            for(Right r : getRights()) {
-                if (anchorId.equals(r.getAnchorId())) {
-                    return r;
-                }
-            }
+        if (anchorId == null) {
+            return null;
         }
-        return null;
+        return compiledRights().rights.get(anchorId);
     }
-    
+
+    /**
+     * Check if the Right with given anchorId grants the given RoleRight.
+     * 
+     * @param anchorId
+     * @param roleRight
+     * @return boolean true|false
+     */
+    public boolean hasRoleRight(String anchorId, RoleRight roleRight) {
+        if (anchorId == null || roleRight == null) {
+            return false;
+        }
+        Set<RoleRight> roleRights = compiledRights().roleRights.get(anchorId);
+        return roleRights != null && roleRights.contains(roleRight);
+    }
+
+    /**
+     * Drop the compiled rights so they get rebuilt from the right-list on the next lookup.
+     * Extending classes call this whenever they replace their rights.
+     */
+    protected void rightsChanged() {
+        this.compiledRights = null;
+    }
+
+    private CompiledRights compiledRights() {
+        final List<Right> rights = getRights();
+        CompiledRights compiled = this.compiledRights;
+        if (compiled == null || !compiled.isCompiledFrom(rights)) {
+            compiled = new CompiledRights(rights);
+            this.compiledRights = compiled;
+        }
+        return compiled;
+    }
+
     /**
      * remove Right with given anchorId.
      * 
@@ -136,6 +172,7 @@ public abstract class Role {
         }
         if (index > -1) {
             getRights().remove(index);
+            rightsChanged();
         }
     }
     
@@ -224,4 +261,49 @@ public abstract class Role {
 
     }
 
+    /**
+     * Immutable snapshot of a right-list, mapping each anchorId to its Right and to the granted RoleRights.
+     * If an anchorId occurs more than once the first Right wins, as it did for the list scan.
+     */
+    private static final class CompiledRights {
+
+        private final List<Right> source;
+
+        private final int size;
+
+        private final Map<String, Right> rights;
+
+        private final Map<String, Set<RoleRight>> roleRights;
+
+        private CompiledRights(List<Right> source) {
+            this.source = source;
+            this.size = source == null ? 0 : source.size();
+            final Map<String, Right> rightMap = new HashMap<>();
+            final Map<String, Set<RoleRight>> roleRightMap = new HashMap<>();
+            if (source != null) {
+                for (Right r : source) {
+                    if (r.getAnchorId() == null || rightMap.containsKey(r.getAnchorId())) {
+                        continue;
+                    }
+                    rightMap.put(r.getAnchorId(), r);
+                    final EnumSet<RoleRight> granted = EnumSet.noneOf(RoleRight.class);
+                    if (r.getRoleRights() != null) {
+                        for (RoleRight roleRight : r.getRoleRights()) {
+                            if (roleRight != null) {
+                                granted.add(roleRight);
+                            }
+                        }
+                    }
+                    roleRightMap.put(r.getAnchorId(), Collections.unmodifiableSet(granted));
+                }
+            }
+            this.rights = Collections.unmodifiableMap(rightMap);
+            this.roleRights = Collections.unmodifiableMap(roleRightMap);
+        }
+
+        private boolean isCompiledFrom(List<Right> rights) {
+            return this.source == rights && this.size == (rights == null ? 0 : rights.size());
+        }
+    }
+
 }
@@ -59,6 +59,7 @@ public class UserAdminRole extends Role {
     @Override
     public void setRights(List<Right> rights) throws IOException {
         this.rights = rights;
+        rightsChanged();
     }
 
     @Override
@@ -80,21 +81,11 @@ public class UserAdminRole extends Role {
             return false;
         }
         if (permission.permissionType().equals(PermissionType.WRITE) &&
-                (!hasRight(checkUser.getName()) || getRight(checkUser.getName()).getRoleRights() == null || !getRight(
-                        checkUser.getName()).getRoleRights().contains(
-                        RoleRight.WRITE)) &&
-                (!hasRight("") || getRight("").getRoleRights() == null || !getRight(
-                        "").getRoleRights().contains(
-                        RoleRight.WRITE))) {
+                !hasRoleRight(checkUser.getName(), RoleRight.WRITE) && !hasRoleRight("", RoleRight.WRITE)) {
             return false;
         }
         if (permission.permissionType().equals(PermissionType.READ) &&
-                (!hasRight(checkUser.getName()) || getRight(checkUser.getName()).getRoleRights() == null || !getRight(
-                        checkUser.getName()).getRoleRights().contains(
-                        RoleRight.READ)) &&
-                (!hasRight("") || getRight("").getRoleRights() == null || !getRight(
-                        "").getRoleRights().contains(
-                        RoleRight.READ))) {
+                !hasRoleRight(checkUser.getName(), RoleRight.READ) && !hasRoleRight("", RoleRight.READ)) {
             return false;
         }
         return true;
@@ -113,6 +113,7 @@ public class UserRole extends Role {
     @Override
     public void setRights(List<Right> rights) throws IOException {
         this.rights = rights;
+        rightsChanged();
     }
 
     @Override
@@ -136,23 +137,17 @@ public class UserRole extends Role {
         if (entityHierarchy == null || entityHierarchy.getLevel2Id() == null) {
             return false;
         }
-        if (this.rights == null || !hasRight(entityHierarchy.getLevel2Id()) ||
-                getRight(entityHierarchy.getLevel2Id()).getRoleRights() == null) {
-            return false;
-        }
-        if (getRight(entityHierarchy.getLevel2Id()).getRoleRights() == null) {
+        final String level2Id = entityHierarchy.getLevel2Id();
+        if (this.rights == null || !hasRight(level2Id) || getRight(level2Id).getRoleRights() == null) {
             return false;
         }
         if (FixedContentModel.LEVEL2.getName().equals(checkEntity.getContentModelId())) {
             if (permission.permissionType().equals(PermissionType.READ)) {
-                if (!getRight(entityHierarchy.getLevel2Id()).getRoleRights().contains(RoleRight.READ_LEVEL2)) {
-                    return false;
-                }
-                if (!getRight(entityHierarchy.getLevel2Id()).getRoleRights().contains(RoleRight.READ_LEVEL2)) {
+                if (!hasRoleRight(level2Id, RoleRight.READ_LEVEL2)) {
                     return false;
                 }
             } else if (permission.permissionType().equals(PermissionType.WRITE)) {
-                if (!getRight(entityHierarchy.getLevel2Id()).getRoleRights().contains(RoleRight.WRITE_LEVEL2)) {
+                if (!hasRoleRight(level2Id, RoleRight.WRITE_LEVEL2)) {
                     return false;
                 }
             }
@@ -161,8 +156,7 @@ public class UserRole extends Role {
             if (state == null) {
                 state = EntityState.PENDING;
             }
-            if (!getRight(entityHierarchy.getLevel2Id()).getRoleRights().contains(
-                    validateMatrix.get("" + permission.permissionType() + state + objectType))) {
+            if (!hasRoleRight(level2Id, validateMatrix.get("" + permission.permissionType() + state + objectType))) {
                 return false;
             }
         }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 FIZ Karlsruhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ROLE_ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.escidocng.model.state;
+
+/**
+ * A DTO for wrapping the state of the queue of audit records waiting to be written to the index
+ */
+public class AuditQueueState {
+
+    private boolean async;
+
+    private int depth;
+
+    private int capacity;
+
+    private long enqueued;
+
+    private long flushed;
+
+    private long failedFlushes;
+
+    private long flushLag;
+
+    private long journalSize;
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public long getEnqueued() {
+        return enqueued;
+    }
+
+    public void setEnqueued(long enqueued) {
+        this.enqueued = enqueued;
+    }
+
+    public long getFlushed() {
+        return flushed;
+    }
+
+    public void setFlushed(long flushed) {
+        this.flushed = flushed;
+    }
+
+    public long getFailedFlushes() {
+        return failedFlushes;
+    }
+
+    public void setFailedFlushes(long failedFlushes) {
+        this.failedFlushes = failedFlushes;
+    }
+
+    public long getFlushLag() {
+        return flushLag;
+    }
+
+    public void setFlushLag(long flushLag) {
+        this.flushLag = flushLag;
+    }
+
+    public long getJournalSize() {
+        return journalSize;
+    }
+
+    public void setJournalSize(long journalSize) {
+        this.journalSize = journalSize;
+    }
+}
@@ -25,6 +25,14 @@ public class EscidocngState {
 
     private BlobstoreState blobstoreState;
 
+    private SearchCacheState searchCacheState;
+
+    private AuthenticationCacheState authenticationCacheState;
+
+    private AuditQueueState auditQueueState;
+
+    private MessagingQueueState messagingQueueState;
+
     public IndexState getIndexState() {
         return indexState;
     }
@@ -40,4 +48,36 @@ public class EscidocngState {
     public void setBlobstoreState(BlobstoreState blobstoreState) {
         this.blobstoreState = blobstoreState;
     }
+
+    public SearchCacheState getSearchCacheState() {
+        return searchCacheState;
+    }
+
+    public void setSearchCacheState(SearchCacheState searchCacheState) {
+        this.searchCacheState = searchCacheState;
+    }
+
+    public AuthenticationCacheState getAuthenticationCacheState() {
+        return authenticationCacheState;
+    }
+
+    public void setAuthenticationCacheState(AuthenticationCacheState authenticationCacheState) {
+        this.authenticationCacheState = authenticationCacheState;
+    }
+
+    public AuditQueueState getAuditQueueState() {
+        return auditQueueState;
+    }
+
+    public void setAuditQueueState(AuditQueueState auditQueueState) {
+        this.auditQueueState = auditQueueState;
+    }
+
+    public MessagingQueueState getMessagingQueueState() {
+        return messagingQueueState;
+    }
+
+    public void setMessagingQueueState(MessagingQueueState messagingQueueState) {
+        this.messagingQueueState = messagingQueueState;
+    }
 }